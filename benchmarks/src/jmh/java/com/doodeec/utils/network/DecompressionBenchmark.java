@@ -0,0 +1,68 @@
+package com.doodeec.utils.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Measures decompression of response body by {@link ContentDecoder}s
+ * Previous gzip path (GZIPInputStream with default 512 byte buffer) is measured as baseline
+ * Body is read with the buffer size used by requests
+ *
+ * @author dusan.bartos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecompressionBenchmark {
+
+    @Param({"100", "10000"})
+    public int users;
+
+    private byte[] mGzip;
+    private byte[] mDeflate;
+    private final byte[] mBuffer = new byte[8192];
+
+    @Setup
+    public void setUp() {
+        byte[] json = Payloads.users(users);
+        mGzip = Payloads.gzip(json);
+        mDeflate = Payloads.deflate(json);
+    }
+
+    private long consume(InputStream inputStream) throws IOException {
+        long total = 0;
+        int read;
+        while ((read = inputStream.read(mBuffer)) != -1) {
+            total += read;
+        }
+        inputStream.close();
+        return total;
+    }
+
+    @Benchmark
+    public long gzipDefaultBuffer() throws IOException {
+        return consume(new GZIPInputStream(new ByteArrayInputStream(mGzip)));
+    }
+
+    @Benchmark
+    public long gzip() throws IOException {
+        return consume(ContentDecoder.GZIP.decode(new ByteArrayInputStream(mGzip)));
+    }
+
+    @Benchmark
+    public long deflate() throws IOException {
+        return consume(ContentDecoder.DEFLATE.decode(new ByteArrayInputStream(mDeflate)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.doodeec.utils.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures complete request execution ({@link BaseServerRequest#doInBackground(String...)})
+ * against the loopback server, including connection handling, gzip decoding and parsing
+ * Latency is sampled from a single thread, throughput is measured with concurrent requests
+ *
+ * @author dusan.bartos
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EndToEndBenchmark {
+
+    @Param({"10", "1000"})
+    public int users;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private LoopbackServer mServer;
+    private String mUrl;
+    private String mEchoUrl;
+    private String mPostData;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] payload = Payloads.users(users);
+        mServer = new LoopbackServer(payload, Payloads.binary(1024));
+        mUrl = mServer.url(gzip ? "/json-gzip" : "/json");
+        mEchoUrl = mServer.url("/echo");
+        mPostData = new String(Payloads.users(10), Payloads.UTF_8);
+        // failures have to show up in results, not be hidden by retries
+        BaseServerRequest.setDefaultRetryPolicy(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public Payloads.UserList latency() {
+        return get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public Payloads.UserList throughput() {
+        return get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public Object postLatency() {
+        ServerRequest<Object> request = new ServerRequest<>(RequestType.POST, mPostData,
+                new NoOpListener<Object>(), Object.class);
+        return check(request.doInBackground(mEchoUrl));
+    }
+
+    private Payloads.UserList get() {
+        ServerRequest<Payloads.UserList> request = new ServerRequest<>(RequestType.GET,
+                new NoOpListener<Payloads.UserList>(), Payloads.UserList.class);
+        request.setStreamingParser(streaming);
+        return check(request.doInBackground(mUrl));
+    }
+
+    private static <T> T check(CommunicatorResponse<T> response) {
+        if (response.hasError()) {
+            throw new IllegalStateException("Request failed: " + response.getError().getMessage());
+        }
+        return response.getData();
+    }
+}
@@ -0,0 +1,74 @@
+package com.doodeec.utils.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures write throughput of {@link FileServerRequest#processInputStream(String, java.io.InputStream)}
+ * for regular and resumable downloads
+ *
+ * @author dusan.bartos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileWriteBenchmark {
+
+    @Param({"65536", "1048576", "16777216"})
+    public int size;
+
+    @Param({"8192", "65536"})
+    public int bufferSize;
+
+    @Param({"false", "true"})
+    public boolean resumable;
+
+    private byte[] mPayload;
+    private File mDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mPayload = Payloads.binary(size);
+        mDir = File.createTempFile("file-benchmark", "");
+        if (!mDir.delete() || !mDir.mkdirs()) {
+            throw new IOException("Cannot create benchmark directory");
+        }
+        FileServerRequest.setBufferSize(bufferSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Benchmark
+    public File write() throws IOException {
+        FileServerRequest request = new FileServerRequest(mDir, RequestType.GET, new NoOpListener<File>());
+        request.setFileName("download.bin");
+        request.setResumable(resumable);
+        request.getResponse().setUrl("http://127.0.0.1/file");
+        // resumable download prepares its partial file with request headers
+        request.onPrepareHeaders(new HashMap<String, String>());
+        return request.processInputStream("application/octet-stream", new ByteArrayInputStream(mPayload));
+    }
+}
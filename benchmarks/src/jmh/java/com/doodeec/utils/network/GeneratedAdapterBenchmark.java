@@ -0,0 +1,66 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.json.GeneratedAdapterFactory;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares adapters generated for {@code @JsonModel} classes with GSON reflective adapters
+ * Both decode the same payload of the same model classes from the byte stream (streaming mode),
+ * run with {@code -Pjmh.profilers=gc} to compare allocations as well
+ *
+ * @author dusan.bartos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeneratedAdapterBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int users;
+
+    private byte[] mPayload;
+    private TypeAdapter<Payloads.UserList> mReflective;
+    private TypeAdapter<Payloads.UserList> mGenerated;
+
+    @Setup
+    public void setUp() {
+        mPayload = Payloads.users(users);
+        mReflective = new GsonBuilder().create().getAdapter(Payloads.UserList.class);
+        mGenerated = new GsonBuilder()
+                .registerTypeAdapterFactory(new GeneratedAdapterFactory())
+                .create()
+                .getAdapter(Payloads.UserList.class);
+    }
+
+    @Benchmark
+    public Payloads.UserList reflective() throws IOException {
+        return read(mReflective);
+    }
+
+    @Benchmark
+    public Payloads.UserList generated() throws IOException {
+        return read(mGenerated);
+    }
+
+    private Payloads.UserList read(TypeAdapter<Payloads.UserList> adapter) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(mPayload), Payloads.UTF_8));
+        reader.setLenient(true);
+        return adapter.read(reader);
+    }
+}
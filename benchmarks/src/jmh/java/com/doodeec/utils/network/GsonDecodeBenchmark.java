@@ -0,0 +1,59 @@
+package com.doodeec.utils.network;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures GSON decoding of representative payloads with the converter used by requests
+ * Compares decoding from String (buffered mode) with decoding from the byte stream (streaming mode)
+ *
+ * @author dusan.bartos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GsonDecodeBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int users;
+
+    private byte[] mPayload;
+    private String mPayloadString;
+    private Gson mGson;
+    private TypeAdapter<Payloads.UserList> mAdapter;
+
+    @Setup
+    public void setUp() {
+        mPayload = Payloads.users(users);
+        mPayloadString = new String(mPayload, Payloads.UTF_8);
+        mGson = ServerRequest.getGsonConverter();
+        mAdapter = mGson.getAdapter(Payloads.UserList.class);
+    }
+
+    @Benchmark
+    public Payloads.UserList fromString() {
+        return mGson.fromJson(mPayloadString, Payloads.UserList.class);
+    }
+
+    @Benchmark
+    public Payloads.UserList fromStream() throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(mPayload), Payloads.UTF_8));
+        reader.setLenient(true);
+        return mAdapter.read(reader);
+    }
+}
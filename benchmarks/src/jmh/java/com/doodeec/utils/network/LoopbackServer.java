@@ -0,0 +1,90 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP server bound to the loopback interface
+ * Serves fixed response bodies, so benchmarks measure the client and not the network
+ * <ul>
+ * <li>/json - JSON payload</li>
+ * <li>/json-gzip - the same payload with gzip Content-Encoding</li>
+ * <li>/file - binary payload</li>
+ * <li>/echo - reads request body and responds with empty JSON object</li>
+ * </ul>
+ *
+ * @author dusan.bartos
+ */
+final class LoopbackServer {
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+
+    LoopbackServer(byte[] json, byte[] file) throws IOException {
+        // Nagle's algorithm with delayed ACK would add ~40ms to small responses
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        mExecutor = Executors.newFixedThreadPool(8);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/json", new FixedHandler(json, "application/json", null));
+        mServer.createContext("/json-gzip", new FixedHandler(Payloads.gzip(json), "application/json", "gzip"));
+        mServer.createContext("/file", new FixedHandler(file, "application/octet-stream", null));
+        mServer.createContext("/echo", new FixedHandler("{}".getBytes(Payloads.UTF_8), "application/json", null));
+        mServer.start();
+    }
+
+    /**
+     * @param path request path
+     *
+     * @return url of the path
+     */
+    String url(String path) {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private static final class FixedHandler implements HttpHandler {
+        private final byte[] mBody;
+        private final String mContentType;
+        private final String mContentEncoding;
+
+        FixedHandler(byte[] body, String contentType, String contentEncoding) {
+            mBody = body;
+            mContentType = contentType;
+            mContentEncoding = contentEncoding;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // request body has to be consumed, so the connection can be reused
+            InputStream requestBody = exchange.getRequestBody();
+            byte[] buffer = new byte[8192];
+            while (requestBody.read(buffer) != -1) {
+                // discard
+            }
+            requestBody.close();
+
+            exchange.getResponseHeaders().set("Content-Type", mContentType);
+            if (mContentEncoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", mContentEncoding);
+            }
+            exchange.sendResponseHeaders(200, mBody.length);
+            OutputStream responseBody = exchange.getResponseBody();
+            responseBody.write(mBody);
+            responseBody.close();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+
+/**
+ * Listener which ignores all callbacks
+ * Benchmarks call doInBackground directly, so listeners are never called anyway
+ *
+ * @author dusan.bartos
+ */
+final class NoOpListener<T> implements BaseRequestListener<T> {
+
+    @Override
+    public void onError(RequestError error) {
+    }
+
+    @Override
+    public void onSuccess(T response) {
+    }
+
+    @Override
+    public void onCancelled() {
+    }
+
+    @Override
+    public void onProgress(Integer progress) {
+    }
+}
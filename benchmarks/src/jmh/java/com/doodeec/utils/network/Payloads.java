@@ -0,0 +1,119 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.json.JsonModel;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Representative JSON payloads used by benchmarks
+ * Payloads are generated with fixed seed, so every run measures the same data
+ *
+ * @author dusan.bartos
+ */
+final class Payloads {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Payloads() {
+    }
+
+    /**
+     * Creates list response with the given number of users
+     *
+     * @param count number of users
+     *
+     * @return JSON bytes
+     */
+    static byte[] users(int count) {
+        Random random = new Random(42);
+        UserList list = new UserList();
+        list.total = count;
+        list.users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.id = 100000 + i;
+            user.name = "User " + i;
+            user.email = "user" + i + "@example.com";
+            user.active = random.nextBoolean();
+            user.score = random.nextDouble() * 100;
+            user.tags = Arrays.asList("tag" + random.nextInt(20), "tag" + random.nextInt(20));
+            user.address = new Address();
+            user.address.street = random.nextInt(200) + " Main Street";
+            user.address.city = "City " + random.nextInt(50);
+            user.address.zip = String.valueOf(10000 + random.nextInt(90000));
+            list.users.add(user);
+        }
+        return new Gson().toJson(list).getBytes(UTF_8);
+    }
+
+    /**
+     * Creates binary payload
+     *
+     * @param size size in bytes
+     *
+     * @return random bytes
+     */
+    static byte[] binary(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    static byte[] gzip(byte[] data) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4);
+            GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+            gzip.write(data);
+            gzip.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] deflate(byte[] data) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4);
+            DeflaterOutputStream deflate = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION));
+            deflate.write(data);
+            deflate.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @JsonModel
+    static class UserList {
+        int total;
+        List<User> users;
+    }
+
+    @JsonModel
+    static class User {
+        long id;
+        String name;
+        String email;
+        boolean active;
+        double score;
+        List<String> tags;
+        Address address;
+    }
+
+    @JsonModel
+    static class Address {
+        String street;
+        String city;
+        String zip;
+    }
+}
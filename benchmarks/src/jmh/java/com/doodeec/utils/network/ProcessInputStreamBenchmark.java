@@ -0,0 +1,54 @@
+package com.doodeec.utils.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ServerRequest#processInputStream(String, java.io.InputStream)} followed by
+ * {@link ServerRequest#instantiateStream(String)} for buffered and streaming parser with
+ * different read buffer sizes
+ *
+ * @author dusan.bartos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessInputStreamBenchmark {
+
+    @Param({"512", "2048", "8192", "65536"})
+    public int bufferSize;
+
+    @Param({"10", "1000"})
+    public int users;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private byte[] mPayload;
+    private NoOpListener<Payloads.UserList> mListener;
+
+    @Setup
+    public void setUp() {
+        mPayload = Payloads.users(users);
+        mListener = new NoOpListener<>();
+        ServerRequest.setBufferSize(bufferSize);
+    }
+
+    @Benchmark
+    public Payloads.UserList processInputStream() throws IOException {
+        ServerRequest<Payloads.UserList> request = new ServerRequest<>(RequestType.GET, mListener, Payloads.UserList.class);
+        request.setStreamingParser(streaming);
+        String response = request.processInputStream("application/json", new ByteArrayInputStream(mPayload));
+        return request.instantiateStream(response);
+    }
+}
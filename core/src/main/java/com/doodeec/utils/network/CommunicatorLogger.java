@@ -0,0 +1,41 @@
+package com.doodeec.utils.network;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Debug log output of the requests
+ * Default logger writes to {@link java.util.logging}, Android layer replaces it with logcat output
+ *
+ * @author dusan.bartos
+ * @see ServerCall#setLogger(CommunicatorLogger)
+ */
+@SuppressWarnings("unused")
+public interface CommunicatorLogger {
+
+    void debug(String tag, String message);
+
+    void info(String tag, String message);
+
+    void warn(String tag, String message, Throwable throwable);
+
+    /**
+     * Logger writing to {@link java.util.logging}
+     */
+    CommunicatorLogger JAVA = new CommunicatorLogger() {
+        @Override
+        public void debug(String tag, String message) {
+            Logger.getLogger(tag).log(Level.FINE, message);
+        }
+
+        @Override
+        public void info(String tag, String message) {
+            Logger.getLogger(tag).log(Level.INFO, message);
+        }
+
+        @Override
+        public void warn(String tag, String message, Throwable throwable) {
+            Logger.getLogger(tag).log(Level.WARNING, message, throwable);
+        }
+    };
+}
@@ -1,7 +1,7 @@
 package com.doodeec.utils.network;
 
 /**
- * Response from {@link BaseServerRequest} class
+ * Response from {@link ServerCall} class
  *
  * @author Dusan Bartos
  */
@@ -10,10 +10,12 @@ public class CommunicatorResponse<ReturnType> {
     private boolean mCancelled = false;
     private boolean mIntercepted = false;
     private boolean mHasError = false;
+    private boolean mFromCache = false;
     private int mStatusCode;
     private ReturnType mResponseData;
     private String mUrl;
     private RequestError mError;
+    private RequestTimings mTimings;
 
     protected CommunicatorResponse() {
 
@@ -37,6 +39,14 @@ public class CommunicatorResponse<ReturnType> {
         mStatusCode = statusCode;
     }
 
+    protected void setFromCache(boolean fromCache) {
+        mFromCache = fromCache;
+    }
+
+    protected void setTimings(RequestTimings timings) {
+        mTimings = timings;
+    }
+
     public boolean isIntercepted() {
         return mIntercepted;
     }
@@ -45,6 +55,13 @@ public class CommunicatorResponse<ReturnType> {
         return mHasError;
     }
 
+    /**
+     * @return true if response was served from the disk cache
+     */
+    public boolean isFromCache() {
+        return mFromCache;
+    }
+
     public int getStatusCode() {
         return mStatusCode;
     }
@@ -61,6 +78,13 @@ public class CommunicatorResponse<ReturnType> {
         return mError;
     }
 
+    /**
+     * @return duration of request phases, null when request was not executed
+     */
+    public RequestTimings getTimings() {
+        return mTimings;
+    }
+
     public boolean isCancelled() {
         return mCancelled;
     }
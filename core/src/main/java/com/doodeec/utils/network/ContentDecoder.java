@@ -0,0 +1,70 @@
+package com.doodeec.utils.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decoder of response body with content encoding (Content-Encoding header)
+ * Encodings of registered decoders are advertised in Accept-Encoding header of every request,
+ * additional encodings (i.e. brotli, zstd) can be plugged in via
+ * {@link ServerCall#addContentDecoder(ContentDecoder)}
+ *
+ * @author dusan.bartos
+ */
+@SuppressWarnings("unused")
+public interface ContentDecoder {
+
+    /**
+     * Size of the buffer between compressed stream and inflater
+     * Default 512 bytes of {@link GZIPInputStream} means one native call per 512 compressed bytes
+     */
+    int BUFFER_SIZE = 8192;
+
+    /**
+     * @return content coding token, i.e. "gzip"
+     */
+    String getEncoding();
+
+    /**
+     * Wraps response stream into decoding stream
+     *
+     * @param inputStream encoded response stream
+     *
+     * @return decoded stream
+     *
+     * @throws IOException when stream cannot be decoded
+     */
+    InputStream decode(InputStream inputStream) throws IOException;
+
+    /**
+     * GZIP decoder
+     */
+    ContentDecoder GZIP = new ContentDecoder() {
+        @Override
+        public String getEncoding() {
+            return "gzip";
+        }
+
+        @Override
+        public InputStream decode(InputStream inputStream) throws IOException {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * Deflate decoder
+     * Accepts both zlib wrapped (RFC 1950) and raw deflate stream, which is sent by some servers
+     */
+    ContentDecoder DEFLATE = new ContentDecoder() {
+        @Override
+        public String getEncoding() {
+            return "deflate";
+        }
+
+        @Override
+        public InputStream decode(InputStream inputStream) throws IOException {
+            return DeflateInputStream.create(inputStream);
+        }
+    };
+}
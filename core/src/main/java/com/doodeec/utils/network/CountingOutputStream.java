@@ -0,0 +1,39 @@
+package com.doodeec.utils.network;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream, which counts bytes written to the underlying stream
+ *
+ * @author dusan.bartos
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    private long mCount = 0;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+        out.write(oneByte);
+        mCount++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        // FilterOutputStream writes arrays byte by byte
+        out.write(buffer, offset, count);
+        mCount += count;
+    }
+
+    /**
+     * @return number of written bytes
+     */
+    long getCount() {
+        return mCount;
+    }
+}
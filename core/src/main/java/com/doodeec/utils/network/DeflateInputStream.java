@@ -0,0 +1,55 @@
+package com.doodeec.utils.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Inflating stream of "deflate" content encoding
+ * Format (zlib wrapped or raw deflate) is detected from the first two bytes
+ *
+ * @author dusan.bartos
+ * @see ContentDecoder#DEFLATE
+ */
+class DeflateInputStream extends InflaterInputStream {
+
+    private boolean mClosed = false;
+
+    private DeflateInputStream(InputStream in, boolean nowrap) {
+        super(in, new Inflater(nowrap), ContentDecoder.BUFFER_SIZE);
+    }
+
+    static DeflateInputStream create(InputStream inputStream) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(inputStream, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+        while (read < header.length) {
+            int count = in.read(header, read, header.length - read);
+            if (count == -1) break;
+            read += count;
+        }
+        if (read > 0) {
+            in.unread(header, 0, read);
+        }
+        return new DeflateInputStream(in, read == 2 && !isZlibHeader(header[0] & 0xff, header[1] & 0xff));
+    }
+
+    /**
+     * Checks zlib header, compression method 8 (deflate) and header checksum
+     */
+    static boolean isZlibHeader(int cmf, int flg) {
+        return (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mClosed) {
+            mClosed = true;
+            // inflater passed to the constructor is not released by the super class
+            inf.end();
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,77 @@
+package com.doodeec.utils.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single HTTP request/response exchange created by {@link Transport}
+ * Methods are called in the order of the exchange - connect, write request body, read status
+ * and headers, read response body
+ * Connection can be reused once the response body is fully read and closed,
+ * {@link #disconnect()} closes the connection
+ *
+ * @author dusan.bartos
+ */
+public interface Exchange {
+
+    /**
+     * Opens connection to the server
+     *
+     * @throws IOException when connection cannot be established
+     */
+    void connect() throws IOException;
+
+    /**
+     * @return stream for writing request body, closed once the body is written
+     *
+     * @throws IOException when stream cannot be opened
+     */
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Waits for the response status
+     *
+     * @return response status code
+     *
+     * @throws IOException when response cannot be read
+     */
+    int getResponseCode() throws IOException;
+
+    /**
+     * @return response headers
+     */
+    Map<String, List<String>> getHeaderFields();
+
+    /**
+     * @param name header name, case-insensitive
+     *
+     * @return header value, or null
+     */
+    String getHeaderField(String name);
+
+    /**
+     * @return response body of successful response
+     *
+     * @throws IOException when body cannot be read
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * @return response body of error response, or null
+     */
+    InputStream getErrorStream();
+
+    /**
+     * Closes the connection, connection is not reused
+     */
+    void disconnect();
+
+    /**
+     * Aborts the exchange from another thread
+     * Must not block, calls waiting for the network should fail as soon as the transport allows
+     */
+    void cancel();
+}
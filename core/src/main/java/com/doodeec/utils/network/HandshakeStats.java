@@ -0,0 +1,51 @@
+package com.doodeec.utils.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of TLS handshakes performed by HTTPS requests
+ * Resumed handshake reuses session from the client session cache and is much cheaper than full
+ * handshake, ratio of these counters shows how effective the session cache is
+ *
+ * @author dusan.bartos
+ * @see ServerCall#configureSessionCache(int, int)
+ */
+@SuppressWarnings("unused")
+public final class HandshakeStats {
+
+    private static final AtomicLong sFullHandshakes = new AtomicLong();
+    private static final AtomicLong sResumedHandshakes = new AtomicLong();
+
+    private HandshakeStats() {
+    }
+
+    static void recordHandshake(boolean resumed) {
+        if (resumed) {
+            sResumedHandshakes.incrementAndGet();
+        } else {
+            sFullHandshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of handshakes which created a new session
+     */
+    public static long getFullHandshakeCount() {
+        return sFullHandshakes.get();
+    }
+
+    /**
+     * @return number of handshakes which resumed cached session
+     */
+    public static long getResumedHandshakeCount() {
+        return sResumedHandshakes.get();
+    }
+
+    /**
+     * Resets counters
+     */
+    public static void reset() {
+        sFullHandshakes.set(0);
+        sResumedHandshakes.set(0);
+    }
+}
@@ -0,0 +1,281 @@
+package com.doodeec.utils.network;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Incremental HTTP/1.1 response parser used by {@link NioTransport}
+ * Bytes are fed as they arrive from the socket, response body is buffered up to the size limit
+ * Supports fixed length, chunked and close-delimited bodies, informational responses are skipped
+ *
+ * @author dusan.bartos
+ */
+class HttpResponseParser {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final int STATE_STATUS_LINE = 0;
+    private static final int STATE_HEADERS = 1;
+    private static final int STATE_BODY_FIXED = 2;
+    private static final int STATE_CHUNK_SIZE = 3;
+    private static final int STATE_CHUNK_DATA = 4;
+    private static final int STATE_CHUNK_END = 5;
+    private static final int STATE_TRAILERS = 6;
+    private static final int STATE_BODY_EOF = 7;
+    private static final int STATE_DONE = 8;
+
+    private final ByteArrayOutputStream mLine = new ByteArrayOutputStream(128);
+    private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+    private final long mMaxBodySize;
+    private Map<String, List<String>> mHeaders = newHeaders();
+    private int mState = STATE_STATUS_LINE;
+    private String mVersion;
+    private int mStatusCode;
+    private long mRemaining;
+    private boolean mKeepAlive;
+
+    /**
+     * @param maxBodySize maximum size of buffered response body in bytes
+     */
+    HttpResponseParser(long maxBodySize) {
+        mMaxBodySize = maxBodySize;
+    }
+
+    /**
+     * Consumes received bytes
+     *
+     * @param buffer received bytes, buffer position is moved past consumed bytes
+     *
+     * @return true when response is complete
+     *
+     * @throws ProtocolException when response is malformed or its body exceeds the size limit
+     */
+    boolean feed(ByteBuffer buffer) throws ProtocolException {
+        while (buffer.hasRemaining() && mState != STATE_DONE) {
+            switch (mState) {
+                case STATE_BODY_FIXED:
+                case STATE_CHUNK_DATA:
+                    int count = (int) Math.min(mRemaining, buffer.remaining());
+                    checkBodySize(count);
+                    mBody.write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+                    buffer.position(buffer.position() + count);
+                    mRemaining -= count;
+                    if (mRemaining == 0) {
+                        mState = mState == STATE_BODY_FIXED ? STATE_DONE : STATE_CHUNK_END;
+                    }
+                    break;
+                case STATE_BODY_EOF:
+                    checkBodySize(buffer.remaining());
+                    mBody.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    buffer.position(buffer.limit());
+                    break;
+                default:
+                    String line = readLine(buffer);
+                    if (line != null) {
+                        onLine(line);
+                    }
+                    break;
+            }
+        }
+        if (mState == STATE_DONE && buffer.hasRemaining()) {
+            // bytes after the response would break the next exchange
+            mKeepAlive = false;
+        }
+        return mState == STATE_DONE;
+    }
+
+    /**
+     * Signals end of the stream
+     *
+     * @return true when response is complete, false when the stream ended prematurely
+     */
+    boolean endOfStream() {
+        if (mState == STATE_BODY_EOF) {
+            mState = STATE_DONE;
+        }
+        mKeepAlive = false;
+        return mState == STATE_DONE;
+    }
+
+    int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * @return response headers, names are case-insensitive
+     */
+    Map<String, List<String>> getHeaders() {
+        return mHeaders;
+    }
+
+    byte[] getBody() {
+        return mBody.toByteArray();
+    }
+
+    /**
+     * @return true when connection can be reused for another exchange
+     */
+    boolean isKeepAlive() {
+        return mKeepAlive;
+    }
+
+    private void checkBodySize(long count) throws ProtocolException {
+        if (mBody.size() + count > mMaxBodySize) {
+            throw new ProtocolException("Response body exceeds " + mMaxBodySize + " bytes");
+        }
+    }
+
+    private String readLine(ByteBuffer buffer) throws ProtocolException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                byte[] bytes = mLine.toByteArray();
+                mLine.reset();
+                int length = bytes.length;
+                if (length > 0 && bytes[length - 1] == '\r') {
+                    length--;
+                }
+                return new String(bytes, 0, length, NioTransport.HEADER_CHARSET);
+            }
+            if (mLine.size() >= MAX_LINE_LENGTH) {
+                throw new ProtocolException("Response line too long");
+            }
+            mLine.write(b);
+        }
+        return null;
+    }
+
+    private void onLine(String line) throws ProtocolException {
+        switch (mState) {
+            case STATE_STATUS_LINE:
+                parseStatusLine(line);
+                mState = STATE_HEADERS;
+                break;
+            case STATE_HEADERS:
+                if (line.length() == 0) {
+                    onHeadersComplete();
+                } else {
+                    addHeader(line);
+                }
+                break;
+            case STATE_CHUNK_SIZE:
+                int extension = line.indexOf(';');
+                String size = (extension >= 0 ? line.substring(0, extension) : line).trim();
+                try {
+                    mRemaining = Long.parseLong(size, 16);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Invalid chunk size: " + line);
+                }
+                if (mRemaining < 0) {
+                    throw new ProtocolException("Invalid chunk size: " + line);
+                }
+                mState = mRemaining == 0 ? STATE_TRAILERS : STATE_CHUNK_DATA;
+                break;
+            case STATE_CHUNK_END:
+                if (line.length() != 0) {
+                    throw new ProtocolException("Missing chunk terminator");
+                }
+                mState = STATE_CHUNK_SIZE;
+                break;
+            case STATE_TRAILERS:
+                // trailers are not exposed
+                if (line.length() == 0) {
+                    mState = STATE_DONE;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected line in state " + mState);
+        }
+    }
+
+    private void parseStatusLine(String line) throws ProtocolException {
+        // HTTP/1.1 200 OK
+        if (!line.startsWith("HTTP/1.") || line.length() < 12 || line.charAt(8) != ' ') {
+            throw new ProtocolException("Unexpected status line: " + line);
+        }
+        try {
+            mStatusCode = Integer.parseInt(line.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Unexpected status line: " + line);
+        }
+        mVersion = line.substring(0, 8);
+    }
+
+    private void addHeader(String line) throws ProtocolException {
+        int colon = line.indexOf(':');
+        if (colon <= 0) {
+            throw new ProtocolException("Unexpected header: " + line);
+        }
+        String name = line.substring(0, colon).trim();
+        String value = line.substring(colon + 1).trim();
+        List<String> values = mHeaders.get(name);
+        if (values == null) {
+            values = new ArrayList<>(1);
+            mHeaders.put(name, values);
+        }
+        values.add(value);
+    }
+
+    private void onHeadersComplete() throws ProtocolException {
+        if (mStatusCode >= 100 && mStatusCode < 200) {
+            // informational response precedes the final one
+            mHeaders = newHeaders();
+            mVersion = null;
+            mState = STATE_STATUS_LINE;
+            return;
+        }
+
+        String connection = lastHeader("Connection");
+        if ("HTTP/1.0".equals(mVersion)) {
+            mKeepAlive = connection != null && connection.equalsIgnoreCase("keep-alive");
+        } else {
+            mKeepAlive = connection == null || !connection.equalsIgnoreCase("close");
+        }
+
+        if (mStatusCode == 204 || mStatusCode == 304) {
+            mState = STATE_DONE;
+            return;
+        }
+
+        String transferEncoding = lastHeader("Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.US).contains("chunked")) {
+            mState = STATE_CHUNK_SIZE;
+            return;
+        }
+
+        String contentLength = lastHeader("Content-Length");
+        if (contentLength != null) {
+            try {
+                mRemaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid Content-Length: " + contentLength);
+            }
+            if (mRemaining < 0) {
+                throw new ProtocolException("Invalid Content-Length: " + contentLength);
+            }
+            // oversized body is refused before any of it is buffered
+            checkBodySize(mRemaining);
+            mState = mRemaining == 0 ? STATE_DONE : STATE_BODY_FIXED;
+            return;
+        }
+
+        // body is delimited by closing the connection
+        mKeepAlive = false;
+        mState = STATE_BODY_EOF;
+    }
+
+    private String lastHeader(String name) {
+        List<String> values = mHeaders.get(name);
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    private static Map<String, List<String>> newHeaders() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+}
@@ -0,0 +1,121 @@
+package com.doodeec.utils.network;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Call with JSON response deserialized by GSON
+ * Platform independent counterpart of {@code ServerRequest}
+ *
+ * @author dusan.bartos
+ * @see JsonDecoder
+ */
+@SuppressWarnings("unused")
+public class JsonCall<LT> extends ServerCall<LT, String> {
+
+    // response headers
+    private static final String REQ_CONTENT_TYPE_KEY = "Content-Type";
+    private static final String REQ_CONTENT_TYPE_VALUE = "application/json";
+
+    /**
+     * When true, response is deserialized directly from the input stream
+     *
+     * @see #setStreamingParser(boolean)
+     */
+    private boolean mStreamingParser = false;
+
+    /**
+     * Response object deserialized in streaming mode
+     */
+    private LT mStreamedResponse;
+
+    /**
+     * Type of the response
+     * Used in GSON parser
+     */
+    private final Type mGsonType;
+
+    /**
+     * Constructs JsonCall
+     *
+     * @param type type of request {@link RequestType}
+     * @param cls  class of response object
+     */
+    public JsonCall(RequestType type, Class<LT> cls) {
+        super(type);
+        mGsonType = cls;
+    }
+
+    /**
+     * Constructs JsonCall with generic response type
+     * i.e. {@code new JsonCall<>(RequestType.GET, new TypeToken<List<Item>>(){})}
+     *
+     * @param type      type of request {@link RequestType}
+     * @param typeToken type of response object
+     */
+    public JsonCall(RequestType type, TypeToken<LT> typeToken) {
+        super(type);
+        mGsonType = typeToken.getType();
+    }
+
+    /**
+     * Constructs JsonCall with payload data
+     *
+     * @param type type of request {@link RequestType}
+     * @param data payload data
+     * @param cls  class of response object
+     */
+    public JsonCall(RequestType type, String data, Class<LT> cls) {
+        super(type, data);
+        mGsonType = cls;
+    }
+
+    /**
+     * Constructs JsonCall with payload data and generic response type
+     *
+     * @param type      type of request {@link RequestType}
+     * @param data      payload data
+     * @param typeToken type of response object
+     */
+    public JsonCall(RequestType type, String data, TypeToken<LT> typeToken) {
+        super(type, data);
+        mGsonType = typeToken.getType();
+    }
+
+    /**
+     * Enables streaming parser for this call
+     * Response is deserialized by GSON type adapter while it is being downloaded, without building
+     * intermediate String
+     *
+     * @param enabled true to parse response directly from the input stream
+     */
+    public void setStreamingParser(boolean enabled) {
+        mStreamingParser = enabled;
+    }
+
+    @Override
+    protected void initHeaders() {
+        mRequestHeaders.put(REQ_CONTENT_TYPE_KEY, REQ_CONTENT_TYPE_VALUE);
+    }
+
+    @Override
+    protected String processInputStream(String contentType, InputStream inputStream) throws IOException {
+        if (mStreamingParser) {
+            mStreamedResponse = JsonDecoder.<LT>parseStream(inputStream, mGsonType);
+            return null;
+        }
+        return JsonDecoder.readString(inputStream);
+    }
+
+    @Override
+    protected LT instantiateStream(String s) throws JsonSyntaxException {
+        if (mStreamingParser) {
+            return mStreamedResponse;
+        }
+        return JsonDecoder.<LT>fromJson(s, mGsonType);
+    }
+}
@@ -0,0 +1,277 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.json.GeneratedAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decoding of JSON responses shared by all JSON requests
+ * Holds global GSON converter, response charset and buffer size
+ *
+ * @author dusan.bartos
+ * @see JsonCall
+ */
+@SuppressWarnings("unused")
+public final class JsonDecoder {
+
+    /**
+     * response charset
+     *
+     * @see #setResponseCharset(String)
+     */
+    private static Charset sCharset = Charset.forName("UTF-8");
+
+    /**
+     * GSON converter
+     * uses default converter with {@link GeneratedAdapterFactory} by default, can be changed via
+     * {@link #setGsonConverter(Gson)}
+     */
+    private static volatile Gson sGsonConverter = new GsonBuilder()
+            .registerTypeAdapterFactory(new GeneratedAdapterFactory())
+            .create();
+
+    /**
+     * Type adapters resolved by current GSON converter, by response type
+     * Replaced together with the converter
+     *
+     * @see #getAdapter(Type)
+     */
+    private static volatile ConcurrentHashMap<Type, TypeAdapter<?>> sAdapters = new ConcurrentHashMap<>();
+
+    /**
+     * Buffer size used for reading input stream from response
+     *
+     * @see #setBufferSize(int)
+     */
+    private static int sCharBufferSize = 2048;
+
+    private JsonDecoder() {
+    }
+
+    /**
+     * Sets custom GSON converter
+     * Converter should register {@link GeneratedAdapterFactory}, otherwise adapters generated for
+     * {@code JsonModel} classes are not used
+     *
+     * @param gsonConverter custom converter
+     */
+    public static void setGsonConverter(Gson gsonConverter) {
+        if (gsonConverter == null) return;
+        sGsonConverter = gsonConverter;
+        // adapters of previous converter are dropped, converter has to be set first
+        sAdapters = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return GSON converter used for deserializing responses
+     */
+    public static Gson getGsonConverter() {
+        return sGsonConverter;
+    }
+
+    /**
+     * Returns type adapter of current GSON converter
+     * Adapter is resolved only once for each type, subsequent calls skip GSON reflective lookup
+     *
+     * @param type response type, i.e. class or {@link TypeToken#getType()}
+     *
+     * @return type adapter
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TypeAdapter<T> getAdapter(Type type) {
+        // cache is read before the converter, so adapter of new converter is never cached for
+        // the previous one
+        ConcurrentHashMap<Type, TypeAdapter<?>> adapters = sAdapters;
+        TypeAdapter<?> adapter = adapters.get(type);
+        if (adapter == null) {
+            adapter = sGsonConverter.getAdapter(TypeToken.get(type));
+            TypeAdapter<?> previous = adapters.putIfAbsent(type, adapter);
+            if (previous != null) {
+                adapter = previous;
+            }
+        }
+        return (TypeAdapter<T>) adapter;
+    }
+
+    /**
+     * Resolves type adapters of given response types, so the first response of each type is not
+     * delayed by GSON reflection
+     * Should be called on background thread, i.e. via {@link ServerCall#warmup(Type...)}
+     *
+     * @param types response types
+     */
+    public static void prewarm(Type... types) {
+        for (Type type : types) {
+            getAdapter(type);
+        }
+    }
+
+    /**
+     * Globally sets response charset
+     *
+     * @param canonicalName charset name
+     *
+     * @throws IllegalCharsetNameException
+     * @throws UnsupportedCharsetException
+     */
+    public static void setResponseCharset(String canonicalName) throws IllegalCharsetNameException,
+            UnsupportedCharsetException {
+        sCharset = Charset.forName(canonicalName);
+    }
+
+    /**
+     * @return charset used for reading responses
+     */
+    public static Charset getResponseCharset() {
+        return sCharset;
+    }
+
+    /**
+     * Sets buffer size
+     *
+     * @param size size of the buffer
+     */
+    public static void setBufferSize(int size) {
+        sCharBufferSize = size;
+    }
+
+    /**
+     * Reads whole response into the String
+     *
+     * @param inputStream response stream
+     *
+     * @return response body
+     *
+     * @throws IOException when stream cannot be read
+     */
+    public static String readString(InputStream inputStream) throws IOException {
+        int bufferSize = sCharBufferSize;
+        InputStreamReader streamReader = new InputStreamReader(inputStream, sCharset.name());
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[bufferSize];
+        int charsRead;
+        while ((charsRead = streamReader.read(buf, 0, bufferSize)) > 0) {
+            sb.append(buf, 0, charsRead);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Deserializes JSON string
+     *
+     * @param json JSON string
+     * @param cls  class of the response
+     *
+     * @return response object
+     *
+     * @throws JsonSyntaxException when response is not valid JSON
+     */
+    public static <T> T fromJson(String json, Class<T> cls) throws JsonSyntaxException {
+        return fromJson(json, (Type) cls);
+    }
+
+    /**
+     * Deserializes JSON string
+     *
+     * @param json JSON string
+     * @param type type of the response, i.e. {@code new TypeToken<List<Item>>(){}.getType()}
+     *
+     * @return response object, null when JSON string is empty
+     *
+     * @throws JsonSyntaxException when response is not valid JSON
+     */
+    public static <T> T fromJson(String json, Type type) throws JsonSyntaxException {
+        if (json == null) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(new StringReader(json));
+        T result;
+        try {
+            result = read(reader, type);
+            // same as Gson#fromJson(String, Type), trailing data is not allowed
+            if (result != null && reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonIOException("JSON document was not fully consumed.");
+            }
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Deserializes response directly from the input stream
+     *
+     * @param inputStream response stream
+     * @param cls         class of the response
+     *
+     * @return response object, null when response body is empty
+     *
+     * @throws JsonSyntaxException when response is not valid JSON
+     * @throws IOException         when stream cannot be read, i.e. read timeout or truncated body
+     */
+    public static <T> T parseStream(InputStream inputStream, Class<T> cls) throws IOException {
+        return parseStream(inputStream, (Type) cls);
+    }
+
+    /**
+     * Deserializes response directly from the input stream
+     *
+     * @param inputStream response stream
+     * @param type        type of the response
+     *
+     * @return response object, null when response body is empty
+     *
+     * @throws JsonSyntaxException when response is not valid JSON
+     * @throws IOException         when stream cannot be read, i.e. read timeout or truncated body
+     */
+    public static <T> T parseStream(InputStream inputStream, Type type) throws IOException {
+        Reader streamReader = new InputStreamReader(inputStream, sCharset);
+        try {
+            return read(new JsonReader(streamReader), type);
+        } catch (MalformedJsonException e) {
+            // reported by the reader as IOException, but it is not a transport failure
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads single JSON value by cached type adapter
+     *
+     * @return response object, null when there is no content
+     */
+    private static <T> T read(JsonReader reader, Type type) throws IOException {
+        // same leniency as Gson#fromJson(String, Class)
+        reader.setLenient(true);
+        try {
+            try {
+                reader.peek();
+            } catch (EOFException e) {
+                // status code 200 without response body
+                return null;
+            }
+            TypeAdapter<T> adapter = getAdapter(type);
+            return adapter.read(reader);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+}
@@ -0,0 +1,1021 @@
+package com.doodeec.utils.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking HTTP/1.1 transport
+ * Single selector thread drives all exchanges over per-host keep-alive connection pool, so a handful
+ * of calling threads can run thousands of concurrent requests
+ * Request and response bodies are buffered in memory and redirects are not followed, so the transport
+ * suits small responses (API calls), larger bodies are refused, see {@link #setMaxResponseBodySize(long)}
+ * Blocking {@link Exchange} still parks the calling thread until the response is buffered, only
+ * {@link #execute(TransportRequest, byte[], Callback)} frees the caller
+ * HTTPS requests are executed by the fallback transport
+ *
+ * @author dusan.bartos
+ * @see ServerCall#setDefaultTransport(Transport)
+ */
+@SuppressWarnings("unused")
+public class NioTransport implements Transport {
+
+    static final Charset HEADER_CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * Interval of timeout checks in milliseconds
+     */
+    private static final long SWEEP_INTERVAL = 100;
+
+    /**
+     * Interval of keep-alive checks in milliseconds, when there are only idle connections
+     */
+    private static final long IDLE_SWEEP_INTERVAL = 1000;
+
+    /**
+     * Callback of asynchronous exchange
+     * Methods are called on the selector thread, so they must not block
+     */
+    public interface Callback {
+
+        /**
+         * @param statusCode response status code
+         * @param headers    response headers, names are case-insensitive
+         * @param body       response body, empty when response has no body
+         */
+        void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body);
+
+        /**
+         * @param e failure, {@link InterruptedIOException} when exchange was cancelled
+         */
+        void onFailure(IOException e);
+    }
+
+    private final Transport mFallback;
+    private volatile int mMaxConnectionsPerHost = 8;
+    private volatile long mKeepAliveDuration = 5 * 60 * 1000;
+    private volatile long mMaxResponseBodySize = 4 * 1024 * 1024;
+
+    private final Object mLock = new Object();
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    private Selector mSelector;
+    private boolean mShutdown = false;
+
+    // accessed by the selector thread only
+    private final Map<String, HostPool> mPools = new HashMap<>();
+    private final Set<PendingExchange> mActive = new HashSet<>();
+    private final Set<Connection> mPreconnecting = new HashSet<>();
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocate(16 * 1024);
+    private long mNextSweep = 0;
+
+    /**
+     * Creates transport with {@link UrlConnectionTransport} as HTTPS fallback
+     */
+    public NioTransport() {
+        this(new UrlConnectionTransport());
+    }
+
+    /**
+     * Creates transport
+     *
+     * @param fallback transport for requests other than plain HTTP
+     */
+    public NioTransport(Transport fallback) {
+        if (fallback == null) {
+            throw new NullPointerException("fallback == null");
+        }
+        mFallback = fallback;
+    }
+
+    /**
+     * Sets maximum number of open connections to single host
+     * Requests above the limit wait for a free connection
+     * Default value is 8
+     *
+     * @param maxConnections maximum number of connections
+     */
+    public void setMaxConnectionsPerHost(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections < 1");
+        }
+        mMaxConnectionsPerHost = maxConnections;
+    }
+
+    /**
+     * Sets how long idle connection stays in the keep-alive pool
+     * Default value is 5 minutes
+     *
+     * @param keepAliveDurationMillis keep-alive duration in milliseconds
+     */
+    public void setKeepAliveDuration(long keepAliveDurationMillis) {
+        if (keepAliveDurationMillis < 0) {
+            throw new IllegalArgumentException("keepAliveDurationMillis < 0");
+        }
+        mKeepAliveDuration = keepAliveDurationMillis;
+    }
+
+    /**
+     * Sets maximum size of response body, which is buffered in memory
+     * Exchange with larger body fails with {@link ProtocolException} and its connection is closed,
+     * large downloads should use the fallback transport, which streams the body
+     * Default value is 4 MB
+     *
+     * @param maxBodySize maximum body size in bytes
+     */
+    public void setMaxResponseBodySize(long maxBodySize) {
+        if (maxBodySize < 0) {
+            throw new IllegalArgumentException("maxBodySize < 0");
+        }
+        mMaxResponseBodySize = maxBodySize;
+    }
+
+    /**
+     * Stops the selector thread, closes all connections and fails all running exchanges
+     * Transport cannot be used after shutdown
+     */
+    public void shutdown() {
+        synchronized (mLock) {
+            if (mShutdown) return;
+            mShutdown = true;
+            if (mSelector != null) {
+                mSelector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public Exchange newExchange(TransportRequest request) throws IOException {
+        if (!isSupported(request.getUrl())) {
+            return mFallback.newExchange(request);
+        }
+        return new NioExchange(request);
+    }
+
+    /**
+     * Executes exchange asynchronously
+     * Host name is resolved on the calling thread
+     *
+     * @param request  request line, headers and timeouts
+     * @param body     request body, or null
+     * @param callback callback called on the selector thread
+     *
+     * @return handle of the exchange
+     *
+     * @throws IOException when exchange cannot be started
+     */
+    public PendingExchange execute(TransportRequest request, byte[] body, Callback callback) throws IOException {
+        URL url = request.getUrl();
+        if (!isSupported(url)) {
+            throw new ProtocolException("Unsupported protocol: " + url.getProtocol());
+        }
+        InetSocketAddress address = resolve(url);
+
+        final PendingExchange exchange = new PendingExchange(request, encode(request, body), address, callback);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                enqueue(exchange);
+            }
+        });
+        return exchange;
+    }
+
+    /**
+     * Opens connection into the keep-alive pool of the host, unless the pool already has
+     * idle connection or it is full
+     * Host name is resolved on the calling thread, which is blocked until connection is established
+     */
+    @Override
+    public void preconnect(TransportRequest request) throws IOException {
+        URL url = request.getUrl();
+        if (!isSupported(url)) {
+            mFallback.preconnect(request);
+            return;
+        }
+        final InetSocketAddress address = resolve(url);
+        final int connectTimeout = request.getConnectTimeout();
+        final Preconnect preconnect = new Preconnect();
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                openIdleConnection(address, connectTimeout, preconnect);
+            }
+        });
+        try {
+            preconnect.mLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        }
+        if (preconnect.mFailure != null) {
+            throw preconnect.mFailure;
+        }
+    }
+
+    private static boolean isSupported(URL url) {
+        return "http".equalsIgnoreCase(url.getProtocol());
+    }
+
+    private static InetSocketAddress resolve(URL url) throws UnknownHostException {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(url.getHost());
+        }
+        return address;
+    }
+
+    private static String hostKey(InetSocketAddress address) {
+        return address.getHostName() + ":" + address.getPort();
+    }
+
+    /**
+     * Serializes request line, headers and body
+     */
+    static byte[] encode(TransportRequest request, byte[] body) {
+        URL url = request.getUrl();
+        String target = url.getFile();
+        if (target.length() == 0) {
+            target = "/";
+        }
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getType().getValue()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            head.append(':').append(url.getPort());
+        }
+        head.append("\r\n");
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            String name = header.getKey();
+            if (name.equalsIgnoreCase("Host") || name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Transfer-Encoding")) {
+                // framing headers are set by the transport
+                continue;
+            }
+            String value = header.getValue() != null ? header.getValue() : "";
+            checkHeader(name, value);
+            head.append(name).append(": ").append(value).append("\r\n");
+        }
+        RequestType type = request.getType();
+        if (body != null || request.hasBody() || type.equals(RequestType.POST) || type.equals(RequestType.PUT)) {
+            head.append("Content-Length: ").append(body != null ? body.length : 0).append("\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(HEADER_CHARSET);
+        if (body == null || body.length == 0) {
+            return headBytes;
+        }
+        byte[] bytes = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, bytes, 0, headBytes.length);
+        System.arraycopy(body, 0, bytes, headBytes.length, body.length);
+        return bytes;
+    }
+
+    private static void checkHeader(String name, String value) {
+        if (name.length() == 0 || name.indexOf(':') >= 0 || name.indexOf('\r') >= 0 || name.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Invalid header name: " + name);
+        }
+        if (value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Invalid value of header " + name);
+        }
+    }
+
+    private void submit(Runnable task) throws IOException {
+        Selector selector;
+        synchronized (mLock) {
+            if (mShutdown) {
+                throw new IOException("Transport is shut down");
+            }
+            if (mSelector == null) {
+                mSelector = Selector.open();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        loop();
+                    }
+                }, "NioTransport");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            selector = mSelector;
+            mTasks.add(task);
+        }
+        selector.wakeup();
+    }
+
+    private boolean isShutdown() {
+        synchronized (mLock) {
+            return mShutdown;
+        }
+    }
+
+    private void loop() {
+        Selector selector;
+        synchronized (mLock) {
+            selector = mSelector;
+        }
+        try {
+            while (!isShutdown()) {
+                long timeout = 0;
+                if (!mActive.isEmpty()) {
+                    timeout = SWEEP_INTERVAL;
+                } else if (!mPools.isEmpty()) {
+                    timeout = IDLE_SWEEP_INTERVAL;
+                }
+                selector.select(timeout);
+
+                Runnable task;
+                while ((task = mTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                long now = now();
+                if (now >= mNextSweep) {
+                    sweep(now);
+                    mNextSweep = now + SWEEP_INTERVAL;
+                }
+            }
+        } catch (IOException e) {
+            if (ServerCall.isDebugEnabled()) {
+                e.printStackTrace();
+            }
+        } finally {
+            synchronized (mLock) {
+                mShutdown = true;
+            }
+            close(selector);
+        }
+    }
+
+    /**
+     * Fails all exchanges and closes all connections after the selector loop ends
+     */
+    private void close(Selector selector) {
+        // tasks submitted before shutdown still have to reach their callbacks
+        Runnable task;
+        while ((task = mTasks.poll()) != null) {
+            task.run();
+        }
+        for (PendingExchange exchange : new ArrayList<>(mActive)) {
+            if (exchange.mConnection != null) {
+                closeConnection(exchange.mConnection);
+            }
+            fail(exchange, new IOException("Transport is shut down"));
+        }
+        for (Connection connection : new ArrayList<>(mPreconnecting)) {
+            onConnectionFailure(connection, new IOException("Transport is shut down"));
+        }
+        for (HostPool pool : mPools.values()) {
+            for (Connection connection : new ArrayList<>(pool.mIdle)) {
+                closeConnection(connection);
+            }
+        }
+        mPools.clear();
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void enqueue(PendingExchange exchange) {
+        if (exchange.isDone()) {
+            // cancelled before it was started
+            return;
+        }
+        if (isShutdown()) {
+            fail(exchange, new IOException("Transport is shut down"));
+            return;
+        }
+        HostPool pool = getPool(exchange.mHostKey);
+        mActive.add(exchange);
+        // exchange waiting for a free connection is limited by connect timeout
+        exchange.mDeadline = deadline(now(), exchange.mRequest.getConnectTimeout());
+        pool.mPending.add(exchange);
+        dispatch(pool);
+    }
+
+    private HostPool getPool(String hostKey) {
+        HostPool pool = mPools.get(hostKey);
+        if (pool == null) {
+            pool = new HostPool(hostKey);
+            mPools.put(hostKey, pool);
+        }
+        return pool;
+    }
+
+    private void openIdleConnection(InetSocketAddress address, int connectTimeout, Preconnect preconnect) {
+        if (isShutdown()) {
+            preconnect.finish(new IOException("Transport is shut down"));
+            return;
+        }
+        HostPool pool = getPool(hostKey(address));
+        if (!pool.mIdle.isEmpty() || pool.mOpen >= mMaxConnectionsPerHost) {
+            preconnect.finish(null);
+            return;
+        }
+        Connection connection;
+        try {
+            connection = openConnection(pool, address);
+        } catch (IOException e) {
+            preconnect.finish(e);
+            return;
+        }
+        connection.mPreconnect = preconnect;
+        if (connection.mConnected) {
+            onPreconnected(connection);
+        } else {
+            connection.mConnectDeadline = deadline(now(), connectTimeout);
+            mPreconnecting.add(connection);
+        }
+    }
+
+    private void onPreconnected(Connection connection) {
+        mPreconnecting.remove(connection);
+        Preconnect preconnect = connection.mPreconnect;
+        connection.mPreconnect = null;
+        connection.mIdleSince = now();
+        connection.mKey.interestOps(SelectionKey.OP_READ);
+        connection.mPool.mIdle.addFirst(connection);
+        preconnect.finish(null);
+        dispatch(connection.mPool);
+    }
+
+    /**
+     * Assigns pending exchanges of the host to idle or new connections
+     */
+    private void dispatch(HostPool pool) {
+        while (!pool.mPending.isEmpty()) {
+            PendingExchange exchange = pool.mPending.peek();
+            Connection connection = exchange.mFreshConnection ? null : pool.mIdle.pollFirst();
+            if (connection == null) {
+                if (pool.mOpen >= mMaxConnectionsPerHost && !pool.mIdle.isEmpty()) {
+                    // oldest idle connection makes room for the fresh one
+                    closeConnection(pool.mIdle.peekLast());
+                }
+                if (pool.mOpen >= mMaxConnectionsPerHost) {
+                    return;
+                }
+            }
+            pool.mPending.poll();
+
+            if (connection == null) {
+                try {
+                    connection = openConnection(pool, exchange.mAddress);
+                } catch (IOException e) {
+                    fail(exchange, e);
+                    continue;
+                }
+            }
+            start(connection, exchange);
+        }
+    }
+
+    private Connection openConnection(HostPool pool, InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(pool, channel);
+            connection.mConnected = channel.connect(address);
+            connection.mKey = channel.register(mSelector,
+                    connection.mConnected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, connection);
+            pool.mOpen++;
+            return connection;
+        } catch (IOException e) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            throw e;
+        }
+    }
+
+    private void start(Connection connection, PendingExchange exchange) {
+        connection.mExchange = exchange;
+        exchange.mConnection = connection;
+        exchange.mReused = connection.mUsed;
+        exchange.mReceived = false;
+        exchange.mAttempts++;
+        exchange.mBuffer.rewind();
+        exchange.mParser = new HttpResponseParser(mMaxResponseBodySize);
+        connection.mUsed = true;
+
+        long now = now();
+        if (connection.mConnected) {
+            exchange.mDeadline = deadline(now, exchange.mRequest.getReadTimeout());
+            connection.mKey.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            exchange.mDeadline = deadline(now, exchange.mRequest.getConnectTimeout());
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            if (key.isConnectable()) {
+                onConnectable(connection);
+            } else if (key.isWritable()) {
+                onWritable(connection);
+            } else if (key.isReadable()) {
+                onReadable(connection);
+            }
+        } catch (IOException e) {
+            onConnectionFailure(connection, e);
+        }
+    }
+
+    private void onConnectable(Connection connection) throws IOException {
+        try {
+            if (!connection.mChannel.finishConnect()) {
+                return;
+            }
+        } catch (ConnectException e) {
+            throw e;
+        } catch (IOException e) {
+            ConnectException connectException = new ConnectException(e.getMessage());
+            connectException.initCause(e);
+            throw connectException;
+        }
+        connection.mConnected = true;
+        if (connection.mPreconnect != null) {
+            onPreconnected(connection);
+            return;
+        }
+        PendingExchange exchange = connection.mExchange;
+        if (exchange != null) {
+            exchange.mDeadline = deadline(now(), exchange.mRequest.getReadTimeout());
+        }
+        connection.mKey.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void onWritable(Connection connection) throws IOException {
+        PendingExchange exchange = connection.mExchange;
+        if (exchange == null) {
+            connection.mKey.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+        connection.mChannel.write(exchange.mBuffer);
+        exchange.mDeadline = deadline(now(), exchange.mRequest.getReadTimeout());
+        if (!exchange.mBuffer.hasRemaining()) {
+            connection.mKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void onReadable(Connection connection) throws IOException {
+        mReadBuffer.clear();
+        int read = connection.mChannel.read(mReadBuffer);
+        PendingExchange exchange = connection.mExchange;
+        if (exchange == null) {
+            // idle connection was closed by the server or received unexpected bytes
+            closeConnection(connection);
+            return;
+        }
+        if (read < 0) {
+            if (!exchange.mParser.endOfStream()) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            complete(connection, exchange);
+            return;
+        }
+        if (read == 0) {
+            return;
+        }
+        exchange.mReceived = true;
+        exchange.mDeadline = deadline(now(), exchange.mRequest.getReadTimeout());
+        mReadBuffer.flip();
+        if (exchange.mParser.feed(mReadBuffer)) {
+            complete(connection, exchange);
+        }
+    }
+
+    private void complete(Connection connection, PendingExchange exchange) {
+        connection.mExchange = null;
+        exchange.mConnection = null;
+        mActive.remove(exchange);
+
+        HttpResponseParser parser = exchange.mParser;
+        if (parser.isKeepAlive() && mKeepAliveDuration > 0) {
+            connection.mIdleSince = now();
+            connection.mKey.interestOps(SelectionKey.OP_READ);
+            connection.mPool.mIdle.addFirst(connection);
+        } else {
+            closeConnection(connection);
+        }
+
+        exchange.deliverResponse(parser.getStatusCode(), parser.getHeaders(), parser.getBody());
+        dispatch(connection.mPool);
+    }
+
+    private void onConnectionFailure(Connection connection, IOException e) {
+        PendingExchange exchange = connection.mExchange;
+        closeConnection(connection);
+        if (connection.mPreconnect != null) {
+            connection.mPreconnect.finish(e);
+            connection.mPreconnect = null;
+        }
+        if (exchange != null) {
+            exchange.mConnection = null;
+            if (exchange.mReused && !exchange.mReceived && exchange.mAttempts < 2
+                    && (exchange.mRequest.getType().isIdempotent() || exchange.mBuffer.position() == 0)) {
+                // pooled connection was closed by the server, request is sent again over a new one
+                // non-idempotent request could be already processed, it is sent again only when
+                // none of its bytes were written
+                exchange.mFreshConnection = true;
+                exchange.mDeadline = deadline(now(), exchange.mRequest.getConnectTimeout());
+                connection.mPool.mPending.addFirst(exchange);
+            } else {
+                fail(exchange, e);
+            }
+        }
+        dispatch(connection.mPool);
+    }
+
+    private void fail(PendingExchange exchange, IOException e) {
+        mActive.remove(exchange);
+        exchange.mConnection = null;
+        exchange.deliverFailure(e);
+    }
+
+    private void cancel(PendingExchange exchange) {
+        if (exchange.isDone()) {
+            return;
+        }
+        HostPool pool = mPools.get(exchange.mHostKey);
+        Connection connection = exchange.mConnection;
+        if (connection != null) {
+            connection.mExchange = null;
+            closeConnection(connection);
+        } else if (pool != null) {
+            pool.mPending.remove(exchange);
+        }
+        fail(exchange, new InterruptedIOException("Canceled"));
+        if (pool != null) {
+            dispatch(pool);
+        }
+    }
+
+    private void closeConnection(Connection connection) {
+        if (connection.mClosed) {
+            return;
+        }
+        connection.mClosed = true;
+        if (connection.mKey != null) {
+            connection.mKey.cancel();
+        }
+        try {
+            connection.mChannel.close();
+        } catch (IOException ignored) {
+        }
+        HostPool pool = connection.mPool;
+        pool.mOpen--;
+        pool.mIdle.remove(connection);
+        mPreconnecting.remove(connection);
+    }
+
+    /**
+     * Fails timed out exchanges and closes expired idle connections
+     */
+    private void sweep(long now) {
+        if (!mActive.isEmpty()) {
+            for (PendingExchange exchange : new ArrayList<>(mActive)) {
+                if (now < exchange.mDeadline) {
+                    continue;
+                }
+                Connection connection = exchange.mConnection;
+                if (connection == null) {
+                    // no connection became free within connect timeout
+                    HostPool pool = mPools.get(exchange.mHostKey);
+                    if (pool != null) {
+                        pool.mPending.remove(exchange);
+                    }
+                    fail(exchange, new SocketTimeoutException("connect timed out"));
+                    continue;
+                }
+                connection.mExchange = null;
+                closeConnection(connection);
+                fail(exchange, new SocketTimeoutException(connection.mConnected ?
+                        "Read timed out" : "connect timed out"));
+                dispatch(connection.mPool);
+            }
+        }
+
+        for (Connection connection : new ArrayList<>(mPreconnecting)) {
+            if (now >= connection.mConnectDeadline) {
+                onConnectionFailure(connection, new SocketTimeoutException("connect timed out"));
+            }
+        }
+
+        long keepAlive = mKeepAliveDuration;
+        Iterator<HostPool> pools = mPools.values().iterator();
+        while (pools.hasNext()) {
+            HostPool pool = pools.next();
+            for (Connection connection : new ArrayList<>(pool.mIdle)) {
+                if (now - connection.mIdleSince >= keepAlive) {
+                    closeConnection(connection);
+                }
+            }
+            if (pool.mOpen == 0 && pool.mPending.isEmpty()) {
+                pools.remove();
+            }
+        }
+    }
+
+    private static long deadline(long now, int timeout) {
+        return timeout > 0 ? now + timeout : Long.MAX_VALUE;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Handle of asynchronous exchange
+     */
+    public final class PendingExchange {
+
+        private final TransportRequest mRequest;
+        private final ByteBuffer mBuffer;
+        private final InetSocketAddress mAddress;
+        private final String mHostKey;
+        private final Callback mCallback;
+        private final AtomicBoolean mDone = new AtomicBoolean(false);
+
+        // accessed by the selector thread only
+        private Connection mConnection;
+        private HttpResponseParser mParser;
+        private long mDeadline;
+        private int mAttempts = 0;
+        private boolean mReused;
+        private boolean mReceived;
+        private boolean mFreshConnection = false;
+
+        private PendingExchange(TransportRequest request, byte[] bytes, InetSocketAddress address,
+                                Callback callback) {
+            mRequest = request;
+            mBuffer = ByteBuffer.wrap(bytes);
+            mAddress = address;
+            mHostKey = hostKey(address);
+            mCallback = callback;
+        }
+
+        /**
+         * Cancels the exchange, callback receives {@link InterruptedIOException}
+         * Connection of the cancelled exchange is closed
+         */
+        public void cancel() {
+            if (isDone()) return;
+            try {
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        NioTransport.this.cancel(PendingExchange.this);
+                    }
+                });
+            } catch (IOException ignored) {
+                // exchange was already failed by the shutdown
+            }
+        }
+
+        /**
+         * @return true when response or failure was delivered
+         */
+        public boolean isDone() {
+            return mDone.get();
+        }
+
+        private void deliverResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+            if (!mDone.compareAndSet(false, true)) return;
+            try {
+                mCallback.onResponse(statusCode, headers, body);
+            } catch (RuntimeException e) {
+                // failing callback must not stop the selector thread
+                ServerCall.getLogger().warn("NioTransport", "Callback failed", e);
+            }
+        }
+
+        private void deliverFailure(IOException failure) {
+            if (!mDone.compareAndSet(false, true)) return;
+            try {
+                mCallback.onFailure(failure);
+            } catch (RuntimeException e) {
+                // failing callback must not stop the selector thread
+                ServerCall.getLogger().warn("NioTransport", "Callback failed", e);
+            }
+        }
+    }
+
+    /**
+     * Connections to single host
+     */
+    private static class HostPool {
+        private final String mHostKey;
+        private final LinkedList<PendingExchange> mPending = new LinkedList<>();
+        // most recently used connection first
+        private final ArrayDeque<Connection> mIdle = new ArrayDeque<>();
+        private int mOpen = 0;
+
+        HostPool(String hostKey) {
+            mHostKey = hostKey;
+        }
+    }
+
+    private static class Connection {
+        private final HostPool mPool;
+        private final SocketChannel mChannel;
+        private SelectionKey mKey;
+        private PendingExchange mExchange;
+        private Preconnect mPreconnect;
+        private long mConnectDeadline;
+        private long mIdleSince;
+        private boolean mConnected;
+        private boolean mUsed = false;
+        private boolean mClosed = false;
+
+        Connection(HostPool pool, SocketChannel channel) {
+            mPool = pool;
+            mChannel = channel;
+        }
+    }
+
+    /**
+     * Result of {@link #preconnect(TransportRequest)}
+     */
+    private static class Preconnect {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private volatile IOException mFailure;
+
+        void finish(IOException failure) {
+            mFailure = failure;
+            mLatch.countDown();
+        }
+    }
+
+    /**
+     * Blocking exchange over the selector thread
+     * Request is sent when the response status is requested, calling thread waits until the response
+     * body is fully buffered, so the body size is limited by {@link #setMaxResponseBodySize(long)}
+     */
+    private class NioExchange implements Exchange, Callback {
+
+        private final TransportRequest mRequest;
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private ByteArrayOutputStream mBody;
+        private volatile PendingExchange mPending;
+        private volatile boolean mCancelled = false;
+        private int mStatusCode;
+        private Map<String, List<String>> mHeaders;
+        private byte[] mResponseBody;
+        private IOException mFailure;
+
+        NioExchange(TransportRequest request) {
+            mRequest = request;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            // connection is picked from the pool when the request is sent
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            if (!mRequest.hasBody()) {
+                throw new ProtocolException("Request has no body");
+            }
+            if (mPending != null) {
+                throw new ProtocolException("Request was already sent");
+            }
+            if (mBody == null) {
+                long length = mRequest.getContentLength();
+                mBody = new ByteArrayOutputStream(length > 0 && length < Integer.MAX_VALUE ? (int) length : 1024);
+            }
+            return mBody;
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            if (mPending == null) {
+                mPending = execute(mRequest, mBody != null ? mBody.toByteArray() : null, this);
+                mBody = null;
+                if (mCancelled) {
+                    // cancelled before the exchange was published
+                    mPending.cancel();
+                }
+            }
+            try {
+                mLatch.await();
+            } catch (InterruptedException e) {
+                mPending.cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for response");
+            }
+            if (mFailure != null) {
+                throw mFailure;
+            }
+            return mStatusCode;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            if (mHeaders == null) {
+                return Collections.emptyMap();
+            }
+            return Collections.unmodifiableMap(mHeaders);
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            if (mHeaders == null) {
+                return null;
+            }
+            List<String> values = mHeaders.get(name);
+            return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            int status = getResponseCode();
+            if (status >= 400) {
+                throw new IOException("Server returned HTTP response code: " + status + " for URL: "
+                        + mRequest.getUrl());
+            }
+            return new ByteArrayInputStream(mResponseBody);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            if (mHeaders == null || mStatusCode < 400 || mResponseBody.length == 0) {
+                return null;
+            }
+            return new ByteArrayInputStream(mResponseBody);
+        }
+
+        @Override
+        public void disconnect() {
+            PendingExchange pending = mPending;
+            if (pending != null) {
+                pending.cancel();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            disconnect();
+        }
+
+        @Override
+        public void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+            mStatusCode = statusCode;
+            mHeaders = headers;
+            mResponseBody = body;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onFailure(IOException e) {
+            mFailure = e;
+            mLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.doodeec.utils.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Input stream, which reports number of read bytes to the request
+ * Read of cancelled request fails, so read and decode loops stop at the next buffer
+ *
+ * @author dusan.bartos
+ */
+class ProgressInputStream extends FilterInputStream {
+
+    private final ServerCall<?, ?> mRequest;
+    private long mBytes = 0;
+
+    ProgressInputStream(InputStream in, ServerCall<?, ?> request) {
+        super(in);
+        mRequest = request;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkCancelled();
+        int value = super.read();
+        if (value != -1) {
+            mBytes++;
+            mRequest.onTransferProgress(false, mBytes);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        checkCancelled();
+        int read = super.read(buffer, offset, count);
+        if (read > 0) {
+            mBytes += read;
+            mRequest.onTransferProgress(false, mBytes);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        checkCancelled();
+        long skipped = super.skip(byteCount);
+        if (skipped > 0) {
+            mBytes += skipped;
+            mRequest.onTransferProgress(false, mBytes);
+        }
+        return skipped;
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (mRequest.isCallCancelled()) {
+            throw new InterruptedIOException("Request cancelled");
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+package com.doodeec.utils.network;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream, which reports number of written bytes to the request
+ * Write of cancelled request fails, so upload stops at the next buffer
+ *
+ * @author dusan.bartos
+ */
+class ProgressOutputStream extends FilterOutputStream {
+
+    private final ServerCall<?, ?> mRequest;
+    private long mBytes = 0;
+
+    ProgressOutputStream(OutputStream out, ServerCall<?, ?> request) {
+        super(out);
+        mRequest = request;
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+        checkCancelled();
+        out.write(oneByte);
+        mBytes++;
+        mRequest.onTransferProgress(true, mBytes);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        checkCancelled();
+        // FilterOutputStream writes arrays byte by byte
+        out.write(buffer, offset, count);
+        mBytes += count;
+        mRequest.onTransferProgress(true, mBytes);
+    }
+
+    /**
+     * @return number of written bytes
+     */
+    long getCount() {
+        return mBytes;
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (mRequest.isCallCancelled()) {
+            throw new InterruptedIOException("Request cancelled");
+        }
+    }
+}
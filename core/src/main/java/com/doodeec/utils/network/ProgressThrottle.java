@@ -0,0 +1,61 @@
+package com.doodeec.utils.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits rate of progress updates of a transfer
+ * Update is allowed when both minimum interval elapsed and transferred percentage changed
+ * at least by the minimum delta, completed transfer is always allowed
+ *
+ * @author dusan.bartos
+ */
+class ProgressThrottle {
+
+    private final long mMinIntervalNanos;
+    private final int mMinPercentDelta;
+
+    private long mLastTime;
+    private int mLastPercent;
+
+    ProgressThrottle(long minIntervalMillis, int minPercentDelta) {
+        mMinIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        mMinPercentDelta = minPercentDelta;
+        reset();
+    }
+
+    /**
+     * Starts new transfer
+     */
+    void reset() {
+        mLastTime = System.nanoTime() - mMinIntervalNanos;
+        mLastPercent = -1;
+    }
+
+    /**
+     * Checks whether progress update can be delivered, update is recorded when allowed
+     *
+     * @param bytes transferred bytes
+     * @param total total bytes, -1 if unknown
+     * @param now   current {@link System#nanoTime()}
+     *
+     * @return true if update should be delivered
+     */
+    boolean allow(long bytes, long total, long now) {
+        int percent = total > 0 ? (int) (Math.min(bytes, total) * 100 / total) : -1;
+        boolean complete = total >= 0 && bytes >= total;
+        if (!complete) {
+            if (now - mLastTime < mMinIntervalNanos) {
+                return false;
+            }
+            if (percent >= 0 && mLastPercent >= 0 && percent - mLastPercent < mMinPercentDelta) {
+                return false;
+            }
+        } else if (percent == mLastPercent) {
+            // completion is delivered only once
+            return false;
+        }
+        mLastTime = now;
+        mLastPercent = percent;
+        return true;
+    }
+}
@@ -0,0 +1,506 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.doodeec.utils.network.listener.BatchListener;
+import com.doodeec.utils.network.metrics.LatencyRegistry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group of requests executed with shared concurrency limit, completion callback and deadline
+ * At most {@link #setMaxConcurrency(int)} requests of the batch run at the same time, requests
+ * expected to take longest (by the latency history from {@link ServerCall#getLatencyRegistry()})
+ * are started first, so the short ones fill the gaps and the whole batch finishes sooner
+ * Requests without history are started first in the order they were added
+ *
+ * @author dusan.bartos
+ * @see BatchListener
+ */
+@SuppressWarnings("unused")
+public class RequestBatch {
+
+    /**
+     * Timer of batch deadlines, created lazily
+     */
+    private static ScheduledExecutorService sDeadlineTimer;
+
+    private static synchronized ScheduledExecutorService getDeadlineTimer() {
+        if (sDeadlineTimer == null) {
+            sDeadlineTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "RequestBatch-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sDeadlineTimer;
+    }
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Executor mExecutor;
+    private Executor mCallbackExecutor = DIRECT_EXECUTOR;
+    private int mMaxConcurrency = 4;
+    private boolean mFailFast = false;
+    private long mDeadlineMillis = 0;
+    private double mLatencyPercentile = 90;
+
+    private final Object mLock = new Object();
+    private final List<Item<?>> mItems = new ArrayList<>();
+    private final ArrayDeque<Item<?>> mQueue = new ArrayDeque<>();
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private BatchListener mListener;
+    private Future<?> mDeadline;
+    private boolean mStarted = false;
+    private int mRunning = 0;
+    private int mRemaining = 0;
+    private volatile boolean mCancelled = false;
+    private volatile boolean mFailed = false;
+    private volatile boolean mDeadlineExceeded = false;
+
+    /**
+     * Creates batch, which runs requests on the given executor
+     * Executor has to provide at least {@link #setMaxConcurrency(int)} threads, otherwise
+     * requests of the batch wait for each other
+     *
+     * @param executor executor used for running requests
+     */
+    public RequestBatch(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor == null");
+        }
+        mExecutor = executor;
+    }
+
+    /**
+     * Sets maximum number of requests of the batch running at the same time
+     * Default value is 4
+     *
+     * @param maxConcurrency concurrency limit, at least 1
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency < 1: " + maxConcurrency);
+        }
+        mMaxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return mMaxConcurrency;
+    }
+
+    /**
+     * Enables fail-fast mode
+     * First failed request cancels all requests of the batch, which are still pending or running
+     *
+     * @param failFast true to cancel the batch on first failure
+     */
+    public void setFailFast(boolean failFast) {
+        mFailFast = failFast;
+    }
+
+    /**
+     * Sets overall deadline of the batch, measured from {@link #start(BatchListener)}
+     * Requests not finished before the deadline are cancelled
+     *
+     * @param deadlineMillis deadline in milliseconds, 0 for no deadline
+     */
+    public void setDeadline(long deadlineMillis) {
+        mDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Sets executor, which runs request listeners and batch listener
+     * Callbacks are called from the executing thread by default
+     *
+     * @param callbackExecutor executor, i.e. main thread executor
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        mCallbackExecutor = callbackExecutor != null ? callbackExecutor : DIRECT_EXECUTOR;
+    }
+
+    /**
+     * Sets percentile of recorded latency used to order the requests
+     * Default value is 90
+     *
+     * @param percentile percentile (0 - 100)
+     */
+    public void setLatencyPercentile(double percentile) {
+        mLatencyPercentile = percentile;
+    }
+
+    /**
+     * Adds request to the batch
+     *
+     * @param call call
+     * @param url  request url
+     *
+     * @return index of the request in the batch
+     */
+    public <T> int add(ServerCall<T, ?> call, String url) {
+        return add(call, url, null);
+    }
+
+    /**
+     * Adds request to the batch
+     * Listener is called before {@link BatchListener#onItemComplete(int, CommunicatorResponse)}
+     *
+     * @param call     call
+     * @param url      request url
+     * @param listener response listener, can be null
+     *
+     * @return index of the request in the batch
+     */
+    public <T> int add(ServerCall<T, ?> call, String url, BaseRequestListener<T> listener) {
+        synchronized (mLock) {
+            if (mStarted) {
+                throw new IllegalStateException("Batch was already started");
+            }
+            mItems.add(new Item<>(mItems.size(), call, url, listener));
+            return mItems.size() - 1;
+        }
+    }
+
+    /**
+     * @return number of requests in the batch
+     */
+    public int size() {
+        synchronized (mLock) {
+            return mItems.size();
+        }
+    }
+
+    /**
+     * Starts the batch
+     *
+     * @param listener batch listener, can be null
+     */
+    public void start(BatchListener listener) {
+        List<Item<?>> order;
+        synchronized (mLock) {
+            if (mStarted) {
+                throw new IllegalStateException("Batch was already started");
+            }
+            mStarted = true;
+            mListener = listener;
+            mRemaining = mItems.size();
+            order = new ArrayList<>(mItems);
+        }
+
+        LatencyRegistry registry = ServerCall.getLatencyRegistry();
+        for (Item<?> item : order) {
+            item.mExpectedLatency = registry != null
+                    ? registry.getExpectedLatency(item.mCall.getType().getValue(), item.mUrl, mLatencyPercentile)
+                    : -1;
+        }
+        // stable sort, requests without history keep the order in which they were added
+        Collections.sort(order, new Comparator<Item<?>>() {
+            @Override
+            public int compare(Item<?> lhs, Item<?> rhs) {
+                long left = lhs.mExpectedLatency < 0 ? Long.MAX_VALUE : lhs.mExpectedLatency;
+                long right = rhs.mExpectedLatency < 0 ? Long.MAX_VALUE : rhs.mExpectedLatency;
+                return left > right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+
+        synchronized (mLock) {
+            mQueue.addAll(order);
+            if (mRemaining > 0 && mDeadlineMillis > 0) {
+                mDeadline = getDeadlineTimer().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDeadline();
+                    }
+                }, mDeadlineMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (order.isEmpty()) {
+            complete();
+        } else {
+            dispatch();
+        }
+    }
+
+    /**
+     * Cancels all requests, which are still pending or running
+     */
+    public void cancel() {
+        mCancelled = true;
+        cancelRemaining();
+    }
+
+    /**
+     * @return true if all requests of the batch are finished
+     */
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return true if any request of the batch failed
+     */
+    public boolean isFailed() {
+        return mFailed;
+    }
+
+    /**
+     * @return true if requests were cancelled because of the deadline
+     */
+    public boolean isDeadlineExceeded() {
+        return mDeadlineExceeded;
+    }
+
+    /**
+     * Waits until all requests of the batch are finished
+     * Must not be called from the thread of the callback executor
+     *
+     * @param timeout maximum time to wait
+     * @param unit    time unit
+     *
+     * @return true if the batch is finished, false if the timeout elapsed
+     *
+     * @throws InterruptedException when the waiting thread is interrupted
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return mDone.await(timeout, unit);
+    }
+
+    /**
+     * Gets response of the request
+     *
+     * @param index index returned by {@link #add(ServerCall, String, BaseRequestListener)}
+     *
+     * @return response, null if request is not finished yet
+     */
+    public CommunicatorResponse<?> getResponse(int index) {
+        synchronized (mLock) {
+            return mItems.get(index).mResponse;
+        }
+    }
+
+    /**
+     * @return responses in the order in which requests were added, null for unfinished requests
+     */
+    public List<CommunicatorResponse<?>> getResponses() {
+        synchronized (mLock) {
+            List<CommunicatorResponse<?>> responses = new ArrayList<>(mItems.size());
+            for (Item<?> item : mItems) {
+                responses.add(item.mResponse);
+            }
+            return responses;
+        }
+    }
+
+    /**
+     * Starts pending requests while the concurrency limit allows it
+     */
+    private void dispatch() {
+        List<Item<?>> ready = new ArrayList<>();
+        synchronized (mLock) {
+            while (mRunning < mMaxConcurrency && !mQueue.isEmpty()) {
+                Item<?> item = mQueue.poll();
+                item.mStarted = true;
+                mRunning++;
+                ready.add(item);
+            }
+        }
+        for (Item<?> item : ready) {
+            try {
+                mExecutor.execute(item.mTask);
+            } catch (RejectedExecutionException e) {
+                // request is finished as failed, otherwise await() would never return
+                item.finishRejected(e);
+            }
+        }
+    }
+
+    private void onDeadline() {
+        synchronized (mLock) {
+            if (mRemaining == 0) {
+                return;
+            }
+            mDeadlineExceeded = true;
+        }
+        if (ServerCall.isDebugEnabled()) {
+            ServerCall.getLogger().info("RequestBatch", "Deadline exceeded. Cancelling remaining requests");
+        }
+        cancelRemaining();
+    }
+
+    private void cancelRemaining() {
+        List<Item<?>> pending;
+        List<Item<?>> running = new ArrayList<>();
+        synchronized (mLock) {
+            pending = new ArrayList<>(mQueue);
+            mQueue.clear();
+            for (Item<?> item : mItems) {
+                if (item.mStarted && item.mResponse == null) {
+                    running.add(item);
+                }
+            }
+        }
+        for (Item<?> item : running) {
+            item.mCall.cancel();
+            item.mTask.cancel(true);
+        }
+        for (Item<?> item : pending) {
+            item.finishCancelled();
+        }
+    }
+
+    /**
+     * Stores the response and delivers it to the listeners
+     */
+    private <T> void finish(final Item<T> item, final CommunicatorResponse<T> response) {
+        final boolean failed = response.hasError() && !response.isCancelled();
+        final BatchListener listener;
+        synchronized (mLock) {
+            if (item.mResponse != null) {
+                return;
+            }
+            item.mResponse = response;
+            if (item.mStarted) {
+                mRunning--;
+            }
+            if (failed) {
+                mFailed = true;
+            }
+            listener = mListener;
+        }
+
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (item.mListener != null) {
+                    item.mCall.deliverResponse(item.mListener, response);
+                }
+                if (listener != null) {
+                    listener.onItemComplete(item.mIndex, response);
+                }
+            }
+        });
+
+        if (failed && mFailFast) {
+            if (ServerCall.isDebugEnabled()) {
+                ServerCall.getLogger().info("RequestBatch", "Request failed, cancelling batch. url=" + item.mUrl);
+            }
+            cancelRemaining();
+        }
+
+        boolean completed;
+        synchronized (mLock) {
+            completed = --mRemaining == 0;
+        }
+        if (completed) {
+            complete();
+        } else {
+            dispatch();
+        }
+    }
+
+    private void complete() {
+        final BatchListener listener;
+        synchronized (mLock) {
+            listener = mListener;
+            if (mDeadline != null) {
+                mDeadline.cancel(false);
+            }
+        }
+        mDone.countDown();
+        if (listener != null) {
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onComplete(RequestBatch.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Request of the batch
+     */
+    private class Item<T> {
+
+        final int mIndex;
+        final ServerCall<T, ?> mCall;
+        final String mUrl;
+        final BaseRequestListener<T> mListener;
+        final FutureTask<CommunicatorResponse<T>> mTask;
+
+        long mExpectedLatency = -1;
+        // guarded by mLock
+        boolean mStarted = false;
+        CommunicatorResponse<T> mResponse;
+
+        Item(int index, ServerCall<T, ?> call, String url, BaseRequestListener<T> listener) {
+            mIndex = index;
+            mCall = call;
+            mUrl = url;
+            mListener = listener;
+            if (listener != null) {
+                // progress is delivered from the executing thread
+                call.attachListener(listener);
+            }
+            mTask = new FutureTask<CommunicatorResponse<T>>(new Callable<CommunicatorResponse<T>>() {
+                @Override
+                public CommunicatorResponse<T> call() {
+                    CommunicatorResponse<T> response = mCall.execute(mUrl);
+                    if (mCall.isCancelled()) {
+                        response.setCancelled(true);
+                    }
+                    finish(Item.this, response);
+                    return response;
+                }
+            }) {
+                @Override
+                protected void done() {
+                    // cancelled while waiting in the executor or while running
+                    if (isCancelled()) {
+                        finishCancelled();
+                    }
+                }
+            };
+        }
+
+        void finishRejected(RejectedExecutionException e) {
+            CommunicatorResponse<T> response = new CommunicatorResponse<>();
+            response.setUrl(mUrl);
+            response.setError(new RequestError("Request rejected by executor: " + e.getMessage(), mUrl));
+            finish(this, response);
+        }
+
+        void finishCancelled() {
+            CommunicatorResponse<T> response = new CommunicatorResponse<>();
+            response.setUrl(mUrl);
+            response.setCancelled(true);
+            finish(this, response);
+        }
+    }
+}
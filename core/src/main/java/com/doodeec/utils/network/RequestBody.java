@@ -0,0 +1,209 @@
+package com.doodeec.utils.network;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Request body (payload) written to the connection output stream
+ * Body with known length is sent in fixed-length streaming mode, body with unknown length
+ * is sent chunked
+ *
+ * @author dusan.bartos
+ * @see ServerCall#setRequestBody(RequestBody)
+ */
+@SuppressWarnings("unused")
+public abstract class RequestBody {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * @return number of bytes written by {@link #writeTo(OutputStream)}, or -1 if unknown
+     */
+    public abstract long contentLength();
+
+    /**
+     * Writes the body to the output stream
+     *
+     * @param outputStream connection output stream
+     *
+     * @throws IOException when body cannot be read or written
+     */
+    public abstract void writeTo(OutputStream outputStream) throws IOException;
+
+    /**
+     * Repeatable body can be written more than once, i.e. when request is retried or cloned
+     *
+     * @return true if body can be written again
+     */
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * Creates body from string encoded in UTF-8
+     *
+     * @param data string data
+     *
+     * @return request body
+     */
+    public static RequestBody create(String data) {
+        try {
+            return create(data.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates body from byte array
+     * Array is not copied, it should not be modified until the request is finished
+     *
+     * @param data bytes
+     *
+     * @return request body
+     */
+    public static RequestBody create(final byte[] data) {
+        if (data == null) {
+            throw new NullPointerException("data == null");
+        }
+        return new RequestBody() {
+            @Override
+            public long contentLength() {
+                return data.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write(data);
+            }
+        };
+    }
+
+    /**
+     * Creates body from remaining bytes of the buffer
+     * Buffer position is not modified
+     *
+     * @param buffer byte buffer
+     *
+     * @return request body
+     */
+    public static RequestBody create(final ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer == null");
+        }
+        return new RequestBody() {
+            @Override
+            public long contentLength() {
+                return buffer.remaining();
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                ByteBuffer source = buffer.duplicate();
+                if (source.hasArray()) {
+                    outputStream.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+                    return;
+                }
+                // direct buffer is copied in chunks
+                byte[] chunk = new byte[Math.min(BUFFER_SIZE, source.remaining())];
+                while (source.hasRemaining()) {
+                    int count = Math.min(chunk.length, source.remaining());
+                    source.get(chunk, 0, count);
+                    outputStream.write(chunk, 0, count);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates body from file content
+     * File is read while the body is written, so it is never loaded into the memory as a whole
+     *
+     * @param file file
+     *
+     * @return request body
+     */
+    public static RequestBody create(final File file) {
+        if (file == null) {
+            throw new NullPointerException("file == null");
+        }
+        return new RequestBody() {
+            @Override
+            public long contentLength() {
+                return file.length();
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                InputStream inputStream = new FileInputStream(file);
+                try {
+                    copy(inputStream, outputStream);
+                } finally {
+                    inputStream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates body from input stream with unknown length, which is sent chunked
+     *
+     * @param inputStream input stream
+     *
+     * @return request body
+     *
+     * @see #create(InputStream, long)
+     */
+    public static RequestBody create(InputStream inputStream) {
+        return create(inputStream, -1);
+    }
+
+    /**
+     * Creates body from input stream
+     * Stream can be written only once and it is closed after it is written
+     *
+     * @param inputStream input stream
+     * @param length      number of bytes in the stream, -1 if unknown
+     *
+     * @return request body
+     */
+    public static RequestBody create(final InputStream inputStream, final long length) {
+        if (inputStream == null) {
+            throw new NullPointerException("inputStream == null");
+        }
+        return new RequestBody() {
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                try {
+                    copy(inputStream, outputStream);
+                } finally {
+                    inputStream.close();
+                }
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return false;
+            }
+        };
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+    }
+}
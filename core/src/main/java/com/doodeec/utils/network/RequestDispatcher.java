@@ -0,0 +1,427 @@
+package com.doodeec.utils.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatcher which decides when queued requests are executed
+ * Requests are kept in a priority queue and are handed to the executor only when global,
+ * per-host and per-tag concurrency limits allow it
+ * Requests with the same priority are executed in FIFO order
+ *
+ * @author dusan.bartos
+ * @see ServerCall#enqueue(Executor, String, com.doodeec.utils.network.listener.BaseRequestListener)
+ * @see ServerCall#setTag(String)
+ * @see ServerCall#setPriority(int)
+ */
+@SuppressWarnings("unused")
+public class RequestDispatcher {
+
+    public static final int PRIORITY_LOW = -10;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 10;
+
+    /**
+     * Maximum number of requests running at the same time
+     */
+    private int mMaxRequests = 64;
+
+    /**
+     * Maximum number of requests running against one host at the same time
+     */
+    private int mMaxRequestsPerHost = 5;
+
+    /**
+     * Maximum number of running requests for the given tag
+     * Tags without the limit are bounded only by global and per-host limits
+     */
+    private final Map<String, Integer> mMaxRequestsPerTag = new HashMap<>();
+
+    private final PriorityQueue<AsyncCall> mReadyCalls = new PriorityQueue<>();
+    private final List<AsyncCall> mRunningCalls = new ArrayList<>();
+    private final Map<String, Integer> mRunningPerHost = new HashMap<>();
+    private final Map<String, Integer> mRunningPerTag = new HashMap<>();
+
+    private Executor mExecutor;
+
+    private long mSequence = 0;
+    private long mDispatchedCount = 0;
+    private long mTotalWaitMillis = 0;
+    private long mMaxWaitMillis = 0;
+
+    /**
+     * Creates dispatcher with its own unbounded thread pool
+     * Concurrency is bounded by the dispatcher limits, not by the pool
+     */
+    public RequestDispatcher() {
+        this(null);
+    }
+
+    /**
+     * Creates dispatcher which runs requests on the given executor
+     *
+     * @param executor executor used for running requests, when null default pool is created
+     */
+    public RequestDispatcher(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Sets executor, which runs the requests
+     * Requests which are already running are not affected
+     *
+     * @param executor executor
+     */
+    public synchronized void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    public synchronized Executor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new DispatcherThreadFactory());
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Sets maximum number of requests executed at the same time
+     * Default value is 64
+     *
+     * @param maxRequests maximum number of requests
+     */
+    public void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+        }
+        synchronized (this) {
+            mMaxRequests = maxRequests;
+        }
+        promoteCalls();
+    }
+
+    public synchronized int getMaxRequests() {
+        return mMaxRequests;
+    }
+
+    /**
+     * Sets maximum number of requests executed against one host at the same time
+     * Default value is 5
+     *
+     * @param maxRequestsPerHost maximum number of requests per host
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("maxRequestsPerHost < 1: " + maxRequestsPerHost);
+        }
+        synchronized (this) {
+            mMaxRequestsPerHost = maxRequestsPerHost;
+        }
+        promoteCalls();
+    }
+
+    public synchronized int getMaxRequestsPerHost() {
+        return mMaxRequestsPerHost;
+    }
+
+    /**
+     * Sets maximum number of requests with the given tag executed at the same time
+     * i.e. "images" limited to 4 and "api" limited to 8
+     *
+     * @param tag         request tag
+     * @param maxRequests maximum number of requests, value lower than 1 removes the limit
+     */
+    public void setMaxRequestsForTag(String tag, int maxRequests) {
+        synchronized (this) {
+            if (maxRequests < 1) {
+                mMaxRequestsPerTag.remove(tag);
+            } else {
+                mMaxRequestsPerTag.put(tag, maxRequests);
+            }
+        }
+        promoteCalls();
+    }
+
+    /**
+     * Creates executor which enqueues submitted task into this dispatcher
+     * Used with {@code AsyncTask#executeOnExecutor}, which submits exactly one task
+     *
+     * @param host     target host of the request
+     * @param tag      request tag, can be null
+     * @param priority request priority, higher priority is executed first
+     *
+     * @return executor
+     */
+    public Executor executorFor(final String host, final String tag, final int priority) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                enqueue(command, host, tag, priority);
+            }
+        };
+    }
+
+    /**
+     * Enqueues task into the dispatcher
+     * Task which implements {@link Future} is cancelled when the executor rejects it
+     *
+     * @param task     task to run
+     * @param host     target host, can be null
+     * @param tag      tag, can be null
+     * @param priority priority, higher priority is executed first
+     */
+    public void enqueue(Runnable task, String host, String tag, int priority) {
+        synchronized (this) {
+            mReadyCalls.add(new AsyncCall(task, host != null ? host : "", tag, priority, mSequence++));
+        }
+        promoteCalls();
+    }
+
+    /**
+     * @return number of requests waiting in the queue
+     */
+    public synchronized int getQueuedCount() {
+        return mReadyCalls.size();
+    }
+
+    /**
+     * @return number of requests being executed
+     */
+    public synchronized int getRunningCount() {
+        return mRunningCalls.size();
+    }
+
+    /**
+     * Gets snapshot of dispatcher statistics
+     *
+     * @return statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(mReadyCalls.size(), mRunningCalls.size(), mDispatchedCount,
+                mDispatchedCount == 0 ? 0 : mTotalWaitMillis / mDispatchedCount, mMaxWaitMillis);
+    }
+
+    /**
+     * Resets collected wait time statistics
+     */
+    public synchronized void resetStats() {
+        mDispatchedCount = 0;
+        mTotalWaitMillis = 0;
+        mMaxWaitMillis = 0;
+    }
+
+    private void promoteCalls() {
+        List<AsyncCall> promoted = new ArrayList<>();
+        synchronized (this) {
+            if (mReadyCalls.isEmpty() || mRunningCalls.size() >= mMaxRequests) return;
+
+            // calls blocked by host or tag limit are skipped, so they don't block other hosts
+            List<AsyncCall> skipped = new ArrayList<>();
+            while (mRunningCalls.size() < mMaxRequests && !mReadyCalls.isEmpty()) {
+                AsyncCall call = mReadyCalls.poll();
+                if (!canRun(call)) {
+                    skipped.add(call);
+                    continue;
+                }
+
+                long wait = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - call.mEnqueuedAt);
+                mDispatchedCount++;
+                mTotalWaitMillis += wait;
+                mMaxWaitMillis = Math.max(mMaxWaitMillis, wait);
+
+                mRunningCalls.add(call);
+                increment(mRunningPerHost, call.mHost);
+                if (call.mTag != null) {
+                    increment(mRunningPerTag, call.mTag);
+                }
+                promoted.add(call);
+            }
+            mReadyCalls.addAll(skipped);
+        }
+
+        // executor is called outside of the lock, direct executors would otherwise deadlock
+        Executor executor = getExecutor();
+        boolean released = false;
+        for (AsyncCall call : promoted) {
+            try {
+                executor.execute(call);
+            } catch (RuntimeException e) {
+                // rejected, release the slot so the queue is not stuck and cancel the task,
+                // so its listener is notified
+                released |= release(call);
+                call.reject();
+            }
+        }
+        if (released) {
+            promoteCalls();
+        }
+    }
+
+    private boolean canRun(AsyncCall call) {
+        Integer runningForHost = mRunningPerHost.get(call.mHost);
+        if (runningForHost != null && runningForHost >= mMaxRequestsPerHost) {
+            return false;
+        }
+        if (call.mTag != null) {
+            Integer tagLimit = mMaxRequestsPerTag.get(call.mTag);
+            Integer runningForTag = mRunningPerTag.get(call.mTag);
+            if (tagLimit != null && runningForTag != null && runningForTag >= tagLimit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void finished(AsyncCall call) {
+        if (release(call)) {
+            promoteCalls();
+        }
+    }
+
+    private synchronized boolean release(AsyncCall call) {
+        if (!mRunningCalls.remove(call)) return false;
+        decrement(mRunningPerHost, call.mHost);
+        if (call.mTag != null) {
+            decrement(mRunningPerTag, call.mTag);
+        }
+        return true;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        if (count == null || count <= 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+    }
+
+    /**
+     * Queued task with its scheduling info
+     */
+    private final class AsyncCall implements Runnable, Comparable<AsyncCall> {
+        private final Runnable mTask;
+        private final String mHost;
+        private final String mTag;
+        private final int mPriority;
+        private final long mSequence;
+        private final long mEnqueuedAt = System.nanoTime();
+
+        AsyncCall(Runnable task, String host, String tag, int priority, long sequence) {
+            mTask = task;
+            mHost = host;
+            mTag = tag;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mTask.run();
+            } finally {
+                finished(this);
+            }
+        }
+
+        void reject() {
+            if (mTask instanceof Future) {
+                ((Future<?>) mTask).cancel(false);
+            }
+        }
+
+        @Override
+        public int compareTo(AsyncCall another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+
+    private static final class DispatcherThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ServerCommunicator Dispatcher #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Snapshot of dispatcher statistics
+     */
+    public static final class Stats {
+        private final int mQueueDepth;
+        private final int mRunning;
+        private final long mDispatched;
+        private final long mAverageWaitMillis;
+        private final long mMaxWaitMillis;
+
+        Stats(int queueDepth, int running, long dispatched, long averageWaitMillis, long maxWaitMillis) {
+            mQueueDepth = queueDepth;
+            mRunning = running;
+            mDispatched = dispatched;
+            mAverageWaitMillis = averageWaitMillis;
+            mMaxWaitMillis = maxWaitMillis;
+        }
+
+        /**
+         * @return number of requests waiting in the queue
+         */
+        public int getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        /**
+         * @return number of running requests
+         */
+        public int getRunning() {
+            return mRunning;
+        }
+
+        /**
+         * @return number of requests handed to the executor since last reset
+         */
+        public long getDispatched() {
+            return mDispatched;
+        }
+
+        /**
+         * @return average time requests spent in the queue, in milliseconds
+         */
+        public long getAverageWaitMillis() {
+            return mAverageWaitMillis;
+        }
+
+        /**
+         * @return longest time a request spent in the queue, in milliseconds
+         */
+        public long getMaxWaitMillis() {
+            return mMaxWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{queued=" + mQueueDepth + ", running=" + mRunning + ", dispatched=" + mDispatched
+                    + ", avgWait=" + mAverageWaitMillis + "ms, maxWait=" + mMaxWaitMillis + "ms}";
+        }
+    }
+}
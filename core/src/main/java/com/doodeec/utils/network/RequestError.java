@@ -16,6 +16,7 @@ public class RequestError {
     private Exception mException;
     private String mErrorMessage;
     private ErrorType mType;
+    private int mStatusCode;
 
     public static final RequestError INTERCEPT = new RequestError("Response Interrupted by Interceptor", null);
 
@@ -43,6 +44,20 @@ public class RequestError {
         }
     }
 
+    /**
+     * Creates Request error from thrown Exception with custom message
+     *
+     * @param e       exception
+     * @param message error message
+     * @param url     request url
+     *
+     * @see #RequestError(Exception, String)
+     */
+    public RequestError(Exception e, String message, String url) {
+        this(e, url);
+        mErrorMessage = message;
+    }
+
     /**
      * Creates Request error of type {@link com.doodeec.utils.network.ErrorType#Custom} with custom message
      *
@@ -57,6 +72,7 @@ public class RequestError {
 
     protected RequestError(int code, String url) {
         mRequestUrl = url;
+        mStatusCode = code;
         mType = ErrorType.forStatusCode(code);
     }
 
@@ -69,6 +85,15 @@ public class RequestError {
         return mType;
     }
 
+    /**
+     * Gets response status code of the error
+     *
+     * @return status code, 0 if error was not caused by error response
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
     /**
      * Gets error message
      *
@@ -0,0 +1,137 @@
+package com.doodeec.utils.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duration of request phases and size of the request body
+ * Phases are measured for the last attempt of the request, total time includes all retries
+ * Phases which did not take place (i.e. TLS handshake of reused connection) are 0
+ *
+ * @author dusan.bartos
+ * @see CommunicatorResponse#getTimings()
+ */
+@SuppressWarnings("unused")
+public class RequestTimings {
+
+    long mConnectNanos;
+    long mHandshakeNanos;
+    long mSendNanos;
+    long mWaitNanos;
+    long mDownloadNanos;
+    long mProcessingNanos;
+    long mTotalNanos;
+    int mAttempts;
+    long mRequestBodyBytes;
+    long mSentBodyBytes;
+    boolean mRequestCompressed;
+
+    RequestTimings() {
+    }
+
+    /**
+     * Clears phases of the previous attempt
+     */
+    void resetPhases() {
+        mConnectNanos = 0;
+        mHandshakeNanos = 0;
+        mSendNanos = 0;
+        mWaitNanos = 0;
+        mDownloadNanos = 0;
+        mProcessingNanos = 0;
+        mRequestBodyBytes = 0;
+        mSentBodyBytes = 0;
+        mRequestCompressed = false;
+    }
+
+    /**
+     * @return DNS lookup and TCP connect time, in milliseconds
+     */
+    public long getConnectMillis() {
+        return toMillis(mConnectNanos);
+    }
+
+    /**
+     * @return TLS handshake time, in milliseconds
+     */
+    public long getHandshakeMillis() {
+        return toMillis(mHandshakeNanos);
+    }
+
+    /**
+     * @return time spent writing request body, in milliseconds
+     */
+    public long getSendMillis() {
+        return toMillis(mSendNanos);
+    }
+
+    /**
+     * @return time from sent request to the response status (time to first byte), in milliseconds
+     */
+    public long getWaitMillis() {
+        return toMillis(mWaitNanos);
+    }
+
+    /**
+     * @return time spent waiting for response body bytes, in milliseconds
+     */
+    public long getDownloadMillis() {
+        return toMillis(mDownloadNanos);
+    }
+
+    /**
+     * @return time spent decoding and parsing response body, excluding download, in milliseconds
+     */
+    public long getProcessingMillis() {
+        return toMillis(mProcessingNanos);
+    }
+
+    /**
+     * @return total request time including retries, in milliseconds
+     */
+    public long getTotalMillis() {
+        return toMillis(mTotalNanos);
+    }
+
+    /**
+     * @return number of executed attempts
+     */
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    /**
+     * @return size of the request body before compression, in bytes
+     */
+    public long getRequestBodyBytes() {
+        return mRequestBodyBytes;
+    }
+
+    /**
+     * @return size of the request body written to the connection (after compression), in bytes
+     */
+    public long getSentBodyBytes() {
+        return mSentBodyBytes;
+    }
+
+    /**
+     * @return true if the request body was sent compressed
+     *
+     * @see ServerCall#setRequestCompression(long)
+     */
+    public boolean isRequestCompressed() {
+        return mRequestCompressed;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTimings{connect=" + getConnectMillis() + "ms, handshake=" + getHandshakeMillis()
+                + "ms, send=" + getSendMillis() + "ms, wait=" + getWaitMillis() + "ms, download="
+                + getDownloadMillis() + "ms, processing=" + getProcessingMillis() + "ms, total="
+                + getTotalMillis() + "ms, attempts=" + mAttempts + ", body=" + mRequestBodyBytes
+                + "B, sent=" + mSentBodyBytes + "B}";
+    }
+}
@@ -20,4 +20,13 @@ public enum RequestType {
     public String getValue() {
         return mValue;
     }
+
+    /**
+     * Idempotent request can be sent repeatedly with the same effect as when it is sent once
+     *
+     * @return true for GET, PUT and DELETE
+     */
+    public boolean isIdempotent() {
+        return this != POST;
+    }
 }
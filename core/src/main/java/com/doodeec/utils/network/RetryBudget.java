@@ -0,0 +1,81 @@
+package com.doodeec.utils.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide limit of retries
+ * Every request deposits a fraction of a retry into the budget and every retry withdraws one,
+ * so during an outage retries cannot multiply the load beyond the given ratio
+ * Budget starts full, which allows short bursts of retries after a quiet period
+ *
+ * @author dusan.bartos
+ * @see ServerCall#setRetryBudget(RetryBudget)
+ */
+@SuppressWarnings("unused")
+public class RetryBudget {
+
+    /**
+     * Budget is kept in thousandths of a retry, so fractional deposits are not lost
+     */
+    private static final long UNIT = 1000;
+
+    private final AtomicLong mBalance;
+    private final long mMaxBalance;
+    private final long mDeposit;
+
+    /**
+     * Creates retry budget
+     *
+     * @param maxRetries maximum number of retries available at once
+     * @param retryRatio number of retries allowed per request, i.e. 0.1 allows one retry for every
+     *                   ten requests
+     */
+    public RetryBudget(int maxRetries, double retryRatio) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries < 0: " + maxRetries);
+        }
+        if (retryRatio < 0) {
+            throw new IllegalArgumentException("retryRatio < 0: " + retryRatio);
+        }
+        mMaxBalance = maxRetries * UNIT;
+        mDeposit = Math.round(retryRatio * UNIT);
+        mBalance = new AtomicLong(mMaxBalance);
+    }
+
+    /**
+     * Records new request, which deposits its share into the budget
+     */
+    public void onRequest() {
+        while (true) {
+            long balance = mBalance.get();
+            long updated = Math.min(mMaxBalance, balance + mDeposit);
+            if (updated == balance || mBalance.compareAndSet(balance, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Withdraws one retry from the budget
+     *
+     * @return true if retry is allowed
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long balance = mBalance.get();
+            if (balance < UNIT) {
+                return false;
+            }
+            if (mBalance.compareAndSet(balance, balance - UNIT)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return number of retries currently available
+     */
+    public int getAvailableRetries() {
+        return (int) (mBalance.get() / UNIT);
+    }
+}
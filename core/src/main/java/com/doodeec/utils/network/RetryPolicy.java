@@ -0,0 +1,200 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.cache.HttpDate;
+
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Decides whether failed request is retried and how long to wait before the retry
+ * Delay grows exponentially with every retry and is randomized (jitter), so clients failed at
+ * the same time do not retry at the same time
+ * Can be subclassed to customize error classification or delay computation
+ *
+ * @author dusan.bartos
+ * @see ServerCall#setRetryPolicy(RetryPolicy)
+ * @see ServerCall#setDefaultRetryPolicy(RetryPolicy)
+ */
+@SuppressWarnings("unused")
+public class RetryPolicy {
+
+    private static final Random sRandom = new Random();
+
+    private int mMaxRetries = 3;
+    private long mInitialDelayMillis = 200;
+    private long mMaxDelayMillis = 5000;
+    private double mMultiplier = 2;
+    private double mJitter = 0.5;
+    private long mMaxElapsedMillis = 30000;
+    private boolean mRetryNonIdempotent = false;
+    private final Set<Integer> mRetryableStatusCodes = new HashSet<>();
+
+    /**
+     * Creates policy with default values
+     * 3 retries, 200ms initial delay doubled with every retry up to 5 seconds, 50% jitter,
+     * 30 seconds maximum elapsed time
+     * Status codes 408, 429, 502, 503 and 504 are retried
+     */
+    public RetryPolicy() {
+        mRetryableStatusCodes.add(HttpURLConnection.HTTP_CLIENT_TIMEOUT);
+        mRetryableStatusCodes.add(429);
+        mRetryableStatusCodes.add(HttpURLConnection.HTTP_BAD_GATEWAY);
+        mRetryableStatusCodes.add(HttpURLConnection.HTTP_UNAVAILABLE);
+        mRetryableStatusCodes.add(HttpURLConnection.HTTP_GATEWAY_TIMEOUT);
+    }
+
+    /**
+     * @param maxRetries maximum number of retries, 0 disables retries
+     */
+    public void setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries < 0: " + maxRetries);
+        }
+        mMaxRetries = maxRetries;
+    }
+
+    /**
+     * Sets exponential backoff parameters
+     *
+     * @param initialDelayMillis delay before the first retry
+     * @param maxDelayMillis     maximum delay between retries
+     * @param multiplier         multiplier applied to the delay after every retry
+     */
+    public void setBackoff(long initialDelayMillis, long maxDelayMillis, double multiplier) {
+        if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis || multiplier < 1) {
+            throw new IllegalArgumentException("Invalid backoff parameters");
+        }
+        mInitialDelayMillis = initialDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mMultiplier = multiplier;
+    }
+
+    /**
+     * @param jitter fraction of the delay, which is randomized (0 - 1)
+     *               i.e. 0.5 produces delay between 50% and 100% of the computed delay
+     */
+    public void setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter out of range: " + jitter);
+        }
+        mJitter = jitter;
+    }
+
+    /**
+     * @param maxElapsedMillis time since the first attempt, after which request is not retried
+     */
+    public void setMaxElapsedTime(long maxElapsedMillis) {
+        mMaxElapsedMillis = maxElapsedMillis;
+    }
+
+    /**
+     * Non-idempotent requests (POST) are by default retried only when connection could not be
+     * established, because server might have already processed the failed request
+     *
+     * @param retry true to retry non-idempotent requests on any retryable error
+     */
+    public void setRetryNonIdempotent(boolean retry) {
+        mRetryNonIdempotent = retry;
+    }
+
+    /**
+     * @param statusCodes response status codes, which are retried
+     */
+    public void setRetryableStatusCodes(int... statusCodes) {
+        mRetryableStatusCodes.clear();
+        for (int statusCode : statusCodes) {
+            mRetryableStatusCodes.add(statusCode);
+        }
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * Computes delay before the next retry
+     *
+     * @param type             request type
+     * @param error            error of the failed attempt
+     * @param retryCount       number of retries already executed
+     * @param elapsedMillis    time since the first attempt
+     * @param retryAfterMillis delay requested by the server via Retry-After header, -1 if not set
+     *
+     * @return delay in milliseconds, -1 if request should not be retried
+     */
+    public long getRetryDelay(RequestType type, RequestError error, int retryCount,
+                              long elapsedMillis, long retryAfterMillis) {
+        if (retryCount >= mMaxRetries || !isRetryable(type, error)) {
+            return -1;
+        }
+        long delay = retryAfterMillis >= 0 ? retryAfterMillis : computeBackoff(retryCount);
+        if (elapsedMillis + delay > mMaxElapsedMillis) {
+            return -1;
+        }
+        return delay;
+    }
+
+    /**
+     * Classifies the error
+     *
+     * @param type  request type
+     * @param error request error
+     *
+     * @return true if request can be retried
+     */
+    protected boolean isRetryable(RequestType type, RequestError error) {
+        if (error == null) {
+            return false;
+        }
+        if (!type.isIdempotent() && !mRetryNonIdempotent) {
+            // request was not sent at all
+            return error.getErrorType() == ErrorType.Connect;
+        }
+        if (error.getStatusCode() > 0) {
+            return mRetryableStatusCodes.contains(error.getStatusCode());
+        }
+        switch (error.getErrorType()) {
+            case Connect:
+            case SocketTimeout:
+            case IO:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Computes exponential backoff delay with jitter
+     *
+     * @param retryCount number of retries already executed
+     *
+     * @return delay in milliseconds
+     */
+    protected long computeBackoff(int retryCount) {
+        double delay = Math.min(mMaxDelayMillis, mInitialDelayMillis * Math.pow(mMultiplier, retryCount));
+        return (long) (delay * (1 - mJitter * sRandom.nextDouble()));
+    }
+
+    /**
+     * Parses Retry-After header value
+     *
+     * @param value header value, delay in seconds or HTTP date
+     * @param now   current time in milliseconds
+     *
+     * @return delay in milliseconds, -1 if value is missing or invalid
+     */
+    public static long parseRetryAfter(String value, long now) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds >= 0 ? seconds * 1000 : -1;
+        } catch (NumberFormatException e) {
+            long date = HttpDate.parse(value);
+            return date < 0 ? -1 : Math.max(0, date - now);
+        }
+    }
+}
@@ -0,0 +1,1896 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.cache.CacheEntry;
+import com.doodeec.utils.network.cache.DiskResponseCache;
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.doodeec.utils.network.listener.ByteProgressListener;
+import com.doodeec.utils.network.metrics.LatencyRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Platform independent request execution
+ * Executes request on the calling thread via {@link Transport}, including response cache,
+ * retries, content decoding, progress and timings
+ * Call does not depend on any threading model, it can be executed directly, submitted to any
+ * {@link Executor} via {@link #enqueue(Executor, String, BaseRequestListener)}, or wrapped
+ * by platform adapter (i.e. {@code BaseServerRequest} on Android)
+ *
+ * @author dusan.bartos
+ */
+@SuppressWarnings("unused")
+public abstract class ServerCall<ReturnType, StreamType> {
+
+    // request progress
+    public static final int PROGRESS_IDLE = 0;
+    public static final int PROGRESS_OPENED = 10;
+    public static final int PROGRESS_CONNECTED = 20;
+    public static final int PROGRESS_RESPONSE_CODE = 40;
+    public static final int PROGRESS_RESPONSE_TYPE = 50;
+    public static final int PROGRESS_CONTENT = 60;
+    public static final int PROGRESS_INPUT_STREAM = 70;
+    public static final int PROGRESS_CONNECTION_CLOSE = 80;
+    public static final int PROGRESS_DISCONNECTING = 90;
+    public static final int PROGRESS_DONE = 100;
+
+    static final int TRANSFER_UPLOAD = 1;
+    static final int TRANSFER_DOWNLOAD = 2;
+
+    protected static boolean sDebugEnabled = false;
+
+    private static CommunicatorLogger sLogger = CommunicatorLogger.JAVA;
+
+    /**
+     * SSL context is created lazily by {@link #getSSLContext()}, so loading the class does not
+     * initialize security providers
+     */
+    private static SSLContext sSSLContext;
+
+    /**
+     * Hostname verifier of https requests, platform default verifier is used when null
+     */
+    protected static HostnameVerifier sHostNameVerifier;
+
+    public static void enableDebug(boolean enable) {
+        sDebugEnabled = enable;
+    }
+
+    public static boolean isDebugEnabled() {
+        return sDebugEnabled;
+    }
+
+    /**
+     * Sets output of debug logs
+     *
+     * @param logger logger
+     */
+    public static void setLogger(CommunicatorLogger logger) {
+        if (logger == null) return;
+        sLogger = logger;
+    }
+
+    public static CommunicatorLogger getLogger() {
+        return sLogger;
+    }
+
+    /**
+     * Provides a way to setup SSL context with custom key store
+     * For more information, see documentation for {@link HttpsURLConnection}
+     *
+     * @return SSL context used for https requests
+     */
+    public static synchronized SSLContext getSSLContext() {
+        if (sSSLContext == null) {
+            try {
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, null, null);
+                sSSLContext = sslContext;
+            } catch (KeyManagementException | NoSuchAlgorithmException e) {
+                if (sDebugEnabled) {
+                    e.printStackTrace();
+                }
+                throw new IllegalStateException("Exception initializing SSL context", e);
+            }
+        }
+        return sSSLContext;
+    }
+
+    /**
+     * Socket factory shared by all https requests, so sessions can be resumed across requests
+     */
+    private static SSLSocketFactory sSocketFactory;
+
+    /**
+     * Replaces SSL context used for https requests
+     *
+     * @param sslContext initialized SSL context
+     */
+    public static synchronized void setSSLContext(SSLContext sslContext) {
+        if (sslContext == null) return;
+        sSSLContext = sslContext;
+        sSocketFactory = null;
+    }
+
+    /**
+     * Drops shared socket factory, so it is created again from the SSL context
+     * Has to be called when SSL context returned by {@link #getSSLContext()} is re-initialized
+     */
+    public static synchronized void resetSocketFactory() {
+        sSocketFactory = null;
+    }
+
+    /**
+     * Gets socket factory shared by all https requests
+     * Factory removes SSLv3 from supported protocols and records handshake statistics
+     *
+     * @return socket factory
+     */
+    protected static synchronized SSLSocketFactory getSocketFactory() {
+        if (sSocketFactory == null) {
+            sSocketFactory = new SessionTrackingSocketFactory(new NoSSLv3SocketFactory(getSSLContext().getSocketFactory()));
+        }
+        return sSocketFactory;
+    }
+
+    /**
+     * Configures client session cache of the SSL context
+     * Cached sessions allow abbreviated handshakes, which save round trips on slow networks
+     *
+     * @param cacheSize      maximum number of cached sessions, 0 for unlimited
+     * @param timeoutSeconds session lifetime in seconds, 0 for unlimited
+     *
+     * @see HandshakeStats
+     */
+    public static void configureSessionCache(int cacheSize, int timeoutSeconds) {
+        SSLSessionContext sessionContext = getSSLContext().getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(cacheSize);
+            sessionContext.setSessionTimeout(timeoutSeconds);
+        }
+    }
+
+    /**
+     * Provides a way to set Hostname verifier for SSL certificates
+     */
+    public static void setHostNameVerifier(HostnameVerifier hostNameVerifier) {
+        sHostNameVerifier = hostNameVerifier;
+    }
+
+    /**
+     * Disk cache for GET responses, disabled when null
+     */
+    private static DiskResponseCache sResponseCache;
+
+    /**
+     * Sets disk cache used for GET responses
+     * Cached responses are served according to Cache-Control/Expires headers, stale responses are
+     * revalidated with If-None-Match/If-Modified-Since
+     *
+     * @param responseCache response cache, null to disable caching
+     */
+    public static void setResponseCache(DiskResponseCache responseCache) {
+        sResponseCache = responseCache;
+    }
+
+    /**
+     * @return disk cache used for GET responses, or null
+     */
+    public static DiskResponseCache getResponseCache() {
+        return sResponseCache;
+    }
+
+    /**
+     * When true, connections are returned to the platform keep-alive pool after the response
+     * body is consumed, instead of being disconnected
+     */
+    private static volatile boolean sConnectionReuse = true;
+
+    /**
+     * Maximum number of unread response bytes, which are drained to keep the connection alive
+     * Connections with larger remaining body are disconnected
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /**
+     * Enables or disables reuse of keep-alive connections
+     * When enabled, response body is fully drained and closed, so the socket can be reused by the
+     * next request to the same host, which saves TCP and TLS setup
+     * Connections are always disconnected when request fails or is cancelled
+     * When disabled, requests are sent with "Connection: close", other users of the platform
+     * pool in the same process are not affected
+     * Enabled by default
+     *
+     * @param enabled false to disconnect after every request
+     */
+    public static void setConnectionReuse(boolean enabled) {
+        sConnectionReuse = enabled;
+    }
+
+    /**
+     * Configures platform keep-alive connection pool
+     * Pool reads the configuration when it is first used, so this method has to be called before
+     * the first request is executed
+     *
+     * @param maxIdleConnections      maximum number of idle connections kept in the pool
+     * @param keepAliveDurationMillis time after which idle connection is closed, in milliseconds
+     */
+    public static void configureConnectionPool(int maxIdleConnections, long keepAliveDurationMillis) {
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("maxIdleConnections < 0: " + maxIdleConnections);
+        }
+        if (keepAliveDurationMillis < 0) {
+            throw new IllegalArgumentException("keepAliveDurationMillis < 0: " + keepAliveDurationMillis);
+        }
+        System.setProperty("http.maxConnections", String.valueOf(maxIdleConnections));
+        System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveDurationMillis));
+    }
+
+    /**
+     * Transport used by requests without their own transport
+     */
+    private static Transport sDefaultTransport = new UrlConnectionTransport();
+
+    /**
+     * Sets transport used by requests without their own transport
+     * Default transport is {@link UrlConnectionTransport}
+     *
+     * @param transport transport
+     *
+     * @see NioTransport
+     */
+    public static void setDefaultTransport(Transport transport) {
+        if (transport == null) return;
+        sDefaultTransport = transport;
+    }
+
+    /**
+     * @return transport used by requests without their own transport
+     */
+    public static Transport getDefaultTransport() {
+        return sDefaultTransport;
+    }
+
+    /**
+     * Background thread of {@link #warmup(Type...)} and {@link #preconnect(String)}, created lazily
+     */
+    private static ExecutorService sWarmupExecutor;
+
+    private static synchronized ExecutorService getWarmupExecutor() {
+        if (sWarmupExecutor == null) {
+            // single thread, which stops when there is nothing to warm up
+            sWarmupExecutor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ServerCall-warmup");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sWarmupExecutor;
+    }
+
+    /**
+     * Initializes SSL context, shared socket factory and GSON converter on a background thread,
+     * so the first request does not pay for their setup
+     * Should be called as early as possible, i.e. during application start
+     *
+     * @param responseTypes response types whose GSON type adapters are resolved in advance
+     *
+     * @return future completed when warmup is done
+     *
+     * @see JsonDecoder#prewarm(Type...)
+     */
+    public static Future<?> warmup(final Type... responseTypes) {
+        return getWarmupExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                // loads trust store and security providers
+                getSocketFactory();
+                HttpsURLConnection.getDefaultHostnameVerifier();
+                JsonDecoder.getAdapter(Object.class);
+                JsonDecoder.prewarm(responseTypes);
+                if (sDebugEnabled) {
+                    sLogger.debug("ServerCall", "Warmup done in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolves host of the url and opens connection to it via default transport on a background
+     * thread, so the first request to the host skips DNS lookup, TCP connect and TLS handshake
+     * Failures are only logged, request to the host fails with its own error
+     *
+     * @param url url of the host, i.e. base url of the API
+     *
+     * @return future completed when connection is opened or preconnect failed
+     *
+     * @see Transport#preconnect(TransportRequest)
+     */
+    public static Future<?> preconnect(final String url) {
+        final Transport transport = sDefaultTransport;
+        return getWarmupExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    URL target = new URL(url);
+                    // resolved address is kept in the JVM/platform DNS cache
+                    InetAddress.getAllByName(target.getHost());
+                    transport.preconnect(new TransportRequest(target, RequestType.GET));
+                    if (sDebugEnabled) {
+                        sLogger.debug("ServerCall", "Preconnected in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms. url=" + url);
+                    }
+                } catch (IOException e) {
+                    if (sDebugEnabled) {
+                        sLogger.warn("ServerCall", "Preconnect failed. url=" + url, e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Retry policy used by requests without their own policy
+     */
+    private static RetryPolicy sDefaultRetryPolicy = new RetryPolicy();
+
+    /**
+     * Process-wide retry budget, unlimited when null
+     */
+    private static RetryBudget sRetryBudget = new RetryBudget(10, 0.1);
+
+    /**
+     * Sets retry policy used by requests without their own policy
+     *
+     * @param retryPolicy retry policy, null to disable retries
+     */
+    public static void setDefaultRetryPolicy(RetryPolicy retryPolicy) {
+        sDefaultRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return retry policy used by requests without their own policy
+     */
+    public static RetryPolicy getDefaultRetryPolicy() {
+        return sDefaultRetryPolicy;
+    }
+
+    /**
+     * Sets process-wide retry budget
+     * Default budget allows burst of 10 retries and one retry per ten requests afterwards
+     *
+     * @param retryBudget retry budget, null for unlimited retries
+     */
+    public static void setRetryBudget(RetryBudget retryBudget) {
+        sRetryBudget = retryBudget;
+    }
+
+    /**
+     * @return process-wide retry budget, or null
+     */
+    public static RetryBudget getRetryBudget() {
+        return sRetryBudget;
+    }
+
+    /**
+     * Registry of per-endpoint latency histograms, disabled when null
+     */
+    private static LatencyRegistry sLatencyRegistry;
+
+    /**
+     * Sets registry, which records latency of every executed request
+     * Responses served from the disk cache and cancelled requests are not recorded
+     *
+     * @param latencyRegistry latency registry, null to disable recording
+     */
+    public static void setLatencyRegistry(LatencyRegistry latencyRegistry) {
+        sLatencyRegistry = latencyRegistry;
+    }
+
+    /**
+     * @return latency registry, or null
+     */
+    public static LatencyRegistry getLatencyRegistry() {
+        return sLatencyRegistry;
+    }
+
+    /**
+     * Decoders of response content encodings, in order of preference
+     */
+    private static final List<ContentDecoder> sContentDecoders = new CopyOnWriteArrayList<>(
+            Arrays.asList(ContentDecoder.GZIP, ContentDecoder.DEFLATE));
+
+    /**
+     * Accept-Encoding header built from registered decoders
+     */
+    private static volatile String sAcceptEncoding = buildAcceptEncoding();
+
+    /**
+     * Registers decoder of content encoding
+     * Decoder replaces registered decoder of the same encoding and is advertised as preferred one
+     * in Accept-Encoding header (i.e. brotli before gzip)
+     *
+     * @param decoder content decoder
+     */
+    public static synchronized void addContentDecoder(ContentDecoder decoder) {
+        removeContentDecoder(decoder.getEncoding());
+        sContentDecoders.add(0, decoder);
+        sAcceptEncoding = buildAcceptEncoding();
+    }
+
+    /**
+     * Unregisters decoder, so the encoding is no longer advertised
+     *
+     * @param encoding content coding token, i.e. "deflate"
+     */
+    public static synchronized void removeContentDecoder(String encoding) {
+        for (ContentDecoder decoder : sContentDecoders) {
+            if (decoder.getEncoding().equalsIgnoreCase(encoding)) {
+                sContentDecoders.remove(decoder);
+            }
+        }
+        sAcceptEncoding = buildAcceptEncoding();
+    }
+
+    /**
+     * Gets registered decoder
+     *
+     * @param encoding content coding token
+     *
+     * @return decoder, or null if the encoding is not supported
+     */
+    public static ContentDecoder getContentDecoder(String encoding) {
+        for (ContentDecoder decoder : sContentDecoders) {
+            if (decoder.getEncoding().equalsIgnoreCase(encoding)) {
+                return decoder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Accept-Encoding header sent with requests, "identity" when no decoder is registered
+     */
+    public static String getAcceptEncoding() {
+        return sAcceptEncoding;
+    }
+
+    private static String buildAcceptEncoding() {
+        StringBuilder builder = new StringBuilder();
+        for (ContentDecoder decoder : sContentDecoders) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(decoder.getEncoding());
+        }
+        return builder.length() > 0 ? builder.toString() : "identity";
+    }
+
+    /**
+     * Calls with owner, which are queued or running
+     */
+    private static final Set<ServerCall<?, ?>> sInFlightCalls = Collections.newSetFromMap(
+            new ConcurrentHashMap<ServerCall<?, ?>, Boolean>());
+
+    /**
+     * Cancels all queued and running calls of the owner
+     * Running calls stop at the next read of the response body and close their connections
+     *
+     * @param owner owner, i.e. screen or session
+     *
+     * @return number of cancelled calls
+     *
+     * @see #setOwner(Object)
+     */
+    public static int cancelAll(Object owner) {
+        if (owner == null) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (ServerCall<?, ?> call : sInFlightCalls) {
+            if (owner.equals(call.mOwner)) {
+                // queued call may never run, so it is not left in the registry
+                sInFlightCalls.remove(call);
+                call.cancel();
+                cancelled++;
+            }
+        }
+        if (sDebugEnabled && cancelled > 0) {
+            sLogger.debug("ServerCall", "Cancelled " + cancelled + " calls. owner=" + owner);
+        }
+        return cancelled;
+    }
+
+    /**
+     * @return number of calls with owner, which are queued or running
+     */
+    public static int getInFlightCount() {
+        return sInFlightCalls.size();
+    }
+
+    /**
+     * Minimum interval between byte progress updates, in milliseconds
+     */
+    protected long mProgressIntervalMillis = 100;
+
+    /**
+     * Minimum change of transferred percentage between byte progress updates
+     */
+    protected int mProgressPercentDelta = 1;
+
+    private ProgressThrottle mProgressThrottle;
+    private int mLastProgress = -1;
+    private volatile long mUploadedBytes;
+    private volatile long mUploadTotal = -1;
+    private volatile long mDownloadedBytes;
+    private volatile long mDownloadTotal = -1;
+
+    /**
+     * Duration of request phases
+     */
+    private final RequestTimings mTimings = new RequestTimings();
+
+    /**
+     * Retry policy of this request, default policy is used when null
+     */
+    protected RetryPolicy mRetryPolicy;
+
+    /**
+     * Transport of this request, default transport is used when null
+     */
+    protected Transport mTransport;
+
+    /**
+     * Delay requested by Retry-After header of the last response, -1 if not set
+     */
+    private long mRetryAfterMillis = -1;
+
+    /**
+     * Set by {@link #reissueAttempt()} during the current attempt
+     */
+    private boolean mReissue = false;
+
+    /**
+     * Post data to add to request body (payload)
+     */
+    protected String mPostData;
+
+    /**
+     * Request body, takes precedence over {@link #mPostData}
+     */
+    protected RequestBody mRequestBody;
+
+    /**
+     * Chunk size used when body length is unknown
+     * 0 means default chunk size
+     */
+    protected int mChunkSize = 0;
+
+    /**
+     * Minimum body size, from which request body is sent gzip compressed
+     * -1 means compression is disabled
+     */
+    protected long mCompressionThreshold = -1;
+
+    /**
+     * Connection timeout
+     * in milliseconds
+     * default to 30sec
+     */
+    protected int mTimeout = 30000;
+
+    /**
+     * Read timeout
+     * in milliseconds
+     * default to 30sec
+     */
+    protected int mReadTimeout = 30000;
+
+    /**
+     * Additional request headers
+     */
+    protected final Map<String, String> mRequestHeaders = new HashMap<>();
+
+    /**
+     * Request tag used by {@link RequestDispatcher} to apply per-tag concurrency limits
+     */
+    protected String mTag;
+
+    /**
+     * Owner of the call used by {@link #cancelAll(Object)}
+     */
+    protected Object mOwner;
+
+    /**
+     * Request priority used by {@link RequestDispatcher}
+     * default to {@link RequestDispatcher#PRIORITY_NORMAL}
+     */
+    protected int mPriority = RequestDispatcher.PRIORITY_NORMAL;
+
+    /**
+     * When false, response cache is neither read nor written for this request
+     */
+    protected boolean mUseResponseCache = true;
+
+    /**
+     * Request type
+     */
+    protected RequestType mType;
+
+    /**
+     * Request interceptor
+     *
+     * @see ResponseInterceptor
+     */
+    protected ResponseInterceptor mInterceptor;
+
+    /**
+     * Connection Response
+     *
+     * @see CommunicatorResponse
+     */
+    protected CommunicatorResponse<ReturnType> mCommunicatorResponse = new CommunicatorResponse<>();
+
+    protected StreamType mOriginalResponse;
+
+    /**
+     * Listener of the call submitted via {@link #enqueue(Executor, String, BaseRequestListener)}
+     */
+    private volatile BaseRequestListener<ReturnType> mListener;
+
+    private volatile boolean mCancelled = false;
+
+    /**
+     * Exchange of the running attempt, closed when the call is cancelled
+     */
+    private volatile Exchange mExchange;
+
+    /**
+     * Constructs call without body data (i.e. GET request)
+     *
+     * @param type request type
+     */
+    protected ServerCall(RequestType type) {
+        mType = type;
+
+        initHeaders();
+    }
+
+    /**
+     * Constructs call with POST payload data
+     *
+     * @param type request type (typically {@link RequestType#POST}) for this constructor
+     * @param data post data
+     */
+    protected ServerCall(RequestType type, String data) {
+        this(type);
+        mPostData = data;
+    }
+
+    public RequestType getType() {
+        return mType;
+    }
+
+    /**
+     * Sets request body (payload)
+     * Body with known length is streamed with fixed length, body with unknown length is chunked
+     * Body is not sent with GET requests
+     *
+     * @param body request body, replaces post data passed to the constructor
+     */
+    public void setRequestBody(RequestBody body) {
+        mRequestBody = body;
+    }
+
+    /**
+     * Gets request body
+     *
+     * @return request body, or body created from post data, null when request has no payload
+     */
+    public RequestBody getRequestBody() {
+        if (mRequestBody != null) {
+            return mRequestBody;
+        }
+        return mPostData != null ? RequestBody.create(mPostData) : null;
+    }
+
+    /**
+     * Sets chunk size used for request bodies with unknown length
+     *
+     * @param chunkSize chunk size in bytes, 0 for default
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunkSize < 0: " + chunkSize);
+        }
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Enables gzip compression of request body (Content-Encoding: gzip)
+     * Body is compressed while it is written, compressed body is sent chunked
+     * Body with unknown length is always compressed when compression is enabled
+     * Server has to accept compressed requests
+     *
+     * @param minLength minimum body size in bytes, -1 to disable compression
+     *
+     * @see RequestTimings#getSentBodyBytes()
+     */
+    public void setRequestCompression(long minLength) {
+        mCompressionThreshold = minLength;
+    }
+
+    /**
+     * Checks whether request body should be compressed
+     *
+     * @param body    request body
+     * @param headers request headers
+     *
+     * @return true if body should be compressed
+     */
+    private boolean isCompressed(RequestBody body, Map<String, String> headers) {
+        if (mCompressionThreshold < 0) {
+            return false;
+        }
+        for (String name : headers.keySet()) {
+            // body is already encoded by the application
+            if (name.equalsIgnoreCase("Content-Encoding")) {
+                return false;
+            }
+        }
+        long length = body.contentLength();
+        return length < 0 || length >= mCompressionThreshold;
+    }
+
+    /**
+     * Sets rate limit of progress updates during upload and download
+     * Update is delivered when both minimum interval elapsed and transferred percentage changed
+     * by the minimum delta, completion of the transfer is always delivered
+     * Default is 100ms and 1%
+     *
+     * @param minIntervalMillis minimum interval between updates, in milliseconds
+     * @param minPercentDelta   minimum change of transferred percentage
+     *
+     * @see ByteProgressListener
+     */
+    public void setProgressThrottle(long minIntervalMillis, int minPercentDelta) {
+        if (minIntervalMillis < 0 || minPercentDelta < 0) {
+            throw new IllegalArgumentException("Invalid progress throttle parameters");
+        }
+        mProgressIntervalMillis = minIntervalMillis;
+        mProgressPercentDelta = minPercentDelta;
+    }
+
+    /**
+     * Sets retry policy of this request
+     *
+     * @param retryPolicy retry policy, null to use default policy
+     *
+     * @see #setDefaultRetryPolicy(RetryPolicy)
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets transport of this request
+     *
+     * @param transport transport, null to use default transport
+     *
+     * @see #setDefaultTransport(Transport)
+     */
+    public void setTransport(Transport transport) {
+        mTransport = transport;
+    }
+
+    private Transport getTransport() {
+        return mTransport != null ? mTransport : sDefaultTransport;
+    }
+
+    /**
+     * Sets response interceptor
+     *
+     * @param interceptor interceptor interface
+     */
+    public void setInterceptor(ResponseInterceptor interceptor) {
+        mInterceptor = interceptor;
+    }
+
+    public ResponseInterceptor getInterceptor() {
+        return mInterceptor;
+    }
+
+    /**
+     * Sets connection timeout
+     * Default value is 30 seconds
+     *
+     * @param timeout timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        mTimeout = timeout;
+    }
+
+    /**
+     * Sets read timeout
+     * Default value is 30 seconds
+     *
+     * @param timeout timeout in milliseconds
+     */
+    public void setReadTimeout(int timeout) {
+        mReadTimeout = timeout;
+    }
+
+    /**
+     * Sets request tag
+     * Tag is used by {@link RequestDispatcher} to limit number of concurrently running requests
+     * i.e. "images" or "api"
+     *
+     * @param tag request tag
+     *
+     * @see RequestDispatcher#setMaxRequestsForTag(String, int)
+     */
+    public void setTag(String tag) {
+        mTag = tag;
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * Sets owner of the call, i.e. screen or session
+     * All calls of the owner can be cancelled at once via {@link #cancelAll(Object)}
+     *
+     * @param owner owner, compared by equals
+     */
+    public void setOwner(Object owner) {
+        mOwner = owner;
+    }
+
+    public Object getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * Sets request priority
+     * Requests with higher priority are dispatched first
+     *
+     * @param priority priority, i.e. {@link RequestDispatcher#PRIORITY_HIGH}
+     */
+    public void setPriority(int priority) {
+        mPriority = priority;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Enables or disables response cache for this request
+     * Cache is enabled by default when it is set via {@link #setResponseCache(DiskResponseCache)}
+     *
+     * @param useCache false to always load response from the network
+     */
+    public void setUseResponseCache(boolean useCache) {
+        mUseResponseCache = useCache;
+    }
+
+    /**
+     * Sets additional headers
+     * Headers are added to existing set of headers, in case only this set should be available,
+     * {@link #clearHeaders()} should be called first
+     *
+     * @param headersMap headers
+     */
+    public void setHeaders(Map<String, String> headersMap) {
+        mRequestHeaders.putAll(headersMap);
+    }
+
+    /**
+     * Clears all stored headers
+     */
+    public void clearHeaders() {
+        mRequestHeaders.clear();
+    }
+
+    /**
+     * Can be used (overridden in call implementation) to define default headers
+     *
+     * @see #ServerCall(RequestType)
+     */
+    protected void initHeaders() {
+    }
+
+    /**
+     * Cancels the call
+     * Running call stops at the next read of the response body with cancelled response, transports
+     * which support abort (i.e. {@link NioTransport}) fail the blocked read immediately
+     */
+    public void cancel() {
+        mCancelled = true;
+        Exchange exchange = mExchange;
+        if (exchange != null) {
+            exchange.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Gets response of the current attempt
+     *
+     * @return response
+     */
+    public CommunicatorResponse<ReturnType> getResponse() {
+        return mCommunicatorResponse;
+    }
+
+    /**
+     * Submits the call to the dispatcher, which applies concurrency limits per host and per tag
+     *
+     * @param dispatcher request dispatcher
+     * @param url        request url
+     * @param listener   response listener, called from the executing thread
+     *
+     * @return future of the response
+     *
+     * @see #enqueue(Executor, String, BaseRequestListener)
+     */
+    public Future<CommunicatorResponse<ReturnType>> enqueue(RequestDispatcher dispatcher, String url,
+                                                           BaseRequestListener<ReturnType> listener) {
+        return enqueue(dispatcher.executorFor(getHost(url), mTag, mPriority), url, listener);
+    }
+
+    /**
+     * Submits the call to the executor
+     * Call blocks the executing thread for the whole request, so it can be executed by any
+     * executor, including executor which creates new (virtual) thread per task
+     * Listener is called from the executing thread, cancelling the future cancels the call
+     *
+     * @param executor executor
+     * @param url      request url
+     * @param listener response listener, can be null
+     *
+     * @return future of the response
+     */
+    public Future<CommunicatorResponse<ReturnType>> enqueue(Executor executor, final String url,
+                                                           final BaseRequestListener<ReturnType> listener) {
+        attachListener(listener);
+        register();
+        final AtomicBoolean delivered = new AtomicBoolean(false);
+        FutureTask<CommunicatorResponse<ReturnType>> task = new FutureTask<CommunicatorResponse<ReturnType>>(
+                new Callable<CommunicatorResponse<ReturnType>>() {
+                    @Override
+                    public CommunicatorResponse<ReturnType> call() {
+                        CommunicatorResponse<ReturnType> response = execute(url);
+                        if (listener != null && delivered.compareAndSet(false, true)) {
+                            deliverResponse(listener, response);
+                        }
+                        return response;
+                    }
+                }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                ServerCall.this.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+
+            @Override
+            protected void done() {
+                unregister();
+                // cancelled before the call was executed
+                if (isCancelled() && listener != null && delivered.compareAndSet(false, true)) {
+                    listener.onCancelled();
+                }
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Delivers response of the call submitted via {@link #enqueue(Executor, String, BaseRequestListener)}
+     *
+     * @param listener listener
+     * @param response response
+     */
+    protected void deliverResponse(BaseRequestListener<ReturnType> listener, CommunicatorResponse<ReturnType> response) {
+        if (response.isCancelled() || isCallCancelled()) {
+            listener.onCancelled();
+        } else if (response.isIntercepted()) {
+            if (sDebugEnabled) {
+                sLogger.debug(getLogTag(), "Response intercepted. Not proceeding to response listener");
+            }
+        } else if (response.hasError()) {
+            listener.onError(response.getError());
+        } else {
+            listener.onSuccess(response.getData());
+        }
+    }
+
+    /**
+     * Executes the call on the calling thread
+     * Failed attempts are retried according to the retry policy
+     *
+     * @param url request url
+     *
+     * @return response
+     */
+    public CommunicatorResponse<ReturnType> execute(String url) {
+        if (isCallCancelled()) {
+            // cancelled while waiting in the queue
+            mCommunicatorResponse.setUrl(url);
+            mCommunicatorResponse.setCancelled(true);
+            return mCommunicatorResponse;
+        }
+
+        register();
+        RetryPolicy retryPolicy = mRetryPolicy != null ? mRetryPolicy : sDefaultRetryPolicy;
+        RetryBudget retryBudget = sRetryBudget;
+        if (retryBudget != null) {
+            retryBudget.onRequest();
+        }
+
+        long startTime = System.nanoTime();
+        int retryCount = 0;
+        boolean reissued = false;
+        try {
+            while (true) {
+                mRetryAfterMillis = -1;
+                mReissue = false;
+                mTimings.resetPhases();
+                mTimings.mAttempts++;
+                mLastProgress = -1;
+                CommunicatorResponse<ReturnType> response = executeAttempt(url);
+                if (mReissue && !reissued && response.hasError() && !response.isCancelled() && !isCallCancelled()) {
+                    // cause of the failure was removed by the call itself, attempt is sent again right away
+                    reissued = true;
+                    mCommunicatorResponse = new CommunicatorResponse<>();
+                    continue;
+                }
+                if (retryPolicy == null || !response.hasError() || response.isCancelled() || isCallCancelled()
+                        || !canRetry()) {
+                    return response;
+                }
+
+                // body is not sent with GET requests, see executeAttempt
+                RequestBody body = mType.equals(RequestType.GET) ? null : getRequestBody();
+                if (body != null && !body.isRepeatable()) {
+                    return response;
+                }
+
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                long delay = retryPolicy.getRetryDelay(mType, response.getError(), retryCount, elapsed, mRetryAfterMillis);
+                if (delay < 0) {
+                    return response;
+                }
+                if (retryBudget != null && !retryBudget.tryAcquire()) {
+                    if (sDebugEnabled) {
+                        sLogger.info(getLogTag(), "Retry budget exhausted. url=" + response.getUrl());
+                    }
+                    return response;
+                }
+
+                retryCount++;
+                if (sDebugEnabled) {
+                    sLogger.info(getLogTag(), "Request failed, retry " + retryCount + " in " + delay
+                            + "ms. error=" + response.getError().getErrorType() + ", url=" + response.getUrl());
+                }
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    // request was cancelled with interruption
+                    Thread.currentThread().interrupt();
+                    response.setCancelled(true);
+                    return response;
+                }
+                if (isCallCancelled()) {
+                    response.setCancelled(true);
+                    return response;
+                }
+
+                mCommunicatorResponse = new CommunicatorResponse<>();
+            }
+        } finally {
+            unregister();
+            // free interceptor, no longer needed
+            mInterceptor = null;
+
+            mTimings.mTotalNanos = System.nanoTime() - startTime;
+            mCommunicatorResponse.setTimings(mTimings);
+            recordLatency(mCommunicatorResponse);
+        }
+    }
+
+    /**
+     * Requests that the current attempt is executed again when it fails, regardless of the retry
+     * policy, i.e. after the call discarded stale state which caused the failure
+     * Attempt is re-issued at most once per execution
+     */
+    protected void reissueAttempt() {
+        mReissue = true;
+    }
+
+    /**
+     * Adds call with owner to the in-flight registry
+     */
+    void register() {
+        if (mOwner != null) {
+            sInFlightCalls.add(this);
+        }
+    }
+
+    void unregister() {
+        sInFlightCalls.remove(this);
+    }
+
+    /**
+     * Publishes progress of request phase
+     * Progress is never decreased, phases passed during the transfer are skipped
+     *
+     * @param progress progress
+     */
+    private void publishPhase(int progress) {
+        if (progress > mLastProgress) {
+            mLastProgress = progress;
+            publishProgress(progress);
+        }
+    }
+
+    private ProgressThrottle getProgressThrottle() {
+        if (mProgressThrottle == null) {
+            mProgressThrottle = new ProgressThrottle(mProgressIntervalMillis, mProgressPercentDelta);
+        }
+        return mProgressThrottle;
+    }
+
+    /**
+     * Called by the progress streams when bytes are transferred
+     * Upload is mapped between {@link #PROGRESS_CONNECTED} and {@link #PROGRESS_RESPONSE_CODE},
+     * download between {@link #PROGRESS_INPUT_STREAM} and {@link #PROGRESS_DISCONNECTING}
+     *
+     * @param upload true for request body, false for response body
+     * @param bytes  number of transferred bytes
+     */
+    void onTransferProgress(boolean upload, long bytes) {
+        long total;
+        if (upload) {
+            mUploadedBytes = bytes;
+            total = mUploadTotal;
+        } else {
+            mDownloadedBytes = bytes;
+            total = mDownloadTotal;
+        }
+        if (!getProgressThrottle().allow(bytes, total, System.nanoTime())) {
+            return;
+        }
+
+        int progress = mLastProgress;
+        if (total > 0) {
+            int start = upload ? PROGRESS_CONNECTED : PROGRESS_INPUT_STREAM;
+            int end = upload ? PROGRESS_RESPONSE_CODE : PROGRESS_DISCONNECTING;
+            progress = Math.max(mLastProgress, start + (int) ((end - start) * Math.min(bytes, total) / total));
+        }
+        if (progress > mLastProgress || getListener() instanceof ByteProgressListener) {
+            mLastProgress = progress;
+            // second value marks transfer progress
+            publishProgress(progress, upload ? TRANSFER_UPLOAD : TRANSFER_DOWNLOAD);
+        }
+    }
+
+    /**
+     * Publishes progress values
+     * Default implementation delivers progress to the listener directly from the executing thread,
+     * platform adapters can pass values to another thread
+     *
+     * @param values progress and optional transfer marker
+     *
+     * @see #deliverProgress(BaseRequestListener, Integer...)
+     */
+    protected void publishProgress(Integer... values) {
+        BaseRequestListener<ReturnType> listener = getListener();
+        if (listener != null) {
+            deliverProgress(listener, values);
+        }
+    }
+
+    /**
+     * Delivers progress to the listener
+     *
+     * @param listener listener
+     * @param values   published progress values
+     */
+    protected void deliverProgress(BaseRequestListener<?> listener, Integer... values) {
+        listener.onProgress(values[0]);
+        if (values.length > 1 && listener instanceof ByteProgressListener) {
+            ByteProgressListener byteListener = (ByteProgressListener) listener;
+            if (values[1] == TRANSFER_UPLOAD) {
+                byteListener.onUploadProgress(mUploadedBytes, mUploadTotal);
+            } else {
+                byteListener.onDownloadProgress(mDownloadedBytes, mDownloadTotal);
+            }
+        }
+    }
+
+    private static long parseContentLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Records request latency into the latency registry
+     *
+     * @param response response of the request
+     */
+    private void recordLatency(CommunicatorResponse<ReturnType> response) {
+        LatencyRegistry registry = sLatencyRegistry;
+        if (registry == null || response.getUrl() == null || response.isCancelled() || response.isFromCache()
+                || isCallCancelled()) {
+            return;
+        }
+        registry.record(mType.getValue(), response.getUrl(),
+                TimeUnit.NANOSECONDS.toMicros(mTimings.mTotalNanos), response.hasError());
+    }
+
+    /**
+     * Executes single attempt of the request
+     *
+     * @param target request url
+     *
+     * @return response
+     */
+    private CommunicatorResponse<ReturnType> executeAttempt(String target) {
+        URL url;
+
+        // progress 0%
+        publishPhase(PROGRESS_IDLE);
+
+        try {
+            url = new URL(target);
+        } catch (MalformedURLException e) {
+            if (sDebugEnabled) {
+                e.printStackTrace();
+            }
+            //Invalid URL
+            mCommunicatorResponse.setError(new RequestError("Cannot read target URL", target));
+            return mCommunicatorResponse;
+        }
+
+        mCommunicatorResponse.setUrl(url.toString());
+        if (sDebugEnabled) {
+            sLogger.debug(getLogTag(), "Request URL parsed. url=" + url.toString());
+        }
+
+        DiskResponseCache cache = mUseResponseCache ? sResponseCache : null;
+        CacheEntry cacheEntry = null;
+        if (cache != null) {
+            if (mType.equals(RequestType.GET)) {
+                cacheEntry = cache.get(url.toString());
+                if (cacheEntry != null && cacheEntry.isFresh(System.currentTimeMillis()) && !isNoCacheRequest()) {
+                    if (sDebugEnabled) {
+                        sLogger.debug(getLogTag(), "Serving fresh response from cache. url=" + url.toString());
+                    }
+                    CommunicatorResponse<ReturnType> response = readFromCache(cache, cacheEntry);
+                    // progress 100%
+                    publishPhase(PROGRESS_DONE);
+                    return response;
+                }
+            } else {
+                // unsafe methods invalidate cached response of the target resource
+                cache.remove(url.toString());
+            }
+        }
+
+        TransportRequest request = new TransportRequest(url, mType);
+        request.setTimeouts(mTimeout, mReadTimeout);
+
+        // body is streamed, so it is never buffered by the connection
+        RequestBody body = mType.equals(RequestType.GET) ? null : getRequestBody();
+
+        // set connection header properties
+        request.setHeader("Accept-Charset", "UTF-8");
+        request.setHeader("Accept-Encoding", sAcceptEncoding);
+        if (!sConnectionReuse) {
+            // server closes the connection, so it never gets into the keep-alive pool
+            request.setHeader("Connection", "close");
+        }
+
+        // set additional request headers
+        Map<String, String> requestHeaders = new HashMap<>(mRequestHeaders);
+        onPrepareHeaders(requestHeaders);
+
+        if (sDebugEnabled) {
+            sLogger.debug(getLogTag(), "Setting custom headers. headers=" + requestHeaders.toString());
+        }
+
+        for (String property : requestHeaders.keySet()) {
+            request.setHeader(property, requestHeaders.get(property));
+        }
+
+        boolean compressBody = body != null && isCompressed(body, requestHeaders);
+        if (compressBody) {
+            // compressed length is not known until the body is written
+            request.setBody(-1, mChunkSize);
+            request.setHeader("Content-Encoding", "gzip");
+        } else if (body != null) {
+            request.setBody(body.contentLength(), mChunkSize);
+        }
+
+        // stale cached response can be revalidated
+        if (cacheEntry != null) {
+            if (cacheEntry.getETag() != null) {
+                request.setHeader("If-None-Match", cacheEntry.getETag());
+            }
+            if (cacheEntry.getLastModified() != null) {
+                request.setHeader("If-Modified-Since", cacheEntry.getLastModified());
+            }
+        }
+
+        if (sDebugEnabled) {
+            sLogger.debug(getLogTag(), "Headers set. url=" + url.toString());
+        }
+
+        Exchange connection;
+        try {
+            connection = getTransport().newExchange(request);
+        } catch (IOException e) {
+            if (sDebugEnabled) {
+                e.printStackTrace();
+            }
+            //IO exception
+            mCommunicatorResponse.setError(new RequestError("Cannot open connection", url.toString()));
+            return mCommunicatorResponse;
+        }
+
+        if (sDebugEnabled) {
+            sLogger.debug(getLogTag(), "Connection opened. url=" + url.toString());
+        }
+
+        mExchange = connection;
+        if (isCallCancelled()) {
+            // cancelled before the exchange was published
+            mExchange = null;
+            connection.disconnect();
+            mCommunicatorResponse.setCancelled(true);
+            return mCommunicatorResponse;
+        }
+
+        // progress 10%
+        publishPhase(PROGRESS_OPENED);
+
+        long requestTime = System.currentTimeMillis();
+        // connection is disconnected unless the response was fully consumed
+        boolean keepConnection = false;
+        try {
+            long connectStart = System.nanoTime();
+            SessionTrackingSocketFactory.takeSocketCreatedAt();
+            connection.connect();
+            long connectEnd = System.nanoTime();
+            long socketCreatedAt = SessionTrackingSocketFactory.takeSocketCreatedAt();
+            if (socketCreatedAt != 0) {
+                // TLS socket is layered over connected TCP socket, right before the handshake
+                mTimings.mConnectNanos = socketCreatedAt - connectStart;
+                mTimings.mHandshakeNanos = connectEnd - socketCreatedAt;
+            } else {
+                mTimings.mConnectNanos = connectEnd - connectStart;
+            }
+            // progress 20%
+            publishPhase(PROGRESS_CONNECTED);
+
+            // append post data if available
+            if (body != null) {
+                mUploadedBytes = 0;
+                mUploadTotal = body.contentLength();
+                getProgressThrottle().reset();
+                CountingOutputStream sent = new CountingOutputStream(connection.getOutputStream());
+                ProgressOutputStream os = new ProgressOutputStream(compressBody
+                        ? new GZIPOutputStream(sent, ContentDecoder.BUFFER_SIZE) : sent, this);
+                try {
+                    body.writeTo(os);
+                } finally {
+                    // finishes compressed stream
+                    os.close();
+                }
+                mTimings.mRequestBodyBytes = os.getCount();
+                mTimings.mSentBodyBytes = sent.getCount();
+                mTimings.mRequestCompressed = compressBody;
+                if (sDebugEnabled && compressBody) {
+                    sLogger.debug(getLogTag(), "Request body compressed from " + os.getCount() + " to "
+                            + sent.getCount() + " bytes. url=" + url.toString());
+                }
+            }
+            long sendEnd = System.nanoTime();
+            mTimings.mSendNanos = sendEnd - connectEnd;
+
+            // Checking for cancelled flag in major thread breakpoints
+            if (isCallCancelled()) {
+                connection.disconnect();
+                mCommunicatorResponse.setCancelled(true);
+                return mCommunicatorResponse;
+            }
+
+            int status = connection.getResponseCode();
+            mTimings.mWaitNanos = System.nanoTime() - sendEnd;
+            if (sDebugEnabled) {
+                sLogger.debug(getLogTag(), "Connection status code " + status + ". url=" + url.toString());
+            }
+            mCommunicatorResponse.setStatusCode(status);
+            // progress 40%
+            publishPhase(PROGRESS_RESPONSE_CODE);
+
+            //try to hook interceptor
+            if (mInterceptor != null && mInterceptor.onProcessStatus(status)) {
+                //response intercepted
+                if (sDebugEnabled) {
+                    sLogger.debug(getLogTag(), "Response intercepted. url=" + url.toString());
+                }
+                mCommunicatorResponse.setError(RequestError.INTERCEPT);
+                keepConnection = releaseConnection(connection, status);
+                return mCommunicatorResponse;
+            }
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cacheEntry != null) {
+                if (sDebugEnabled) {
+                    sLogger.debug(getLogTag(), "Cached response not modified. url=" + url.toString());
+                }
+                CacheEntry revalidated = cacheEntry.revalidated(connection.getHeaderFields(),
+                        requestTime, System.currentTimeMillis());
+                if (revalidated != null) {
+                    cache.update(revalidated);
+                } else {
+                    cache.remove(url.toString());
+                }
+                keepConnection = releaseConnection(connection, status);
+                return readFromCache(cache, cacheEntry);
+            }
+
+            onResponseHeaders(status, connection.getHeaderFields());
+
+            if (!isStatusOk(status)) {
+                mCommunicatorResponse.setError(new RequestError(status, url.toString()));
+                mRetryAfterMillis = RetryPolicy.parseRetryAfter(connection.getHeaderField("Retry-After"),
+                        System.currentTimeMillis());
+                keepConnection = releaseConnection(connection, status);
+                return mCommunicatorResponse;
+            }
+
+            // Checking for cancelled flag in major thread breakpoints
+            if (isCallCancelled()) {
+                connection.disconnect();
+                mCommunicatorResponse.setCancelled(true);
+                return mCommunicatorResponse;
+            }
+
+            // progress 50%
+            publishPhase(PROGRESS_RESPONSE_TYPE);
+
+            InputStream inputStream = null;
+            InputStream cacheStream = null;
+            boolean processed = false;
+            boolean drained = false;
+            try {
+                if (sDebugEnabled) {
+                    sLogger.debug(getLogTag(), "Reading input stream. url=" + url.toString());
+                }
+
+                long processingStart = System.nanoTime();
+                mDownloadedBytes = 0;
+                mDownloadTotal = parseContentLength(connection.getHeaderField("Content-Length"));
+                getProgressThrottle().reset();
+                inputStream = new ProgressInputStream(
+                        new TimingInputStream(connection.getInputStream(), mTimings), this);
+                // progress 60%
+                publishPhase(PROGRESS_CONTENT);
+
+                // Checking for cancelled flag in major thread breakpoints
+                if (isCallCancelled()) {
+                    connection.disconnect();
+                    mCommunicatorResponse.setCancelled(true);
+                    return mCommunicatorResponse;
+                }
+
+                Map<String, List<String>> headers = connection.getHeaderFields();
+                if (cache != null && mType.equals(RequestType.GET) && status == HttpURLConnection.HTTP_OK) {
+                    // body is written to cache while it is read
+                    CacheEntry newEntry = CacheEntry.fromResponse(url.toString(), headers,
+                            requestTime, System.currentTimeMillis());
+                    if (newEntry != null) {
+                        cacheStream = cache.put(newEntry, inputStream, mDownloadTotal);
+                        inputStream = cacheStream;
+                    } else if (cacheEntry != null) {
+                        cache.remove(url.toString());
+                    }
+                }
+
+                // handle compressed input stream
+                // header names are case-insensitive, exchange lookup has to be used
+                inputStream = decodeContent(connection.getHeaderField("Content-Encoding"), inputStream);
+
+                // progress 70%
+                publishPhase(PROGRESS_INPUT_STREAM);
+
+                if (sDebugEnabled) {
+                    sLogger.debug(getLogTag(), "Processing input stream. url=" + url.toString());
+                }
+
+                mOriginalResponse = processInputStream(connection.getHeaderField("Content-Type"), inputStream);
+                mCommunicatorResponse.setData(instantiateStream(mOriginalResponse));
+                processed = true;
+                mTimings.mProcessingNanos = System.nanoTime() - processingStart - mTimings.mDownloadNanos;
+
+                // remaining bytes have to be read, otherwise the connection cannot be reused
+                drained = sConnectionReuse && !isCallCancelled() && drain(inputStream);
+            } finally {
+                // progress 80%
+                publishPhase(PROGRESS_CONNECTION_CLOSE);
+                if (cacheStream != null && !processed) {
+                    // response which cannot be parsed must not be served from the cache
+                    cache.abort(cacheStream);
+                }
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+            }
+            keepConnection = drained;
+
+            // Checking for cancelled flag in major thread breakpoints
+            if (isCallCancelled()) {
+                connection.disconnect();
+                mCommunicatorResponse.setCancelled(true);
+                return mCommunicatorResponse;
+            }
+        } catch (ConnectException e) {
+            if (isCallCancelled()) {
+                // connection was closed by cancel
+                mCommunicatorResponse.setCancelled(true);
+                return mCommunicatorResponse;
+            }
+            if (sDebugEnabled) {
+                e.printStackTrace();
+            }
+
+            // timeout exception
+            mCommunicatorResponse.setError(new RequestError(e, "Connection timeout", url.toString()));
+            return mCommunicatorResponse;
+        } catch (Exception e) {
+            if (isCallCancelled()) {
+                // read was aborted by cancel
+                mCommunicatorResponse.setCancelled(true);
+                return mCommunicatorResponse;
+            }
+            if (sDebugEnabled) {
+                e.printStackTrace();
+            }
+            // IOException, JSONSyntaxException, Other exceptions
+            mCommunicatorResponse.setError(new RequestError(e, url.toString()));
+            return mCommunicatorResponse;
+        } finally {
+            mExchange = null;
+            // progress 90%
+            publishPhase(PROGRESS_DISCONNECTING);
+            if (keepConnection) {
+                if (sDebugEnabled) {
+                    sLogger.debug(getLogTag(), "Releasing connection to keep-alive pool");
+                }
+            } else {
+                if (sDebugEnabled) {
+                    sLogger.debug(getLogTag(), "Disconnecting");
+                }
+                connection.disconnect();
+            }
+            // progress 100%
+            publishPhase(PROGRESS_DONE);
+        }
+
+        if (sDebugEnabled) {
+            sLogger.debug(getLogTag(), "Request complete. url=" + url.toString());
+        }
+
+        return mCommunicatorResponse;
+    }
+
+    /**
+     * Checks whether failed request can be retried
+     * Can be overridden by requests, which deliver partial results while reading the response
+     *
+     * @return true if request can be executed again
+     */
+    protected boolean canRetry() {
+        return true;
+    }
+
+    /**
+     * Checks cancelled flag
+     * Platform adapters can override it to include their own cancellation
+     *
+     * @return true if request should stop
+     */
+    protected boolean isCallCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Consumes response body of a response, which is not processed (error, not modified or
+     * intercepted response), so the connection can be returned to the keep-alive pool
+     *
+     * @param connection connection
+     * @param status     response status code
+     *
+     * @return true if connection can be reused
+     */
+    private boolean releaseConnection(Exchange connection, int status) {
+        if (!sConnectionReuse) {
+            return false;
+        }
+        InputStream stream = null;
+        try {
+            stream = status >= HttpURLConnection.HTTP_BAD_REQUEST ?
+                    connection.getErrorStream() : connection.getInputStream();
+            return stream == null || drain(stream);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads remaining bytes of the stream
+     *
+     * @param inputStream stream
+     *
+     * @return true if end of the stream was reached, false if there were more than
+     * {@link #MAX_DRAIN_BYTES} bytes remaining
+     *
+     * @throws IOException when stream cannot be read
+     */
+    private static boolean drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            drained += read;
+            if (drained > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether request headers forbid serving response from the cache without revalidation
+     */
+    private boolean isNoCacheRequest() {
+        for (Map.Entry<String, String> header : mRequestHeaders.entrySet()) {
+            if (header.getKey().equalsIgnoreCase("Cache-Control") && header.getValue() != null
+                    && header.getValue().toLowerCase().contains("no-cache")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps input stream with decoders defined by response Content-Encoding
+     * Multiple encodings are decoded in reverse order of their application
+     * Stream with unsupported encoding is returned as received
+     *
+     * @param contentEncoding value of Content-Encoding header, can be null
+     * @param inputStream     raw response stream
+     *
+     * @return decoded stream
+     *
+     * @throws IOException when decoder cannot be initialized
+     */
+    private InputStream decodeContent(String contentEncoding, InputStream inputStream) throws IOException {
+        if (contentEncoding == null) {
+            return inputStream;
+        }
+        String[] encodings = contentEncoding.split(",");
+        for (int i = encodings.length - 1; i >= 0; i--) {
+            String encoding = encodings[i].trim();
+            if (encoding.length() == 0 || encoding.equalsIgnoreCase("identity")) {
+                continue;
+            }
+            ContentDecoder decoder = getContentDecoder(encoding);
+            if (decoder == null) {
+                if (sDebugEnabled) {
+                    sLogger.debug(getLogTag(), "Unsupported content encoding " + encoding + ". url="
+                            + mCommunicatorResponse.getUrl());
+                }
+                return inputStream;
+            }
+            if (sDebugEnabled) {
+                sLogger.debug(getLogTag(), "Decoding " + encoding + " stream. url=" + mCommunicatorResponse.getUrl());
+            }
+            inputStream = decoder.decode(inputStream);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Processes response body stored in the disk cache
+     *
+     * @param cache cache
+     * @param entry cached entry
+     *
+     * @return response
+     */
+    private CommunicatorResponse<ReturnType> readFromCache(DiskResponseCache cache, CacheEntry entry) {
+        InputStream inputStream = null;
+        try {
+            inputStream = cache.openBody(entry);
+            inputStream = decodeContent(entry.getContentEncoding(), inputStream);
+
+            publishPhase(PROGRESS_INPUT_STREAM);
+            mOriginalResponse = processInputStream(entry.getContentType(), inputStream);
+            mCommunicatorResponse.setData(instantiateStream(mOriginalResponse));
+            mCommunicatorResponse.setStatusCode(HttpURLConnection.HTTP_OK);
+            mCommunicatorResponse.setFromCache(true);
+        } catch (Exception e) {
+            if (sDebugEnabled) {
+                e.printStackTrace();
+            }
+            // corrupted entry
+            cache.remove(entry.getUrl());
+            mCommunicatorResponse.setError(new RequestError(e, entry.getUrl()));
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return mCommunicatorResponse;
+    }
+
+    /**
+     * Called before request headers are applied to the connection
+     * Can be overridden to add headers, which depend on the request state (i.e. Range)
+     *
+     * @param headers request headers, modifications affect only the current connection
+     */
+    protected void onPrepareHeaders(Map<String, String> headers) {
+    }
+
+    /**
+     * Called when response status and headers are available, before the response body is read
+     *
+     * @param statusCode response status code
+     * @param headers    response headers
+     *
+     * @throws IOException when response cannot be processed
+     */
+    protected void onResponseHeaders(int statusCode, Map<String, List<String>> headers) throws IOException {
+    }
+
+    /**
+     * Processes input stream to create defined generic object instance
+     *
+     * @param contentType content type from response headers
+     * @param inputStream input stream to be processed
+     *
+     * @return generic object instance
+     *
+     * @throws IOException when stream cannot be read
+     */
+    protected abstract StreamType processInputStream(String contentType, InputStream inputStream) throws IOException;
+
+    protected abstract ReturnType instantiateStream(StreamType streamType);
+
+    /**
+     * Copies call configuration to another call
+     *
+     * @param call target call
+     */
+    protected void copyConfigurationTo(ServerCall<?, ?> call) {
+        call.mTimeout = mTimeout;
+        call.mReadTimeout = mReadTimeout;
+        call.mRequestHeaders.putAll(mRequestHeaders);
+        call.mTag = mTag;
+        call.mOwner = mOwner;
+        call.mPriority = mPriority;
+        call.mUseResponseCache = mUseResponseCache;
+        call.mRequestBody = mRequestBody;
+        call.mChunkSize = mChunkSize;
+        call.mCompressionThreshold = mCompressionThreshold;
+        call.mRetryPolicy = mRetryPolicy;
+        call.mTransport = mTransport;
+        call.mProgressIntervalMillis = mProgressIntervalMillis;
+        call.mProgressPercentDelta = mProgressPercentDelta;
+    }
+
+    /**
+     * Sets listener, which receives progress of the call executed by the library
+     *
+     * @param listener listener
+     */
+    void attachListener(BaseRequestListener<ReturnType> listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Gets response listener
+     *
+     * @return listener, null if not set
+     */
+    protected BaseRequestListener<ReturnType> getListener() {
+        return mListener;
+    }
+
+    /**
+     * @return tag of debug logs
+     */
+    protected String getLogTag() {
+        return getClass().getSimpleName();
+    }
+
+    protected boolean isStatusOk(int status) {
+        return (status >= HttpURLConnection.HTTP_OK && status < HttpURLConnection.HTTP_MULT_CHOICE);
+    }
+
+    static String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            // reported as request error once the request is executed
+            return null;
+        }
+    }
+}
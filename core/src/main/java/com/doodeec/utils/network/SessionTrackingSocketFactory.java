@@ -0,0 +1,95 @@
+package com.doodeec.utils.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Socket factory, which records whether TLS handshakes of created sockets were full or resumed
+ * Session is considered resumed when it was created before the socket
+ * Socket creation time is kept per thread, so the request can measure handshake duration
+ *
+ * @author dusan.bartos
+ * @see HandshakeStats
+ */
+class SessionTrackingSocketFactory extends SSLSocketFactory {
+
+    /**
+     * Time when the last TLS socket was created on the current thread, in nanoseconds
+     * TLS socket is created once TCP connection is established, right before the handshake
+     */
+    private static final ThreadLocal<Long> sSocketCreatedAt = new ThreadLocal<>();
+
+    private final SSLSocketFactory mDelegate;
+
+    SessionTrackingSocketFactory(SSLSocketFactory delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return mDelegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return mDelegate.getSupportedCipherSuites();
+    }
+
+    /**
+     * Gets and clears time when the last TLS socket was created on the current thread
+     *
+     * @return {@link System#nanoTime()} of socket creation, 0 if no socket was created
+     */
+    static long takeSocketCreatedAt() {
+        Long createdAt = sSocketCreatedAt.get();
+        sSocketCreatedAt.remove();
+        return createdAt != null ? createdAt : 0;
+    }
+
+    private Socket track(Socket socket) {
+        sSocketCreatedAt.set(System.nanoTime());
+        if (socket instanceof SSLSocket) {
+            final long createdAt = System.currentTimeMillis();
+            ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                @Override
+                public void handshakeCompleted(HandshakeCompletedEvent event) {
+                    SSLSession session = event.getSession();
+                    HandshakeStats.recordHandshake(session != null && session.getCreationTime() < createdAt);
+                }
+            });
+        }
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        return track(mDelegate.createSocket(s, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return track(mDelegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return track(mDelegate.createSocket(address, port, localAddress, localPort));
+    }
+}
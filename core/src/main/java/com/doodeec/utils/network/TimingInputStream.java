@@ -0,0 +1,51 @@
+package com.doodeec.utils.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream, which measures time spent waiting for data of the underlying stream
+ *
+ * @author dusan.bartos
+ * @see RequestTimings#getDownloadMillis()
+ */
+class TimingInputStream extends FilterInputStream {
+
+    private final RequestTimings mTimings;
+
+    TimingInputStream(InputStream in, RequestTimings timings) {
+        super(in);
+        mTimings = timings;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.read();
+        } finally {
+            mTimings.mDownloadNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.read(buffer, offset, count);
+        } finally {
+            mTimings.mDownloadNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.skip(byteCount);
+        } finally {
+            mTimings.mDownloadNanos += System.nanoTime() - start;
+        }
+    }
+}
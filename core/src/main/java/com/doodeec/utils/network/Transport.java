@@ -0,0 +1,37 @@
+package com.doodeec.utils.network;
+
+import java.io.IOException;
+
+/**
+ * Transport, which executes HTTP exchanges of the requests
+ * Default transport is based on {@link java.net.HttpURLConnection}
+ *
+ * @author dusan.bartos
+ * @see UrlConnectionTransport
+ * @see NioTransport
+ * @see ServerCall#setDefaultTransport(Transport)
+ */
+public interface Transport {
+
+    /**
+     * Creates exchange for the request
+     * Exchange is not connected yet, connection is opened by {@link Exchange#connect()}
+     *
+     * @param request request line, headers and connection parameters
+     *
+     * @return new exchange
+     *
+     * @throws IOException when exchange cannot be created
+     */
+    Exchange newExchange(TransportRequest request) throws IOException;
+
+    /**
+     * Opens connection to the host of the request and keeps it in the pool for later exchanges
+     * Blocks until the connection is established (including TLS handshake), when supported
+     *
+     * @param request request with target url and timeouts
+     *
+     * @throws IOException when connection cannot be opened
+     */
+    void preconnect(TransportRequest request) throws IOException;
+}
@@ -0,0 +1,107 @@
+package com.doodeec.utils.network;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Request line, headers and connection parameters passed to the {@link Transport}
+ *
+ * @author dusan.bartos
+ */
+@SuppressWarnings("unused")
+public class TransportRequest {
+
+    private final URL mUrl;
+    private final RequestType mType;
+    private final Map<String, String> mHeaders = new LinkedHashMap<>();
+    private boolean mHasBody = false;
+    private long mContentLength = -1;
+    private int mChunkSize = 0;
+    private int mConnectTimeout = 30000;
+    private int mReadTimeout = 30000;
+
+    /**
+     * Creates request
+     *
+     * @param url  target url
+     * @param type request type
+     */
+    public TransportRequest(URL url, RequestType type) {
+        if (url == null) {
+            throw new NullPointerException("url == null");
+        }
+        mUrl = url;
+        mType = type;
+    }
+
+    /**
+     * Sets request header, replaces previous value
+     *
+     * @param name  header name
+     * @param value header value
+     */
+    public void setHeader(String name, String value) {
+        mHeaders.put(name, value);
+    }
+
+    /**
+     * Declares request body
+     *
+     * @param contentLength body length, -1 if unknown
+     * @param chunkSize     chunk size used for body with unknown length, 0 for default
+     */
+    public void setBody(long contentLength, int chunkSize) {
+        mHasBody = true;
+        mContentLength = contentLength;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * @param connectTimeout connection timeout in milliseconds
+     * @param readTimeout    read timeout in milliseconds
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    public URL getUrl() {
+        return mUrl;
+    }
+
+    public RequestType getType() {
+        return mType;
+    }
+
+    /**
+     * @return request headers in the order they were set
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(mHeaders);
+    }
+
+    public boolean hasBody() {
+        return mHasBody;
+    }
+
+    /**
+     * @return body length, -1 if unknown
+     */
+    public long getContentLength() {
+        return mContentLength;
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public int getConnectTimeout() {
+        return mConnectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return mReadTimeout;
+    }
+}
@@ -0,0 +1,223 @@
+package com.doodeec.utils.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * Default transport based on {@link HttpURLConnection}
+ * Every exchange blocks the calling thread, connections are reused by the platform keep-alive pool
+ * HTTPS connections use shared socket factory and hostname verifier of {@link ServerCall}
+ *
+ * @author dusan.bartos
+ * @see ServerCall#setConnectionReuse(boolean)
+ * @see ServerCall#configureConnectionPool(int, long)
+ */
+public class UrlConnectionTransport implements Transport {
+
+    /**
+     * Larger response to preconnect request is not drained, its connection is closed
+     */
+    private static final int PRECONNECT_MAX_BODY = 64 * 1024;
+
+    /**
+     * Threads disconnecting cancelled exchanges, created lazily
+     */
+    private static ExecutorService sCancelExecutor;
+
+    private static synchronized ExecutorService getCancelExecutor() {
+        if (sCancelExecutor == null) {
+            // disconnect can wait for the blocked read, every cancel gets its own thread
+            sCancelExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "UrlConnection-cancel");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sCancelExecutor;
+    }
+
+    @Override
+    public Exchange newExchange(TransportRequest request) throws IOException {
+        HttpURLConnection connection = openConnection(request);
+        connection.setInstanceFollowRedirects(true);
+
+        // set additional settings for POST request
+        RequestType type = request.getType();
+        if (type.equals(RequestType.POST) || type.equals(RequestType.PUT)) {
+            connection.setDoInput(true);
+            connection.setUseCaches(false);
+        }
+
+        // body is streamed, so it is never buffered by the connection
+        if (request.hasBody()) {
+            connection.setDoOutput(true);
+            setStreamingMode(connection, request.getContentLength(), request.getChunkSize());
+        }
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        // since RequestType is enum, exception should never occur
+        connection.setRequestMethod(type.getValue());
+        return new UrlConnectionExchange(connection);
+    }
+
+    /**
+     * Sends OPTIONS request to the url, connection is returned to the platform keep-alive pool
+     * OPTIONS is used, because HEAD connections are not reused by all HttpURLConnection
+     * implementations
+     * Response status is ignored, only the connection matters
+     */
+    @Override
+    public void preconnect(TransportRequest request) throws IOException {
+        HttpURLConnection connection = openConnection(request);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestMethod("OPTIONS");
+        int status = connection.getResponseCode();
+        InputStream stream = status >= HttpURLConnection.HTTP_BAD_REQUEST ?
+                connection.getErrorStream() : connection.getInputStream();
+        if (stream == null) {
+            return;
+        }
+        try {
+            // body has to be consumed, otherwise the connection is not reused
+            byte[] buffer = new byte[1024];
+            int total = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                total += read;
+                if (total > PRECONNECT_MAX_BODY) {
+                    connection.disconnect();
+                    return;
+                }
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static HttpURLConnection openConnection(TransportRequest request) throws IOException {
+        HttpURLConnection connection;
+        URLConnection _connection = request.getUrl().openConnection();
+        if (_connection instanceof HttpsURLConnection) {
+            // shared factory removes SSLv3 from supported protocols
+            HttpsURLConnection httpsConnection = (HttpsURLConnection) _connection;
+            httpsConnection.setSSLSocketFactory(ServerCall.getSocketFactory());
+            if (ServerCall.sHostNameVerifier != null) {
+                httpsConnection.setHostnameVerifier(ServerCall.sHostNameVerifier);
+            }
+            connection = httpsConnection;
+        } else {
+            connection = (HttpURLConnection) _connection;
+        }
+
+        // set connection timeouts
+        connection.setConnectTimeout(request.getConnectTimeout());
+        connection.setReadTimeout(request.getReadTimeout());
+        return connection;
+    }
+
+    /**
+     * Sets fixed-length streaming mode for body with known length, chunked mode otherwise
+     *
+     * @param connection    connection
+     * @param contentLength body length, -1 if unknown
+     * @param chunkSize     chunk size, 0 for default
+     */
+    private static void setStreamingMode(HttpURLConnection connection, long contentLength, int chunkSize) {
+        if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+            connection.setFixedLengthStreamingMode((int) contentLength);
+            return;
+        }
+        if (contentLength >= 0) {
+            try {
+                connection.setFixedLengthStreamingMode(contentLength);
+                return;
+            } catch (NoSuchMethodError e) {
+                // long variant is not available on Android before KitKat
+            }
+        }
+        connection.setChunkedStreamingMode(chunkSize);
+    }
+
+    private static class UrlConnectionExchange implements Exchange {
+
+        private final HttpURLConnection mConnection;
+
+        UrlConnectionExchange(HttpURLConnection connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            mConnection.connect();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return mConnection.getOutputStream();
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            return mConnection.getResponseCode();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return mConnection.getHeaderFields();
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return mConnection.getInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return mConnection.getErrorStream();
+        }
+
+        @Override
+        public void disconnect() {
+            mConnection.disconnect();
+        }
+
+        /**
+         * Disconnects the connection on a background thread
+         * Android (OkHttp) disconnect aborts any blocked read immediately, JDK implementation aborts
+         * connect and waiting for the response headers, but waits for a read of the response body
+         */
+        @Override
+        public void cancel() {
+            getCancelExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    mConnection.disconnect();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.doodeec.utils.network.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata of the cached response
+ * Holds validators (ETag, Last-Modified) and freshness information parsed from response headers
+ *
+ * @author dusan.bartos
+ * @see DiskResponseCache
+ */
+@SuppressWarnings("unused")
+public final class CacheEntry {
+
+    /**
+     * Maximum freshness lifetime computed heuristically from Last-Modified header
+     */
+    private static final long MAX_HEURISTIC_LIFETIME = TimeUnit.DAYS.toMillis(1);
+
+    private String mUrl;
+    private String mContentType;
+    private String mContentEncoding;
+    private String mETag;
+    private String mLastModified;
+    private long mServedDate = -1;
+    private long mExpires = -1;
+    private long mMaxAgeSeconds = -1;
+    private long mAgeSeconds = -1;
+    private boolean mNoCache;
+    private boolean mMustRevalidate;
+    private long mRequestTime;
+    private long mResponseTime;
+    private boolean mCompressed;
+
+    private CacheEntry() {
+    }
+
+    /**
+     * Creates cache entry from response headers
+     *
+     * @param url          request url
+     * @param headers      response headers
+     * @param requestTime  time when request was sent
+     * @param responseTime time when response headers were received
+     *
+     * @return entry, or null if response must not be stored
+     */
+    public static CacheEntry fromResponse(String url, Map<String, List<String>> headers,
+                                          long requestTime, long responseTime) {
+        CacheEntry entry = new CacheEntry();
+        entry.mUrl = url;
+        entry.mContentType = header(headers, "Content-Type");
+        entry.mContentEncoding = header(headers, "Content-Encoding");
+        entry.mRequestTime = requestTime;
+        entry.mResponseTime = responseTime;
+        if (!entry.applyHeaders(headers)) {
+            return null;
+        }
+
+        // responses with Vary header would need request headers stored as a part of the key
+        String vary = header(headers, "Vary");
+        if (vary != null && !vary.trim().equalsIgnoreCase("Accept-Encoding")) {
+            return null;
+        }
+
+        // response is useless for cache when it is neither fresh nor can be revalidated
+        if (entry.getFreshnessLifetime() <= 0 && !entry.hasValidators()) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Creates updated entry from headers of 304 Not Modified response
+     *
+     * @param headers      response headers
+     * @param requestTime  time when revalidation request was sent
+     * @param responseTime time when response headers were received
+     *
+     * @return updated entry, or null if response forbids storing
+     */
+    public CacheEntry revalidated(Map<String, List<String>> headers, long requestTime, long responseTime) {
+        CacheEntry entry = copy();
+        entry.mRequestTime = requestTime;
+        entry.mResponseTime = responseTime;
+        entry.mServedDate = -1;
+        entry.mAgeSeconds = -1;
+        return entry.applyHeaders(headers) ? entry : null;
+    }
+
+    /**
+     * Applies caching headers, headers which are not present keep their previous value
+     *
+     * @return false when response must not be stored
+     */
+    private boolean applyHeaders(Map<String, List<String>> headers) {
+        String eTag = header(headers, "ETag");
+        if (eTag != null) mETag = eTag;
+        String lastModified = header(headers, "Last-Modified");
+        if (lastModified != null) mLastModified = lastModified;
+        String expires = header(headers, "Expires");
+        if (expires != null) {
+            // invalid dates (i.e. "0") mean already expired
+            mExpires = Math.max(0, HttpDate.parse(expires));
+        }
+        mServedDate = HttpDate.parse(header(headers, "Date"));
+        String age = header(headers, "Age");
+        if (age != null) {
+            mAgeSeconds = parseSeconds(age.trim());
+        }
+
+        List<String> cacheControl = headerValues(headers, "Cache-Control");
+        if (cacheControl != null) {
+            mMaxAgeSeconds = -1;
+            mNoCache = false;
+            mMustRevalidate = false;
+            for (String value : cacheControl) {
+                for (String directive : value.split(",")) {
+                    String name = directive.trim().toLowerCase();
+                    if (name.equals("no-store")) {
+                        return false;
+                    } else if (name.equals("no-cache")) {
+                        mNoCache = true;
+                    } else if (name.equals("must-revalidate")) {
+                        mMustRevalidate = true;
+                    } else if (name.startsWith("max-age=")) {
+                        mMaxAgeSeconds = parseSeconds(name.substring("max-age=".length()));
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if entry can be served without revalidation
+     */
+    public boolean isFresh(long now) {
+        return !mNoCache && getCurrentAge(now) < getFreshnessLifetime();
+    }
+
+    /**
+     * @return true if entry can be revalidated with conditional request
+     */
+    public boolean hasValidators() {
+        return mETag != null || mLastModified != null;
+    }
+
+    /**
+     * Freshness lifetime according to RFC 7234, section 4.2.1
+     */
+    private long getFreshnessLifetime() {
+        if (mMaxAgeSeconds >= 0) {
+            return TimeUnit.SECONDS.toMillis(mMaxAgeSeconds);
+        }
+        long served = mServedDate != -1 ? mServedDate : mResponseTime;
+        if (mExpires != -1) {
+            return mExpires - served;
+        }
+        if (mLastModified != null && !mMustRevalidate && !mUrl.contains("?")) {
+            // heuristic freshness, 10% of time since last modification
+            long lastModified = HttpDate.parse(mLastModified);
+            if (lastModified != -1 && lastModified < served) {
+                return Math.min((served - lastModified) / 10, MAX_HEURISTIC_LIFETIME);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Current age according to RFC 7234, section 4.2.3
+     */
+    private long getCurrentAge(long now) {
+        long apparentAge = mServedDate != -1 ? Math.max(0, mResponseTime - mServedDate) : 0;
+        long receivedAge = mAgeSeconds != -1 ? Math.max(apparentAge, TimeUnit.SECONDS.toMillis(mAgeSeconds)) : apparentAge;
+        long responseDuration = mResponseTime - mRequestTime;
+        long residentDuration = now - mResponseTime;
+        return receivedAge + responseDuration + residentDuration;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public String getContentType() {
+        return mContentType;
+    }
+
+    /**
+     * @return content encoding of the stored body (i.e. gzip), as received from the server
+     */
+    public String getContentEncoding() {
+        return mContentEncoding;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return true if the body was compressed by the cache when it was stored
+     */
+    boolean isCompressed() {
+        return mCompressed;
+    }
+
+    void setCompressed(boolean compressed) {
+        mCompressed = compressed;
+    }
+
+    private CacheEntry copy() {
+        CacheEntry entry = new CacheEntry();
+        entry.mUrl = mUrl;
+        entry.mContentType = mContentType;
+        entry.mContentEncoding = mContentEncoding;
+        entry.mETag = mETag;
+        entry.mLastModified = mLastModified;
+        entry.mServedDate = mServedDate;
+        entry.mExpires = mExpires;
+        entry.mMaxAgeSeconds = mMaxAgeSeconds;
+        entry.mAgeSeconds = mAgeSeconds;
+        entry.mNoCache = mNoCache;
+        entry.mMustRevalidate = mMustRevalidate;
+        entry.mRequestTime = mRequestTime;
+        entry.mResponseTime = mResponseTime;
+        entry.mCompressed = mCompressed;
+        return entry;
+    }
+
+    Properties toProperties() {
+        Properties properties = new Properties();
+        putIfSet(properties, "url", mUrl);
+        putIfSet(properties, "contentType", mContentType);
+        putIfSet(properties, "contentEncoding", mContentEncoding);
+        putIfSet(properties, "etag", mETag);
+        putIfSet(properties, "lastModified", mLastModified);
+        properties.setProperty("servedDate", String.valueOf(mServedDate));
+        properties.setProperty("expires", String.valueOf(mExpires));
+        properties.setProperty("maxAge", String.valueOf(mMaxAgeSeconds));
+        properties.setProperty("age", String.valueOf(mAgeSeconds));
+        properties.setProperty("noCache", String.valueOf(mNoCache));
+        properties.setProperty("mustRevalidate", String.valueOf(mMustRevalidate));
+        properties.setProperty("requestTime", String.valueOf(mRequestTime));
+        properties.setProperty("responseTime", String.valueOf(mResponseTime));
+        properties.setProperty("compressed", String.valueOf(mCompressed));
+        return properties;
+    }
+
+    static CacheEntry fromProperties(Properties properties) {
+        CacheEntry entry = new CacheEntry();
+        entry.mUrl = properties.getProperty("url");
+        if (entry.mUrl == null) return null;
+        entry.mContentType = properties.getProperty("contentType");
+        entry.mContentEncoding = properties.getProperty("contentEncoding");
+        entry.mETag = properties.getProperty("etag");
+        entry.mLastModified = properties.getProperty("lastModified");
+        try {
+            entry.mServedDate = Long.parseLong(properties.getProperty("servedDate", "-1"));
+            entry.mExpires = Long.parseLong(properties.getProperty("expires", "-1"));
+            entry.mMaxAgeSeconds = Long.parseLong(properties.getProperty("maxAge", "-1"));
+            entry.mAgeSeconds = Long.parseLong(properties.getProperty("age", "-1"));
+            entry.mRequestTime = Long.parseLong(properties.getProperty("requestTime", "0"));
+            entry.mResponseTime = Long.parseLong(properties.getProperty("responseTime", "0"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        entry.mNoCache = Boolean.parseBoolean(properties.getProperty("noCache"));
+        entry.mMustRevalidate = Boolean.parseBoolean(properties.getProperty("mustRevalidate"));
+        entry.mCompressed = Boolean.parseBoolean(properties.getProperty("compressed"));
+        return entry;
+    }
+
+    private static void putIfSet(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Case insensitive lookup of header values
+     */
+    static List<String> headerValues(Map<String, List<String>> headers, String name) {
+        if (headers == null) return null;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String header(Map<String, List<String>> headers, String name) {
+        List<String> values = headerValues(headers, name);
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+}
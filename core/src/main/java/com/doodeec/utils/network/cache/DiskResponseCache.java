@@ -0,0 +1,539 @@
+package com.doodeec.utils.network.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded disk cache of HTTP responses
+ * Every entry consists of metadata file and body file. Entries are evicted in LRU order once
+ * total size exceeds the maximum size
+ * Body is stored as received from the server (i.e. gzipped), bodies without content encoding
+ * can be compressed at rest via {@link #setCompressionEnabled(boolean)}
+ *
+ * @author dusan.bartos
+ * @see CacheEntry
+ * @see com.doodeec.utils.network.ServerCall#setResponseCache(DiskResponseCache)
+ */
+@SuppressWarnings("unused")
+public class DiskResponseCache {
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Maximum number of bytes read from the network to complete an entry when the response
+     * stream is closed before it was fully read
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private boolean mCompressionEnabled = false;
+
+    /**
+     * Entry sizes in access order
+     */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize = 0;
+    private boolean mInitialized = false;
+
+    private int mRequestCount = 0;
+    private int mHitCount = 0;
+    private int mConditionalHitCount = 0;
+    private int mNetworkCount = 0;
+
+    /**
+     * Creates disk cache
+     *
+     * @param directory directory dedicated to this cache, i.e. subdirectory of
+     *                  {@code Context#getCacheDir()} on Android
+     * @param maxSize   maximum size of the cache in bytes
+     */
+    public DiskResponseCache(File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Enables gzip compression of stored bodies, which are not compressed by the server
+     *
+     * @param enabled true to compress bodies at rest
+     */
+    public synchronized void setCompressionEnabled(boolean enabled) {
+        mCompressionEnabled = enabled;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return current size of the cache in bytes
+     */
+    public synchronized long getSize() {
+        initialize();
+        return mSize;
+    }
+
+    /**
+     * @return number of cache lookups
+     */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * @return number of responses served from the cache, including conditional hits
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return number of responses served from the cache after 304 Not Modified revalidation
+     */
+    public synchronized int getConditionalHitCount() {
+        return mConditionalHitCount;
+    }
+
+    /**
+     * @return number of responses stored from the network
+     */
+    public synchronized int getNetworkCount() {
+        return mNetworkCount;
+    }
+
+    /**
+     * Looks up cached entry
+     *
+     * @param url request url
+     *
+     * @return cached entry or null
+     */
+    public synchronized CacheEntry get(String url) {
+        initialize();
+        mRequestCount++;
+
+        String key = key(url);
+        if (!mEntries.containsKey(key)) {
+            return null;
+        }
+
+        CacheEntry entry = readEntry(key);
+        if (entry == null || !url.equals(entry.getUrl()) || !bodyFile(key).exists()) {
+            removeKey(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Opens stored body of the entry
+     * Stream contains body as it was received from the server, including its content encoding
+     *
+     * @param entry cached entry
+     *
+     * @return body input stream
+     *
+     * @throws IOException when body cannot be read
+     */
+    public InputStream openBody(CacheEntry entry) throws IOException {
+        InputStream inputStream = new FileInputStream(bodyFile(key(entry.getUrl())));
+        synchronized (this) {
+            mHitCount++;
+        }
+        return entry.isCompressed() ? new GZIPInputStream(inputStream) : inputStream;
+    }
+
+    /**
+     * Stores updated metadata after successful revalidation
+     *
+     * @param entry updated entry
+     */
+    public void update(CacheEntry entry) {
+        String key = key(entry.getUrl());
+        synchronized (this) {
+            mConditionalHitCount++;
+            if (!mEntries.containsKey(key)) return;
+        }
+        try {
+            writeEntry(key, entry, metaFile(key));
+        } catch (IOException e) {
+            remove(entry.getUrl());
+        }
+    }
+
+    /**
+     * Wraps network stream, so the body is written to the cache while it is being read
+     * Entry is committed once the stream is fully read, partially read bodies are discarded
+     *
+     * @param entry  entry metadata
+     * @param source network stream
+     *
+     * @return stream which should be read instead of the source
+     */
+    public InputStream put(CacheEntry entry, InputStream source) {
+        return put(entry, source, -1);
+    }
+
+    /**
+     * Wraps network stream, so the body is written to the cache while it is being read
+     * Entry is committed once the stream is fully read, partially read bodies and bodies larger
+     * than the cache are discarded
+     *
+     * @param entry         entry metadata
+     * @param source        network stream
+     * @param contentLength Content-Length of the response, or -1 when unknown
+     *
+     * @return stream which should be read instead of the source
+     */
+    public InputStream put(CacheEntry entry, InputStream source, long contentLength) {
+        initialize();
+        if (contentLength > mMaxSize) {
+            // entry would evict the whole cache and still not fit
+            synchronized (this) {
+                mNetworkCount++;
+                removeKey(key(entry.getUrl()));
+            }
+            return source;
+        }
+        String key = key(entry.getUrl());
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(key, BODY_SUFFIX + TEMP_SUFFIX, mDirectory);
+            OutputStream outputStream = new FileOutputStream(tempFile);
+            boolean compress;
+            synchronized (this) {
+                mNetworkCount++;
+                compress = mCompressionEnabled && entry.getContentEncoding() == null;
+            }
+            if (compress) {
+                outputStream = new GZIPOutputStream(outputStream);
+            }
+            entry.setCompressed(compress);
+            return new CacheWritingInputStream(source, outputStream, key, entry, tempFile);
+        } catch (IOException e) {
+            // caching is optional, continue with network stream
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            return source;
+        }
+    }
+
+    /**
+     * Discards entry written by the stream returned from {@link #put(CacheEntry, InputStream, long)}
+     * Has to be called before the stream is closed, when its body could not be processed
+     *
+     * @param stream stream returned from put
+     */
+    public void abort(InputStream stream) {
+        if (stream instanceof CacheWritingInputStream) {
+            ((CacheWritingInputStream) stream).mAborted = true;
+        }
+    }
+
+    /**
+     * Removes cached entry
+     *
+     * @param url request url
+     */
+    public synchronized void remove(String url) {
+        initialize();
+        removeKey(key(url));
+    }
+
+    /**
+     * Removes all entries from the cache
+     */
+    public synchronized void evictAll() {
+        initialize();
+        for (String key : mEntries.keySet()) {
+            metaFile(key).delete();
+            bodyFile(key).delete();
+        }
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    private void commit(String key, CacheEntry entry, File tempFile) {
+        File tempMeta = null;
+        try {
+            tempMeta = File.createTempFile(key, META_SUFFIX + TEMP_SUFFIX, mDirectory);
+            writeEntry(key, entry, tempMeta);
+        } catch (IOException e) {
+            tempFile.delete();
+            if (tempMeta != null) {
+                tempMeta.delete();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            removeKey(key);
+            File body = bodyFile(key);
+            File meta = metaFile(key);
+            if (!tempFile.renameTo(body) || !tempMeta.renameTo(meta)) {
+                tempFile.delete();
+                tempMeta.delete();
+                body.delete();
+                return;
+            }
+            long size = body.length() + meta.length();
+            mEntries.put(key, size);
+            mSize += size;
+            trimToSize();
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            metaFile(eldest.getKey()).delete();
+            bodyFile(eldest.getKey()).delete();
+            mSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void removeKey(String key) {
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSize -= size;
+        }
+        metaFile(key).delete();
+        bodyFile(key).delete();
+    }
+
+    /**
+     * Builds LRU index from files stored in cache directory
+     * Least recently modified entries are evicted first
+     */
+    private void initialize() {
+        if (mInitialized) return;
+        mInitialized = true;
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return;
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long left = lhs.lastModified();
+                long right = rhs.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // leftover of interrupted write
+                file.delete();
+            } else if (name.endsWith(META_SUFFIX)) {
+                String key = name.substring(0, name.length() - META_SUFFIX.length());
+                File body = bodyFile(key);
+                if (body.exists()) {
+                    long size = body.length() + file.length();
+                    mEntries.put(key, size);
+                    mSize += size;
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        trimToSize();
+    }
+
+    private CacheEntry readEntry(String key) {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(metaFile(key));
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            return CacheEntry.fromProperties(properties);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private void writeEntry(String key, CacheEntry entry, File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            entry.toProperties().store(outputStream, null);
+        } finally {
+            closeQuietly(outputStream);
+        }
+    }
+
+    private File metaFile(String key) {
+        return new File(mDirectory, key + META_SUFFIX);
+    }
+
+    private File bodyFile(String key) {
+        return new File(mDirectory, key + BODY_SUFFIX);
+    }
+
+    private static String key(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Input stream which copies everything that is read to the cache file
+     */
+    private class CacheWritingInputStream extends FilterInputStream {
+        private final OutputStream mCacheStream;
+        private final String mKey;
+        private final CacheEntry mEntry;
+        private final File mTempFile;
+        private long mWritten = 0;
+        private boolean mWriteFailed = false;
+        private boolean mComplete = false;
+        private boolean mClosed = false;
+        private volatile boolean mAborted = false;
+
+        CacheWritingInputStream(InputStream source, OutputStream cacheStream, String key,
+                                CacheEntry entry, File tempFile) {
+            super(source);
+            mCacheStream = cacheStream;
+            mKey = key;
+            mEntry = entry;
+            mTempFile = tempFile;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                mComplete = true;
+            } else {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read == -1) {
+                mComplete = true;
+            } else {
+                write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (mWriteFailed) return;
+            mWritten += count;
+            if (mWritten > mMaxSize) {
+                // body without Content-Length outgrew the cache, temp file is abandoned right away
+                mWriteFailed = true;
+                closeQuietly(mCacheStream);
+                mTempFile.delete();
+                return;
+            }
+            try {
+                mCacheStream.write(buffer, offset, count);
+            } catch (IOException e) {
+                mWriteFailed = true;
+            }
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            // skipped bytes have to be written to the cache as well
+            byte[] buffer = new byte[(int) Math.min(byteCount, 4096)];
+            int read = read(buffer, 0, buffer.length);
+            return read == -1 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) return;
+            mClosed = true;
+
+            // decoders may stop before end of the stream (i.e. gzip trailer), read the rest
+            if (!mComplete && !mWriteFailed && !mAborted) {
+                try {
+                    byte[] buffer = new byte[4096];
+                    int drained = 0;
+                    int read;
+                    while (drained < MAX_DRAIN_BYTES && (read = read(buffer, 0, buffer.length)) != -1) {
+                        drained += read;
+                    }
+                } catch (IOException e) {
+                    mWriteFailed = true;
+                }
+            }
+
+            try {
+                mCacheStream.close();
+            } catch (IOException e) {
+                mWriteFailed = true;
+            }
+
+            // body which failed to be processed is not served from the cache
+            if (mComplete && !mWriteFailed && !mAborted) {
+                commit(mKey, mEntry, mTempFile);
+            } else {
+                mTempFile.delete();
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.doodeec.utils.network.cache;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parsing and formatting of HTTP dates (RFC 1123 and obsolete formats)
+ *
+ * @author dusan.bartos
+ */
+public final class HttpDate {
+
+    private static final String[] FORMATS = new String[]{
+            "EEE, dd MMM yyyy HH:mm:ss zzz",
+            "EEEE, dd-MMM-yy HH:mm:ss zzz",
+            "EEE MMM d HH:mm:ss yyyy"
+    };
+
+    private static final ThreadLocal<DateFormat[]> sFormats = new ThreadLocal<DateFormat[]>() {
+        @Override
+        protected DateFormat[] initialValue() {
+            DateFormat[] formats = new DateFormat[FORMATS.length];
+            for (int i = 0; i < FORMATS.length; i++) {
+                formats[i] = new SimpleDateFormat(FORMATS[i], Locale.US);
+                formats[i].setTimeZone(TimeZone.getTimeZone("GMT"));
+                formats[i].setLenient(false);
+            }
+            return formats;
+        }
+    };
+
+    private HttpDate() {
+    }
+
+    /**
+     * Parses HTTP date
+     *
+     * @param value header value
+     *
+     * @return time in milliseconds, -1 when value is missing or invalid
+     */
+    public static long parse(String value) {
+        if (value == null) return -1;
+        for (DateFormat format : sFormats.get()) {
+            try {
+                return format.parse(value.trim()).getTime();
+            } catch (ParseException ignored) {
+                // try next format
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Formats time as RFC 1123 date
+     *
+     * @param time time in milliseconds
+     *
+     * @return formatted date
+     */
+    public static String format(long time) {
+        return sFormats.get()[0].format(new Date(time));
+    }
+}
@@ -0,0 +1,70 @@
+package com.doodeec.utils.network.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * GSON type adapter factory providing adapters generated for {@link JsonModel} classes
+ * Returns null for other types, so GSON falls back to reflective adapter
+ * Registered in default GSON converter, custom converter should register it as well
+ * <p/>
+ * {@code new GsonBuilder().registerTypeAdapterFactory(new GeneratedAdapterFactory()).create()}
+ *
+ * @author dusan.bartos
+ * @see com.doodeec.utils.network.JsonDecoder#setGsonConverter(Gson)
+ */
+@SuppressWarnings("unused")
+public final class GeneratedAdapterFactory implements TypeAdapterFactory {
+
+    /**
+     * Suffix of generated adapter class name
+     */
+    public static final String ADAPTER_SUFFIX = "_JsonAdapter";
+
+    /**
+     * Returns name of the adapter generated for given class
+     * i.e. {@code com.example.Outer_Inner_JsonAdapter} for {@code com.example.Outer.Inner}
+     *
+     * @param cls model class
+     *
+     * @return fully qualified name of the adapter class
+     */
+    public static String getAdapterName(Class<?> cls) {
+        String name = cls.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        return name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + ADAPTER_SUFFIX;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (!rawType.isAnnotationPresent(JsonModel.class)) {
+            return null;
+        }
+
+        Class<?> adapterClass;
+        try {
+            adapterClass = Class.forName(getAdapterName(rawType), true, rawType.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            // annotation processor was not applied to the module of the model
+            return null;
+        }
+        try {
+            return (TypeAdapter<T>) adapterClass.getConstructor(Gson.class).newInstance(gson);
+        } catch (NoSuchMethodException e) {
+            throw new JsonIOException("Invalid generated adapter " + adapterClass.getName(), e);
+        } catch (InstantiationException e) {
+            throw new JsonIOException("Invalid generated adapter " + adapterClass.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new JsonIOException("Invalid generated adapter " + adapterClass.getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new JsonIOException("Cannot create generated adapter " + adapterClass.getName(), e.getCause());
+        }
+    }
+}
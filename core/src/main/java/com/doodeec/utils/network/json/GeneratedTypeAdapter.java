@@ -0,0 +1,94 @@
+package com.doodeec.utils.network.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Base class of type adapters generated for {@link JsonModel} classes
+ * Values are read with the same coercion as GSON built-in adapters
+ *
+ * @author dusan.bartos
+ */
+@SuppressWarnings("unused")
+public abstract class GeneratedTypeAdapter<T> extends TypeAdapter<T> {
+
+    /**
+     * Consumes JSON null
+     *
+     * @return true when next value was null
+     */
+    protected static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    protected static int readInt(JsonReader in) throws IOException {
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    protected static long readLong(JsonReader in) throws IOException {
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    protected static double readDouble(JsonReader in) throws IOException {
+        try {
+            return in.nextDouble();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    protected static float readFloat(JsonReader in) throws IOException {
+        return (float) readDouble(in);
+    }
+
+    protected static boolean readBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            // lenient, same as GSON
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * @return string value, null for JSON null
+     */
+    protected static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Writes value by delegate adapter, null is written without calling the adapter
+     */
+    protected static <V> void write(JsonWriter out, TypeAdapter<V> adapter, V value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            adapter.write(out, value);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.doodeec.utils.network.json;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks response model class, for which the {@code processor} module generates GSON type adapter
+ * Generated adapter reads and writes fields directly, without reflection
+ * <p/>
+ * Class must not be private or generic, nested class must be static and it has to have no-arg
+ * constructor. Serialized fields must not be private. Static and transient fields are skipped,
+ * {@code SerializedName} is respected, other GSON exclusion and naming settings are not applied
+ *
+ * @author dusan.bartos
+ * @see GeneratedAdapterFactory
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JsonModel {
+}
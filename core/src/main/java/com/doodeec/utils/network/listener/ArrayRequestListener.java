@@ -0,0 +1,23 @@
+package com.doodeec.utils.network.listener;
+
+import java.util.List;
+
+/**
+ * Request listener for array requests (i.e. {@code ArrayServerRequest})
+ * Elements of the response array are delivered in batches while the response is being read,
+ * {@link #onSuccess(Object)} is called with total number of delivered elements once the whole
+ * array is processed
+ *
+ * @author dusan.bartos
+ */
+public interface ArrayRequestListener<ElementType> extends BaseRequestListener<Integer> {
+
+    /**
+     * Fired for every batch of parsed elements
+     * Called from the background thread, so elements can be persisted directly. To display
+     * elements, post them to the UI thread
+     *
+     * @param elements parsed elements
+     */
+    void onElements(List<ElementType> elements);
+}
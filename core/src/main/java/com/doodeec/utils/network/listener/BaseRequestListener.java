@@ -3,7 +3,7 @@ package com.doodeec.utils.network.listener;
 import com.doodeec.utils.network.RequestError;
 
 /**
- * Base generic Request listener called by {@link com.doodeec.utils.network.BaseServerRequest}
+ * Base generic Request listener called by {@link com.doodeec.utils.network.ServerCall}
  *
  * @author dusan.bartos
  */
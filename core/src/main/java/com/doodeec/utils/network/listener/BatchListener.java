@@ -0,0 +1,29 @@
+package com.doodeec.utils.network.listener;
+
+import com.doodeec.utils.network.CommunicatorResponse;
+import com.doodeec.utils.network.RequestBatch;
+
+/**
+ * Listener of {@link RequestBatch}
+ * Callbacks are called on the callback executor of the batch
+ *
+ * @author dusan.bartos
+ */
+public interface BatchListener {
+
+    /**
+     * Called when single request of the batch is finished
+     * Listener of the request itself is called before
+     *
+     * @param index    index of the request in the batch
+     * @param response response, cancelled when the request was not executed
+     */
+    void onItemComplete(int index, CommunicatorResponse<?> response);
+
+    /**
+     * Called once all requests of the batch are finished, failed or cancelled
+     *
+     * @param batch finished batch
+     */
+    void onComplete(RequestBatch batch);
+}
@@ -0,0 +1,24 @@
+package com.doodeec.utils.network.listener;
+
+/**
+ * Optional interface of request listener, which receives transferred bytes along with
+ * {@link BaseRequestListener#onProgress(Integer)}
+ * Callbacks are called on the UI thread and are throttled like the progress
+ *
+ * @author dusan.bartos
+ * @see com.doodeec.utils.network.ServerCall#setProgressThrottle(long, int)
+ */
+public interface ByteProgressListener {
+
+    /**
+     * @param bytesWritten number of request body bytes written
+     * @param totalBytes   request body length, -1 if unknown
+     */
+    void onUploadProgress(long bytesWritten, long totalBytes);
+
+    /**
+     * @param bytesRead  number of response body bytes read
+     * @param totalBytes response Content-Length, -1 if unknown
+     */
+    void onDownloadProgress(long bytesRead, long totalBytes);
+}
@@ -0,0 +1,96 @@
+package com.doodeec.utils.network.metrics;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of latency statistics of one endpoint
+ * Latencies are in microseconds
+ *
+ * @author dusan.bartos
+ * @see LatencyRegistry#snapshot()
+ */
+@SuppressWarnings("unused")
+public class EndpointStats {
+
+    private final String mEndpoint;
+    private final long mCount;
+    private final long mErrorCount;
+    private final long mMeanMicros;
+    private final long mP50Micros;
+    private final long mP95Micros;
+    private final long mP99Micros;
+    private final long mMaxMicros;
+
+    EndpointStats(String endpoint, long count, long errorCount, long meanMicros,
+                  long p50Micros, long p95Micros, long p99Micros, long maxMicros) {
+        mEndpoint = endpoint;
+        mCount = count;
+        mErrorCount = errorCount;
+        mMeanMicros = meanMicros;
+        mP50Micros = p50Micros;
+        mP95Micros = p95Micros;
+        mP99Micros = p99Micros;
+        mMaxMicros = maxMicros;
+    }
+
+    /**
+     * @return endpoint template, i.e. "GET api.example.com/users/{id}"
+     */
+    public String getEndpoint() {
+        return mEndpoint;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * @return ratio of failed requests (0 - 1)
+     */
+    public double getErrorRate() {
+        return mCount == 0 ? 0 : (double) mErrorCount / mCount;
+    }
+
+    public long getMeanMicros() {
+        return mMeanMicros;
+    }
+
+    public long getP50Micros() {
+        return mP50Micros;
+    }
+
+    public long getP95Micros() {
+        return mP95Micros;
+    }
+
+    public long getP99Micros() {
+        return mP99Micros;
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros;
+    }
+
+    /**
+     * Exports statistics as JSON object
+     *
+     * @return JSON string
+     */
+    public String toJson() {
+        return String.format(Locale.US, "{\"endpoint\":\"%s\",\"count\":%d,\"errors\":%d,\"errorRate\":%.4f,"
+                        + "\"meanMicros\":%d,\"p50Micros\":%d,\"p95Micros\":%d,\"p99Micros\":%d,\"maxMicros\":%d}",
+                mEndpoint.replace("\\", "\\\\").replace("\"", "\\\""), mCount, mErrorCount, getErrorRate(),
+                mMeanMicros, mP50Micros, mP95Micros, mP99Micros, mMaxMicros);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s count=%d errors=%.1f%% p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                mEndpoint, mCount, getErrorRate() * 100, mP50Micros / 1000.0, mP95Micros / 1000.0,
+                mP99Micros / 1000.0, mMaxMicros / 1000.0);
+    }
+}
@@ -0,0 +1,161 @@
+package com.doodeec.utils.network.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets
+ * Values are recorded in microseconds, every power of two is split into 16 buckets, so the
+ * relative error of reported percentiles is below 7%
+ *
+ * @author dusan.bartos
+ */
+@SuppressWarnings("unused")
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values above 2^36 microseconds (~19 hours) are recorded into the last bucket
+     */
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Records request duration
+     *
+     * @param micros duration in microseconds
+     * @param error  true if request failed
+     */
+    public void record(long micros, boolean error) {
+        if (micros < 0) micros = 0;
+        mBuckets.incrementAndGet(bucketIndex(micros));
+        mCount.incrementAndGet();
+        mTotalMicros.addAndGet(micros);
+        if (error) {
+            mErrorCount.incrementAndGet();
+        }
+        long max;
+        while (micros > (max = mMaxMicros.get())) {
+            if (mMaxMicros.compareAndSet(max, micros)) break;
+        }
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return number of recorded failed requests
+     */
+    public long getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    /**
+     * Computes value at the given percentile
+     * Result is the upper bound of the bucket, which contains the percentile
+     *
+     * @param percentile percentile (0 - 100)
+     *
+     * @return value in microseconds, 0 when histogram is empty
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = copyBuckets();
+        return percentile(counts, sum(counts), percentile);
+    }
+
+    /**
+     * Creates consistent snapshot of the histogram
+     *
+     * @param endpoint endpoint name
+     *
+     * @return snapshot
+     */
+    public EndpointStats snapshot(String endpoint) {
+        long[] counts = copyBuckets();
+        long total = sum(counts);
+        // counters are not updated atomically with buckets, values are clamped to bucket total
+        long errors = Math.min(mErrorCount.get(), total);
+        long count = mCount.get();
+        long mean = count == 0 ? 0 : mTotalMicros.get() / count;
+        return new EndpointStats(endpoint, total, errors, mean,
+                percentile(counts, total, 50), percentile(counts, total, 95),
+                percentile(counts, total, 99), mMaxMicros.get());
+    }
+
+    /**
+     * Clears all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mErrorCount.set(0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    private long[] copyBuckets() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.get(i);
+        }
+        return counts;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(counts.length - 1);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
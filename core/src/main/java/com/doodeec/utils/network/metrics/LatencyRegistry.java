@@ -0,0 +1,180 @@
+package com.doodeec.utils.network.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-process registry of per-endpoint latency histograms
+ * Request URLs are reduced to endpoint templates (query is dropped, numeric, UUID and hash path
+ * segments are replaced with {id}), so number of histograms does not grow with every resource id
+ * Recording is lock-free and can be called from any thread
+ *
+ * @author dusan.bartos
+ * @see com.doodeec.utils.network.ServerCall#setLatencyRegistry(LatencyRegistry)
+ */
+@SuppressWarnings("unused")
+public class LatencyRegistry {
+
+    /**
+     * Endpoint used when maximum number of endpoints is reached
+     */
+    public static final String OTHER_ENDPOINT = "other";
+
+    private static final String ID_PLACEHOLDER = "{id}";
+
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+
+    private final ConcurrentMap<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+    private final int mMaxEndpoints;
+
+    /**
+     * Creates registry limited to 200 endpoints
+     */
+    public LatencyRegistry() {
+        this(200);
+    }
+
+    /**
+     * Creates registry
+     *
+     * @param maxEndpoints maximum number of tracked endpoints, further endpoints are recorded
+     *                     as {@link #OTHER_ENDPOINT}
+     */
+    public LatencyRegistry(int maxEndpoints) {
+        if (maxEndpoints < 1) {
+            throw new IllegalArgumentException("maxEndpoints < 1: " + maxEndpoints);
+        }
+        mMaxEndpoints = maxEndpoints;
+    }
+
+    /**
+     * Records request duration
+     *
+     * @param method request method
+     * @param url    request url
+     * @param micros duration in microseconds
+     * @param error  true if request failed
+     */
+    public void record(String method, String url, long micros, boolean error) {
+        getHistogram(method + " " + toTemplate(url)).record(micros, error);
+    }
+
+    /**
+     * Gets histogram of the endpoint, histogram is created when it does not exist
+     *
+     * @param endpoint endpoint name
+     *
+     * @return histogram
+     */
+    public LatencyHistogram getHistogram(String endpoint) {
+        LatencyHistogram histogram = mHistograms.get(endpoint);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (mHistograms.size() >= mMaxEndpoints) {
+            endpoint = OTHER_ENDPOINT;
+        }
+        histogram = new LatencyHistogram();
+        LatencyHistogram existing = mHistograms.putIfAbsent(endpoint, histogram);
+        return existing != null ? existing : histogram;
+    }
+
+    /**
+     * Estimates duration of the request from recorded history of its endpoint
+     * Histogram is not created when the endpoint was not recorded yet
+     *
+     * @param method     request method
+     * @param url        request url
+     * @param percentile percentile (0 - 100)
+     *
+     * @return duration in microseconds, -1 when there is no history
+     */
+    public long getExpectedLatency(String method, String url, double percentile) {
+        LatencyHistogram histogram = mHistograms.get(method + " " + toTemplate(url));
+        if (histogram == null || histogram.getCount() == 0) {
+            return -1;
+        }
+        return histogram.getPercentile(percentile);
+    }
+
+    /**
+     * Reduces url to endpoint template
+     * Can be overridden to provide application specific templates
+     *
+     * @param url request url
+     *
+     * @return template, i.e. "api.example.com/users/{id}" for "https://api.example.com/users/42?full=1"
+     */
+    protected String toTemplate(String url) {
+        if (url == null) {
+            return "";
+        }
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = url.length();
+        int query = url.indexOf('?', start);
+        if (query >= 0) end = query;
+        int fragment = url.indexOf('#', start);
+        if (fragment >= 0 && fragment < end) end = fragment;
+
+        String[] segments = url.substring(start, end).split("/", -1);
+        StringBuilder template = new StringBuilder(end - start);
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) template.append('/');
+            // first segment is the host
+            if (i > 0 && ID_SEGMENT.matcher(segments[i]).matches()) {
+                template.append(ID_PLACEHOLDER);
+            } else {
+                template.append(segments[i]);
+            }
+        }
+        return template.toString();
+    }
+
+    /**
+     * Creates snapshot of all endpoints, sorted by endpoint name
+     *
+     * @return endpoint statistics
+     */
+    public List<EndpointStats> snapshot() {
+        List<EndpointStats> stats = new ArrayList<>(mHistograms.size());
+        for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            stats.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        Collections.sort(stats, new Comparator<EndpointStats>() {
+            @Override
+            public int compare(EndpointStats lhs, EndpointStats rhs) {
+                return lhs.getEndpoint().compareTo(rhs.getEndpoint());
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * Exports snapshot of all endpoints as JSON array
+     *
+     * @return JSON string
+     */
+    public String exportJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (EndpointStats stats : snapshot()) {
+            if (json.length() > 1) json.append(',');
+            json.append(stats.toJson());
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Removes all histograms
+     */
+    public void reset() {
+        mHistograms.clear();
+    }
+}
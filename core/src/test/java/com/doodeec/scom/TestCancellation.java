@@ -0,0 +1,194 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestCancellation {
+
+    static class User {
+        String name;
+    }
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private ExecutorService mExecutor;
+    private String mBaseUrl;
+    private final CountDownLatch mBodyStarted = new CountDownLatch(1);
+    private final CountDownLatch mAborted = new CountDownLatch(1);
+    private NioTransport mTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mServerExecutor = Executors.newFixedThreadPool(4);
+        mExecutor = Executors.newFixedThreadPool(2);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(mServerExecutor);
+        mServer.createContext("/stall", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // body is started and never finished
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream os = exchange.getResponseBody();
+                os.write("{\"name\":\"".getBytes("UTF-8"));
+                os.flush();
+                mBodyStarted.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException ignored) {
+                }
+                exchange.close();
+            }
+        });
+        mServer.createContext("/silent", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // request is accepted, response never starts
+                mBodyStarted.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException ignored) {
+                }
+                exchange.close();
+            }
+        });
+        mServer.createContext("/trickle", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // body is streamed slowly, until the client closes the connection
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream os = exchange.getResponseBody();
+                os.write("{\"name\":\"".getBytes("UTF-8"));
+                mBodyStarted.countDown();
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        os.write('x');
+                        os.flush();
+                        Thread.sleep(50);
+                    }
+                } catch (InterruptedException ignored) {
+                } catch (IOException e) {
+                    mAborted.countDown();
+                }
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mTransport = new NioTransport();
+    }
+
+    @After
+    public void tearDown() {
+        mTransport.shutdown();
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testCancelAll_abortsRead() throws Exception {
+        Object owner = new Object();
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setOwner(owner);
+        Future<CommunicatorResponse<User>> future = call.enqueue(mExecutor, mBaseUrl + "/trickle", null);
+
+        assertThat(mBodyStarted.await(5, TimeUnit.SECONDS), is(true));
+        long start = System.nanoTime();
+        assertThat(ServerCall.cancelAll(owner), is(1));
+
+        CommunicatorResponse<User> response = future.get(5, TimeUnit.SECONDS);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000, is(true));
+        assertThat(response.isCancelled(), is(true));
+        assertThat(response.hasError(), is(false));
+        // connection was closed instead of reading the rest of the body
+        assertThat(mAborted.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(ServerCall.getInFlightCount(), is(0));
+    }
+
+    @Test
+    public void testCancelAll_abortsBlockedRead() throws Exception {
+        Object owner = new Object();
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setOwner(owner);
+        call.setTransport(mTransport);
+        Future<CommunicatorResponse<User>> future = call.enqueue(mExecutor, mBaseUrl + "/stall", null);
+
+        assertThat(mBodyStarted.await(5, TimeUnit.SECONDS), is(true));
+        long start = System.nanoTime();
+        assertThat(ServerCall.cancelAll(owner), is(1));
+
+        CommunicatorResponse<User> response = future.get(5, TimeUnit.SECONDS);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000, is(true));
+        assertThat(response.isCancelled(), is(true));
+        assertThat(response.hasError(), is(false));
+        assertThat(ServerCall.getInFlightCount(), is(0));
+    }
+
+    @Test
+    public void testCancelAll_abortsBlockedRead_urlConnection() throws Exception {
+        Object owner = new Object();
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setOwner(owner);
+        call.setTransport(new UrlConnectionTransport());
+        Future<CommunicatorResponse<User>> future = call.enqueue(mExecutor, mBaseUrl + "/silent", null);
+
+        assertThat(mBodyStarted.await(5, TimeUnit.SECONDS), is(true));
+        // worker is blocked waiting for the response
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        assertThat(ServerCall.cancelAll(owner), is(1));
+        // cancel does not wait for the blocked worker
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100, is(true));
+
+        CommunicatorResponse<User> response = future.get(5, TimeUnit.SECONDS);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000, is(true));
+        assertThat(response.isCancelled(), is(true));
+        assertThat(response.hasError(), is(false));
+        assertThat(ServerCall.getInFlightCount(), is(0));
+    }
+
+    @Test
+    public void testCancelAll_queuedAndOtherOwners() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            Object screen = "screen";
+            JsonCall<User> running = new JsonCall<>(RequestType.GET, User.class);
+            running.setOwner("session");
+            Future<CommunicatorResponse<User>> runningFuture = running.enqueue(single, mBaseUrl + "/trickle", null);
+            assertThat(mBodyStarted.await(5, TimeUnit.SECONDS), is(true));
+
+            // waits for the single thread
+            JsonCall<User> queued = new JsonCall<>(RequestType.GET, User.class);
+            queued.setOwner(screen);
+            Future<CommunicatorResponse<User>> queuedFuture = queued.enqueue(single, mBaseUrl + "/stall", null);
+
+            assertThat(ServerCall.cancelAll("screen"), is(1));
+            assertThat(running.isCancelled(), is(false));
+
+            assertThat(ServerCall.cancelAll("session"), is(1));
+            assertThat(runningFuture.get(5, TimeUnit.SECONDS).isCancelled(), is(true));
+            // queued call is not executed once it gets the thread
+            assertThat(queuedFuture.get(5, TimeUnit.SECONDS).isCancelled(), is(true));
+            assertThat(ServerCall.getInFlightCount(), is(0));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.doodeec.utils.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Keep-alive reuse of {@link UrlConnectionTransport} connections, counted by sockets accepted by
+ * a loopback server
+ */
+public class TestConnectionReuse {
+
+    static class User {
+        String name;
+    }
+
+    private ServerSocket mServerSocket;
+    private String mBaseUrl;
+    private final AtomicInteger mAccepted = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mBaseUrl = "http://127.0.0.1:" + mServerSocket.getLocalPort();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = mServerSocket.accept();
+                        mAccepted.incrementAndGet();
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }).start();
+                    }
+                } catch (IOException ignored) {
+                    // server socket closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ServerCall.setConnectionReuse(true);
+        mServerSocket.close();
+    }
+
+    /**
+     * Serves keep-alive connection until the client closes it or asks to close it
+     */
+    private static void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            OutputStream os = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                boolean close = false;
+                String line;
+                while ((line = reader.readLine()) != null && line.length() > 0) {
+                    if (line.equalsIgnoreCase("Connection: close")) {
+                        close = true;
+                    }
+                }
+                byte[] body;
+                String status;
+                if (requestLine.contains("/large")) {
+                    // error body above the drain limit of ServerCall, and above the limit of bytes
+                    // which JDK drains in background after the stream is closed
+                    body = new byte[1024 * 1024];
+                    Arrays.fill(body, (byte) 'x');
+                    status = "404 Not Found";
+                } else {
+                    body = "{\"name\":\"John\"}".getBytes("UTF-8");
+                    status = "200 OK";
+                }
+                String head = "HTTP/1.1 " + status + "\r\nContent-Type: application/json\r\nContent-Length: "
+                        + body.length + "\r\n" + (close ? "Connection: close\r\n" : "") + "\r\n";
+                os.write(head.getBytes("ISO-8859-1"));
+                os.write(body);
+                os.flush();
+                if (close) {
+                    break;
+                }
+            }
+        } catch (IOException ignored) {
+            // client closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private CommunicatorResponse<User> get(String path) {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setMaxRetries(0);
+        call.setRetryPolicy(retryPolicy);
+        return call.execute(mBaseUrl + path);
+    }
+
+    @Test
+    public void testConnectionReuse_sequentialRequestsShareConnection() {
+        assertThat(get("/user").getData().name, is("John"));
+        assertThat(get("/user").getData().name, is("John"));
+
+        assertThat(mAccepted.get(), is(1));
+    }
+
+    @Test
+    public void testConnectionReuse_undrainedBodyDisconnects() {
+        CommunicatorResponse<User> error = get("/large");
+        assertThat(error.hasError(), is(true));
+        assertThat(error.getStatusCode(), is(404));
+
+        // unread body over the drain limit is not consumed, its connection is closed
+        assertThat(get("/user").getData().name, is("John"));
+        assertThat(mAccepted.get(), is(2));
+    }
+
+    @Test
+    public void testConnectionReuse_disabled() {
+        String keepAlive = System.getProperty("http.keepAlive");
+        ServerCall.setConnectionReuse(false);
+
+        assertThat(get("/user").getData().name, is("John"));
+        assertThat(get("/user").getData().name, is("John"));
+
+        assertThat(mAccepted.get(), is(2));
+        // platform pool configuration is left to the application
+        assertThat(System.getProperty("http.keepAlive"), is(keepAlive));
+    }
+}
@@ -0,0 +1,134 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestContentDecoder {
+
+    static class User {
+        String name;
+    }
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+    private final AtomicReference<String> mAcceptEncoding = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mAcceptEncoding.set(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                String encoding = exchange.getRequestURI().getQuery();
+                byte[] body = "{\"name\":\"John\"}".getBytes("UTF-8");
+                if (encoding.equals("gzip")) {
+                    body = gzip(body);
+                } else if (encoding.equals("deflate")) {
+                    body = deflate(body, false);
+                } else if (encoding.equals("raw")) {
+                    body = deflate(body, true);
+                    encoding = "deflate";
+                } else if (encoding.equals("deflate,gzip")) {
+                    body = gzip(deflate(body, false));
+                    encoding = "deflate, gzip";
+                }
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(data);
+        gzip.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        deflate.write(data);
+        deflate.close();
+        return bytes.toByteArray();
+    }
+
+    private CommunicatorResponse<User> get(String encoding) {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        return call.execute(mBaseUrl + "/user?" + encoding);
+    }
+
+    @Test
+    public void testContentDecoder_builtIn() {
+        assertThat(get("gzip").getData().name, is("John"));
+        assertThat(get("deflate").getData().name, is("John"));
+        assertThat(get("raw").getData().name, is("John"));
+        assertThat(get("deflate,gzip").getData().name, is("John"));
+        assertThat(mAcceptEncoding.get(), is("gzip, deflate"));
+    }
+
+    @Test
+    public void testContentDecoder_custom() {
+        final AtomicInteger decoded = new AtomicInteger();
+        ServerCall.addContentDecoder(new ContentDecoder() {
+            @Override
+            public String getEncoding() {
+                return "x-test";
+            }
+
+            @Override
+            public InputStream decode(InputStream inputStream) {
+                decoded.incrementAndGet();
+                return inputStream;
+            }
+        });
+        try {
+            assertThat(get("x-test").getData().name, is("John"));
+            assertThat(decoded.get(), is(1));
+            // custom decoder is preferred
+            assertThat(mAcceptEncoding.get(), is("x-test, gzip, deflate"));
+        } finally {
+            ServerCall.removeContentDecoder("x-test");
+        }
+        assertThat(ServerCall.getAcceptEncoding(), is("gzip, deflate"));
+    }
+
+    @Test
+    public void testContentDecoder_zlibHeader() {
+        assertThat(DeflateInputStream.isZlibHeader(0x78, 0x9c), is(true));
+        assertThat(DeflateInputStream.isZlibHeader(0x78, 0x01), is(true));
+        // raw deflate block
+        assertThat(DeflateInputStream.isZlibHeader(0xab, 0x56), is(false));
+    }
+}
@@ -0,0 +1,246 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.cache.CacheEntry;
+import com.doodeec.utils.network.cache.DiskResponseCache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestDiskResponseCache {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("cache", "test");
+        mDirectory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private static Map<String, List<String>> headers(String... namesAndValues) {
+        Map<String, List<String>> headers = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], Arrays.asList(namesAndValues[i + 1]));
+        }
+        return headers;
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        inputStream.close();
+        return bytes.toString("UTF-8");
+    }
+
+    @Test
+    public void testCacheEntry_freshness() {
+        long now = System.currentTimeMillis();
+
+        CacheEntry maxAge = CacheEntry.fromResponse("http://host/a", headers("Cache-Control", "max-age=60"), now, now);
+        assertThat(maxAge.isFresh(now + 30000), is(true));
+        assertThat(maxAge.isFresh(now + 61000), is(false));
+
+        CacheEntry noCache = CacheEntry.fromResponse("http://host/a", headers("Cache-Control", "no-cache", "ETag", "\"v1\""), now, now);
+        assertThat(noCache.isFresh(now), is(false));
+        assertThat(noCache.hasValidators(), is(true));
+
+        assertThat(CacheEntry.fromResponse("http://host/a", headers("Cache-Control", "no-store, max-age=60"), now, now) == null, is(true));
+        // neither fresh nor revalidatable
+        assertThat(CacheEntry.fromResponse("http://host/a", headers("Content-Type", "application/json"), now, now) == null, is(true));
+    }
+
+    @Test
+    public void testCacheEntry_revalidated() {
+        long now = System.currentTimeMillis();
+        CacheEntry entry = CacheEntry.fromResponse("http://host/a", headers("Cache-Control", "max-age=0", "ETag", "\"v1\""), now, now);
+        assertThat(entry.isFresh(now + 1000), is(false));
+
+        CacheEntry revalidated = entry.revalidated(headers("Cache-Control", "max-age=60"), now + 1000, now + 1000);
+        assertThat(revalidated.isFresh(now + 2000), is(true));
+        assertThat(revalidated.getETag(), is("\"v1\""));
+    }
+
+    @Test
+    public void testDiskResponseCache_storeAndEvict() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 1500);
+        long now = System.currentTimeMillis();
+
+        for (String path : new String[]{"a", "b", "c"}) {
+            CacheEntry entry = CacheEntry.fromResponse("http://host/" + path, headers("ETag", "\"" + path + "\""), now, now);
+            char[] body = new char[600];
+            Arrays.fill(body, path.charAt(0));
+            assertThat(read(cache.put(entry, new ByteArrayInputStream(new String(body).getBytes("UTF-8")))).length(), is(600));
+        }
+
+        // oldest entry was evicted to fit the limit
+        assertThat(cache.get("http://host/a") == null, is(true));
+        CacheEntry cached = cache.get("http://host/c");
+        assertThat(cached.getETag(), is("\"c\""));
+        assertThat(read(cache.openBody(cached)).length(), is(600));
+        assertThat(cache.getSize() <= 1500, is(true));
+
+        // index is rebuilt from the directory
+        DiskResponseCache reopened = new DiskResponseCache(mDirectory, 1500);
+        assertThat(reopened.get("http://host/c") != null, is(true));
+    }
+
+    @Test
+    public void testDiskResponseCache_compression() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 1024 * 1024);
+        cache.setCompressionEnabled(true);
+        long now = System.currentTimeMillis();
+
+        char[] body = new char[10000];
+        Arrays.fill(body, 'z');
+        CacheEntry entry = CacheEntry.fromResponse("http://host/big", headers("Cache-Control", "max-age=60"), now, now);
+        read(cache.put(entry, new ByteArrayInputStream(new String(body).getBytes("UTF-8"))));
+
+        assertThat(cache.getSize() < 2000, is(true));
+        assertThat(read(cache.openBody(cache.get("http://host/big"))), is(new String(body)));
+    }
+
+    @Test
+    public void testDiskResponseCache_partialBodyDiscarded() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 1024 * 1024);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = CacheEntry.fromResponse("http://host/partial", headers("ETag", "\"p\""), now, now);
+
+        InputStream failing = new InputStream() {
+            private int mCount = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (mCount++ > 10) throw new IOException("connection reset");
+                return 'x';
+            }
+        };
+        InputStream inputStream = cache.put(entry, failing);
+        try {
+            read(inputStream);
+        } catch (IOException expected) {
+            inputStream.close();
+        }
+        assertThat(cache.get("http://host/partial") == null, is(true));
+    }
+
+    @Test
+    public void testDiskResponseCache_contentLengthOverLimit() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 1000);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = CacheEntry.fromResponse("http://host/large", headers("ETag", "\"l\""), now, now);
+
+        InputStream source = new ByteArrayInputStream(new byte[2000]);
+        // network stream is returned as is, nothing is written to disk
+        assertThat(cache.put(entry, source, 2000) == source, is(true));
+        assertThat(mDirectory.list().length, is(0));
+        assertThat(cache.getNetworkCount(), is(1));
+    }
+
+    @Test
+    public void testDiskResponseCache_bodyOutgrowsCache() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 1000);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = CacheEntry.fromResponse("http://host/large", headers("ETag", "\"l\""), now, now);
+
+        InputStream inputStream = cache.put(entry, new ByteArrayInputStream(new byte[2000]), -1);
+        byte[] buffer = new byte[1500];
+        assertThat(inputStream.read(buffer), is(1500));
+        // temp file is abandoned before the body is fully read
+        assertThat(mDirectory.list().length, is(0));
+
+        assertThat(read(inputStream).length(), is(500));
+        assertThat(cache.get("http://host/large") == null, is(true));
+        assertThat(cache.getSize(), is(0L));
+    }
+
+    @Test
+    public void testDiskResponseCache_abortedEntryDiscarded() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 1024 * 1024);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = CacheEntry.fromResponse("http://host/aborted", headers("ETag", "\"a\""), now, now);
+
+        InputStream inputStream = cache.put(entry, new ByteArrayInputStream("{\"broken".getBytes("UTF-8")), -1);
+        byte[] buffer = new byte[64];
+        while (inputStream.read(buffer) != -1) {
+            // fully read, but processing failed
+        }
+        cache.abort(inputStream);
+        inputStream.close();
+
+        assertThat(cache.get("http://host/aborted") == null, is(true));
+        assertThat(mDirectory.list().length, is(0));
+    }
+
+    @Test
+    public void testDiskResponseCache_unparsedResponseNotCached() throws IOException {
+        final AtomicInteger hits = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/user", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                hits.incrementAndGet();
+                byte[] body = "{\"name\":".getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.start();
+        DiskResponseCache cache = new DiskResponseCache(mDirectory, 1024 * 1024);
+        ServerCall.setResponseCache(cache);
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/user";
+            for (int i = 0; i < 2; i++) {
+                JsonCall<Map> call = new JsonCall<>(RequestType.GET, Map.class);
+                RetryPolicy retryPolicy = new RetryPolicy();
+                retryPolicy.setMaxRetries(0);
+                call.setRetryPolicy(retryPolicy);
+                assertThat(call.execute(url).hasError(), is(true));
+            }
+
+            // malformed body was not stored, both calls reached the server
+            assertThat(hits.get(), is(2));
+            assertThat(cache.get(url) == null, is(true));
+        } finally {
+            ServerCall.setResponseCache(null);
+            server.stop(0);
+        }
+    }
+}
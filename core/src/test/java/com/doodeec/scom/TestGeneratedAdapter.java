@@ -0,0 +1,111 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.json.GeneratedAdapterFactory;
+import com.doodeec.utils.network.json.GeneratedTypeAdapter;
+import com.doodeec.utils.network.json.JsonModel;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.SerializedName;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestGeneratedAdapter {
+
+    enum Role {
+        ADMIN, USER
+    }
+
+    static class Base {
+        long id;
+    }
+
+    @JsonModel
+    static class Account extends Base {
+        int age;
+        double score;
+        float ratio;
+        boolean active;
+        short level;
+        String name;
+        Integer rank;
+        Role role;
+        @SerializedName("e-mail")
+        String email;
+        List<String> tags;
+        Map<String, Integer> counters;
+        Address address;
+        Account parent;
+        transient String session;
+        static String sStatic = "static";
+    }
+
+    @JsonModel
+    static class Address {
+        String city;
+    }
+
+    static class Plain {
+        String name;
+    }
+
+    private static final String JSON = "{\"id\":7,\"age\":\"42\",\"score\":1.5,\"ratio\":0.1,\"active\":\"true\","
+            + "\"level\":3,\"name\":true,\"rank\":null,\"role\":\"ADMIN\",\"e-mail\":\"john@example.com\","
+            + "\"tags\":[\"a\",\"b\"],\"counters\":{\"x\":1},\"address\":{\"city\":\"Bratislava\",\"zip\":\"81101\"},"
+            + "\"parent\":{\"name\":\"Jane\",\"age\":null},\"session\":\"s\",\"unknown\":{\"nested\":[1,2]}}";
+
+    private final Gson mGenerated = new GsonBuilder().registerTypeAdapterFactory(new GeneratedAdapterFactory()).create();
+    private final Gson mReflective = new GsonBuilder().create();
+
+    @Test
+    public void testFactory_generatedAdapter() {
+        assertThat(mGenerated.getAdapter(Account.class).getClass().getName(),
+                is(GeneratedAdapterFactory.getAdapterName(Account.class)));
+        assertThat(GeneratedAdapterFactory.getAdapterName(Account.class),
+                is("com.doodeec.utils.network.TestGeneratedAdapter_Account_JsonAdapter"));
+        // not annotated, reflective adapter
+        assertThat(mGenerated.getAdapter(Plain.class) instanceof GeneratedTypeAdapter, is(false));
+        // default converter of requests uses generated adapters
+        assertThat(JsonDecoder.getAdapter(Account.class) instanceof GeneratedTypeAdapter, is(true));
+    }
+
+    @Test
+    public void testGeneratedAdapter_read() {
+        Account generated = mGenerated.fromJson(JSON, Account.class);
+        Account reflective = mReflective.fromJson(JSON, Account.class);
+
+        assertThat(generated.id, is(reflective.id));
+        assertThat(generated.age, is(42));
+        assertThat(generated.score, is(reflective.score));
+        assertThat(generated.ratio, is(reflective.ratio));
+        assertThat(generated.active, is(true));
+        assertThat(generated.level, is((short) 3));
+        assertThat(generated.name, is("true"));
+        assertThat(generated.rank == null, is(true));
+        assertThat(generated.role, is(Role.ADMIN));
+        assertThat(generated.email, is("john@example.com"));
+        assertThat(generated.tags, is(reflective.tags));
+        assertThat(generated.counters, is(reflective.counters));
+        assertThat(generated.address.city, is("Bratislava"));
+        assertThat(generated.parent.name, is("Jane"));
+        assertThat(generated.parent.age, is(0));
+        assertThat(generated.session == null, is(true));
+    }
+
+    @Test
+    public void testGeneratedAdapter_write() {
+        Account account = mReflective.fromJson(JSON, Account.class);
+        account.session = "s";
+
+        assertThat(mGenerated.toJson(account), is(mReflective.toJson(account)));
+        assertThat(mGenerated.toJson(null, Account.class), is("null"));
+        Gson serializeNulls = new GsonBuilder().registerTypeAdapterFactory(new GeneratedAdapterFactory())
+                .serializeNulls().create();
+        assertThat(serializeNulls.toJson(new Address()), is("{\"city\":null}"));
+    }
+}
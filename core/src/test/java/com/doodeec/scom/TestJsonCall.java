@@ -0,0 +1,195 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestJsonCall {
+
+    static class User {
+        String name;
+        int age;
+    }
+
+    static class Page<T> {
+        int page;
+        List<T> items;
+    }
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/user", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "{\"name\":\"John\",\"age\":42}".getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        mServer.createContext("/users", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "{\"page\":2,\"items\":[{\"name\":\"John\",\"age\":42},{\"name\":\"Jane\"}]}"
+                        .getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        mServer.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void testJsonCall_execute() {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setStreamingParser(true);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/user");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData().name, is("John"));
+        assertThat(response.getData().age, is(42));
+        assertThat(response.getTimings().getAttempts(), is(1));
+    }
+
+    @Test
+    public void testJsonCall_enqueue() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final CountDownLatch latch = new CountDownLatch(2);
+            final AtomicReference<User> user = new AtomicReference<>();
+            final AtomicReference<RequestError> error = new AtomicReference<>();
+
+            new JsonCall<>(RequestType.GET, User.class).enqueue(executor, mBaseUrl + "/user",
+                    new Listener<User>(latch) {
+                        @Override
+                        public void onSuccess(User response) {
+                            user.set(response);
+                            super.onSuccess(response);
+                        }
+                    });
+            new JsonCall<>(RequestType.GET, User.class).enqueue(executor, mBaseUrl + "/missing",
+                    new Listener<User>(latch) {
+                        @Override
+                        public void onError(RequestError requestError) {
+                            error.set(requestError);
+                            super.onError(requestError);
+                        }
+                    });
+
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(user.get().name, is("John"));
+            assertThat(error.get().getStatusCode(), is(404));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testJsonCall_genericType() {
+        for (boolean streaming : new boolean[]{false, true}) {
+            JsonCall<Page<User>> call = new JsonCall<>(RequestType.GET, new TypeToken<Page<User>>() {
+            });
+            call.setStreamingParser(streaming);
+            CommunicatorResponse<Page<User>> response = call.execute(mBaseUrl + "/users");
+
+            assertThat(response.hasError(), is(false));
+            assertThat(response.getData().page, is(2));
+            assertThat(response.getData().items.size(), is(2));
+            // elements are deserialized as User, not as LinkedTreeMap
+            assertThat(response.getData().items.get(1).name, is("Jane"));
+        }
+    }
+
+    @Test
+    public void testJsonDecoder_adapterCache() {
+        Type type = new TypeToken<List<User>>() {
+        }.getType();
+        JsonDecoder.prewarm(type, User.class);
+        TypeAdapter<List<User>> adapter = JsonDecoder.getAdapter(type);
+
+        assertThat(JsonDecoder.<List<User>>getAdapter(new TypeToken<List<User>>() {
+        }.getType()) == adapter, is(true));
+        assertThat(JsonDecoder.<List<User>>fromJson("[{\"name\":\"John\"}]", type).get(0).name, is("John"));
+        assertThat(JsonDecoder.fromJson("", User.class) == null, is(true));
+
+        // adapters of previous converter are not reused
+        Gson converter = JsonDecoder.getGsonConverter();
+        try {
+            JsonDecoder.setGsonConverter(new GsonBuilder().create());
+            assertThat(JsonDecoder.<List<User>>getAdapter(type) == adapter, is(false));
+        } finally {
+            JsonDecoder.setGsonConverter(converter);
+        }
+    }
+
+    private static class Listener<T> implements BaseRequestListener<T> {
+        private final CountDownLatch mLatch;
+
+        Listener(CountDownLatch latch) {
+            mLatch = latch;
+        }
+
+        @Override
+        public void onError(RequestError error) {
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onSuccess(T response) {
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onCancelled() {
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onProgress(Integer progress) {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.doodeec.utils.network;
+
+import com.google.gson.JsonSyntaxException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class TestJsonDecoder {
+
+    static class User {
+        String name;
+        int age;
+    }
+
+    private static InputStream stream(String data) throws IOException {
+        return new ByteArrayInputStream(data.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testJsonDecoder_parseStream() throws IOException {
+        User user = JsonDecoder.parseStream(stream("{\"name\":\"John\",\"age\":42}"), User.class);
+        assertThat(user.name, is("John"));
+        assertThat(user.age, is(42));
+    }
+
+    @Test
+    public void testJsonDecoder_emptyBody() throws IOException {
+        assertThat(JsonDecoder.parseStream(stream(""), User.class) == null, is(true));
+    }
+
+    @Test
+    public void testJsonDecoder_gzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write("{\"name\":\"Jane\"}".getBytes("UTF-8"));
+        gzip.close();
+
+        User user = JsonDecoder.parseStream(new GZIPInputStream(
+                new ByteArrayInputStream(compressed.toByteArray())), User.class);
+        assertThat(user.name, is("Jane"));
+    }
+
+    @Test
+    public void testJsonDecoder_malformed() throws IOException {
+        try {
+            JsonDecoder.parseStream(stream("{\"name\":}"), User.class);
+            fail("Malformed JSON should throw JsonSyntaxException");
+        } catch (JsonSyntaxException e) {
+            // expected, not reported as I/O error, so it is not retried
+        }
+    }
+
+    @Test
+    public void testJsonDecoder_truncated() {
+        try {
+            JsonDecoder.parseStream(stream("{\"name\":\"John\","), User.class);
+            fail("Truncated stream should throw EOFException");
+        } catch (EOFException e) {
+            // expected
+        } catch (IOException e) {
+            fail("Unexpected exception " + e);
+        }
+    }
+
+    @Test
+    public void testJsonDecoder_readFailure() throws IOException {
+        InputStream failing = new InputStream() {
+            private final InputStream mData = stream("{\"name\":\"Jo");
+
+            @Override
+            public int read() throws IOException {
+                int b = mData.read();
+                if (b < 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                return b;
+            }
+        };
+        try {
+            JsonDecoder.parseStream(failing, User.class);
+            fail("Read timeout should be propagated");
+        } catch (SocketTimeoutException e) {
+            // transport failure keeps its type, so the request can be retried
+            assertThat(new RequestError(e, "http://example.com").getErrorType(), is(ErrorType.SocketTimeout));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.metrics.EndpointStats;
+import com.doodeec.utils.network.metrics.LatencyHistogram;
+import com.doodeec.utils.network.metrics.LatencyRegistry;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestLatencyRegistry {
+
+    @Test
+    public void testLatencyRegistry_templates() {
+        LatencyRegistry registry = new LatencyRegistry();
+        registry.record("GET", "https://api.example.com/users/42?full=1", 1000, false);
+        registry.record("GET", "https://api.example.com/users/43", 1000, true);
+        registry.record("GET", "https://api.example.com/files/123e4567-e89b-12d3-a456-426614174000/meta", 1000, false);
+
+        List<EndpointStats> stats = registry.snapshot();
+        assertThat(stats.size(), is(2));
+        assertThat(stats.get(0).getEndpoint(), is("GET api.example.com/files/{id}/meta"));
+        assertThat(stats.get(1).getEndpoint(), is("GET api.example.com/users/{id}"));
+        assertThat(stats.get(1).getCount(), is(2L));
+        assertThat(stats.get(1).getErrorRate(), is(0.5));
+    }
+
+    @Test
+    public void testLatencyRegistry_maxEndpoints() {
+        LatencyRegistry registry = new LatencyRegistry(1);
+        registry.record("GET", "http://example.com/a", 1000, false);
+        registry.record("GET", "http://example.com/b", 1000, false);
+        registry.record("GET", "http://example.com/c", 1000, false);
+
+        List<EndpointStats> stats = registry.snapshot();
+        assertThat(stats.size(), is(2));
+        assertThat(stats.get(1).getEndpoint(), is(LatencyRegistry.OTHER_ENDPOINT));
+        assertThat(stats.get(1).getCount(), is(2L));
+    }
+
+    @Test
+    public void testLatencyHistogram_percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000, false);
+        }
+        EndpointStats stats = histogram.snapshot("test");
+        assertThat(stats.getCount(), is(1000L));
+        assertThat(stats.getMaxMicros(), is(1000000L));
+        assertThat(within(stats.getP50Micros(), 500000), is(true));
+        assertThat(within(stats.getP95Micros(), 950000), is(true));
+        assertThat(within(stats.getP99Micros(), 990000), is(true));
+    }
+
+    private static boolean within(long value, long expected) {
+        return Math.abs(value - expected) <= expected * 0.07;
+    }
+}
@@ -0,0 +1,431 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class TestNioTransport {
+
+    static class User {
+        String name;
+        int age;
+    }
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+    private ExecutorService mExecutor;
+    private NioTransport mTransport;
+    private final Set<InetSocketAddress> mClients = Collections.newSetFromMap(
+            new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mExecutor = Executors.newFixedThreadPool(8);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/user", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, "{\"name\":\"John\",\"age\":42}", false);
+            }
+        });
+        mServer.createContext("/chunked", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, "{\"name\":\"Chunked\",\"age\":7}", true);
+            }
+        });
+        mServer.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, exchange.getRequestMethod() + " " + read(exchange.getRequestBody()), false);
+            }
+        });
+        mServer.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 404, "not found", false);
+            }
+        });
+        mServer.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ignored) {
+                }
+                send(exchange, 200, "late", false);
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mTransport = new NioTransport();
+    }
+
+    @After
+    public void tearDown() {
+        mTransport.shutdown();
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private void send(HttpExchange exchange, int status, String body, boolean chunked) throws IOException {
+        mClients.add(exchange.getRemoteAddress());
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, chunked ? 0 : bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testNioTransport_concurrentRequests() throws Exception {
+        mTransport.setMaxConnectionsPerHost(4);
+        int count = 500;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger ok = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            TransportRequest request = new TransportRequest(new URL(mBaseUrl + "/user?i=" + i), RequestType.GET);
+            mTransport.execute(request, null, new NioTransport.Callback() {
+                @Override
+                public void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+                    if (statusCode == 200 && new String(body).contains("John")) {
+                        ok.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(IOException e) {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertThat(latch.await(30, TimeUnit.SECONDS), is(true));
+        assertThat(ok.get(), is(count));
+        // all requests were sent over the pooled connections
+        assertThat(mClients.size() <= 4, is(true));
+    }
+
+    @Test
+    public void testNioTransport_jsonCall() {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setTransport(mTransport);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/user");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData().name, is("John"));
+        assertThat(response.getData().age, is(42));
+    }
+
+    @Test
+    public void testNioTransport_chunkedResponse() {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setTransport(mTransport);
+        call.setStreamingParser(true);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/chunked");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData().name, is("Chunked"));
+        assertThat(response.getData().age, is(7));
+    }
+
+    @Test
+    public void testNioTransport_postBody() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<String> result = new AtomicReference<>();
+        TransportRequest request = new TransportRequest(new URL(mBaseUrl + "/echo"), RequestType.POST);
+        byte[] body = "payload".getBytes("UTF-8");
+        request.setBody(body.length, 0);
+        mTransport.execute(request, body, new NioTransport.Callback() {
+            @Override
+            public void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+                result.set(new String(body));
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                latch.countDown();
+            }
+        });
+
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(result.get(), is("POST payload"));
+    }
+
+    @Test
+    public void testNioTransport_errorStatus() {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setTransport(mTransport);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/missing");
+
+        assertThat(response.hasError(), is(true));
+        assertThat(response.getError().getStatusCode(), is(404));
+    }
+
+    @Test
+    public void testNioTransport_preconnect() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try {
+            serverSocket.setSoTimeout(5000);
+            URL url = new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/user");
+            mTransport.preconnect(new TransportRequest(url, RequestType.GET));
+            Socket socket = serverSocket.accept();
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<String> result = new AtomicReference<>();
+            mTransport.execute(new TransportRequest(url, RequestType.GET), null, new NioTransport.Callback() {
+                @Override
+                public void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+                    result.set(new String(body));
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(IOException e) {
+                    latch.countDown();
+                }
+            });
+
+            // request arrives over the preconnected socket
+            socket.setSoTimeout(5000);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            assertThat(reader.readLine(), is("GET /user HTTP/1.1"));
+            OutputStream os = socket.getOutputStream();
+            os.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes("ISO-8859-1"));
+            os.flush();
+
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(result.get(), is("ok"));
+            socket.close();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Serves requests, second request is received and its connection is closed without response
+     */
+    private static Thread startDroppingServer(final ServerSocket serverSocket, final AtomicInteger requests) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+                        OutputStream os = socket.getOutputStream();
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            int contentLength = 0;
+                            while (!(line = reader.readLine()).isEmpty()) {
+                                if (line.toLowerCase().startsWith("content-length:")) {
+                                    contentLength = Integer.parseInt(line.substring(15).trim());
+                                }
+                            }
+                            for (int i = 0; i < contentLength; i++) {
+                                reader.read();
+                            }
+                            if (requests.incrementAndGet() == 2) {
+                                break;
+                            }
+                            os.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes("ISO-8859-1"));
+                            os.flush();
+                        }
+                        socket.close();
+                    }
+                } catch (IOException ignored) {
+                    // server socket closed
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private String executeSync(TransportRequest request, byte[] body, final AtomicReference<IOException> failure)
+            throws IOException, InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<String> result = new AtomicReference<>();
+        mTransport.execute(request, body, new NioTransport.Callback() {
+            @Override
+            public void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+                result.set(new String(body));
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                failure.set(e);
+                latch.countDown();
+            }
+        });
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        return result.get();
+    }
+
+    @Test
+    public void testNioTransport_staleConnectionRetry() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        AtomicInteger requests = new AtomicInteger();
+        startDroppingServer(serverSocket, requests);
+        try {
+            URL url = new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/user");
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            assertThat(executeSync(new TransportRequest(url, RequestType.GET), null, failure), is("ok"));
+
+            // GET dropped on the pooled connection is sent again over a new one
+            assertThat(executeSync(new TransportRequest(url, RequestType.GET), null, failure), is("ok"));
+            assertThat(requests.get(), is(3));
+            assertThat(failure.get() == null, is(true));
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testNioTransport_staleConnectionPostNotResent() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        AtomicInteger requests = new AtomicInteger();
+        startDroppingServer(serverSocket, requests);
+        try {
+            URL url = new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/user");
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            assertThat(executeSync(new TransportRequest(url, RequestType.GET), null, failure), is("ok"));
+
+            // POST was already written, server may have processed it
+            TransportRequest post = new TransportRequest(url, RequestType.POST);
+            byte[] body = "payload".getBytes("UTF-8");
+            post.setBody(body.length, 0);
+            assertThat(executeSync(post, body, failure) == null, is(true));
+            assertThat(failure.get() != null, is(true));
+            Thread.sleep(200);
+            assertThat(requests.get(), is(2));
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testNioTransport_cancel() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        TransportRequest request = new TransportRequest(new URL(mBaseUrl + "/slow"), RequestType.GET);
+        NioTransport.PendingExchange exchange = mTransport.execute(request, null, new NioTransport.Callback() {
+            @Override
+            public void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                failure.set(e);
+                latch.countDown();
+            }
+        });
+        exchange.cancel();
+
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(failure.get() instanceof InterruptedIOException, is(true));
+        assertThat(exchange.isDone(), is(true));
+    }
+
+    @Test
+    public void testNioTransport_queuedExchangeConnectTimeout() throws Exception {
+        mTransport.setMaxConnectionsPerHost(1);
+        TransportRequest slow = new TransportRequest(new URL(mBaseUrl + "/slow"), RequestType.GET);
+        mTransport.execute(slow, null, new NioTransport.Callback() {
+            @Override
+            public void onResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+            }
+        });
+
+        // the only connection is busy, queued exchange fails within its connect timeout
+        TransportRequest queued = new TransportRequest(new URL(mBaseUrl + "/user"), RequestType.GET);
+        queued.setTimeouts(300, 30000);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        long start = System.nanoTime();
+        assertThat(executeSync(queued, null, failure) == null, is(true));
+        assertThat(failure.get() instanceof SocketTimeoutException, is(true));
+        assertThat(failure.get().getMessage(), is("connect timed out"));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500, is(true));
+    }
+
+    @Test
+    public void testNioTransport_responseBodyLimit() throws Exception {
+        mServer.createContext("/large", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, new String(new char[5000]).replace('\0', 'x'), "true".equals(
+                        exchange.getRequestURI().getQuery()));
+            }
+        });
+        mTransport.setMaxResponseBodySize(4096);
+
+        for (String chunked : new String[]{"false", "true"}) {
+            Exchange exchange = mTransport.newExchange(new TransportRequest(
+                    new URL(mBaseUrl + "/large?" + chunked), RequestType.GET));
+            try {
+                exchange.getResponseCode();
+                fail("Oversized body must not be buffered");
+            } catch (ProtocolException e) {
+                assertThat(e.getMessage(), is("Response body exceeds 4096 bytes"));
+            }
+        }
+
+        // small response over the same transport is not affected
+        Exchange exchange = mTransport.newExchange(new TransportRequest(new URL(mBaseUrl + "/user"), RequestType.GET));
+        assertThat(exchange.getResponseCode(), is(200));
+        assertThat(read(exchange.getInputStream()).contains("John"), is(true));
+    }
+}
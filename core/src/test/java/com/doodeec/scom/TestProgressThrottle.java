@@ -0,0 +1,39 @@
+package com.doodeec.utils.network;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestProgressThrottle {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testProgressThrottle_knownLength() {
+        ProgressThrottle throttle = new ProgressThrottle(100, 5);
+        long now = System.nanoTime();
+
+        assertThat(throttle.allow(10, 1000, now), is(true));
+        // too soon
+        assertThat(throttle.allow(200, 1000, now + 50 * MS), is(false));
+        // percentage did not change enough
+        assertThat(throttle.allow(40, 1000, now + 200 * MS), is(false));
+        assertThat(throttle.allow(200, 1000, now + 200 * MS), is(true));
+        // completion is always delivered, but only once
+        assertThat(throttle.allow(1000, 1000, now + 210 * MS), is(true));
+        assertThat(throttle.allow(1000, 1000, now + 500 * MS), is(false));
+    }
+
+    @Test
+    public void testProgressThrottle_unknownLength() {
+        ProgressThrottle throttle = new ProgressThrottle(100, 5);
+        long now = System.nanoTime();
+
+        assertThat(throttle.allow(10, -1, now), is(true));
+        assertThat(throttle.allow(20, -1, now + 50 * MS), is(false));
+        assertThat(throttle.allow(30, -1, now + 150 * MS), is(true));
+    }
+}
@@ -0,0 +1,215 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.BatchListener;
+import com.doodeec.utils.network.metrics.LatencyRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestRequestBatch {
+
+    static class User {
+        String name;
+    }
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private ExecutorService mExecutor;
+    private String mBaseUrl;
+    private final AtomicInteger mActive = new AtomicInteger();
+    private final AtomicInteger mMaxActive = new AtomicInteger();
+    private final List<String> mPaths = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServerExecutor = Executors.newFixedThreadPool(8);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(mServerExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                mPaths.add(path);
+                int active = mActive.incrementAndGet();
+                synchronized (mMaxActive) {
+                    mMaxActive.set(Math.max(mMaxActive.get(), active));
+                }
+                try {
+                    if (path.startsWith("/slow")) {
+                        Thread.sleep(Long.parseLong(path.substring("/slow/".length())));
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    mActive.decrementAndGet();
+                }
+                int status = path.equals("/missing") ? 404 : 200;
+                byte[] body = ("{\"name\":\"" + path + "\"}").getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        ServerCall.setLatencyRegistry(new LatencyRegistry());
+    }
+
+    @After
+    public void tearDown() {
+        ServerCall.setLatencyRegistry(null);
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+        mExecutor.shutdownNow();
+    }
+
+    private static JsonCall<User> newCall() {
+        return new JsonCall<>(RequestType.GET, User.class);
+    }
+
+    private static class RecordingListener implements BatchListener {
+        final List<Integer> mItems = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch mComplete = new CountDownLatch(1);
+
+        @Override
+        public void onItemComplete(int index, CommunicatorResponse<?> response) {
+            mItems.add(index);
+        }
+
+        @Override
+        public void onComplete(RequestBatch batch) {
+            mComplete.countDown();
+        }
+    }
+
+    @Test
+    public void testBatch_completion() throws Exception {
+        RequestBatch batch = new RequestBatch(mExecutor);
+        batch.setMaxConcurrency(2);
+        for (int i = 0; i < 6; i++) {
+            batch.add(newCall(), mBaseUrl + "/slow/100?i=" + i);
+        }
+        RecordingListener listener = new RecordingListener();
+        batch.start(listener);
+
+        assertThat(listener.mComplete.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(batch.isDone(), is(true));
+        assertThat(batch.isFailed(), is(false));
+        assertThat(listener.mItems.size(), is(6));
+        assertThat(mMaxActive.get() <= 2, is(true));
+        for (int i = 0; i < 6; i++) {
+            User user = (User) batch.getResponse(i).getData();
+            assertThat(user.name, is("/slow/100"));
+        }
+    }
+
+    @Test
+    public void testBatch_rejectedByExecutor() throws Exception {
+        // single thread without queue rejects requests started while it is busy
+        ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>());
+        try {
+            RequestBatch batch = new RequestBatch(executor);
+            batch.setMaxConcurrency(3);
+            for (int i = 0; i < 3; i++) {
+                batch.add(newCall(), mBaseUrl + "/slow/200?i=" + i);
+            }
+            RecordingListener listener = new RecordingListener();
+            batch.start(listener);
+
+            assertThat(batch.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(batch.isFailed(), is(true));
+            assertThat(batch.getResponse(0).hasError(), is(false));
+            assertThat(batch.getResponse(1).hasError(), is(true));
+            assertThat(batch.getResponse(2).hasError(), is(true));
+            assertThat(listener.mComplete.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(listener.mItems.size(), is(3));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatch_empty() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        RequestBatch batch = new RequestBatch(mExecutor);
+        batch.start(listener);
+
+        assertThat(listener.mComplete.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(batch.getResponses().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testBatch_failFast() throws Exception {
+        RequestBatch batch = new RequestBatch(mExecutor);
+        batch.setMaxConcurrency(2);
+        batch.setFailFast(true);
+        batch.add(newCall(), mBaseUrl + "/missing");
+        batch.add(newCall(), mBaseUrl + "/slow/3000");
+        batch.add(newCall(), mBaseUrl + "/user");
+        batch.start(null);
+
+        assertThat(batch.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(batch.isFailed(), is(true));
+        assertThat(batch.getResponse(0).getError().getStatusCode(), is(404));
+        // running sibling was cancelled, pending one was never started
+        assertThat(batch.getResponse(1).isCancelled(), is(true));
+        assertThat(batch.getResponse(2).isCancelled(), is(true));
+        assertThat(mPaths.contains("/user"), is(false));
+    }
+
+    @Test
+    public void testBatch_deadline() throws Exception {
+        RequestBatch batch = new RequestBatch(mExecutor);
+        batch.setDeadline(200);
+        batch.add(newCall(), mBaseUrl + "/user");
+        batch.add(newCall(), mBaseUrl + "/slow/3000");
+        long start = System.nanoTime();
+        batch.start(null);
+
+        assertThat(batch.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000, is(true));
+        assertThat(batch.isDeadlineExceeded(), is(true));
+        assertThat(batch.getResponse(0).hasError(), is(false));
+        assertThat(batch.getResponse(1).isCancelled(), is(true));
+    }
+
+    @Test
+    public void testBatch_longestFirst() throws Exception {
+        ServerCall.getLatencyRegistry().record("GET", mBaseUrl + "/user", 1000, false);
+        ServerCall.getLatencyRegistry().record("GET", mBaseUrl + "/slow/50", 50000, false);
+
+        RequestBatch batch = new RequestBatch(mExecutor);
+        batch.setMaxConcurrency(1);
+        batch.add(newCall(), mBaseUrl + "/user");
+        batch.add(newCall(), mBaseUrl + "/unknown");
+        batch.add(newCall(), mBaseUrl + "/slow/50");
+        batch.start(null);
+
+        assertThat(batch.await(5, TimeUnit.SECONDS), is(true));
+        // request without history first, then by expected latency
+        assertThat(mPaths.toString(), is("[/unknown, /slow/50, /user]"));
+    }
+}
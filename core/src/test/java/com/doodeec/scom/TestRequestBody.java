@@ -0,0 +1,57 @@
+package com.doodeec.utils.network;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestRequestBody {
+
+    @Test
+    public void testRequestBody_lengths() throws Exception {
+        assertThat(RequestBody.create("\u010daj").contentLength(), is(4L));
+        assertThat(RequestBody.create(new byte[10]).contentLength(), is(10L));
+        assertThat(RequestBody.create(new ByteArrayInputStream(new byte[10])).contentLength(), is(-1L));
+        assertThat(RequestBody.create(new ByteArrayInputStream(new byte[10]), 10).contentLength(), is(10L));
+
+        File file = File.createTempFile("body", ".bin");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(new byte[123]);
+        fos.close();
+        assertThat(RequestBody.create(file).contentLength(), is(123L));
+    }
+
+    @Test
+    public void testRequestBody_byteBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(5);
+        buffer.put("hello".getBytes("UTF-8"));
+        buffer.flip();
+        buffer.get();
+
+        RequestBody body = RequestBody.create(buffer);
+        assertThat(body.contentLength(), is(4L));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertThat(out.toString("UTF-8"), is("ello"));
+        // buffer position is not modified, body can be written again
+        assertThat(buffer.remaining(), is(4));
+        assertThat(body.isRepeatable(), is(true));
+    }
+
+    @Test
+    public void testRequestBody_stream() throws Exception {
+        RequestBody body = RequestBody.create(new ByteArrayInputStream("data".getBytes("UTF-8")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertThat(out.toString("UTF-8"), is("data"));
+        assertThat(body.isRepeatable(), is(false));
+    }
+}
@@ -0,0 +1,111 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestRequestCompression {
+
+    static class Echo {
+        String name;
+        String encoding;
+        String transfer;
+    }
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                InputStream is = exchange.getRequestBody();
+                if ("gzip".equals(encoding)) {
+                    is = new GZIPInputStream(is);
+                }
+                String body = JsonDecoder.readString(is);
+                String transfer = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                byte[] response = ("{\"name\":\"" + body.length() + "\",\"encoding\":\"" + encoding
+                        + "\",\"transfer\":\"" + transfer + "\"}").getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(response);
+                os.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    private static String payload(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("{\"id\":").append(builder.length()).append(",\"active\":true},");
+        }
+        return builder.substring(0, length);
+    }
+
+    @Test
+    public void testRequestCompression_aboveThreshold() {
+        JsonCall<Echo> call = new JsonCall<>(RequestType.POST, payload(20000), Echo.class);
+        call.setRequestCompression(1024);
+        CommunicatorResponse<Echo> response = call.execute(mBaseUrl + "/echo");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData().name, is("20000"));
+        assertThat(response.getData().encoding, is("gzip"));
+        assertThat(response.getData().transfer, is("chunked"));
+        assertThat(response.getTimings().isRequestCompressed(), is(true));
+        assertThat(response.getTimings().getRequestBodyBytes(), is(20000L));
+        assertThat(response.getTimings().getSentBodyBytes() < 5000, is(true));
+    }
+
+    @Test
+    public void testRequestCompression_belowThreshold() {
+        JsonCall<Echo> call = new JsonCall<>(RequestType.POST, payload(500), Echo.class);
+        call.setRequestCompression(1024);
+        CommunicatorResponse<Echo> response = call.execute(mBaseUrl + "/echo");
+
+        assertThat(response.getData().name, is("500"));
+        assertThat(response.getData().encoding, is("null"));
+        assertThat(response.getTimings().isRequestCompressed(), is(false));
+        assertThat(response.getTimings().getSentBodyBytes(), is(500L));
+    }
+
+    @Test
+    public void testRequestCompression_nioTransport() {
+        NioTransport transport = new NioTransport();
+        try {
+            JsonCall<Echo> call = new JsonCall<>(RequestType.POST, payload(20000), Echo.class);
+            call.setTransport(transport);
+            call.setRequestCompression(0);
+            CommunicatorResponse<Echo> response = call.execute(mBaseUrl + "/echo");
+
+            assertThat(response.getData().name, is("20000"));
+            assertThat(response.getData().encoding, is("gzip"));
+        } finally {
+            transport.shutdown();
+        }
+    }
+}
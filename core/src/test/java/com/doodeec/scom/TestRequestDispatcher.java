@@ -0,0 +1,152 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestRequestDispatcher {
+
+    /**
+     * Executor which only collects tasks, so the test decides when they finish
+     */
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runNext() {
+            mTasks.remove(0).run();
+        }
+    }
+
+    /**
+     * Executor which rejects tasks above its capacity
+     */
+    private static class BoundedExecutor extends ManualExecutor {
+        private final int mCapacity;
+
+        BoundedExecutor(int capacity) {
+            mCapacity = capacity;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (mTasks.size() >= mCapacity) {
+                throw new RejectedExecutionException("full");
+            }
+            super.execute(command);
+        }
+    }
+
+    private static Runnable record(final List<String> log, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testDispatcher_tagLimit() {
+        ManualExecutor executor = new ManualExecutor();
+        RequestDispatcher dispatcher = new RequestDispatcher(executor);
+        dispatcher.setMaxRequestsForTag("images", 2);
+
+        List<String> log = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            dispatcher.enqueue(record(log, "image" + i), "host" + i, "images", RequestDispatcher.PRIORITY_NORMAL);
+        }
+        dispatcher.enqueue(record(log, "api"), "api.host", "api", RequestDispatcher.PRIORITY_NORMAL);
+
+        // two images and api call are running, two images wait for a free slot
+        assertThat(dispatcher.getRunningCount(), is(3));
+        assertThat(dispatcher.getQueuedCount(), is(2));
+
+        executor.runNext();
+        assertThat(dispatcher.getRunningCount(), is(3));
+        assertThat(dispatcher.getQueuedCount(), is(1));
+        assertThat(dispatcher.getStats().getDispatched(), is(4L));
+    }
+
+    @Test
+    public void testDispatcher_hostLimitAndPriority() {
+        ManualExecutor executor = new ManualExecutor();
+        RequestDispatcher dispatcher = new RequestDispatcher(executor);
+        dispatcher.setMaxRequestsPerHost(1);
+
+        List<String> log = new ArrayList<>();
+        dispatcher.enqueue(record(log, "first"), "host", null, RequestDispatcher.PRIORITY_NORMAL);
+        dispatcher.enqueue(record(log, "low"), "host", null, RequestDispatcher.PRIORITY_LOW);
+        dispatcher.enqueue(record(log, "normal"), "host", null, RequestDispatcher.PRIORITY_NORMAL);
+        dispatcher.enqueue(record(log, "high"), "host", null, RequestDispatcher.PRIORITY_HIGH);
+
+        while (!executor.mTasks.isEmpty()) {
+            executor.runNext();
+        }
+
+        assertThat(log.toString(), is("[first, high, normal, low]"));
+        assertThat(dispatcher.getRunningCount(), is(0));
+        assertThat(dispatcher.getQueuedCount(), is(0));
+    }
+
+    @Test
+    public void testDispatcher_rejectedTaskCancelled() {
+        BoundedExecutor executor = new BoundedExecutor(1);
+        RequestDispatcher dispatcher = new RequestDispatcher(executor);
+
+        List<String> log = new ArrayList<>();
+        FutureTask<Void> first = new FutureTask<>(record(log, "first"), null);
+        FutureTask<Void> rejected = new FutureTask<>(record(log, "rejected"), null);
+        dispatcher.enqueue(first, "host", null, RequestDispatcher.PRIORITY_NORMAL);
+        dispatcher.enqueue(rejected, "host", null, RequestDispatcher.PRIORITY_NORMAL);
+
+        final List<String> callbacks = new ArrayList<>();
+        JsonCall<String> call = new JsonCall<>(RequestType.GET, null, String.class);
+        call.enqueue(dispatcher, "http://host/path", new BaseRequestListener<String>() {
+            @Override
+            public void onError(RequestError error) {
+                callbacks.add("error");
+            }
+
+            @Override
+            public void onSuccess(String response) {
+                callbacks.add("success");
+            }
+
+            @Override
+            public void onCancelled() {
+                callbacks.add("cancelled");
+            }
+
+            @Override
+            public void onProgress(Integer progress) {
+            }
+        });
+
+        // rejected tasks are cancelled and do not occupy running slots
+        assertThat(rejected.isCancelled(), is(true));
+        assertThat(callbacks.toString(), is("[cancelled]"));
+        assertThat(dispatcher.getRunningCount(), is(1));
+        assertThat(dispatcher.getQueuedCount(), is(0));
+
+        // finishing the running task does not throw and the dispatcher keeps working
+        executor.runNext();
+        dispatcher.enqueue(record(log, "next"), "host", null, RequestDispatcher.PRIORITY_NORMAL);
+        executor.runNext();
+        assertThat(log.toString(), is("[first, next]"));
+        assertThat(dispatcher.getRunningCount(), is(0));
+    }
+}
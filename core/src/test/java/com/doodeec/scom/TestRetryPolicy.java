@@ -0,0 +1,115 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestRetryPolicy {
+
+    private static final String URL = "http://example.com";
+
+    @Test
+    public void testRetryPolicy_classification() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setJitter(0);
+
+        RequestError eof = new RequestError(new EOFException(), URL);
+        RequestError connect = new RequestError(new ConnectException(), "Connection timeout", URL);
+
+        assertThat(policy.getRetryDelay(RequestType.GET, eof, 0, 0, -1), is(200L));
+        assertThat(policy.getRetryDelay(RequestType.GET, eof, 2, 0, -1), is(800L));
+        // max retries reached
+        assertThat(policy.getRetryDelay(RequestType.GET, eof, 3, 0, -1), is(-1L));
+        // elapsed time cap
+        assertThat(policy.getRetryDelay(RequestType.GET, eof, 0, 29900, -1), is(-1L));
+
+        // POST is retried only when request was not sent
+        assertThat(policy.getRetryDelay(RequestType.POST, eof, 0, 0, -1), is(-1L));
+        assertThat(policy.getRetryDelay(RequestType.POST, connect, 0, 0, -1), is(200L));
+
+        // status codes
+        assertThat(policy.getRetryDelay(RequestType.GET, new RequestError(503, URL), 0, 0, 2000), is(2000L));
+        assertThat(policy.getRetryDelay(RequestType.GET, new RequestError(404, URL), 0, 0, -1), is(-1L));
+        assertThat(policy.getRetryDelay(RequestType.GET, new RequestError("Custom", URL), 0, 0, -1), is(-1L));
+    }
+
+    @Test
+    public void testRetryPolicy_retryAfter() {
+        long now = 1000000000000L;
+        assertThat(RetryPolicy.parseRetryAfter("120", now), is(120000L));
+        assertThat(RetryPolicy.parseRetryAfter(null, now), is(-1L));
+        assertThat(RetryPolicy.parseRetryAfter("soon", now), is(-1L));
+        // Sun, 09 Sep 2001 01:46:40 GMT + 30s
+        assertThat(RetryPolicy.parseRetryAfter("Sun, 09 Sep 2001 01:47:10 GMT", now), is(30000L));
+    }
+
+    @Test
+    public void testRetryBudget() {
+        RetryBudget budget = new RetryBudget(2, 0.5);
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(false));
+
+        budget.onRequest();
+        assertThat(budget.tryAcquire(), is(false));
+        budget.onRequest();
+        assertThat(budget.tryAcquire(), is(true));
+
+        // balance is capped
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest();
+        }
+        assertThat(budget.getAvailableRetries(), is(2));
+    }
+
+    @Test
+    public void testRetryPolicy_getWithNonRepeatableBody() throws IOException {
+        final AtomicInteger hits = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/flaky", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (hits.incrementAndGet() == 1) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = "\"ok\"".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.start();
+        try {
+            RetryPolicy policy = new RetryPolicy();
+            policy.setBackoff(0, 0, 1);
+            JsonCall<String> call = new JsonCall<>(RequestType.GET, null, String.class);
+            call.setRetryPolicy(policy);
+            // body is never sent with GET, so it does not prevent the retry
+            call.setRequestBody(RequestBody.create(new ByteArrayInputStream(new byte[10])));
+            CommunicatorResponse<String> response = call.execute(
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/flaky");
+
+            assertThat(response.hasError(), is(false));
+            assertThat(response.getData(), is("ok"));
+            assertThat(hits.get(), is(2));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.doodeec.utils.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * TLS session resumption against a loopback server with self-signed certificate
+ * Certificate is generated by keytool of the running JDK
+ */
+public class TestSessionResumption {
+
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    static class User {
+        String name;
+    }
+
+    private File mKeyStoreFile;
+    private SSLServerSocket mServerSocket;
+    private SSLContext mClientContext;
+    private String mBaseUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        mKeyStoreFile = File.createTempFile("server", ".jks");
+        mKeyStoreFile.delete();
+        Process keytool = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "keytool", "-genkeypair", "-alias", "server", "-keyalg", "RSA",
+                "-keysize", "2048", "-validity", "1", "-dname", "CN=localhost", "-ext", "san=ip:127.0.0.1",
+                "-storetype", "JKS", "-keystore", mKeyStoreFile.getPath(), "-storepass", "password",
+                "-keypass", "password").redirectErrorStream(true).start();
+        drain(keytool.getInputStream());
+        assertThat(keytool.waitFor(), is(0));
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream inputStream = new FileInputStream(mKeyStoreFile);
+        try {
+            keyStore.load(inputStream, PASSWORD);
+        } finally {
+            inputStream.close();
+        }
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        mClientContext = SSLContext.getInstance("TLS");
+        mClientContext.init(null, trustManagers.getTrustManagers(), null);
+
+        mServerSocket = (SSLServerSocket) serverContext.getServerSocketFactory()
+                .createServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        // session id resumption of TLS 1.2 is tracked by session creation time
+        mServerSocket.setEnabledProtocols(new String[]{"TLSv1.2"});
+        mBaseUrl = "https://127.0.0.1:" + mServerSocket.getLocalPort();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        serve(mServerSocket.accept());
+                    }
+                } catch (IOException ignored) {
+                    // server socket closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        ServerCall.setSSLContext(mClientContext);
+        // every request opens a new connection, so it performs its own handshake
+        ServerCall.setConnectionReuse(false);
+        HandshakeStats.reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ServerCall.setConnectionReuse(true);
+        // later tests use fresh default context
+        ServerCall.setSSLContext(newDefaultContext());
+        mServerSocket.close();
+        mKeyStoreFile.delete();
+    }
+
+    private static SSLContext newDefaultContext() {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            return sslContext;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (inputStream.read(buffer) != -1) {
+            // keytool output is not needed
+        }
+    }
+
+    private static void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                // request headers are not needed
+            }
+            byte[] body = "{\"name\":\"John\"}".getBytes("UTF-8");
+            OutputStream os = socket.getOutputStream();
+            os.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+                    + "\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+            os.write(body);
+            os.flush();
+        } catch (IOException ignored) {
+            // client closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private String get() {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setMaxRetries(0);
+        call.setRetryPolicy(retryPolicy);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/user");
+        assertThat(response.hasError(), is(false));
+        return response.getData().name;
+    }
+
+    /**
+     * Handshake listeners are notified asynchronously
+     */
+    private static void awaitHandshakes(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (HandshakeStats.getFullHandshakeCount() + HandshakeStats.getResumedHandshakeCount() < count
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSessionResumption_secondConnectionResumed() throws Exception {
+        assertThat(get(), is("John"));
+        // session creation time is compared with socket creation time in milliseconds
+        Thread.sleep(20);
+        assertThat(get(), is("John"));
+
+        awaitHandshakes(2);
+        assertThat(HandshakeStats.getFullHandshakeCount(), is(1L));
+        assertThat(HandshakeStats.getResumedHandshakeCount(), is(1L));
+    }
+
+    @Test
+    public void testSessionResumption_sharedSocketFactory() {
+        assertThat(ServerCall.getSocketFactory() == ServerCall.getSocketFactory(), is(true));
+
+        // new factory is created for replaced context, or after the context was re-initialized
+        SSLSocketFactory factory = ServerCall.getSocketFactory();
+        ServerCall.resetSocketFactory();
+        assertThat(ServerCall.getSocketFactory() == factory, is(false));
+        factory = ServerCall.getSocketFactory();
+        ServerCall.setSSLContext(newDefaultContext());
+        assertThat(ServerCall.getSocketFactory() == factory, is(false));
+    }
+
+    @Test
+    public void testSessionResumption_configureSessionCache() throws Exception {
+        ServerCall.configureSessionCache(16, 600);
+        SSLSessionContext sessionContext = mClientContext.getClientSessionContext();
+        assertThat(sessionContext.getSessionCacheSize(), is(16));
+        assertThat(sessionContext.getSessionTimeout(), is(600));
+
+        // sessions of the configured cache are resumed
+        assertThat(get(), is("John"));
+        Thread.sleep(20);
+        assertThat(get(), is("John"));
+        awaitHandshakes(2);
+        assertThat(HandshakeStats.getResumedHandshakeCount(), is(1L));
+    }
+}
@@ -0,0 +1,92 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestWarmup {
+
+    static class User {
+        String name;
+    }
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+    private final List<String> mMethods = Collections.synchronizedList(new ArrayList<String>());
+    private final List<InetSocketAddress> mClients = Collections.synchronizedList(new ArrayList<InetSocketAddress>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mMethods.add(exchange.getRequestMethod());
+                mClients.add(exchange.getRemoteAddress());
+                byte[] body;
+                if (exchange.getRequestMethod().equals("OPTIONS")) {
+                    exchange.getResponseHeaders().set("Allow", "GET, POST");
+                    body = "GET, POST".getBytes("UTF-8");
+                } else {
+                    body = "{\"name\":\"John\"}".getBytes("UTF-8");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void testWarmup() throws Exception {
+        ServerCall.warmup().get(10, TimeUnit.SECONDS);
+
+        assertThat(ServerCall.getSSLContext() != null, is(true));
+        assertThat(ServerCall.getSocketFactory() != null, is(true));
+    }
+
+    @Test
+    public void testPreconnect_connectionReused() throws Exception {
+        ServerCall.preconnect(mBaseUrl + "/api").get(10, TimeUnit.SECONDS);
+
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/api/user");
+
+        assertThat(response.getData().name, is("John"));
+        assertThat(mMethods.get(0), is("OPTIONS"));
+        assertThat(mMethods.get(1), is("GET"));
+        // request was sent over the preconnected connection
+        assertThat(mClients.get(1), is(mClients.get(0)));
+    }
+
+    @Test
+    public void testPreconnect_failureIgnored() throws Exception {
+        mServer.stop(0);
+
+        // failure is only logged, future completes normally
+        ServerCall.preconnect(mBaseUrl).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,292 @@
+package com.doodeec.utils.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * HTTP/2 transport based on JDK {@link HttpClient}
+ * Requests to single host are multiplexed as streams over one connection, with HPACK header
+ * compression and flow control handled by the client
+ * HTTP/2 is negotiated via ALPN for HTTPS and via h2c upgrade for plain HTTP, servers without
+ * HTTP/2 support are transparently served over HTTP/1.1
+ * Requires Java 11, not available on Android
+ *
+ * @author dusan.bartos
+ * @see ServerCall#setDefaultTransport(Transport)
+ */
+@SuppressWarnings("unused")
+public class Http2Transport implements Transport {
+
+    private final HttpClient mClient;
+    private final AtomicLong mHttp2Responses = new AtomicLong();
+    private final AtomicLong mHttp1Responses = new AtomicLong();
+
+    /**
+     * Creates transport with client from {@link #newClientBuilder()}
+     */
+    public Http2Transport() {
+        this(newClientBuilder().build());
+    }
+
+    /**
+     * Creates transport
+     *
+     * @param client client, which executes requests
+     */
+    public Http2Transport(HttpClient client) {
+        if (client == null) {
+            throw new NullPointerException("client == null");
+        }
+        mClient = client;
+    }
+
+    /**
+     * Creates client builder preconfigured for HTTP/2, redirects and shared SSL context
+     * Connection timeout is configured per client, request timeouts are applied per request
+     *
+     * @return client builder
+     *
+     * @see ServerCall#setSSLContext(SSLContext)
+     */
+    public static HttpClient.Builder newClientBuilder() {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30));
+        SSLContext sslContext = ServerCall.getSSLContext();
+        if (sslContext != null) {
+            builder.sslContext(sslContext);
+        }
+        return builder;
+    }
+
+    /**
+     * @return client, which executes requests
+     */
+    public HttpClient getClient() {
+        return mClient;
+    }
+
+    /**
+     * @return number of responses received over HTTP/2
+     */
+    public long getHttp2ResponseCount() {
+        return mHttp2Responses.get();
+    }
+
+    /**
+     * @return number of responses received over HTTP/1.1 fallback
+     */
+    public long getHttp1ResponseCount() {
+        return mHttp1Responses.get();
+    }
+
+    @Override
+    public Exchange newExchange(TransportRequest request) throws IOException {
+        return new Http2Exchange(request);
+    }
+
+    /**
+     * Sends HEAD request to the url, so the connection (with TLS handshake and HTTP/2 negotiation)
+     * is kept by the client for later requests
+     * Response status is ignored, only the connection matters
+     */
+    @Override
+    public void preconnect(TransportRequest request) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(request.getUrl().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid url " + request.getUrl(), e);
+        }
+        if (request.getReadTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(request.getReadTimeout()));
+        }
+        try {
+            mClient.send(builder.method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                    HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        }
+    }
+
+    /**
+     * Checks whether header can be set on the request
+     * Connection-specific and framing headers are managed by the client
+     *
+     * @param name header name
+     *
+     * @return true if header can be set
+     */
+    static boolean isAllowedHeader(String name) {
+        return !name.equalsIgnoreCase("Connection")
+                && !name.equalsIgnoreCase("Content-Length")
+                && !name.equalsIgnoreCase("Expect")
+                && !name.equalsIgnoreCase("Host")
+                && !name.equalsIgnoreCase("Upgrade")
+                && !name.equalsIgnoreCase("Transfer-Encoding")
+                && !name.equalsIgnoreCase("Keep-Alive");
+    }
+
+    /**
+     * Blocking exchange over the client
+     * Request body is buffered, response body is streamed
+     */
+    private class Http2Exchange implements Exchange {
+
+        private final TransportRequest mRequest;
+        private ByteArrayOutputStream mBody;
+        private volatile HttpResponse<InputStream> mResponse;
+
+        Http2Exchange(TransportRequest request) {
+            mRequest = request;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            // connection is picked from the client pool when the request is sent
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            if (!mRequest.hasBody()) {
+                throw new ProtocolException("Request has no body");
+            }
+            if (mResponse != null) {
+                throw new ProtocolException("Request was already sent");
+            }
+            if (mBody == null) {
+                long length = mRequest.getContentLength();
+                mBody = new ByteArrayOutputStream(length > 0 && length < Integer.MAX_VALUE ? (int) length : 1024);
+            }
+            return mBody;
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            if (mResponse == null) {
+                HttpRequest request = buildRequest();
+                mBody = null;
+                try {
+                    mResponse = mClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                } catch (HttpTimeoutException e) {
+                    SocketTimeoutException timeout = new SocketTimeoutException(e.getMessage());
+                    timeout.initCause(e);
+                    throw timeout;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for response");
+                }
+                if (mResponse.version() == HttpClient.Version.HTTP_2) {
+                    mHttp2Responses.incrementAndGet();
+                } else {
+                    mHttp1Responses.incrementAndGet();
+                }
+            }
+            return mResponse.statusCode();
+        }
+
+        private HttpRequest buildRequest() throws IOException {
+            URI uri;
+            try {
+                uri = mRequest.getUrl().toURI();
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid url " + mRequest.getUrl(), e);
+            }
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+            if (mRequest.getReadTimeout() > 0) {
+                builder.timeout(Duration.ofMillis(mRequest.getReadTimeout()));
+            }
+            for (Map.Entry<String, String> header : mRequest.getHeaders().entrySet()) {
+                if (isAllowedHeader(header.getKey()) && header.getValue() != null) {
+                    builder.setHeader(header.getKey(), header.getValue());
+                }
+            }
+
+            RequestType type = mRequest.getType();
+            HttpRequest.BodyPublisher body;
+            if (mBody != null) {
+                body = HttpRequest.BodyPublishers.ofByteArray(mBody.toByteArray());
+            } else if (type.equals(RequestType.POST) || type.equals(RequestType.PUT)) {
+                body = HttpRequest.BodyPublishers.ofByteArray(new byte[0]);
+            } else {
+                body = HttpRequest.BodyPublishers.noBody();
+            }
+            return builder.method(type.getValue(), body).build();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            if (mResponse == null) {
+                return Collections.emptyMap();
+            }
+            // header names are case-insensitive
+            return mResponse.headers().map();
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            if (mResponse == null) {
+                return null;
+            }
+            List<String> values = mResponse.headers().allValues(name);
+            return values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            int status = getResponseCode();
+            if (status >= 400) {
+                throw new IOException("Server returned HTTP response code: " + status + " for URL: "
+                        + mRequest.getUrl());
+            }
+            return mResponse.body();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            if (mResponse == null || mResponse.statusCode() < 400) {
+                return null;
+            }
+            return mResponse.body();
+        }
+
+        @Override
+        public void disconnect() {
+            HttpResponse<InputStream> response = mResponse;
+            if (response == null) {
+                return;
+            }
+            try {
+                // closing unread body cancels the stream
+                response.body().close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public void cancel() {
+            // waiting for the response headers cannot be aborted, body read fails once the stream is closed
+            disconnect();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TestHttp2Transport {
+
+    static class User {
+        String name;
+        int age;
+    }
+
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+    private String mBaseUrl;
+    private Http2Transport mTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mExecutor = Executors.newFixedThreadPool(8);
+        // server without HTTP/2 support, client has to fall back to HTTP/1.1
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/user", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, "{\"name\":\"John\",\"age\":42}");
+            }
+        });
+        mServer.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream is = exchange.getRequestBody();
+                String body = JsonDecoder.readString(is);
+                send(exchange, 200, "{\"name\":\"" + exchange.getRequestMethod() + " " + body + "\"}");
+            }
+        });
+        mServer.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 404, "not found");
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mTransport = new Http2Transport();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    @Test
+    public void testHttp2Transport_fallback() {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setTransport(mTransport);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/user");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData().name, is("John"));
+        assertThat(mTransport.getHttp1ResponseCount(), is(1L));
+        assertThat(mTransport.getHttp2ResponseCount(), is(0L));
+    }
+
+    @Test
+    public void testHttp2Transport_postBody() {
+        JsonCall<User> call = new JsonCall<>(RequestType.POST, "payload", User.class);
+        call.setTransport(mTransport);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/echo");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData().name, is("POST payload"));
+    }
+
+    @Test
+    public void testHttp2Transport_errorStatus() {
+        JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+        call.setTransport(mTransport);
+        CommunicatorResponse<User> response = call.execute(mBaseUrl + "/missing");
+
+        assertThat(response.hasError(), is(true));
+        assertThat(response.getError().getStatusCode(), is(404));
+    }
+
+    @Test
+    public void testHttp2Transport_concurrentCalls() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<CommunicatorResponse<User>>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                JsonCall<User> call = new JsonCall<>(RequestType.GET, User.class);
+                call.setTransport(mTransport);
+                futures.add(call.enqueue(callers, mBaseUrl + "/user", null));
+            }
+            for (Future<CommunicatorResponse<User>> future : futures) {
+                assertThat(future.get().getData().age, is(42));
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void testHttp2Transport_restrictedHeaders() {
+        assertThat(Http2Transport.isAllowedHeader("Accept-Encoding"), is(true));
+        assertThat(Http2Transport.isAllowedHeader("connection"), is(false));
+        assertThat(Http2Transport.isAllowedHeader("Host"), is(false));
+    }
+}
@@ -0,0 +1,449 @@
+package com.doodeec.utils.network.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating GSON type adapters of {@code @JsonModel} classes
+ * Adapter of {@code com.example.Outer.Inner} is generated as {@code com.example.Outer_Inner_JsonAdapter},
+ * it is found at runtime by {@code GeneratedAdapterFactory}
+ * <p/>
+ * Primitive and String fields are read and written directly by {@code JsonReader}/{@code JsonWriter},
+ * other fields by delegate adapters resolved once, when the adapter is created
+ *
+ * @author dusan.bartos
+ */
+@SupportedAnnotationTypes(JsonModelProcessor.JSON_MODEL)
+public class JsonModelProcessor extends AbstractProcessor {
+
+    static final String JSON_MODEL = "com.doodeec.utils.network.json.JsonModel";
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+    private static final String ADAPTER_SUFFIX = "_JsonAdapter";
+    private static final String INDENT = "    ";
+
+    /**
+     * Serialized field of the model
+     */
+    private static class JsonField {
+        String mJsonName;
+        /**
+         * Field access expression, i.e. value.name
+         */
+        String mAccess;
+        TypeMirror mType;
+        /**
+         * Name of delegate adapter field, null when field is read directly
+         */
+        String mAdapter;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(JSON_MODEL);
+        if (annotation == null) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@JsonModel can be applied only to classes");
+                continue;
+            }
+            TypeElement model = (TypeElement) element;
+            if (!isValidModel(model)) {
+                continue;
+            }
+            List<JsonField> fields = collectFields(model);
+            if (fields == null) {
+                continue;
+            }
+            try {
+                generateAdapter(model, fields);
+            } catch (IOException e) {
+                error(model, "Cannot write adapter: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private boolean isValidModel(TypeElement model) {
+        boolean valid = true;
+        if (model.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(model, "@JsonModel class must not be abstract");
+            valid = false;
+        }
+        if (!model.getTypeParameters().isEmpty()) {
+            error(model, "@JsonModel class must not be generic");
+            valid = false;
+        }
+
+        Element current = model;
+        while (current.getKind() != ElementKind.PACKAGE) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) {
+                error(model, "@JsonModel class and its enclosing classes must not be private");
+                valid = false;
+            }
+            if (current.getEnclosingElement().getKind() != ElementKind.PACKAGE
+                    && !current.getModifiers().contains(Modifier.STATIC)) {
+                error(model, "Nested @JsonModel class must be static");
+                valid = false;
+            }
+            current = current.getEnclosingElement();
+        }
+
+        boolean hasConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor = true;
+            }
+        }
+        if (!hasConstructor) {
+            error(model, "@JsonModel class must have non-private no-arg constructor");
+            valid = false;
+        }
+        return valid;
+    }
+
+    /**
+     * Collects serialized fields of the model and its superclasses, in the same order as GSON
+     *
+     * @return fields, null when model contains invalid field
+     */
+    private List<JsonField> collectFields(TypeElement model) {
+        DeclaredType modelType = (DeclaredType) model.asType();
+        PackageElement modelPackage = processingEnv.getElementUtils().getPackageOf(model);
+        List<JsonField> fields = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        Set<String> javaNames = new HashSet<>();
+        boolean valid = true;
+
+        TypeElement current = model;
+        DeclaredType currentType = modelType;
+        while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                    error(field, "Field of @JsonModel class must not be private or final");
+                    valid = false;
+                    continue;
+                }
+                if (!modifiers.contains(Modifier.PUBLIC)
+                        && !processingEnv.getElementUtils().getPackageOf(current).equals(modelPackage)) {
+                    error(field, "Field inherited from other package must be public");
+                    valid = false;
+                    continue;
+                }
+
+                // type arguments of generic superclass are resolved
+                TypeMirror type = processingEnv.getTypeUtils().asMemberOf(modelType, field);
+                if (hasTypeVariable(type)) {
+                    error(field, "Field type of @JsonModel class must not depend on type variable");
+                    valid = false;
+                    continue;
+                }
+
+                JsonField jsonField = new JsonField();
+                jsonField.mJsonName = getSerializedName(field);
+                jsonField.mType = type;
+                // field hidden by subclass field is accessed through its superclass
+                jsonField.mAccess = javaNames.add(field.getSimpleName().toString())
+                        ? "value." + field.getSimpleName()
+                        : "((" + currentType + ") value)." + field.getSimpleName();
+                if (!names.add(jsonField.mJsonName)) {
+                    error(field, "@JsonModel class declares multiple JSON fields named " + jsonField.mJsonName);
+                    valid = false;
+                    continue;
+                }
+                fields.add(jsonField);
+            }
+
+            // superclass with type arguments of the subclass substituted
+            List<? extends TypeMirror> supertypes = processingEnv.getTypeUtils().directSupertypes(currentType);
+            if (current.getSuperclass().getKind() == TypeKind.DECLARED && !supertypes.isEmpty()) {
+                currentType = (DeclaredType) supertypes.get(0);
+                current = (TypeElement) currentType.asElement();
+            } else {
+                current = null;
+            }
+        }
+        return valid ? fields : null;
+    }
+
+    private static String getSerializedName(VariableElement field) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(SERIALIZED_NAME)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : annotation.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")) {
+                    return (String) entry.getValue().getValue();
+                }
+            }
+        }
+        return field.getSimpleName().toString();
+    }
+
+    private static boolean hasTypeVariable(TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+                return true;
+            case ARRAY:
+                return hasTypeVariable(((ArrayType) type).getComponentType());
+            case WILDCARD:
+                WildcardType wildcard = (WildcardType) type;
+                return (wildcard.getExtendsBound() != null && hasTypeVariable(wildcard.getExtendsBound()))
+                        || (wildcard.getSuperBound() != null && hasTypeVariable(wildcard.getSuperBound()));
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (hasTypeVariable(argument)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true when field is read and written directly, without delegate adapter
+     */
+    private static boolean isDirect(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case FLOAT:
+            case BOOLEAN:
+                return true;
+            default:
+                return type.toString().equals("java.lang.String");
+        }
+    }
+
+    /**
+     * @return expression resolving delegate adapter of the type from {@code gson}
+     */
+    private String getAdapterExpression(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return "gson.getAdapter(" + processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                    .getQualifiedName() + ".class)";
+        }
+        if (processingEnv.getTypeUtils().isSameType(type, processingEnv.getTypeUtils().erasure(type))) {
+            return "gson.getAdapter(" + type + ".class)";
+        }
+        return "gson.getAdapter(new com.google.gson.reflect.TypeToken<" + type + ">() {})";
+    }
+
+    private String getAdapterType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                    .getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private void generateAdapter(TypeElement model, List<JsonField> fields) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+        String adapterName = getAdapterSimpleName(model);
+        String modelName = model.getQualifiedName().toString();
+
+        // delegate adapters, shared by fields of the same type
+        Map<String, String> adapters = new LinkedHashMap<>();
+        Map<String, String> adapterTypes = new LinkedHashMap<>();
+        for (JsonField field : fields) {
+            if (isDirect(field.mType)) {
+                continue;
+            }
+            String expression = getAdapterExpression(field.mType);
+            String name = adapters.get(expression);
+            if (name == null) {
+                name = "mAdapter" + adapters.size();
+                adapters.put(expression, name);
+                adapterTypes.put(name, getAdapterType(field.mType));
+            }
+            field.mAdapter = name;
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.doodeec.utils.network.json.GeneratedTypeAdapter;\n")
+                .append("import com.google.gson.Gson;\n")
+                .append("import com.google.gson.TypeAdapter;\n")
+                .append("import com.google.gson.stream.JsonReader;\n")
+                .append("import com.google.gson.stream.JsonToken;\n")
+                .append("import com.google.gson.stream.JsonWriter;\n\n")
+                .append("import java.io.IOException;\n\n")
+                .append("/**\n")
+                .append(" * GSON type adapter of {@link ").append(modelName).append("}\n")
+                .append(" * Generated by ").append(JsonModelProcessor.class.getName()).append(", do not edit\n")
+                .append(" */\n")
+                .append("public final class ").append(adapterName)
+                .append(" extends GeneratedTypeAdapter<").append(modelName).append("> {\n");
+
+        if (!adapters.isEmpty()) {
+            source.append('\n');
+            for (Map.Entry<String, String> entry : adapterTypes.entrySet()) {
+                source.append(INDENT).append("private final TypeAdapter<").append(entry.getValue()).append("> ")
+                        .append(entry.getKey()).append(";\n");
+            }
+        }
+
+        // constructor
+        source.append('\n')
+                .append(INDENT).append("public ").append(adapterName).append("(Gson gson) {\n");
+        for (Map.Entry<String, String> entry : adapters.entrySet()) {
+            source.append(INDENT).append(INDENT).append(entry.getValue()).append(" = ").append(entry.getKey()).append(";\n");
+        }
+        source.append(INDENT).append("}\n");
+
+        appendRead(source, modelName, fields);
+        appendWrite(source, modelName, fields);
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? adapterName : packageName + "." + adapterName;
+        Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, model).openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void appendRead(StringBuilder source, String modelName, List<JsonField> fields) {
+        String indent2 = INDENT + INDENT;
+        String indent3 = indent2 + INDENT;
+        String indent4 = indent3 + INDENT;
+        String indent5 = indent4 + INDENT;
+        source.append('\n')
+                .append(INDENT).append("@Override\n")
+                .append(INDENT).append("public ").append(modelName).append(" read(JsonReader in) throws IOException {\n")
+                .append(indent2).append("if (in.peek() == JsonToken.NULL) {\n")
+                .append(indent3).append("in.nextNull();\n")
+                .append(indent3).append("return null;\n")
+                .append(indent2).append("}\n")
+                .append(indent2).append(modelName).append(" value = new ").append(modelName).append("();\n")
+                .append(indent2).append("in.beginObject();\n")
+                .append(indent2).append("while (in.hasNext()) {\n")
+                .append(indent3).append("switch (in.nextName()) {\n");
+        for (JsonField field : fields) {
+            source.append(indent4).append("case \"").append(escape(field.mJsonName)).append("\":\n");
+            TypeKind kind = field.mType.getKind();
+            if (field.mAdapter == null && !kind.isPrimitive()) {
+                // String
+                source.append(indent5).append(field.mAccess).append(" = readString(in);\n");
+            } else if (kind.isPrimitive()) {
+                // null keeps default value of primitive field, same as GSON
+                String read = field.mAdapter != null ? field.mAdapter + ".read(in)"
+                        : "read" + capitalize(kind.name().toLowerCase()) + "(in)";
+                source.append(indent5).append("if (!skipNull(in)) {\n")
+                        .append(indent5).append(INDENT).append(field.mAccess).append(" = ").append(read).append(";\n")
+                        .append(indent5).append("}\n");
+            } else {
+                source.append(indent5).append(field.mAccess).append(" = ").append(field.mAdapter).append(".read(in);\n");
+            }
+            source.append(indent5).append("break;\n");
+        }
+        source.append(indent4).append("default:\n")
+                .append(indent5).append("in.skipValue();\n")
+                .append(indent5).append("break;\n")
+                .append(indent3).append("}\n")
+                .append(indent2).append("}\n")
+                .append(indent2).append("in.endObject();\n")
+                .append(indent2).append("return value;\n")
+                .append(INDENT).append("}\n");
+    }
+
+    private static void appendWrite(StringBuilder source, String modelName, List<JsonField> fields) {
+        String indent2 = INDENT + INDENT;
+        String indent3 = indent2 + INDENT;
+        source.append('\n')
+                .append(INDENT).append("@Override\n")
+                .append(INDENT).append("public void write(JsonWriter out, ").append(modelName)
+                .append(" value) throws IOException {\n")
+                .append(indent2).append("if (value == null) {\n")
+                .append(indent3).append("out.nullValue();\n")
+                .append(indent3).append("return;\n")
+                .append(indent2).append("}\n")
+                .append(indent2).append("out.beginObject();\n");
+        for (JsonField field : fields) {
+            source.append(indent2).append("out.name(\"").append(escape(field.mJsonName)).append("\");\n");
+            if (field.mAdapter != null) {
+                source.append(indent2).append("write(out, ").append(field.mAdapter).append(", ")
+                        .append(field.mAccess).append(");\n");
+            } else if (field.mType.getKind() == TypeKind.FLOAT) {
+                // written as Number, same as GSON, i.e. 0.1 instead of 0.10000000149011612
+                source.append(indent2).append("out.value(Float.valueOf(").append(field.mAccess).append("));\n");
+            } else {
+                source.append(indent2).append("out.value(").append(field.mAccess).append(");\n");
+            }
+        }
+        source.append(indent2).append("out.endObject();\n")
+                .append(INDENT).append("}\n");
+    }
+
+    /**
+     * @return simple name of the adapter, names of enclosing classes are joined by underscore
+     */
+    private static String getAdapterSimpleName(TypeElement model) {
+        StringBuilder name = new StringBuilder(model.getSimpleName());
+        Element enclosing = model.getEnclosingElement();
+        while (enclosing.getKind() != ElementKind.PACKAGE) {
+            name.insert(0, '_').insert(0, enclosing.getSimpleName());
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append(ADAPTER_SUFFIX).toString();
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -22,6 +22,15 @@
 -keep class com.doodeec.utils.network.listener.* {
     public *;
 }
+-keep class com.doodeec.utils.network.cache.* {
+    public *;
+}
+-keep class com.doodeec.utils.network.metrics.* {
+    public *;
+}
+-keep class com.doodeec.utils.network.json.* {
+    public protected *;
+}
 
 # GSON
 -keepattributes Signature
@@ -0,0 +1,138 @@
+package com.doodeec.utils.network;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.doodeec.utils.network.cache.BitmapMemoryCache;
+import com.doodeec.utils.network.cache.BitmapPool;
+import com.doodeec.utils.network.listener.BaseRequestListener;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Decoding with real BitmapFactory, runs on device
+ */
+public class TestBitmapDecoding {
+
+    private static byte[] encode(int width, int height) {
+        return encode(width, height, 0xff336699);
+    }
+
+    private static byte[] encode(int width, int height, int color) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+        bitmap.recycle();
+        return outputStream.toByteArray();
+    }
+
+    private static ImageServerRequest newRequest() {
+        return new ImageServerRequest(RequestType.GET, new BaseRequestListener<Bitmap>() {
+            @Override
+            public void onError(RequestError error) {
+            }
+
+            @Override
+            public void onSuccess(Bitmap response) {
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onProgress(Integer progress) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        ImageServerRequest.setBitmapPool(null);
+        ImageServerRequest.setMemoryCache(null);
+    }
+
+    @Test
+    public void testBitmapDecoding_full() throws IOException {
+        Bitmap bitmap = newRequest().processInputStream("image/png", new ByteArrayInputStream(encode(80, 60)));
+
+        assertThat(bitmap.getWidth(), is(80));
+        assertThat(bitmap.getHeight(), is(60));
+    }
+
+    @Test
+    public void testBitmapDecoding_downsampled() throws IOException {
+        ImageServerRequest request = newRequest();
+        request.setTargetSize(100, 100);
+        Bitmap bitmap = request.processInputStream("image/png", new ByteArrayInputStream(encode(800, 600)));
+
+        // inSampleSize 4 keeps both dimensions above the target size
+        assertThat(bitmap.getWidth(), is(200));
+        assertThat(bitmap.getHeight(), is(150));
+    }
+
+    @Test
+    public void testBitmapDecoding_reusePooledBitmap() {
+        // downsampled image is decoded into pooled bitmap since KitKat
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        Bitmap pooled = Bitmap.createBitmap(200, 150, Bitmap.Config.ARGB_8888);
+        pool.put(pooled);
+        ImageServerRequest.setBitmapPool(pool);
+
+        ImageServerRequest request = newRequest();
+        request.setTargetSize(100, 100);
+        Bitmap bitmap = request.decodeSampled(encode(800, 600));
+
+        assertThat(bitmap == pooled, is(true));
+        assertThat(pool.hitCount(), is(1));
+        assertThat(pool.size(), is(0L));
+    }
+
+    @Test
+    public void testBitmapDecoding_fallbackWithoutReuse() {
+        // downsampled image is decoded into pooled bitmap since KitKat
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        Bitmap pooled = Bitmap.createBitmap(200, 150, Bitmap.Config.RGB_565);
+        pool.put(pooled);
+        ImageServerRequest.setBitmapPool(pool);
+
+        ImageServerRequest request = newRequest();
+        request.setTargetSize(100, 100);
+        request.setPreferredConfig(Bitmap.Config.RGB_565);
+        // translucent image is decoded as ARGB_8888, which does not fit into pooled RGB_565 bitmap
+        Bitmap bitmap = request.decodeSampled(encode(800, 600, 0x80336699));
+
+        assertThat(bitmap != null && bitmap != pooled, is(true));
+        assertThat(bitmap.getWidth(), is(200));
+        assertThat(bitmap.getHeight(), is(150));
+    }
+
+    @Test
+    public void testBitmapDecoding_pooledBitmapLeavesMemoryCache() {
+        BitmapMemoryCache cache = new BitmapMemoryCache(10 * 1024 * 1024);
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        ImageServerRequest.setMemoryCache(cache);
+        ImageServerRequest.setBitmapPool(pool);
+
+        Bitmap bitmap = Bitmap.createBitmap(200, 150, Bitmap.Config.ARGB_8888);
+        cache.put("http://example.com/image.png", bitmap);
+        pool.put(bitmap);
+
+        // cache must not serve bitmap, which is overwritten by the next decode
+        assertThat(cache.get("http://example.com/image.png") == null, is(true));
+        assertThat(cache.size(), is(0L));
+        assertThat(pool.size() > 0, is(true));
+    }
+}
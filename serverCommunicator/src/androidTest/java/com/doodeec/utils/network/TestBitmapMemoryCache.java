@@ -0,0 +1,130 @@
+package com.doodeec.utils.network;
+
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+
+import com.doodeec.utils.network.cache.BitmapMemoryCache;
+import com.doodeec.utils.network.listener.BaseRequestListener;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Memory cache with real bitmaps, runs on device
+ */
+public class TestBitmapMemoryCache {
+
+    private static final String URL = "http://example.com/image.png";
+
+    /**
+     * 100x100 ARGB_8888 bitmap takes 40000 bytes
+     */
+    private static final long BITMAP_SIZE = 100 * 100 * 4;
+
+    private static Bitmap newBitmap() {
+        return Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+    }
+
+    @After
+    public void tearDown() {
+        ImageServerRequest.setMemoryCache(null);
+    }
+
+    @Test
+    public void testBitmapMemoryCache_lruEvictionBySize() {
+        BitmapMemoryCache cache = new BitmapMemoryCache(3 * BITMAP_SIZE);
+        Bitmap a = newBitmap();
+        cache.put("a", a);
+        cache.put("b", newBitmap());
+        cache.put("c", newBitmap());
+        assertThat(cache.size(), is(3 * BITMAP_SIZE));
+
+        // access moves "a" to the end, so "b" is the least recently used
+        assertThat(cache.get("a") == a, is(true));
+        cache.put("d", newBitmap());
+
+        assertThat(cache.size(), is(3 * BITMAP_SIZE));
+        assertThat(cache.evictionCount(), is(1));
+        assertThat(cache.get("b") == null, is(true));
+        assertThat(cache.get("a") == a, is(true));
+        assertThat(cache.get("c") != null && cache.get("d") != null, is(true));
+    }
+
+    @Test
+    public void testBitmapMemoryCache_counters() {
+        BitmapMemoryCache cache = new BitmapMemoryCache(2 * BITMAP_SIZE);
+        cache.put("a", newBitmap());
+        // replaced bitmap does not count twice into the size
+        cache.put("a", newBitmap());
+        // bitmap larger than the whole cache is not stored
+        cache.put("large", Bitmap.createBitmap(1000, 1000, Bitmap.Config.ARGB_8888));
+
+        cache.get("a");
+        cache.get("large");
+        cache.get("missing");
+
+        assertThat(cache.putCount(), is(2));
+        assertThat(cache.hitCount(), is(1));
+        assertThat(cache.missCount(), is(2));
+        assertThat(cache.evictionCount(), is(0));
+        assertThat(cache.size(), is(BITMAP_SIZE));
+
+        cache.trimToSize(0);
+        assertThat(cache.evictionCount(), is(1));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test
+    public void testBitmapMemoryCache_recycledBitmapDropped() {
+        BitmapMemoryCache cache = new BitmapMemoryCache(2 * BITMAP_SIZE);
+        Bitmap bitmap = newBitmap();
+        cache.put("a", bitmap);
+        bitmap.recycle();
+
+        assertThat(cache.get("a") == null, is(true));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test
+    public void testBitmapMemoryCache_synchronousHit() {
+        BitmapMemoryCache cache = new BitmapMemoryCache(4 * BITMAP_SIZE);
+        ImageServerRequest.setMemoryCache(cache);
+        Bitmap thumbnail = newBitmap();
+
+        final AtomicReference<Bitmap> delivered = new AtomicReference<>();
+        ImageServerRequest request = new ImageServerRequest(RequestType.GET, new BaseRequestListener<Bitmap>() {
+            @Override
+            public void onError(RequestError error) {
+            }
+
+            @Override
+            public void onSuccess(Bitmap response) {
+                delivered.set(response);
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onProgress(Integer progress) {
+            }
+        });
+        request.setTargetSize(100, 100);
+        cache.put(request.getMemoryCacheKey(URL), thumbnail);
+
+        // listener is called before executeInParallel returns, request is not started
+        request.executeInParallel(URL);
+        assertThat(delivered.get() == thumbnail, is(true));
+        assertThat(cache.hitCount(), is(1));
+        assertThat(request.getStatus() == AsyncTask.Status.PENDING, is(true));
+
+        // full size image has a different key
+        assertThat(cache.get(URL) == null, is(true));
+    }
+}
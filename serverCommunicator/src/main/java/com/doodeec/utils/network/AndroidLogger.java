@@ -0,0 +1,26 @@
+package com.doodeec.utils.network;
+
+import android.util.Log;
+
+/**
+ * Logger writing debug logs of the core to logcat
+ *
+ * @author dusan.bartos
+ */
+class AndroidLogger implements CommunicatorLogger {
+
+    @Override
+    public void debug(String tag, String message) {
+        Log.d(tag, message);
+    }
+
+    @Override
+    public void info(String tag, String message) {
+        Log.i(tag, message);
+    }
+
+    @Override
+    public void warn(String tag, String message, Throwable throwable) {
+        Log.w(tag, message, throwable);
+    }
+}
@@ -0,0 +1,253 @@
+package com.doodeec.utils.network;
+
+import android.util.Log;
+
+import com.doodeec.utils.network.listener.ArrayRequestListener;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server request for large JSON array responses
+ * Array elements are parsed one by one directly from the response stream and delivered to the
+ * listener in small batches, so the whole array is never held in memory
+ * Request can be cancelled while the array is being read
+ *
+ * @author dusan.bartos
+ * @see com.doodeec.utils.network.listener.ArrayRequestListener
+ * @see com.doodeec.utils.network.ServerRequest
+ */
+@SuppressWarnings("unused")
+public class ArrayServerRequest<IT> extends BaseServerRequest<Integer, Integer> {
+
+    // response headers
+    private static final String REQ_CONTENT_TYPE_KEY = "Content-Type";
+    private static final String REQ_CONTENT_TYPE_VALUE = "application/json";
+
+    /**
+     * Response listener
+     *
+     * @see com.doodeec.utils.network.listener.ArrayRequestListener
+     */
+    protected ArrayRequestListener<IT> mListener;
+
+    /**
+     * Class of the array element
+     * Used in GSON parser
+     */
+    private Class<IT> mElementClass;
+
+    /**
+     * Number of elements delivered to the listener at once
+     */
+    private int mBatchSize = 20;
+
+    /**
+     * Names of the nested object properties leading to the array
+     * Empty when response itself is an array
+     */
+    private String[] mArrayPath = new String[0];
+
+    /**
+     * True once any element was delivered to the listener
+     */
+    private boolean mDelivered = false;
+
+    /**
+     * Constructs ArrayServerRequest
+     *
+     * @param type     type of request {@link RequestType}
+     * @param listener response listener
+     * @param cls      class of array element
+     */
+    public ArrayServerRequest(RequestType type, ArrayRequestListener<IT> listener, Class<IT> cls) {
+        super(type);
+        mListener = listener;
+        mElementClass = cls;
+    }
+
+    /**
+     * Constructs ArrayServerRequest with payload data
+     *
+     * @param type     type of request {@link RequestType}
+     * @param data     payload data
+     * @param listener response listener
+     * @param cls      class of array element
+     */
+    public ArrayServerRequest(RequestType type, String data, ArrayRequestListener<IT> listener, Class<IT> cls) {
+        super(type, data);
+        mListener = listener;
+        mElementClass = cls;
+    }
+
+    /**
+     * Sets number of elements delivered to the listener at once
+     * Default value is 20
+     *
+     * @param batchSize batch size, 1 to deliver each element separately
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Sets path to the array, when the array is nested in response object
+     * i.e. for response {"data": {"items": [...]}} path is "data", "items"
+     *
+     * @param propertyNames names of the nested properties
+     */
+    public void setArrayPath(String... propertyNames) {
+        mArrayPath = propertyNames != null ? propertyNames : new String[0];
+    }
+
+    @Override
+    protected void initHeaders() {
+        mRequestHeaders.put(REQ_CONTENT_TYPE_KEY, REQ_CONTENT_TYPE_VALUE);
+    }
+
+    @Override
+    protected Integer processInputStream(String contentType, InputStream inputStream) {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, ServerRequest.getResponseCharset()));
+        reader.setLenient(true);
+        TypeAdapter<IT> adapter = JsonDecoder.getAdapter(mElementClass);
+
+        int count = 0;
+        try {
+            try {
+                reader.peek();
+            } catch (EOFException e) {
+                // status code 200 without response body
+                return 0;
+            }
+
+            if (!moveToArray(reader)) {
+                return 0;
+            }
+
+            List<IT> batch = new ArrayList<>(mBatchSize);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                // stop reading as soon as request is cancelled, also by its owner
+                if (isRequestCancelled() || isCallerCancelled()) {
+                    if (sDebugEnabled) {
+                        Log.d(getClass().getSimpleName(), "Request cancelled while reading array. count=" + count);
+                    }
+                    return count;
+                }
+
+                batch.add(adapter.read(reader));
+                if (batch.size() >= mBatchSize) {
+                    count += deliver(batch);
+                    batch = new ArrayList<>(mBatchSize);
+                }
+            }
+            count += deliver(batch);
+            reader.endArray();
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+
+        return count;
+    }
+
+    /**
+     * Moves reader to the beginning of the array defined by {@link #setArrayPath(String...)}
+     *
+     * @param reader json reader
+     *
+     * @return true if array was found, false if path leads to null value
+     *
+     * @throws IOException when stream cannot be read
+     */
+    private boolean moveToArray(JsonReader reader) throws IOException {
+        for (String propertyName : mArrayPath) {
+            if (reader.peek() == JsonToken.NULL) {
+                return false;
+            }
+            reader.beginObject();
+            boolean found = false;
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(propertyName)) {
+                    found = true;
+                    break;
+                }
+                reader.skipValue();
+            }
+            if (!found) {
+                throw new JsonSyntaxException("Property " + propertyName + " not found in response");
+            }
+        }
+
+        return reader.peek() != JsonToken.NULL;
+    }
+
+    private int deliver(List<IT> batch) {
+        if (!batch.isEmpty()) {
+            mDelivered = true;
+            mListener.onElements(batch);
+        }
+        return batch.size();
+    }
+
+    @Override
+    protected boolean canRetry() {
+        // delivered elements would be delivered again
+        return !mDelivered;
+    }
+
+    @Override
+    protected Integer instantiateStream(Integer count) {
+        return count;
+    }
+
+    @Override
+    protected void onPostExecute(CommunicatorResponse<Integer> response) {
+        if (response.isIntercepted()) {
+            //do nothing
+            if (sDebugEnabled) {
+                Log.d(getClass().getSimpleName(), "Response intercepted. Not proceeding to response listener");
+            }
+        } else if (response.hasError()) {
+            mListener.onError(response.getError());
+        } else if (response.getData() != null) {
+            mListener.onSuccess(response.getData());
+        } else if (isStatusOk(response.getStatusCode())) {
+            mListener.onSuccess(0);
+        } else {
+            mListener.onError(new RequestError("Response empty", response.getUrl()));
+        }
+    }
+
+    @Override
+    public ArrayServerRequest<IT> cloneRequest() {
+        ArrayServerRequest<IT> clonedRequest = new ArrayServerRequest<>(mType, mPostData, mListener, mElementClass);
+        copyConfigurationTo(clonedRequest);
+        clonedRequest.mBatchSize = mBatchSize;
+        clonedRequest.mArrayPath = mArrayPath;
+        return clonedRequest;
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        deliverProgress(mListener, values);
+    }
+
+    @Override
+    protected void onCancelled() {
+        mListener.onCancelled();
+    }
+}
@@ -2,34 +2,37 @@ package com.doodeec.utils.network;
 
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import java.io.EOFException;
+import com.doodeec.utils.network.cache.DiskResponseCache;
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.doodeec.utils.network.listener.ByteProgressListener;
+import com.doodeec.utils.network.metrics.LatencyRegistry;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ConnectException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
 
 /**
  * Abstract base which is common for both {@link com.doodeec.utils.network.ServerRequest}
  * and {@link com.doodeec.utils.network.ImageServerRequest}
+ * Android adapter of {@link ServerCall}, request is executed by the call on the AsyncTask thread
+ * and the result is delivered to the UI thread
  *
  * @author dusan.bartos
  */
@@ -38,33 +41,44 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
         AsyncTask<String, Integer, CommunicatorResponse<ReturnType>> implements CancellableServerRequest {
 
     // asyncTask progress
-    public static final int PROGRESS_IDLE = 0;
-    public static final int PROGRESS_OPENED = 10;
-    public static final int PROGRESS_CONNECTED = 20;
-    public static final int PROGRESS_RESPONSE_CODE = 40;
-    public static final int PROGRESS_RESPONSE_TYPE = 50;
-    public static final int PROGRESS_CONTENT = 60;
-    public static final int PROGRESS_INPUT_STREAM = 70;
-    public static final int PROGRESS_CONNECTION_CLOSE = 80;
-    public static final int PROGRESS_DISCONNECTING = 90;
-    public static final int PROGRESS_DONE = 100;
+    public static final int PROGRESS_IDLE = ServerCall.PROGRESS_IDLE;
+    public static final int PROGRESS_OPENED = ServerCall.PROGRESS_OPENED;
+    public static final int PROGRESS_CONNECTED = ServerCall.PROGRESS_CONNECTED;
+    public static final int PROGRESS_RESPONSE_CODE = ServerCall.PROGRESS_RESPONSE_CODE;
+    public static final int PROGRESS_RESPONSE_TYPE = ServerCall.PROGRESS_RESPONSE_TYPE;
+    public static final int PROGRESS_CONTENT = ServerCall.PROGRESS_CONTENT;
+    public static final int PROGRESS_INPUT_STREAM = ServerCall.PROGRESS_INPUT_STREAM;
+    public static final int PROGRESS_CONNECTION_CLOSE = ServerCall.PROGRESS_CONNECTION_CLOSE;
+    public static final int PROGRESS_DISCONNECTING = ServerCall.PROGRESS_DISCONNECTING;
+    public static final int PROGRESS_DONE = ServerCall.PROGRESS_DONE;
 
     protected static boolean sDebugEnabled = false;
 
+    /**
+     * SSL context of https requests, null until {@link #getSSLContext()} is called
+     * Context assigned to the field is used by requests executed afterwards
+     *
+     * @deprecated use {@link #getSSLContext()} and {@link #setSSLContext(SSLContext)}
+     */
+    @Deprecated
     protected static SSLContext sSSLContext;
+
+    /**
+     * Hostname verifier of https requests, platform default verifier is used when null
+     * Verifier assigned to the field is used by requests executed afterwards
+     *
+     * @deprecated use {@link #setHostNameVerifier(HostnameVerifier)}
+     */
+    @Deprecated
     protected static HostnameVerifier sHostNameVerifier;
 
+    // values of the deprecated static fields already passed to the call
+    private static SSLContext sAppliedSSLContext;
+    private static HostnameVerifier sAppliedHostNameVerifier;
+
     static {
-        try {
-            sSSLContext = SSLContext.getInstance("TLS");
-            sSSLContext.init(null, null, null);
-            sHostNameVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
-        } catch (KeyManagementException | NoSuchAlgorithmException e) {
-            if (sDebugEnabled) {
-                e.printStackTrace();
-            }
-            throw new IllegalStateException("Exception initializing SSL context", e);
-        }
+        // debug logs of the core are written to logcat
+        ServerCall.setLogger(new AndroidLogger());
     }
 
     /**
@@ -73,34 +87,311 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      *
      * @return SSL context used for https requests
      */
-    public static SSLContext getSSLContext() {
+    public static synchronized SSLContext getSSLContext() {
+        applyDeprecatedStatics();
+        sSSLContext = sAppliedSSLContext = ServerCall.getSSLContext();
         return sSSLContext;
     }
 
+    /**
+     * Replaces SSL context used for https requests
+     *
+     * @param sslContext initialized SSL context
+     */
+    public static synchronized void setSSLContext(SSLContext sslContext) {
+        if (sslContext == null) return;
+        ServerCall.setSSLContext(sslContext);
+        sSSLContext = sAppliedSSLContext = sslContext;
+    }
+
+    /**
+     * Drops shared socket factory, so it is created again from the SSL context
+     * Has to be called when SSL context returned by {@link #getSSLContext()} is re-initialized
+     */
+    public static void resetSocketFactory() {
+        ServerCall.resetSocketFactory();
+    }
+
+    /**
+     * Configures client session cache of the SSL context
+     *
+     * @param cacheSize      maximum number of cached sessions, 0 for unlimited
+     * @param timeoutSeconds session lifetime in seconds, 0 for unlimited
+     *
+     * @see ServerCall#configureSessionCache(int, int)
+     */
+    public static void configureSessionCache(int cacheSize, int timeoutSeconds) {
+        ServerCall.configureSessionCache(cacheSize, timeoutSeconds);
+    }
+
+    /**
+     * Enables persistence of TLS sessions on disk, so sessions can be resumed after app restart
+     * Uses platform {@code android.net.SSLSessionCache}, which is installed into the SSL context
+     * via non-public API, so the persistence is best effort and may not be available on every
+     * platform version
+     *
+     * @param directory directory dedicated for session files
+     *
+     * @return true if persistent cache was installed
+     */
+    public static boolean enableSessionPersistence(File directory) {
+        try {
+            Class<?> cacheClass = Class.forName("android.net.SSLSessionCache");
+            Object cache = cacheClass.getConstructor(File.class).newInstance(directory);
+            Method install = cacheClass.getMethod("install", cacheClass, SSLContext.class);
+            install.invoke(null, cache, ServerCall.getSSLContext());
+            resetSocketFactory();
+            return true;
+        } catch (Exception e) {
+            if (sDebugEnabled) {
+                Log.w(BaseServerRequest.class.getSimpleName(), "TLS session persistence not available", e);
+            }
+            return false;
+        }
+    }
+
     /**
      * Provides a way to set Hostname verifier for SSL certificates
      */
-    public static void setHostNameVerifier(HostnameVerifier hostNameVerifier) {
-        sHostNameVerifier = hostNameVerifier;
+    public static synchronized void setHostNameVerifier(HostnameVerifier hostNameVerifier) {
+        ServerCall.setHostNameVerifier(hostNameVerifier);
+        sHostNameVerifier = sAppliedHostNameVerifier = hostNameVerifier;
+    }
+
+    /**
+     * Passes values assigned directly to the deprecated static fields to the call
+     */
+    private static synchronized void applyDeprecatedStatics() {
+        if (sSSLContext != null && sSSLContext != sAppliedSSLContext) {
+            ServerCall.setSSLContext(sSSLContext);
+            sAppliedSSLContext = sSSLContext;
+        }
+        if (sHostNameVerifier != sAppliedHostNameVerifier) {
+            ServerCall.setHostNameVerifier(sHostNameVerifier);
+            sAppliedHostNameVerifier = sHostNameVerifier;
+        }
     }
 
     public static void enableDebug(boolean enable) {
         sDebugEnabled = enable;
+        ServerCall.enableDebug(enable);
+    }
+
+    /**
+     * Dispatcher used by {@link #executeInParallel(String...)}
+     */
+    private static RequestDispatcher sDispatcher = new RequestDispatcher();
+
+    /**
+     * Sets dispatcher used for parallel execution
+     * Can be used to provide dispatcher with custom executor or concurrency limits
+     *
+     * @param dispatcher request dispatcher
+     */
+    public static void setDispatcher(RequestDispatcher dispatcher) {
+        if (dispatcher == null) return;
+        sDispatcher = dispatcher;
+    }
+
+    /**
+     * @return dispatcher used for parallel execution
+     */
+    public static RequestDispatcher getDispatcher() {
+        return sDispatcher;
+    }
+
+    /**
+     * Cancels all queued and running requests of the owner
+     * Running requests stop at the next read of the response body and close their connections,
+     * listeners receive onCancelled
+     *
+     * @param owner owner, i.e. activity or session
+     *
+     * @return number of cancelled requests
+     *
+     * @see #setOwner(Object)
+     */
+    public static int cancelAll(Object owner) {
+        return ServerCall.cancelAll(owner);
+    }
+
+    /**
+     * Creates batch, which runs requests on the executor of the dispatcher and delivers
+     * callbacks to the UI thread
+     *
+     * @return request batch
+     *
+     * @see #addTo(RequestBatch, String)
+     */
+    public static RequestBatch newBatch() {
+        RequestBatch batch = new RequestBatch(sDispatcher.getExecutor());
+        final Handler handler = new Handler(Looper.getMainLooper());
+        batch.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        });
+        return batch;
+    }
+
+    /**
+     * Sets disk cache used for GET responses
+     *
+     * @param responseCache response cache, null to disable caching
+     *
+     * @see ServerCall#setResponseCache(DiskResponseCache)
+     */
+    public static void setResponseCache(DiskResponseCache responseCache) {
+        ServerCall.setResponseCache(responseCache);
+    }
+
+    /**
+     * @return disk cache used for GET responses, or null
+     */
+    public static DiskResponseCache getResponseCache() {
+        return ServerCall.getResponseCache();
+    }
+
+    /**
+     * When true, identical GET requests executed in parallel share one network fetch
+     */
+    private static boolean sRequestCoalescing = false;
+
+    /**
+     * Enables coalescing of identical in-flight requests
+     * GET request without interceptor, which has the same URL, headers and response type as
+     * a request already in flight, is attached to it instead of opening a new connection
+     * Response is downloaded and decoded once and delivered to listeners of all attached requests
+     * Cancelled request does not cancel the shared fetch while other requests wait for it
+     *
+     * @param enabled true to coalesce identical requests
+     */
+    public static void setRequestCoalescing(boolean enabled) {
+        sRequestCoalescing = enabled;
+    }
+
+    /**
+     * Enables or disables reuse of keep-alive connections
+     *
+     * @param enabled false to disconnect after every request
+     *
+     * @see ServerCall#setConnectionReuse(boolean)
+     */
+    public static void setConnectionReuse(boolean enabled) {
+        ServerCall.setConnectionReuse(enabled);
+    }
+
+    /**
+     * Configures platform keep-alive connection pool
+     * Has to be called before the first request is executed
+     *
+     * @param maxIdleConnections      maximum number of idle connections kept in the pool
+     * @param keepAliveDurationMillis time after which idle connection is closed, in milliseconds
+     */
+    public static void configureConnectionPool(int maxIdleConnections, long keepAliveDurationMillis) {
+        ServerCall.configureConnectionPool(maxIdleConnections, keepAliveDurationMillis);
+    }
+
+    /**
+     * Sets transport used by requests without their own transport
+     *
+     * @param transport transport
+     *
+     * @see NioTransport
+     */
+    public static void setDefaultTransport(Transport transport) {
+        ServerCall.setDefaultTransport(transport);
+    }
+
+    /**
+     * @return transport used by requests without their own transport
+     */
+    public static Transport getDefaultTransport() {
+        return ServerCall.getDefaultTransport();
     }
 
     /**
-     * Maximum number of retries when EOFException occurs
+     * Initializes SSL context, shared socket factory and GSON converter on a background thread
+     * Should be called from {@code Application.onCreate}, so the first request does not pay for
+     * their setup
+     *
+     * @param responseTypes response types whose GSON type adapters are resolved in advance,
+     *                      i.e. classes or {@code TypeToken#getType()}
+     *
+     * @return future completed when warmup is done
+     */
+    public static Future<?> warmup(Type... responseTypes) {
+        return ServerCall.warmup(responseTypes);
+    }
+
+    /**
+     * Resolves host of the url and opens connection to it on a background thread
+     *
+     * @param url url of the host, i.e. base url of the API
+     *
+     * @return future completed when connection is opened or preconnect failed
+     */
+    public static Future<?> preconnect(String url) {
+        return ServerCall.preconnect(url);
+    }
+
+    /**
+     * Sets retry policy used by requests without their own policy
+     *
+     * @param retryPolicy retry policy, null to disable retries
+     */
+    public static void setDefaultRetryPolicy(RetryPolicy retryPolicy) {
+        ServerCall.setDefaultRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * @return retry policy used by requests without their own policy
+     */
+    public static RetryPolicy getDefaultRetryPolicy() {
+        return ServerCall.getDefaultRetryPolicy();
+    }
+
+    /**
+     * Sets process-wide retry budget
+     *
+     * @param retryBudget retry budget, null for unlimited retries
+     *
+     * @see ServerCall#setRetryBudget(RetryBudget)
      */
-    private static final int MAX_RETRIES_EOF = 3;
+    public static void setRetryBudget(RetryBudget retryBudget) {
+        ServerCall.setRetryBudget(retryBudget);
+    }
+
     /**
-     * Maximum number of retries when SocketTimeout occurs
-     * This happens sometimes with first request, but once request is sent again, timeout does
-     * not occur. This is kind of a hack solution, because it doesn't really solve the timeout,
-     * but it will try to send the same request once again
+     * @return process-wide retry budget, or null
      */
-    private static final int MAX_RETRIES_SOCKET = 1;
-    private int mRetryCountEOF = 0;
-    private int mRetryCountSocketTimeout = 0;
+    public static RetryBudget getRetryBudget() {
+        return ServerCall.getRetryBudget();
+    }
+
+    /**
+     * Sets registry, which records latency of every executed request
+     *
+     * @param latencyRegistry latency registry, null to disable recording
+     *
+     * @see ServerCall#setLatencyRegistry(LatencyRegistry)
+     */
+    public static void setLatencyRegistry(LatencyRegistry latencyRegistry) {
+        ServerCall.setLatencyRegistry(latencyRegistry);
+    }
+
+    /**
+     * @return latency registry, or null
+     */
+    public static LatencyRegistry getLatencyRegistry() {
+        return ServerCall.getLatencyRegistry();
+    }
+
+    /**
+     * Platform independent call, which executes the request on the AsyncTask thread
+     */
+    final ServerCall<ReturnType, StreamType> mCall;
 
     /**
      * Post data to add to request body (payload)
@@ -111,20 +402,26 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      * Connection timeout
      * in milliseconds
      * default to 30sec
+     *
+     * @deprecated use {@link #setTimeout(int)}
      */
+    @Deprecated
     protected int mTimeout = 30000;
 
     /**
      * Read timeout
      * in milliseconds
      * default to 30sec
+     *
+     * @deprecated use {@link #setReadTimeout(int)}
      */
+    @Deprecated
     protected int mReadTimeout = 30000;
 
     /**
      * Additional request headers
      */
-    protected Map<String, String> mRequestHeaders = new HashMap<>();
+    protected Map<String, String> mRequestHeaders;
 
     /**
      * Request type
@@ -140,18 +437,34 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      * Request interceptor
      *
      * @see ResponseInterceptor
+     * @deprecated use {@link #setInterceptor(ResponseInterceptor)}
      */
+    @Deprecated
     protected ResponseInterceptor mInterceptor;
 
     /**
-     * Connection Response
+     * Response of the current attempt, set before {@link #processInputStream(String, InputStream)}
+     * is called
      *
      * @see CommunicatorResponse
+     * @deprecated use {@link #getResponse()}
      */
-    protected CommunicatorResponse<ReturnType> mCommunicatorResponse = new CommunicatorResponse<>();
+    @Deprecated
+    protected CommunicatorResponse<ReturnType> mCommunicatorResponse;
 
+    /**
+     * Result of {@link #processInputStream(String, InputStream)} of the current attempt
+     *
+     * @deprecated use the value passed to {@link #instantiateStream(Object)}
+     */
+    @Deprecated
     protected StreamType mOriginalResponse;
 
+    /**
+     * Shared request whose network fetch is executed by this request, null for regular requests
+     */
+    SharedRequest<ReturnType> mSharedRequest;
+
     /**
      * Constructs basic Server Request without body data (i.e. GET request)
      * Available types are:
@@ -163,7 +476,23 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      * @param type request type
      */
     protected BaseServerRequest(RequestType type) {
+        this(type, null);
+    }
+
+    /**
+     * Constructs Server Request with POST payload data
+     *
+     * @param type request type (typically {@link com.doodeec.utils.network.RequestType#POST}) for this constructor
+     * @param data post data
+     *
+     * @see #BaseServerRequest(com.doodeec.utils.network.RequestType)
+     */
+    protected BaseServerRequest(RequestType type, String data) {
         mType = type;
+        mPostData = data;
+        mCall = new AsyncTaskCall(type, data);
+        mRequestHeaders = mCall.mRequestHeaders;
+        mCommunicatorResponse = mCall.getResponse();
 
         initHeaders();
 
@@ -173,16 +502,79 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
     }
 
     /**
-     * Constructs Server Request with POST payload data
+     * Sets request body (payload)
+     * Body with known length is streamed with fixed length, body with unknown length is chunked
+     * Body is not sent with GET requests
      *
-     * @param type request type (typically {@link com.doodeec.utils.network.RequestType#POST}) for this constructor
-     * @param data post data
+     * @param body request body, replaces post data passed to the constructor
+     */
+    public void setRequestBody(RequestBody body) {
+        mCall.setRequestBody(body);
+    }
+
+    /**
+     * Gets request body
      *
-     * @see #BaseServerRequest(com.doodeec.utils.network.RequestType)
+     * @return request body, or body created from post data, null when request has no payload
      */
-    protected BaseServerRequest(RequestType type, String data) {
-        this(type);
-        mPostData = data;
+    public RequestBody getRequestBody() {
+        return mCall.getRequestBody();
+    }
+
+    /**
+     * Sets chunk size used for request bodies with unknown length
+     *
+     * @param chunkSize chunk size in bytes, 0 for default
+     */
+    public void setChunkSize(int chunkSize) {
+        mCall.setChunkSize(chunkSize);
+    }
+
+    /**
+     * Enables gzip compression of request bodies at least minLength bytes long
+     * Compressed body is sent chunked, server has to accept compressed requests
+     *
+     * @param minLength minimum body size in bytes, -1 to disable compression
+     */
+    public void setRequestCompression(long minLength) {
+        mCall.setRequestCompression(minLength);
+    }
+
+    /**
+     * Sets rate limit of progress updates during upload and download
+     * Update is delivered when both minimum interval elapsed and transferred percentage changed
+     * by the minimum delta, completion of the transfer is always delivered
+     * Default is 100ms and 1%
+     *
+     * @param minIntervalMillis minimum interval between updates, in milliseconds
+     * @param minPercentDelta   minimum change of transferred percentage
+     *
+     * @see ByteProgressListener
+     */
+    public void setProgressThrottle(long minIntervalMillis, int minPercentDelta) {
+        mCall.setProgressThrottle(minIntervalMillis, minPercentDelta);
+    }
+
+    /**
+     * Sets retry policy of this request
+     *
+     * @param retryPolicy retry policy, null to use default policy
+     *
+     * @see #setDefaultRetryPolicy(RetryPolicy)
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mCall.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Sets transport of this request
+     *
+     * @param transport transport, null to use default transport
+     *
+     * @see #setDefaultTransport(Transport)
+     */
+    public void setTransport(Transport transport) {
+        mCall.setTransport(transport);
     }
 
     /**
@@ -192,6 +584,7 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      */
     public void setInterceptor(ResponseInterceptor interceptor) {
         mInterceptor = interceptor;
+        mCall.setInterceptor(interceptor);
     }
 
     /**
@@ -202,6 +595,7 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      */
     public void setTimeout(int timeout) {
         mTimeout = timeout;
+        mCall.setTimeout(timeout);
     }
 
     /**
@@ -212,6 +606,62 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      */
     public void setReadTimeout(int timeout) {
         mReadTimeout = timeout;
+        mCall.setReadTimeout(timeout);
+    }
+
+    /**
+     * Sets request tag
+     * Tag is used by {@link RequestDispatcher} to limit number of concurrently running requests
+     * i.e. "images" or "api"
+     *
+     * @param tag request tag
+     *
+     * @see RequestDispatcher#setMaxRequestsForTag(String, int)
+     */
+    public void setTag(String tag) {
+        mCall.setTag(tag);
+    }
+
+    public String getTag() {
+        return mCall.getTag();
+    }
+
+    /**
+     * Sets owner of the request, i.e. activity or session
+     * All requests of the owner can be cancelled at once via {@link #cancelAll(Object)}
+     *
+     * @param owner owner, compared by equals
+     */
+    public void setOwner(Object owner) {
+        mCall.setOwner(owner);
+    }
+
+    public Object getOwner() {
+        return mCall.getOwner();
+    }
+
+    /**
+     * Sets request priority
+     * Requests with higher priority are dispatched first
+     *
+     * @param priority priority, i.e. {@link RequestDispatcher#PRIORITY_HIGH}
+     */
+    public void setPriority(int priority) {
+        mCall.setPriority(priority);
+    }
+
+    public int getPriority() {
+        return mCall.getPriority();
+    }
+
+    /**
+     * Enables or disables response cache for this request
+     * Cache is enabled by default when it is set via {@link #setResponseCache(DiskResponseCache)}
+     *
+     * @param useCache false to always load response from the network
+     */
+    public void setUseResponseCache(boolean useCache) {
+        mCall.setUseResponseCache(useCache);
     }
 
     /**
@@ -243,275 +693,94 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
 
     @Override
     protected CommunicatorResponse<ReturnType> doInBackground(String... params) {
-        URL url;
-        HttpURLConnection connection;
-
-        // progress 0%
-        publishProgress(PROGRESS_IDLE);
-
-        try {
-            url = new URL(params[0]);
-        } catch (MalformedURLException e) {
-            if (sDebugEnabled) {
-                e.printStackTrace();
-            }
-            //Invalid URL
-            mCommunicatorResponse.setError(new RequestError("Cannot read target URL", params[0]));
-            return mCommunicatorResponse;
-        }
-
-        mCommunicatorResponse.setUrl(url.toString());
-        if (sDebugEnabled) {
-            Log.d(getClass().getSimpleName(), "Request URL parsed. url=" + url.toString());
-        }
-
-        try {
-            URLConnection _connection = url.openConnection();
-            if (_connection instanceof HttpsURLConnection) {
-                // this class removes SSLv3 from supported protocols
-                SSLSocketFactory NoSSLv3Factory = new NoSSLv3SocketFactory(sSSLContext.getSocketFactory());
-                HttpsURLConnection httpsConnection = (HttpsURLConnection) _connection;
-                httpsConnection.setSSLSocketFactory(NoSSLv3Factory);
-                if (sHostNameVerifier != null) {
-                    httpsConnection.setHostnameVerifier(sHostNameVerifier);
-                }
-                connection = httpsConnection;
-            } else {
-                connection = (HttpURLConnection) _connection;
-            }
-        } catch (IOException e) {
-            if (sDebugEnabled) {
-                e.printStackTrace();
-            }
-            //IO exception
-            mCommunicatorResponse.setError(new RequestError("Cannot open connection", url.toString()));
-            return mCommunicatorResponse;
-        }
-
-        if (sDebugEnabled) {
-            Log.d(getClass().getSimpleName(), "Connection opened. url=" + url.toString());
-        }
-
-        // progress 10%
-        publishProgress(PROGRESS_OPENED);
-
-        // set connection timeouts
-        connection.setConnectTimeout(mTimeout);
-        connection.setReadTimeout(mReadTimeout);
-        connection.setInstanceFollowRedirects(true);
-        connection.setChunkedStreamingMode(0);
-
-        // set additional settings for POST request
-        if (mType.equals(RequestType.POST) || mType.equals(RequestType.PUT)) {
-            connection.setDoInput(true);
-            connection.setUseCaches(false);
-        }
+        return mCall.execute(params[0]);
+    }
 
-        // set connection header properties
-        connection.setRequestProperty("Accept-Charset", "UTF-8");
-        connection.setRequestProperty("Accept-Encoding", "gzip");
+    /**
+     * Gets response of the current attempt
+     *
+     * @return response
+     */
+    protected CommunicatorResponse<ReturnType> getResponse() {
+        return mCall.getResponse();
+    }
 
-        // set additional request headers
-        if (mRequestHeaders != null) {
-            if (sDebugEnabled) {
-                Log.d(getClass().getSimpleName(), "Setting custom headers. headers=" + mRequestHeaders.toString());
-            }
+    /**
+     * Delivers progress to the listener
+     * Should be called from {@link #onProgressUpdate(Object[])} of request implementation
+     *
+     * @param listener listener
+     * @param values   published progress values
+     */
+    protected void deliverProgress(BaseRequestListener<?> listener, Integer... values) {
+        mCall.deliverProgress(listener, values);
+    }
 
-            for (String property : mRequestHeaders.keySet()) {
-                connection.setRequestProperty(property, mRequestHeaders.get(property));
-            }
-        }
+    /**
+     * Checks whether failed request can be retried
+     * Can be overridden by requests, which deliver partial results while reading the response
+     *
+     * @return true if request can be executed again
+     */
+    protected boolean canRetry() {
+        return true;
+    }
 
-        if (sDebugEnabled) {
-            Log.d(getClass().getSimpleName(), "Headers set. url=" + url.toString());
+    /**
+     * Checks cancelled flag
+     * Request executing a shared fetch is cancelled once all requests waiting for it are cancelled
+     *
+     * @return true if request should stop
+     */
+    protected boolean isRequestCancelled() {
+        if (isCancelled()) {
+            return true;
         }
-
-        // set connection type
-        // since RequestType is enum, exception should never occur
-        try {
-            connection.setRequestMethod(mType.getValue());
-        } catch (ProtocolException e) {
-            if (sDebugEnabled) {
-                e.printStackTrace();
-            }
-            throw new IllegalArgumentException("Request type has invalid value");
+        if (mSharedRequest != null && mSharedRequest.isAbandoned()) {
+            // result is delivered via onCancelled
+            cancel(false);
+            return true;
         }
+        return false;
+    }
 
-        try {
-            connection.connect();
-            // progress 20%
-            publishProgress(PROGRESS_CONNECTED);
-
-            // append post data if available
-            if (mPostData != null) {
-                byte[] outputInBytes = mPostData.getBytes("UTF-8");
-                OutputStream os = connection.getOutputStream();
-                os.write(outputInBytes);
-                os.close();
-            }
-
-            // Checking for cancelled flag in major thread breakpoints
-            if (isCancelled()) {
-                connection.disconnect();
-                mCommunicatorResponse.setCancelled(true);
-                return mCommunicatorResponse;
-            }
-
-            int status = connection.getResponseCode();
-            if (sDebugEnabled) {
-                Log.d(getClass().getSimpleName(), "Connection status code " + status + ". url=" + url.toString());
-            }
-            mCommunicatorResponse.setStatusCode(status);
-            // progress 40%
-            publishProgress(PROGRESS_RESPONSE_CODE);
-
-            //try to hook interceptor
-            if (mInterceptor != null && mInterceptor.onProcessStatus(status)) {
-                //response intercepted
-                if (sDebugEnabled) {
-                    Log.d(getClass().getSimpleName(), "Response intercepted. url=" + url.toString());
-                }
-                mCommunicatorResponse.setError(RequestError.INTERCEPT);
-                return mCommunicatorResponse;
-            }
-
-            // free interceptor, no longer needed
-            mInterceptor = null;
-
-            if (!isStatusOk(status)) {
-                connection.getResponseMessage();
-                mCommunicatorResponse.setError(new RequestError(status, url.toString()));
-                return mCommunicatorResponse;
-            }
-
-            // Checking for cancelled flag in major thread breakpoints
-            if (isCancelled()) {
-                connection.disconnect();
-                mCommunicatorResponse.setCancelled(true);
-                return mCommunicatorResponse;
-            }
-
-            // progress 50%
-            publishProgress(PROGRESS_RESPONSE_TYPE);
-
-            InputStream inputStream = null;
-            try {
-                if (sDebugEnabled) {
-                    Log.d(getClass().getSimpleName(), "Reading input stream. url=" + url.toString());
-                }
-
-                inputStream = connection.getInputStream();
-                // progress 60%
-                publishProgress(PROGRESS_CONTENT);
-
-                // Checking for cancelled flag in major thread breakpoints
-                if (isCancelled()) {
-                    connection.disconnect();
-                    mCommunicatorResponse.setCancelled(true);
-                    return mCommunicatorResponse;
-                }
-
-                // handle gzipped input stream
-                Map<String, List<String>> headers = connection.getHeaderFields();
-                List<String> contentEncodings = headers.get("Content-Encoding");
-                if (contentEncodings != null) {
-                    for (String header : contentEncodings) {
-                        if (header.equalsIgnoreCase("gzip")) {
-                            if (sDebugEnabled) {
-                                Log.d(getClass().getSimpleName(), "Decoding GZIPped stream. url=" + url.toString());
-                            }
-                            inputStream = new GZIPInputStream(inputStream);
-                            break;
-                        }
-                    }
-                }
-
-                // progress 70%
-                publishProgress(PROGRESS_INPUT_STREAM);
-
-                if (sDebugEnabled) {
-                    Log.d(getClass().getSimpleName(), "Processing input stream. url=" + url.toString());
-                }
-
-                mOriginalResponse = processInputStream(connection.getContentType(), inputStream);
-                mCommunicatorResponse.setData(instantiateStream(mOriginalResponse));
-            } finally {
-                // progress 80%
-                publishProgress(PROGRESS_CONNECTION_CLOSE);
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-            }
-
-            // Checking for cancelled flag in major thread breakpoints
-            if (isCancelled()) {
-                connection.disconnect();
-                mCommunicatorResponse.setCancelled(true);
-                return mCommunicatorResponse;
-            }
-        } catch (ConnectException e) {
-            if (sDebugEnabled) {
-                e.printStackTrace();
-            }
-
-            // timeout exception
-            mCommunicatorResponse.setError(new RequestError("Connection timeout", url.toString()));
-            return mCommunicatorResponse;
-        } catch (SocketTimeoutException e) {
-            if (sDebugEnabled) {
-                Log.i(getClass().getSimpleName(), "SocketTimeoutException occurred, retrying to send a request");
-            }
-
-            if (mRetryCountSocketTimeout < MAX_RETRIES_SOCKET) {
-                mRetryCountSocketTimeout++;
-                return doInBackground(params);
-            } else {
-                if (sDebugEnabled) {
-                    e.printStackTrace();
-                }
-                mCommunicatorResponse.setError(new RequestError(e, url.toString()));
-                return mCommunicatorResponse;
-            }
-        } catch (EOFException e) {
-            // known bug when POST request is thrown with EOFException sometimes
-            // retry the request a few times
-            if (sDebugEnabled) {
-                Log.i(getClass().getSimpleName(), "EOFException occurred, retrying to send a request");
-            }
+    /**
+     * Checks whether the request was cancelled, either as task or via its call
+     * ({@link #cancelAll(Object)} marks the call before the task is cancelled)
+     *
+     * @return true if request was cancelled
+     */
+    boolean isCallerCancelled() {
+        return isCancelled() || mCall.isCancelled();
+    }
 
-            if (mRetryCountEOF < MAX_RETRIES_EOF) {
-                mRetryCountEOF++;
-                return doInBackground(params);
-            } else {
-                if (sDebugEnabled) {
-                    e.printStackTrace();
-                }
-                mCommunicatorResponse.setError(new RequestError(e, url.toString()));
-                return mCommunicatorResponse;
-            }
-        } catch (Exception e) {
-            if (sDebugEnabled) {
-                e.printStackTrace();
-            }
-            // IOException, JSONSyntaxException, Other exceptions
-            mCommunicatorResponse.setError(new RequestError(e, url.toString()));
-            return mCommunicatorResponse;
-        } finally {
-            if (sDebugEnabled) {
-                Log.d(getClass().getSimpleName(), "Disconnecting");
-            }
-            // progress 90%
-            publishProgress(PROGRESS_DISCONNECTING);
-            connection.disconnect();
-            // progress 100%
-            publishProgress(PROGRESS_DONE);
-        }
+    /**
+     * Called before request headers are applied to the connection
+     * Can be overridden to add headers, which depend on the request state (i.e. Range)
+     *
+     * @param headers request headers, modifications affect only the current connection
+     */
+    protected void onPrepareHeaders(Map<String, String> headers) {
+    }
 
-        if (sDebugEnabled) {
-            Log.d(getClass().getSimpleName(), "Request complete, returning to UI thread. url=" + url.toString());
-        }
+    /**
+     * Called when response status and headers are available, before the response body is read
+     *
+     * @param statusCode response status code
+     * @param headers    response headers
+     *
+     * @throws IOException when response cannot be processed
+     */
+    protected void onResponseHeaders(int statusCode, Map<String, List<String>> headers) throws IOException {
+    }
 
-        return mCommunicatorResponse;
+    /**
+     * Requests that the current attempt is executed again when it fails, regardless of the retry policy
+     *
+     * @see ServerCall#reissueAttempt()
+     */
+    protected void reissueAttempt() {
+        mCall.reissueAttempt();
     }
 
     /**
@@ -521,14 +790,23 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      * @param inputStream input stream to be processed
      *
      * @return generic object instance
+     *
+     * @throws IOException when stream cannot be read
      */
-    protected abstract StreamType processInputStream(String contentType, InputStream inputStream);
+    protected abstract StreamType processInputStream(String contentType, InputStream inputStream) throws IOException;
 
     protected abstract ReturnType instantiateStream(StreamType streamType);
 
     @Override
     protected abstract void onPostExecute(CommunicatorResponse<ReturnType> returnType);
 
+    @Override
+    protected void onCancelled(CommunicatorResponse<ReturnType> returnType) {
+        // request cancelled while queued is never executed by the call
+        mCall.unregister();
+        onCancelled();
+    }
+
     /**
      * Clones request parameters to the new instance
      *
@@ -536,27 +814,243 @@ public abstract class BaseServerRequest<ReturnType, StreamType> extends
      */
     public abstract BaseServerRequest<ReturnType, StreamType> cloneRequest();
 
+    /**
+     * Copies request configuration to the cloned instance
+     *
+     * @param clonedRequest cloned request
+     *
+     * @see #cloneRequest()
+     */
+    protected void copyConfigurationTo(BaseServerRequest<ReturnType, StreamType> clonedRequest) {
+        applyDeprecatedFields();
+        mCall.copyConfigurationTo(clonedRequest.mCall);
+        clonedRequest.mTimeout = mTimeout;
+        clonedRequest.mReadTimeout = mReadTimeout;
+    }
+
+    /**
+     * Passes values assigned directly to the deprecated protected fields to the call
+     */
+    private void applyDeprecatedFields() {
+        applyDeprecatedStatics();
+        mCall.mType = mType;
+        mCall.mPostData = mPostData;
+        mCall.mTimeout = mTimeout;
+        mCall.mReadTimeout = mReadTimeout;
+        mCall.mInterceptor = mInterceptor;
+        if (mRequestHeaders != mCall.mRequestHeaders) {
+            // header map was replaced by the request implementation
+            mCall.mRequestHeaders.clear();
+            mCall.mRequestHeaders.putAll(mRequestHeaders);
+        }
+    }
+
+    /**
+     * Gets response listener
+     * Used when the response is shared with other requests
+     *
+     * @return listener, null if request does not support listener replacement
+     */
+    protected BaseRequestListener<ReturnType> getListener() {
+        return null;
+    }
+
+    /**
+     * Replaces response listener
+     *
+     * @param listener listener
+     */
+    protected void setListener(BaseRequestListener<ReturnType> listener) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support listener replacement");
+    }
+
+    /**
+     * Gets key identifying requests, which can share one network fetch
+     * Key has to contain everything which affects the response and its decoding
+     *
+     * @param url request url
+     *
+     * @return key, or null if the request cannot be shared
+     */
+    protected String getCoalescingKey(String url) {
+        return null;
+    }
+
+    /**
+     * Builds part of the coalescing key from request type, url and headers
+     */
+    protected String getRequestSignature(String url) {
+        Map<String, String> headers = new TreeMap<>(mRequestHeaders);
+        return mType.getValue() + " " + url + " " + headers.toString();
+    }
+
+    private boolean isCoalescable() {
+        return sRequestCoalescing && mSharedRequest == null && mType.equals(RequestType.GET)
+                && mPostData == null && mCall.mRequestBody == null && mCall.getInterceptor() == null
+                && getListener() != null;
+    }
+
     protected boolean isStatusOk(int status) {
         return (status >= HttpURLConnection.HTTP_OK && status < HttpURLConnection.HTTP_MULT_CHOICE);
     }
 
     /**
      * Executes asyncTask in parallel with other tasks
-     * Wrapper for {@link android.os.AsyncTask#THREAD_POOL_EXECUTOR}
+     * Request is submitted to the {@link RequestDispatcher}, which applies concurrency limits
+     * per host and per tag
      *
      * @param params params
      *
      * @return asyncTask
+     *
+     * @see #setDispatcher(RequestDispatcher)
      */
     public BaseServerRequest executeInParallel(String... params) {
         if (sDebugEnabled) {
             Log.d(getClass().getSimpleName(), "Executing request in pool. url=" + params[0]);
         }
 
+        String coalescingKey = isCoalescable() ? getCoalescingKey(params[0]) : null;
+        if (coalescingKey != null) {
+            SharedRequest.execute(this, coalescingKey, params);
+            return this;
+        }
+
+        // queued request can be cancelled by its owner
+        mCall.register();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-            return (BaseServerRequest) executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, params);
+            final Executor dispatcherExecutor = sDispatcher.executorFor(ServerCall.getHost(params[0]), getTag(), getPriority());
+            return (BaseServerRequest) executeOnExecutor(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    // dispatcher cancels the task rejected by its executor, listener receives onCancelled
+                    dispatcherExecutor.execute(new FutureTask<Void>(command, null) {
+                        @Override
+                        public boolean cancel(boolean mayInterruptIfRunning) {
+                            BaseServerRequest.this.cancel(false);
+                            return super.cancel(mayInterruptIfRunning);
+                        }
+                    });
+                }
+            }, params);
         } else {
             return (BaseServerRequest) execute(params);
         }
     }
+
+    /**
+     * Adds request to the batch instead of executing it as AsyncTask
+     * Result is delivered the same way as from {@link #executeInParallel(String...)}, provided
+     * the batch delivers callbacks to the UI thread
+     *
+     * @param batch batch, i.e. from {@link #newBatch()}
+     * @param url   request url
+     *
+     * @return index of the request in the batch
+     */
+    public int addTo(RequestBatch batch, String url) {
+        return batch.add(mCall, url, new BaseRequestListener<ReturnType>() {
+            @Override
+            public void onError(RequestError error) {
+                onPostExecute(mCall.getResponse());
+            }
+
+            @Override
+            public void onSuccess(ReturnType response) {
+                onPostExecute(mCall.getResponse());
+            }
+
+            @Override
+            public void onCancelled() {
+                BaseServerRequest.this.onCancelled();
+            }
+
+            @Override
+            public void onProgress(Integer progress) {
+            }
+        });
+    }
+
+    /**
+     * Adapter, which executes the request via platform independent {@link ServerCall}
+     * Hooks of the call are delegated to the request implementation
+     */
+    private class AsyncTaskCall extends ServerCall<ReturnType, StreamType> {
+
+        AsyncTaskCall(RequestType type, String data) {
+            super(type, data);
+        }
+
+        @Override
+        public CommunicatorResponse<ReturnType> execute(String url) {
+            applyDeprecatedFields();
+            try {
+                return super.execute(url);
+            } finally {
+                BaseServerRequest.this.mCommunicatorResponse = mCommunicatorResponse;
+                // interceptor is freed by the call
+                BaseServerRequest.this.mInterceptor = mInterceptor;
+            }
+        }
+
+        @Override
+        protected StreamType processInputStream(String contentType, InputStream inputStream) throws IOException {
+            BaseServerRequest.this.mCommunicatorResponse = mCommunicatorResponse;
+            return BaseServerRequest.this.processInputStream(contentType, inputStream);
+        }
+
+        @Override
+        protected ReturnType instantiateStream(StreamType streamType) {
+            BaseServerRequest.this.mOriginalResponse = streamType;
+            return BaseServerRequest.this.instantiateStream(streamType);
+        }
+
+        @Override
+        protected void onPrepareHeaders(Map<String, String> headers) {
+            BaseServerRequest.this.onPrepareHeaders(headers);
+        }
+
+        @Override
+        protected void onResponseHeaders(int statusCode, Map<String, List<String>> headers) throws IOException {
+            BaseServerRequest.this.onResponseHeaders(statusCode, headers);
+        }
+
+        @Override
+        protected boolean canRetry() {
+            return BaseServerRequest.this.canRetry();
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            // listener receives onCancelled instead of the response
+            BaseServerRequest.this.cancel(false);
+        }
+
+        @Override
+        protected boolean isCallCancelled() {
+            return super.isCallCancelled() || isRequestCancelled();
+        }
+
+        @Override
+        protected boolean isStatusOk(int status) {
+            return BaseServerRequest.this.isStatusOk(status);
+        }
+
+        @Override
+        protected void publishProgress(Integer... values) {
+            // delivered on the UI thread via onProgressUpdate
+            BaseServerRequest.this.publishProgress(values);
+        }
+
+        @Override
+        protected BaseRequestListener<ReturnType> getListener() {
+            return BaseServerRequest.this.getListener();
+        }
+
+        @Override
+        protected String getLogTag() {
+            return BaseServerRequest.this.getClass().getSimpleName();
+        }
+    }
 }
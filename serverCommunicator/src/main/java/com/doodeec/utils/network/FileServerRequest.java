@@ -7,9 +7,14 @@ import android.util.Log;
 import com.doodeec.utils.network.listener.BaseRequestListener;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
 /**
  * @author Dusan Bartos
@@ -17,6 +22,15 @@ import java.io.InputStream;
 @SuppressWarnings("unused")
 public class FileServerRequest extends BaseServerRequest<File, File> {
 
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    // resumable download files
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".meta";
+    private static final String META_URL = "url";
+    private static final String META_VALIDATOR = "validator";
+    private static final String META_BYTES_WRITTEN = "bytesWritten";
+
     /**
      * @see ServerRequest#setBufferSize(int)
      */
@@ -49,6 +63,19 @@ public class FileServerRequest extends BaseServerRequest<File, File> {
      */
     private String mFileName = null;
 
+    /**
+     * When true, interrupted download is resumed from the partial file
+     *
+     * @see #setResumable(boolean)
+     */
+    private boolean mResumable = false;
+
+    private File mPartialFile;
+    private File mMetaFile;
+    private long mResumeOffset = 0;
+    private long mExpectedLength = -1;
+    private String mValidator;
+
     public FileServerRequest(File fileDir, RequestType type, BaseRequestListener<File> listener) {
         this(fileDir, type, null, listener);
     }
@@ -68,30 +95,129 @@ public class FileServerRequest extends BaseServerRequest<File, File> {
         mFileName = fileName;
     }
 
+    /**
+     * Enables resumable download
+     * Data is written to partial file with metadata sidecar. When the download fails, next
+     * execution (or automatic retry) continues from the last written byte via Range request,
+     * if the server still has the same version of the file. Complete file is moved to its
+     * final location atomically
+     *
+     * @param resumable true to resume interrupted downloads
+     */
+    public void setResumable(boolean resumable) {
+        mResumable = resumable;
+        if (resumable) {
+            // partial content must never be stored as a complete response
+            setUseResponseCache(false);
+        }
+    }
+
+    /**
+     * Gets name of the target file
+     *
+     * @return file name
+     */
+    private String resolveFileName() {
+        String fileName = mFileName != null ? mFileName :
+                Uri.parse(getResponse().getUrl()).getLastPathSegment();
+
+        // tempFile creation would throw an exception when file prefix is shorter than 3 characters
+        if (fileName.length() < 3) {
+            fileName += "_";
+            fileName += mType.getValue();
+        }
+        return fileName;
+    }
+
     @Override
-    protected File processInputStream(String contentType, InputStream inputStream) {
-        File file = null;
-        FileOutputStream fos = null;
+    protected void onPrepareHeaders(Map<String, String> headers) {
+        if (!mResumable) return;
+
+        // byte ranges have to address the file itself, not its compressed representation
+        headers.put("Accept-Encoding", "identity");
+
+        String fileName = resolveFileName();
+        mPartialFile = new File(mFileDir, fileName + PARTIAL_SUFFIX);
+        mMetaFile = new File(mFileDir, fileName + PARTIAL_SUFFIX + META_SUFFIX);
+        mResumeOffset = 0;
+        mValidator = null;
+
+        Properties meta = readMeta();
+        long length = mPartialFile.length();
+        if (meta != null && getResponse().getUrl().equals(meta.getProperty(META_URL))
+                && meta.getProperty(META_VALIDATOR) != null && length > 0) {
+            mResumeOffset = length;
+            mValidator = meta.getProperty(META_VALIDATOR);
+            headers.put("Range", "bytes=" + length + "-");
+            headers.put("If-Range", mValidator);
 
-        try {
             if (sDebugEnabled) {
-                Log.d(getClass().getSimpleName(), "Processing input stream");
+                Log.d(getClass().getSimpleName(), "Resuming download. offset=" + length);
             }
+        } else {
+            mPartialFile.delete();
+            mMetaFile.delete();
+        }
+    }
+
+    @Override
+    protected void onResponseHeaders(int statusCode, Map<String, List<String>> headers) throws IOException {
+        if (!mResumable) return;
 
-            String fileName = mFileName != null ? mFileName :
-                    Uri.parse(mCommunicatorResponse.getUrl()).getLastPathSegment();
+        if (statusCode == HttpURLConnection.HTTP_PARTIAL) {
+            String contentRange = header(headers, "Content-Range");
+            if (mResumeOffset == 0 || contentRange == null
+                    || !contentRange.trim().startsWith("bytes " + mResumeOffset + "-")) {
+                // range does not continue partial file, start over next time
+                mPartialFile.delete();
+                mMetaFile.delete();
+                throw new IOException("Unexpected content range " + contentRange);
+            }
+        } else if (statusCode == HTTP_RANGE_NOT_SATISFIABLE) {
+            // partial file is not valid anymore, download starts over without Range
+            mPartialFile.delete();
+            mMetaFile.delete();
+            if (mResumeOffset > 0) {
+                reissueAttempt();
+            }
+        } else {
+            // full response, i.e. file changed on the server or range is not supported
+            if (mResumeOffset > 0 && sDebugEnabled) {
+                Log.d(getClass().getSimpleName(), "Server sent full response, restarting download");
+            }
+            mResumeOffset = 0;
+            String eTag = header(headers, "ETag");
+            // weak validators cannot be used in If-Range
+            mValidator = eTag != null && !eTag.startsWith("W/") ? eTag : header(headers, "Last-Modified");
+        }
 
-            // tempFile creation would throw an exception when file prefix is shorter than 3 characters
-            if (fileName.length() < 3) {
-                fileName += "_";
-                fileName += mType.getValue();
+        // connection closed before the whole body was received is not always reported as an error
+        String contentLength = header(headers, "Content-Length");
+        mExpectedLength = -1;
+        if (contentLength != null) {
+            try {
+                mExpectedLength = mResumeOffset + Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException ignored) {
             }
+        }
+    }
+
+    @Override
+    protected File processInputStream(String contentType, InputStream inputStream) throws IOException {
+        if (mResumable) {
+            return processResumable(inputStream);
+        }
 
+        File file = null;
+        FileOutputStream fos = null;
+        boolean cancelled = false;
+
+        try {
             if (sDebugEnabled) {
                 Log.d(getClass().getSimpleName(), "Processing input stream");
             }
 
-            file = new File(mFileDir, fileName);
+            file = new File(mFileDir, resolveFileName());
             fos = new FileOutputStream(file);
 
             byte[] buf = new byte[sCharBufferSize];
@@ -106,10 +232,15 @@ public class FileServerRequest extends BaseServerRequest<File, File> {
                 Log.d(getClass().getSimpleName(), "Closing streams");
             }
         } catch (IOException e) {
+            if (isRequestCancelled()) {
+                // response is delivered as cancelled
+                cancelled = true;
+                throw e;
+            }
             if (sDebugEnabled) {
                 e.printStackTrace();
-                mCommunicatorResponse.setError(new RequestError(e, mCommunicatorResponse.getUrl()));
             }
+            getResponse().setError(new RequestError(e, getResponse().getUrl()));
             return null;
         } finally {
             try {
@@ -120,11 +251,128 @@ public class FileServerRequest extends BaseServerRequest<File, File> {
                     Log.d(getClass().getSimpleName(), "Error closing outputStream");
                 }
             }
+            if (cancelled && file != null) {
+                // partial file of cancelled download is useless
+                file.delete();
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Appends response to the partial file and moves it to the target file once it is complete
+     * IOException is propagated, so the request retry continues from the written data
+     *
+     * @param inputStream response stream
+     *
+     * @return complete file
+     *
+     * @throws IOException when download fails
+     */
+    private File processResumable(InputStream inputStream) throws IOException {
+        boolean append = mResumeOffset > 0;
+        if (!append) {
+            mPartialFile.delete();
+        }
+        if (mValidator != null) {
+            writeMeta(append ? mPartialFile.length() : 0);
+        } else {
+            // without validator the download cannot be safely resumed
+            mMetaFile.delete();
+        }
+
+        FileOutputStream fos = new FileOutputStream(mPartialFile, append);
+        try {
+            byte[] buf = new byte[sCharBufferSize];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buf, 0, sCharBufferSize)) != -1) {
+                fos.write(buf, 0, bytesRead);
+            }
+        } finally {
+            try {
+                fos.close();
+            } catch (IOException e) {
+                if (sDebugEnabled) {
+                    Log.d(getClass().getSimpleName(), "Error closing outputStream");
+                }
+            }
+            if (mValidator != null && mPartialFile.exists()) {
+                writeMeta(mPartialFile.length());
+            }
+        }
+
+        if (mExpectedLength >= 0 && mPartialFile.length() != mExpectedLength) {
+            // partial file and its metadata are kept, so the download can be resumed
+            throw new IOException("Unexpected end of stream. expected=" + mExpectedLength
+                    + ", received=" + mPartialFile.length());
         }
 
+        File file = new File(mFileDir, resolveFileName());
+        if (!mPartialFile.renameTo(file)) {
+            throw new IOException("Cannot move downloaded file to " + file.getAbsolutePath());
+        }
+        mMetaFile.delete();
+
+        if (sDebugEnabled) {
+            Log.d(getClass().getSimpleName(), "Download complete. size=" + file.length());
+        }
         return file;
     }
 
+    private Properties readMeta() {
+        if (!mMetaFile.exists()) return null;
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(mMetaFile);
+            Properties meta = new Properties();
+            meta.load(inputStream);
+            return meta;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void writeMeta(long bytesWritten) {
+        Properties meta = new Properties();
+        meta.setProperty(META_URL, getResponse().getUrl());
+        meta.setProperty(META_VALIDATOR, mValidator);
+        meta.setProperty(META_BYTES_WRITTEN, String.valueOf(bytesWritten));
+
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(mMetaFile);
+            meta.store(outputStream, null);
+        } catch (IOException e) {
+            // download can still complete, only resumption is lost
+            mMetaFile.delete();
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static String header(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)
+                    && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
     @Override
     protected File instantiateStream(File file) {
         return file;
@@ -148,12 +396,32 @@ public class FileServerRequest extends BaseServerRequest<File, File> {
         }
     }
 
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        deliverProgress(mListener, values);
+    }
+
+    @Override
+    protected void onCancelled() {
+        mListener.onCancelled();
+    }
+
+    @Override
+    protected BaseRequestListener<File> getListener() {
+        return mListener;
+    }
+
+    @Override
+    protected void setListener(BaseRequestListener<File> listener) {
+        mListener = listener;
+    }
+
     @Override
     public FileServerRequest cloneRequest() {
         FileServerRequest clonedRequest = new FileServerRequest(mFileDir, mType, mPostData, mListener);
-        clonedRequest.mTimeout = mTimeout;
-        clonedRequest.mReadTimeout = mReadTimeout;
-        clonedRequest.mRequestHeaders = mRequestHeaders;
+        copyConfigurationTo(clonedRequest);
+        clonedRequest.mFileName = mFileName;
+        clonedRequest.mResumable = mResumable;
         return clonedRequest;
     }
 }
@@ -2,17 +2,22 @@ package com.doodeec.utils.network;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.util.Log;
 
+import com.doodeec.utils.network.cache.BitmapMemoryCache;
+import com.doodeec.utils.network.cache.BitmapPool;
 import com.doodeec.utils.network.listener.BaseRequestListener;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 
 /**
  * Server request for Image resource
  * {@link android.os.AsyncTask} wrapper around {@link java.net.HttpURLConnection}
- * Can be executed with {@link #THREAD_POOL_EXECUTOR} to evaluate requests in parallel
+ * Can be executed with {@link #executeInParallel(String...)} to evaluate requests in parallel
  *
  * @author dusan.bartos
  * @see com.doodeec.utils.network.BaseServerRequest
@@ -25,6 +30,61 @@ public class ImageServerRequest extends BaseServerRequest<Bitmap, Bitmap> {
     // response types
     private static final String[] IMAGE_RESPONSE = new String[]{"image/png", "image/jpg", "image/jpeg"};
 
+    /**
+     * Process-wide cache of decoded bitmaps, disabled when null
+     */
+    private static BitmapMemoryCache sMemoryCache;
+
+    /**
+     * Sets memory cache shared by all image requests
+     * When bitmap for the request URL is cached, {@link #executeInParallel(String...)} delivers it
+     * to the listener synchronously, without starting the request
+     *
+     * @param memoryCache bitmap cache, null to disable
+     */
+    public static void setMemoryCache(BitmapMemoryCache memoryCache) {
+        sMemoryCache = memoryCache;
+        BitmapPool pool = sBitmapPool;
+        if (pool != null) {
+            pool.setMemoryCache(memoryCache);
+        }
+    }
+
+    /**
+     * @return memory cache shared by all image requests, or null
+     */
+    public static BitmapMemoryCache getMemoryCache() {
+        return sMemoryCache;
+    }
+
+    /**
+     * Pool of bitmaps reused for decoding, disabled when null
+     */
+    private static BitmapPool sBitmapPool;
+
+    /**
+     * Sets pool of bitmaps, which are reused when decoding images with target size
+     * Reuse is supported since API 11
+     *
+     * @param bitmapPool bitmap pool, null to disable reuse
+     *
+     * @see #setTargetSize(int, int)
+     */
+    public static void setBitmapPool(BitmapPool bitmapPool) {
+        if (bitmapPool != null) {
+            // bitmap returned to the pool must not be served by the memory cache anymore
+            bitmapPool.setMemoryCache(sMemoryCache);
+        }
+        sBitmapPool = bitmapPool;
+    }
+
+    /**
+     * @return pool of reusable bitmaps, or null
+     */
+    public static BitmapPool getBitmapPool() {
+        return sBitmapPool;
+    }
+
     /**
      * Request listener
      *
@@ -32,21 +92,224 @@ public class ImageServerRequest extends BaseServerRequest<Bitmap, Bitmap> {
      */
     protected BaseRequestListener<Bitmap> mListener;
 
+    /**
+     * When false, memory cache is neither read nor written for this request
+     */
+    private boolean mUseMemoryCache = true;
+
+    /**
+     * Requested size of the decoded bitmap
+     * When set, image is downsampled while decoding
+     */
+    private int mTargetWidth = 0;
+    private int mTargetHeight = 0;
+
+    /**
+     * Preferred bitmap config, i.e. {@link Bitmap.Config#RGB_565} for images without alpha
+     */
+    private Bitmap.Config mPreferredConfig;
+
+    /**
+     * Url the request was executed with, decoded bitmap is cached under the same key it is looked up
+     */
+    private String mRequestUrl;
+
     public ImageServerRequest(RequestType type, BaseRequestListener<Bitmap> listener) {
         super(type);
         mListener = listener;
     }
 
+    /**
+     * Enables or disables memory cache for this request
+     *
+     * @param useCache false to always download and decode the image
+     */
+    public void setUseMemoryCache(boolean useCache) {
+        mUseMemoryCache = useCache;
+    }
+
+    /**
+     * Sets size in which the image will be displayed
+     * Image is decoded with the largest power-of-two subsampling which keeps both dimensions
+     * at least as large as requested, so full resolution bitmap is never allocated
+     *
+     * @param width  target width in pixels, 0 when not restricted
+     * @param height target height in pixels, 0 when not restricted
+     */
+    public void setTargetSize(int width, int height) {
+        mTargetWidth = Math.max(0, width);
+        mTargetHeight = Math.max(0, height);
+    }
+
+    /**
+     * Sets preferred bitmap config
+     * {@link Bitmap.Config#RGB_565} uses half of the memory of default ARGB_8888
+     *
+     * @param config bitmap config, null for default
+     */
+    public void setPreferredConfig(Bitmap.Config config) {
+        mPreferredConfig = config;
+    }
+
+    /**
+     * Gets key of the decoded bitmap in the memory cache
+     * Key contains decoding parameters, so bitmaps of different sizes are cached separately
+     *
+     * @param url image url
+     *
+     * @return cache key
+     */
+    protected String getMemoryCacheKey(String url) {
+        if (!isDownsampling()) {
+            return url;
+        }
+        return url + "#" + mTargetWidth + "x" + mTargetHeight + ":" + mPreferredConfig;
+    }
+
+    private boolean isDownsampling() {
+        return mTargetWidth > 0 || mTargetHeight > 0 || mPreferredConfig != null;
+    }
+
+    @Override
+    protected BaseRequestListener<Bitmap> getListener() {
+        return mListener;
+    }
+
+    @Override
+    protected void setListener(BaseRequestListener<Bitmap> listener) {
+        mListener = listener;
+    }
+
+    @Override
+    protected String getCoalescingKey(String url) {
+        return getRequestSignature(getMemoryCacheKey(url));
+    }
+
+    @Override
+    public BaseServerRequest executeInParallel(String... params) {
+        BitmapMemoryCache cache = mUseMemoryCache ? sMemoryCache : null;
+        if (cache != null && mType.equals(RequestType.GET)) {
+            Bitmap bitmap = cache.get(getMemoryCacheKey(params[0]));
+            if (bitmap != null) {
+                if (sDebugEnabled) {
+                    Log.d(getClass().getSimpleName(), "Bitmap served from memory cache. url=" + params[0]);
+                }
+                mListener.onSuccess(bitmap);
+                return this;
+            }
+        }
+        return super.executeInParallel(params);
+    }
+
     @Override
-    protected Bitmap processInputStream(String contentType, InputStream inputStream) {
+    protected CommunicatorResponse<Bitmap> doInBackground(String... params) {
+        mRequestUrl = params[0];
+        return super.doInBackground(params);
+    }
+
+    @Override
+    protected Bitmap processInputStream(String contentType, InputStream inputStream) throws IOException {
         if (Arrays.asList(IMAGE_RESPONSE).contains(contentType)) {
-            // decoding stream data back into image Bitmap that android understands
-            return BitmapFactory.decodeStream(inputStream);
+            // image is read before decoding, BitmapFactory would hide read errors, so the request
+            // could not be retried
+            byte[] data = readFully(inputStream);
+            // decoding data back into image Bitmap that android understands
+            Bitmap bitmap = isDownsampling() ? decodeSampled(data) : BitmapFactory.decodeByteArray(data, 0, data.length);
+
+            BitmapMemoryCache cache = mUseMemoryCache ? sMemoryCache : null;
+            if (cache != null && bitmap != null && mType.equals(RequestType.GET)) {
+                // request added to a batch is not executed via doInBackground
+                String url = mRequestUrl != null ? mRequestUrl : getResponse().getUrl();
+                cache.put(getMemoryCacheKey(url), bitmap);
+            }
+            return bitmap;
         } else {
             return null;
         }
     }
 
+    /**
+     * Decodes image downsampled to the target size
+     * Encoded image is in memory, so bounds can be decoded before the image itself
+     *
+     * @param data encoded image
+     *
+     * @return decoded bitmap or null
+     */
+    Bitmap decodeSampled(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, mTargetWidth, mTargetHeight);
+        // bounds with sample size give exact dimensions of the decoded bitmap
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        options.inJustDecodeBounds = false;
+        if (mPreferredConfig != null) {
+            options.inPreferredConfig = mPreferredConfig;
+        }
+
+        BitmapPool pool = sBitmapPool;
+        Bitmap reusable = null;
+        if (pool != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && (options.inSampleSize == 1 || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)) {
+            Bitmap.Config config = mPreferredConfig != null ? mPreferredConfig : Bitmap.Config.ARGB_8888;
+            reusable = pool.get(options.outWidth, options.outHeight, config);
+            options.inMutable = true;
+            options.inBitmap = reusable;
+        }
+
+        if (sDebugEnabled) {
+            Log.d(getClass().getSimpleName(), "Decoding image with inSampleSize=" + options.inSampleSize
+                    + ", size=" + options.outWidth + "x" + options.outHeight + ", reuse=" + (reusable != null));
+        }
+
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // pooled bitmap cannot be reused for this image
+            if (reusable == null) throw e;
+            pool.put(reusable);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Calculates largest power-of-two sample size, which keeps bitmap larger than requested size
+     *
+     * @param width        image width
+     * @param height       image height
+     * @param targetWidth  requested width, 0 when not restricted
+     * @param targetHeight requested height, 0 when not restricted
+     *
+     * @return sample size
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        if (targetWidth <= 0 && targetHeight <= 0) {
+            return inSampleSize;
+        }
+        while ((targetWidth <= 0 || width / (inSampleSize * 2) >= targetWidth)
+                && (targetHeight <= 0 || height / (inSampleSize * 2) >= targetHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(16 * 1024);
+        byte[] buf = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buf)) != -1) {
+            outputStream.write(buf, 0, bytesRead);
+        }
+        return outputStream.toByteArray();
+    }
+
     @Override
     protected Bitmap instantiateStream(Bitmap bitmap) {
         return bitmap;
@@ -72,15 +335,17 @@ public class ImageServerRequest extends BaseServerRequest<Bitmap, Bitmap> {
     @Override
     public ImageServerRequest cloneRequest() {
         ImageServerRequest clonedRequest = new ImageServerRequest(mType, mListener);
-        clonedRequest.mTimeout = mTimeout;
-        clonedRequest.mReadTimeout = mReadTimeout;
-        clonedRequest.mRequestHeaders = mRequestHeaders;
+        copyConfigurationTo(clonedRequest);
+        clonedRequest.mUseMemoryCache = mUseMemoryCache;
+        clonedRequest.mTargetWidth = mTargetWidth;
+        clonedRequest.mTargetHeight = mTargetHeight;
+        clonedRequest.mPreferredConfig = mPreferredConfig;
         return clonedRequest;
     }
 
     @Override
     protected void onProgressUpdate(Integer... values) {
-        mListener.onProgress(values[0]);
+        deliverProgress(mListener, values);
     }
 
     @Override
@@ -4,12 +4,13 @@ import android.util.Log;
 
 import com.doodeec.utils.network.listener.BaseRequestListener;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.lang.reflect.Type;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
@@ -17,7 +18,7 @@ import java.nio.charset.UnsupportedCharsetException;
 /**
  * Server request
  * {@link android.os.AsyncTask} wrapper around {@link java.net.HttpURLConnection}
- * Can be executed with {@link #THREAD_POOL_EXECUTOR} to evaluate requests in parallel
+ * Can be executed with {@link #executeInParallel(String...)} to evaluate requests in parallel
  *
  * @author dusan.bartos
  * @see com.doodeec.utils.network.listener.BaseRequestListener
@@ -33,33 +34,33 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
     private static final String REQ_CONTENT_TYPE_VALUE = "application/json";
 
     /**
-     * response charset
+     * Default parsing mode for new requests
      *
-     * @see #setResponseCharset(String)
+     * @see #setStreamingParserDefault(boolean)
      */
-    private static Charset sCharset = Charset.forName("UTF-8");
+    private static boolean sStreamingParserDefault = false;
 
     /**
-     * GSON converter
-     * uses default converter by default, can be changed via {@link #setGsonConverter(Gson)}
+     * Sets custom GSON converter
+     *
+     * @param gsonConverter custom converter
      */
-    private static Gson sGsonConverter = new GsonBuilder().create();
+    public static void setGsonConverter(Gson gsonConverter) {
+        JsonDecoder.setGsonConverter(gsonConverter);
+    }
 
     /**
-     * Buffer size used for reading input stream from response
-     *
-     * @see #setBufferSize(int)
+     * @return GSON converter used for deserializing responses
      */
-    private static int sCharBufferSize = 2048;
+    static Gson getGsonConverter() {
+        return JsonDecoder.getGsonConverter();
+    }
 
     /**
-     * Sets custom GSON converter
-     *
-     * @param gsonConverter custom converter
+     * @return charset used for reading responses
      */
-    public static void setGsonConverter(Gson gsonConverter) {
-        if (gsonConverter == null) return;
-        sGsonConverter = gsonConverter;
+    static Charset getResponseCharset() {
+        return JsonDecoder.getResponseCharset();
     }
 
     /**
@@ -68,7 +69,18 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
      * @param size size of the buffer
      */
     public static void setBufferSize(int size) {
-        sCharBufferSize = size;
+        JsonDecoder.setBufferSize(size);
+    }
+
+    /**
+     * Sets parsing mode used by default for all new requests
+     *
+     * @param enabled true to parse responses directly from the input stream
+     *
+     * @see #setStreamingParser(boolean)
+     */
+    public static void setStreamingParserDefault(boolean enabled) {
+        sStreamingParserDefault = enabled;
     }
 
     /**
@@ -79,10 +91,22 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
     protected BaseRequestListener<LT> mListener;
 
     /**
-     * Class of the response
+     * When true, response is deserialized directly from the input stream
+     *
+     * @see #setStreamingParser(boolean)
+     */
+    private boolean mStreamingParser = sStreamingParserDefault;
+
+    /**
+     * Response object deserialized in streaming mode
+     */
+    private LT mStreamedResponse;
+
+    /**
+     * Type of the response
      * Used in GSON parser
      */
-    private Class<LT> mGsonClass;
+    private Type mGsonType;
 
     /**
      * Constructs ServerRequest
@@ -94,7 +118,21 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
     public ServerRequest(RequestType type, BaseRequestListener<LT> listener, Class<LT> cls) {
         super(type);
         mListener = listener;
-        mGsonClass = cls;
+        mGsonType = cls;
+    }
+
+    /**
+     * Constructs ServerRequest with generic response type
+     * i.e. {@code new ServerRequest<>(RequestType.GET, listener, new TypeToken<List<Item>>(){})}
+     *
+     * @param type      type of request {@link RequestType}
+     * @param listener  response listener
+     * @param typeToken type of response object
+     */
+    public ServerRequest(RequestType type, BaseRequestListener<LT> listener, TypeToken<LT> typeToken) {
+        super(type);
+        mListener = listener;
+        mGsonType = typeToken.getType();
     }
 
     /**
@@ -108,7 +146,30 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
     public ServerRequest(RequestType type, String data, BaseRequestListener<LT> listener, Class<LT> cls) {
         super(type, data);
         mListener = listener;
-        mGsonClass = cls;
+        mGsonType = cls;
+    }
+
+    /**
+     * Constructs ServerRequest with payload data and generic response type
+     *
+     * @param type      type of request {@link RequestType}
+     * @param data      payload data
+     * @param listener  response listener
+     * @param typeToken type of response object
+     */
+    public ServerRequest(RequestType type, String data, BaseRequestListener<LT> listener, TypeToken<LT> typeToken) {
+        super(type, data);
+        mListener = listener;
+        mGsonType = typeToken.getType();
+    }
+
+    /**
+     * Constructs ServerRequest with response type already resolved
+     */
+    private ServerRequest(RequestType type, String data, BaseRequestListener<LT> listener, Type gsonType) {
+        super(type, data);
+        mListener = listener;
+        mGsonType = gsonType;
     }
 
     /**
@@ -134,7 +195,19 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
      */
     public static void setResponseCharset(String canonicalName) throws IllegalCharsetNameException,
             UnsupportedCharsetException {
-        sCharset = Charset.forName(canonicalName);
+        JsonDecoder.setResponseCharset(canonicalName);
+    }
+
+    /**
+     * Enables streaming parser for this request
+     * Response is read by {@link JsonReader} and deserialized by GSON type adapter while it is
+     * being downloaded, without building intermediate String. Original response is not available
+     * in this mode
+     *
+     * @param enabled true to parse response directly from the input stream
+     */
+    public void setStreamingParser(boolean enabled) {
+        mStreamingParser = enabled;
     }
 
     @Override
@@ -143,25 +216,21 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
     }
 
     @Override
-    protected String processInputStream(String contentType, InputStream inputStream) {
-        try {
-            InputStreamReader streamReader = new InputStreamReader(inputStream, sCharset.name());
-            StringBuilder sb = new StringBuilder();
-            char[] buf = new char[sCharBufferSize];
-            int charsRead;
-            while ((charsRead = streamReader.read(buf, 0, sCharBufferSize)) > 0) {
-                sb.append(buf, 0, charsRead);
-            }
-
-            return sb.toString();
-        } catch (IOException e) {
+    protected String processInputStream(String contentType, InputStream inputStream) throws IOException {
+        if (mStreamingParser) {
+            mStreamedResponse = JsonDecoder.<LT>parseStream(inputStream, mGsonType);
             return null;
         }
+        // read timeout or truncated body is propagated, so the request can be retried
+        return JsonDecoder.readString(inputStream);
     }
 
     @Override
     protected LT instantiateStream(String s) throws JsonSyntaxException {
-        return sGsonConverter.fromJson(s, mGsonClass);
+        if (mStreamingParser) {
+            return mStreamedResponse;
+        }
+        return JsonDecoder.<LT>fromJson(s, mGsonType);
     }
 
     @Override
@@ -182,18 +251,32 @@ public class ServerRequest<LT> extends BaseServerRequest<LT, String> {
         }
     }
 
+    @Override
+    protected BaseRequestListener<LT> getListener() {
+        return mListener;
+    }
+
+    @Override
+    protected void setListener(BaseRequestListener<LT> listener) {
+        mListener = listener;
+    }
+
+    @Override
+    protected String getCoalescingKey(String url) {
+        return getRequestSignature(url) + " " + TypeToken.get(mGsonType);
+    }
+
     @Override
     public ServerRequest<LT> cloneRequest() {
-        ServerRequest<LT> clonedRequest = new ServerRequest<>(mType, mPostData, mListener, mGsonClass);
-        clonedRequest.mTimeout = mTimeout;
-        clonedRequest.mReadTimeout = mReadTimeout;
-        clonedRequest.mRequestHeaders = mRequestHeaders;
+        ServerRequest<LT> clonedRequest = new ServerRequest<>(mType, mPostData, mListener, mGsonType);
+        clonedRequest.mStreamingParser = mStreamingParser;
+        copyConfigurationTo(clonedRequest);
         return clonedRequest;
     }
 
     @Override
     protected void onProgressUpdate(Integer... values) {
-        mListener.onProgress(values[0]);
+        deliverProgress(mListener, values);
     }
 
     @Override
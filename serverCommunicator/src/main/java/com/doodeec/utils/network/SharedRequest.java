@@ -0,0 +1,183 @@
+package com.doodeec.utils.network;
+
+import android.util.Log;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.doodeec.utils.network.listener.ByteProgressListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single network fetch shared by identical in-flight requests
+ * Every caller request is attached to the shared request, which is a clone of the first caller.
+ * Result of the shared request is delivered to listeners of all callers, which were not cancelled
+ * Shared request is cancelled only when all attached callers are cancelled
+ * Callers keep their owners, cancelling one caller does not affect the others
+ *
+ * @author dusan.bartos
+ * @see BaseServerRequest#setRequestCoalescing(boolean)
+ */
+class SharedRequest<ReturnType> implements BaseRequestListener<ReturnType>, ByteProgressListener {
+
+    private static final ConcurrentHashMap<String, SharedRequest<?>> sInFlight = new ConcurrentHashMap<>();
+
+    private final String mKey;
+    private final List<BaseServerRequest<ReturnType, ?>> mCallers = new ArrayList<>();
+    private boolean mFinished = false;
+
+    /**
+     * Request executing the network fetch
+     */
+    private BaseServerRequest<ReturnType, ?> mNetworkRequest;
+
+    private SharedRequest(String key) {
+        mKey = key;
+    }
+
+    /**
+     * Attaches request to the identical in-flight request, or starts new shared request
+     *
+     * @param request request to execute
+     * @param key     coalescing key of the request
+     * @param params  request params
+     */
+    @SuppressWarnings("unchecked")
+    static <ReturnType> void execute(BaseServerRequest<ReturnType, ?> request, String key, String... params) {
+        // caller is never executed, it is registered so its owner can cancel it
+        request.mCall.register();
+        SharedRequest<ReturnType> shared = new SharedRequest<>(key);
+        shared.attach(request);
+
+        while (true) {
+            SharedRequest<ReturnType> existing = (SharedRequest<ReturnType>) sInFlight.putIfAbsent(key, shared);
+            if (existing == null) {
+                break;
+            }
+            if (existing.attach(request)) {
+                if (BaseServerRequest.sDebugEnabled) {
+                    Log.d(request.getClass().getSimpleName(), "Attached to in-flight request. url=" + params[0]);
+                }
+                return;
+            }
+            // existing request is just finishing
+            sInFlight.remove(key, existing);
+        }
+
+        BaseServerRequest<ReturnType, ?> networkRequest = request.cloneRequest();
+        networkRequest.setListener(shared);
+        // shared fetch belongs to no owner, it stops once all callers are cancelled
+        networkRequest.setOwner(null);
+        networkRequest.mSharedRequest = shared;
+        shared.mNetworkRequest = networkRequest;
+        networkRequest.executeInParallel(params);
+    }
+
+    /**
+     * Gets shared request of identical in-flight requests
+     *
+     * @param key coalescing key
+     *
+     * @return shared request, null if there is no such request in flight
+     */
+    static SharedRequest<?> getInFlight(String key) {
+        return sInFlight.get(key);
+    }
+
+    /**
+     * @return request executing the network fetch
+     */
+    BaseServerRequest<ReturnType, ?> getNetworkRequest() {
+        return mNetworkRequest;
+    }
+
+    private synchronized boolean attach(BaseServerRequest<ReturnType, ?> request) {
+        if (mFinished) return false;
+        mCallers.add(request);
+        return true;
+    }
+
+    /**
+     * @return true if all attached callers were cancelled
+     */
+    synchronized boolean isAbandoned() {
+        for (BaseServerRequest<ReturnType, ?> caller : mCallers) {
+            if (!caller.isCallerCancelled()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Detaches all callers, no caller can be attached after this call
+     */
+    private List<BaseServerRequest<ReturnType, ?>> finish() {
+        sInFlight.remove(mKey, this);
+        List<BaseServerRequest<ReturnType, ?>> callers;
+        synchronized (this) {
+            mFinished = true;
+            callers = new ArrayList<>(mCallers);
+        }
+        for (BaseServerRequest<ReturnType, ?> caller : callers) {
+            caller.mCall.unregister();
+        }
+        return callers;
+    }
+
+    private synchronized List<BaseServerRequest<ReturnType, ?>> callers() {
+        return new ArrayList<>(mCallers);
+    }
+
+    // cancelled callers already received onCancelled from their own task
+
+    @Override
+    public void onError(RequestError error) {
+        for (BaseServerRequest<ReturnType, ?> caller : finish()) {
+            if (!caller.isCallerCancelled()) {
+                caller.getListener().onError(error);
+            }
+        }
+    }
+
+    @Override
+    public void onSuccess(ReturnType response) {
+        for (BaseServerRequest<ReturnType, ?> caller : finish()) {
+            if (!caller.isCallerCancelled()) {
+                caller.getListener().onSuccess(response);
+            }
+        }
+    }
+
+    @Override
+    public void onCancelled() {
+        for (BaseServerRequest<ReturnType, ?> caller : finish()) {
+            if (!caller.isCallerCancelled()) {
+                caller.getListener().onCancelled();
+            }
+        }
+    }
+
+    @Override
+    public void onProgress(Integer progress) {
+        for (BaseServerRequest<ReturnType, ?> caller : callers()) {
+            if (!caller.isCallerCancelled()) {
+                caller.getListener().onProgress(progress);
+            }
+        }
+    }
+
+    @Override
+    public void onUploadProgress(long bytesWritten, long totalBytes) {
+        // shared requests have no body
+    }
+
+    @Override
+    public void onDownloadProgress(long bytesRead, long totalBytes) {
+        for (BaseServerRequest<ReturnType, ?> caller : callers()) {
+            BaseRequestListener<ReturnType> listener = caller.getListener();
+            if (!caller.isCallerCancelled() && listener instanceof ByteProgressListener) {
+                ((ByteProgressListener) listener).onDownloadProgress(bytesRead, totalBytes);
+            }
+        }
+    }
+}
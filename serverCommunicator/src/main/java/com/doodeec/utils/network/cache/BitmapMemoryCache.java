@@ -0,0 +1,189 @@
+package com.doodeec.utils.network.cache;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache of decoded bitmaps bounded by size in bytes
+ * Cached bitmaps are shared between requests, so they must not be recycled by the caller
+ *
+ * @author dusan.bartos
+ * @see com.doodeec.utils.network.ImageServerRequest#setMemoryCache(BitmapMemoryCache)
+ */
+@SuppressWarnings("unused")
+public class BitmapMemoryCache {
+
+    private final LinkedHashMap<String, Bitmap> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMaxSize;
+    private long mSize = 0;
+
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+    private int mPutCount = 0;
+    private int mEvictionCount = 0;
+
+    /**
+     * Creates memory cache
+     * Typical size is a fraction of the heap, i.e. {@code Runtime.getRuntime().maxMemory() / 8}
+     *
+     * @param maxSize maximum size of cached bitmaps in bytes
+     */
+    public BitmapMemoryCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Gets cached bitmap
+     *
+     * @param key cache key
+     *
+     * @return bitmap or null
+     */
+    public synchronized Bitmap get(String key) {
+        Bitmap bitmap = mEntries.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            // recycled by mistake, cannot be used anymore
+            mEntries.remove(key);
+            mSize -= sizeOf(bitmap);
+            bitmap = null;
+        }
+        if (bitmap != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Stores bitmap in the cache
+     * Bitmaps larger than the whole cache are not stored
+     *
+     * @param key    cache key
+     * @param bitmap bitmap
+     */
+    public synchronized void put(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null) return;
+
+        long size = sizeOf(bitmap);
+        if (size > mMaxSize) {
+            return;
+        }
+
+        mPutCount++;
+        Bitmap previous = mEntries.put(key, bitmap);
+        mSize += size;
+        if (previous != null) {
+            mSize -= sizeOf(previous);
+        }
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Removes bitmap from the cache
+     *
+     * @param key cache key
+     *
+     * @return removed bitmap or null
+     */
+    public synchronized Bitmap remove(String key) {
+        Bitmap previous = mEntries.remove(key);
+        if (previous != null) {
+            mSize -= sizeOf(previous);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes all entries holding the given bitmap
+     *
+     * @param bitmap bitmap
+     *
+     * @return true if bitmap was cached
+     */
+    public synchronized boolean removeBitmap(Bitmap bitmap) {
+        boolean removed = false;
+        Iterator<Map.Entry<String, Bitmap>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Bitmap> entry = iterator.next();
+            if (entry.getValue() == bitmap) {
+                mSize -= sizeOf(bitmap);
+                iterator.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Evicts least recently used bitmaps until the cache size is below the given size
+     * Can be used from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     *
+     * @param maxSize maximum size in bytes
+     */
+    public synchronized void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, Bitmap>> iterator = mEntries.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Bitmap> eldest = iterator.next();
+            mSize -= sizeOf(eldest.getValue());
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Removes all bitmaps
+     */
+    public synchronized void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * @return size of cached bitmaps in bytes
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public synchronized long maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Size of the bitmap in bytes
+     * {@link Bitmap#getByteCount()} is not available on API 10
+     */
+    protected long sizeOf(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @Override
+    public synchronized String toString() {
+        int accesses = mHitCount + mMissCount;
+        int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+        return "BitmapMemoryCache{size=" + mSize + ", maxSize=" + mMaxSize + ", hits=" + mHitCount
+                + ", misses=" + mMissCount + ", hitRate=" + hitPercent + "%, evictions=" + mEvictionCount + "}";
+    }
+}
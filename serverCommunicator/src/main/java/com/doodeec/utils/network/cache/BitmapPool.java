@@ -0,0 +1,156 @@
+package com.doodeec.utils.network.cache;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pool of reusable bitmaps used as {@link android.graphics.BitmapFactory.Options#inBitmap}
+ * Bitmaps are grouped by width, height and config. Pool is bounded by size in bytes, least
+ * recently added groups are recycled first
+ * Bitmaps should be returned to the pool only when they are not displayed anymore
+ *
+ * @author dusan.bartos
+ * @see com.doodeec.utils.network.ImageServerRequest#setBitmapPool(BitmapPool)
+ */
+@SuppressWarnings("unused")
+public class BitmapPool {
+
+    private final LinkedHashMap<String, ArrayDeque<Bitmap>> mGroups = new LinkedHashMap<>(16, 0.75f, true);
+    private final long mMaxSize;
+    private long mSize = 0;
+
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+
+    private BitmapMemoryCache mMemoryCache;
+
+    /**
+     * Creates bitmap pool
+     *
+     * @param maxSize maximum size of pooled bitmaps in bytes
+     */
+    public BitmapPool(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Sets memory cache, which shares decoded bitmaps with callers
+     * Bitmap returned to the pool is removed from the cache, so the cache never serves bitmap,
+     * whose pixels are overwritten by the next decode
+     *
+     * @param memoryCache memory cache, can be null
+     */
+    public synchronized void setMemoryCache(BitmapMemoryCache memoryCache) {
+        mMemoryCache = memoryCache;
+    }
+
+    /**
+     * Returns bitmap to the pool
+     * Only mutable bitmaps can be reused, other bitmaps are ignored
+     *
+     * @param bitmap bitmap which is no longer used
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+            return;
+        }
+        if (mMemoryCache != null) {
+            mMemoryCache.removeBitmap(bitmap);
+        }
+        long size = sizeOf(bitmap);
+        if (size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        String key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> group = mGroups.get(key);
+        if (group == null) {
+            group = new ArrayDeque<>();
+            mGroups.put(key, group);
+        } else if (group.contains(bitmap)) {
+            return;
+        }
+        group.push(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Takes bitmap with exact dimensions and config from the pool
+     *
+     * @param width  bitmap width
+     * @param height bitmap height
+     * @param config bitmap config
+     *
+     * @return reusable bitmap or null
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> group = mGroups.get(key(width, height, config));
+        Bitmap bitmap = group != null ? group.poll() : null;
+        if (bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+        if (group.isEmpty()) {
+            mGroups.remove(key(width, height, config));
+        }
+        mSize -= sizeOf(bitmap);
+        mHitCount++;
+        return bitmap;
+    }
+
+    /**
+     * Recycles pooled bitmaps until the pool size is below the given size
+     *
+     * @param maxSize maximum size in bytes
+     */
+    public synchronized void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, ArrayDeque<Bitmap>>> iterator = mGroups.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            ArrayDeque<Bitmap> group = iterator.next().getValue();
+            while (mSize > maxSize && !group.isEmpty()) {
+                Bitmap bitmap = group.removeLast();
+                mSize -= sizeOf(bitmap);
+                bitmap.recycle();
+            }
+            if (group.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Recycles all pooled bitmaps
+     */
+    public synchronized void clear() {
+        trimToSize(-1);
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    private static String key(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,156 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.ArrayRequestListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * AsyncTask is not executed in JVM tests, request is driven via doInBackground
+ */
+public class TestArrayServerRequest {
+
+    static class Item {
+        int id;
+    }
+
+    private static class RecordingListener implements ArrayRequestListener<Item> {
+        final List<Integer> mBatchSizes = new ArrayList<>();
+        final List<Integer> mIds = new ArrayList<>();
+
+        @Override
+        public void onElements(List<Item> elements) {
+            mBatchSizes.add(elements.size());
+            for (Item item : elements) {
+                mIds.add(item.id);
+            }
+        }
+
+        @Override
+        public void onError(RequestError error) {
+        }
+
+        @Override
+        public void onSuccess(Integer response) {
+        }
+
+        @Override
+        public void onCancelled() {
+        }
+
+        @Override
+        public void onProgress(Integer progress) {
+        }
+    }
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+
+    private static String items(int count) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"id\":").append(i).append('}');
+        }
+        return builder.append(']').toString();
+    }
+
+    private void respond(String path, final String body) {
+        mServer.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] response = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(response);
+                os.close();
+            }
+        });
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        respond("/items", items(45));
+        respond("/nested", "{\"meta\":{\"page\":1},\"data\":{\"items\":" + items(3) + "}}");
+        respond("/empty", "[]");
+        respond("/large", items(5000));
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void testArrayServerRequest_batches() {
+        RecordingListener listener = new RecordingListener();
+        ArrayServerRequest<Item> request = new ArrayServerRequest<>(RequestType.GET, listener, Item.class);
+        request.setBatchSize(20);
+        CommunicatorResponse<Integer> response = request.doInBackground(mBaseUrl + "/items");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData(), is(45));
+        assertThat(listener.mBatchSizes.toString(), is("[20, 20, 5]"));
+        assertThat(listener.mIds.size(), is(45));
+        assertThat(listener.mIds.get(44), is(44));
+    }
+
+    @Test
+    public void testArrayServerRequest_nestedArray() {
+        RecordingListener listener = new RecordingListener();
+        ArrayServerRequest<Item> request = new ArrayServerRequest<>(RequestType.GET, listener, Item.class);
+        request.setArrayPath("data", "items");
+        CommunicatorResponse<Integer> response = request.doInBackground(mBaseUrl + "/nested");
+
+        assertThat(response.getData(), is(3));
+        assertThat(listener.mIds.toString(), is("[0, 1, 2]"));
+    }
+
+    @Test
+    public void testArrayServerRequest_emptyArray() {
+        RecordingListener listener = new RecordingListener();
+        ArrayServerRequest<Item> request = new ArrayServerRequest<>(RequestType.GET, listener, Item.class);
+        CommunicatorResponse<Integer> response = request.doInBackground(mBaseUrl + "/empty");
+
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData(), is(0));
+        // empty batch is never delivered
+        assertThat(listener.mBatchSizes.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testArrayServerRequest_cancelledWhileReading() {
+        final AtomicReference<ArrayServerRequest<Item>> request = new AtomicReference<>();
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onElements(List<Item> elements) {
+                super.onElements(elements);
+                // cancelled by its owner after the first batch
+                request.get().mCall.cancel();
+            }
+        };
+        request.set(new ArrayServerRequest<>(RequestType.GET, listener, Item.class));
+        request.get().setBatchSize(10);
+        CommunicatorResponse<Integer> response = request.get().doInBackground(mBaseUrl + "/large");
+
+        assertThat(listener.mBatchSizes.toString(), is("[10]"));
+        assertThat(response.isCancelled(), is(true));
+    }
+}
@@ -0,0 +1,97 @@
+package com.doodeec.utils.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Request implementations written against 1.3 API, which use protected fields directly
+ */
+public class TestBaseServerRequest {
+
+    @SuppressWarnings("deprecation")
+    private static class LegacyRequest extends BaseServerRequest<String, String> {
+        CommunicatorResponse<String> mProcessedResponse;
+
+        LegacyRequest() {
+            super(RequestType.GET);
+            mType = RequestType.POST;
+            mPostData = "payload";
+            mRequestHeaders = new HashMap<>();
+            mRequestHeaders.put("X-Legacy", "1");
+            mReadTimeout = 5000;
+        }
+
+        @Override
+        protected String processInputStream(String contentType, InputStream inputStream) throws IOException {
+            mProcessedResponse = mCommunicatorResponse;
+            return JsonDecoder.readString(inputStream);
+        }
+
+        @Override
+        protected String instantiateStream(String response) {
+            return mOriginalResponse + "!";
+        }
+
+        @Override
+        protected void onPostExecute(CommunicatorResponse<String> response) {
+        }
+
+        @Override
+        public BaseServerRequest<String, String> cloneRequest() {
+            return new LegacyRequest();
+        }
+    }
+
+    private HttpServer mServer;
+    private String mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String body = exchange.getRequestMethod() + " " + exchange.getRequestHeaders().getFirst("X-Legacy")
+                        + " " + JsonDecoder.readString(exchange.getRequestBody());
+                byte[] response = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(response);
+                os.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/echo";
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testBaseServerRequest_deprecatedFields() {
+        LegacyRequest request = new LegacyRequest();
+        CommunicatorResponse<String> response = request.doInBackground(mUrl);
+
+        assertThat(response.getData(), is("POST 1 payload!"));
+        assertThat(request.mProcessedResponse == response, is(true));
+        assertThat(request.mCommunicatorResponse == response, is(true));
+        assertThat(request.mCall.mReadTimeout, is(5000));
+    }
+}
@@ -0,0 +1,276 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Resumable download against a server which supports byte ranges
+ * AsyncTask is not executed in JVM tests, request is driven via doInBackground
+ */
+public class TestFileServerRequest {
+
+    private static final String FILE_NAME = "download.bin";
+
+    private HttpServer mServer;
+    private String mUrl;
+    private File mDirectory;
+
+    private volatile byte[] mContent = content(10000, 1);
+    private volatile String mETag = "\"v1\"";
+    private volatile int mTruncateAt = -1;
+    private volatile int mRangeNotSatisfiable = 0;
+    private volatile String mContentRange = null;
+    private final List<String> mRanges = new ArrayList<>();
+
+    private static byte[] content(int length, int seed) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * seed);
+        }
+        return content;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("download", "test");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/file", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                synchronized (mRanges) {
+                    mRanges.add(range + " " + ifRange);
+                }
+                exchange.getResponseHeaders().add("ETag", mETag);
+
+                if (mRangeNotSatisfiable > 0) {
+                    // number of 416 responses to send
+                    mRangeNotSatisfiable--;
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
+                }
+
+                int offset = 0;
+                if (range != null && mETag.equals(ifRange)) {
+                    offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                    exchange.getResponseHeaders().add("Content-Range", mContentRange != null ? mContentRange
+                            : "bytes " + offset + "-" + (mContent.length - 1) + "/" + mContent.length);
+                    exchange.sendResponseHeaders(206, mContent.length - offset);
+                } else {
+                    exchange.sendResponseHeaders(200, mContent.length);
+                }
+
+                OutputStream os = exchange.getResponseBody();
+                int end = mContent.length;
+                if (mTruncateAt > offset) {
+                    // connection dropped in the middle of the body, only once
+                    end = mTruncateAt;
+                    mTruncateAt = -1;
+                }
+                os.write(mContent, offset, end - offset);
+                os.flush();
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/file";
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private FileServerRequest newRequest(int maxRetries) {
+        FileServerRequest request = new FileServerRequest(mDirectory, RequestType.GET, new BaseRequestListener<File>() {
+            @Override
+            public void onError(RequestError error) {
+            }
+
+            @Override
+            public void onSuccess(File response) {
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onProgress(Integer progress) {
+            }
+        });
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setMaxRetries(maxRetries);
+        retryPolicy.setBackoff(0, 0, 1);
+        request.setRetryPolicy(retryPolicy);
+        request.setFileName(FILE_NAME);
+        request.setResumable(true);
+        return request;
+    }
+
+    private File partialFile() {
+        return new File(mDirectory, FILE_NAME + ".part");
+    }
+
+    private File metaFile() {
+        return new File(mDirectory, FILE_NAME + ".part.meta");
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream is = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                offset += is.read(data, offset, data.length - offset);
+            }
+        } finally {
+            is.close();
+        }
+        return data;
+    }
+
+    private static Properties readProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream is = new FileInputStream(file);
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        return properties;
+    }
+
+    private void writePartial(int length, String validator) throws IOException {
+        OutputStream os = new FileOutputStream(partialFile());
+        os.write(mContent, 0, length);
+        os.close();
+        Properties meta = new Properties();
+        meta.setProperty("url", mUrl);
+        meta.setProperty("validator", validator);
+        meta.setProperty("bytesWritten", String.valueOf(length));
+        os = new FileOutputStream(metaFile());
+        meta.store(os, null);
+        os.close();
+    }
+
+    private void assertComplete(CommunicatorResponse<File> response) throws IOException {
+        assertThat(response.hasError(), is(false));
+        assertThat(response.getData().getName(), is(FILE_NAME));
+        assertThat(Arrays.equals(read(response.getData()), mContent), is(true));
+        // partial file was moved, not copied
+        assertThat(partialFile().exists(), is(false));
+        assertThat(metaFile().exists(), is(false));
+    }
+
+    @Test
+    public void testFileServerRequest_resumeNextExecution() throws IOException {
+        mTruncateAt = 4000;
+        CommunicatorResponse<File> failed = newRequest(0).doInBackground(mUrl);
+
+        // interrupted download keeps partial file with its validator
+        assertThat(failed.hasError(), is(true));
+        assertThat(new File(mDirectory, FILE_NAME).exists(), is(false));
+        assertThat(partialFile().length(), is(4000L));
+        Properties meta = readProperties(metaFile());
+        assertThat(meta.getProperty("url"), is(mUrl));
+        assertThat(meta.getProperty("validator"), is("\"v1\""));
+        assertThat(meta.getProperty("bytesWritten"), is("4000"));
+
+        CommunicatorResponse<File> response = newRequest(0).doInBackground(mUrl);
+        assertComplete(response);
+        assertThat(mRanges.toString(), is("[null null, bytes=4000- \"v1\"]"));
+    }
+
+    @Test
+    public void testFileServerRequest_resumeOnRetry() throws IOException {
+        mTruncateAt = 6000;
+        CommunicatorResponse<File> response = newRequest(1).doInBackground(mUrl);
+
+        assertComplete(response);
+        assertThat(mRanges.toString(), is("[null null, bytes=6000- \"v1\"]"));
+    }
+
+    @Test
+    public void testFileServerRequest_fileChangedRestarts() throws IOException {
+        writePartial(3000, "\"v1\"");
+        mETag = "\"v2\"";
+        mContent = content(8000, 3);
+
+        // If-Range does not match, server sends the whole new file
+        CommunicatorResponse<File> response = newRequest(0).doInBackground(mUrl);
+        assertComplete(response);
+        assertThat(mRanges.toString(), is("[bytes=3000- \"v1\"]"));
+    }
+
+    @Test
+    public void testFileServerRequest_rangeNotSatisfiable() throws IOException {
+        writePartial(3000, "\"v1\"");
+        mRangeNotSatisfiable = 1;
+
+        // partial file is discarded and the download starts over, without retry policy
+        CommunicatorResponse<File> response = newRequest(0).doInBackground(mUrl);
+        assertComplete(response);
+        assertThat(response.getTimings().getAttempts(), is(2));
+        assertThat(mRanges.toString(), is("[bytes=3000- \"v1\", null null]"));
+    }
+
+    @Test
+    public void testFileServerRequest_rangeNotSatisfiableTwice() throws IOException {
+        writePartial(3000, "\"v1\"");
+        mRangeNotSatisfiable = 5;
+
+        // full request failing with 416 is not re-issued again
+        CommunicatorResponse<File> failed = newRequest(0).doInBackground(mUrl);
+        assertThat(failed.hasError(), is(true));
+        assertThat(failed.getStatusCode(), is(416));
+        assertThat(partialFile().exists(), is(false));
+        assertThat(metaFile().exists(), is(false));
+        assertThat(mRanges.toString(), is("[bytes=3000- \"v1\", null null]"));
+    }
+
+    @Test
+    public void testFileServerRequest_unexpectedContentRange() throws IOException {
+        writePartial(3000, "\"v1\"");
+        mContentRange = "bytes 0-9999/10000";
+
+        CommunicatorResponse<File> failed = newRequest(0).doInBackground(mUrl);
+        assertThat(failed.hasError(), is(true));
+        assertThat(partialFile().exists(), is(false));
+        assertThat(metaFile().exists(), is(false));
+        assertThat(new File(mDirectory, FILE_NAME).exists(), is(false));
+    }
+}
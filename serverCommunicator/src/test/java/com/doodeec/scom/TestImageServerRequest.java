@@ -0,0 +1,131 @@
+package com.doodeec.utils.network;
+
+import android.graphics.Bitmap;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+/**
+ * Decoding itself needs real BitmapFactory, it is covered by instrumented tests
+ */
+public class TestImageServerRequest {
+
+    private static ImageServerRequest newRequest() {
+        return new ImageServerRequest(RequestType.GET, new BaseRequestListener<Bitmap>() {
+            @Override
+            public void onError(RequestError error) {
+            }
+
+            @Override
+            public void onSuccess(Bitmap response) {
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onProgress(Integer progress) {
+            }
+        });
+    }
+
+    @Test
+    public void testImageServerRequest_inSampleSize() {
+        // 4000x3000 photo displayed in 200x200 thumbnail
+        assertThat(ImageServerRequest.calculateInSampleSize(4000, 3000, 200, 200), is(8));
+        // only width restricted
+        assertThat(ImageServerRequest.calculateInSampleSize(4000, 3000, 1000, 0), is(4));
+        // image already smaller than target
+        assertThat(ImageServerRequest.calculateInSampleSize(100, 100, 200, 200), is(1));
+        // no target size
+        assertThat(ImageServerRequest.calculateInSampleSize(4000, 3000, 0, 0), is(1));
+    }
+
+    @Test
+    public void testImageServerRequest_memoryCacheKey() {
+        String url = "http://example.com/image.png";
+        // full size bitmap is cached under its url
+        assertThat(newRequest().getMemoryCacheKey(url), is(url));
+
+        ImageServerRequest thumbnail = newRequest();
+        thumbnail.setTargetSize(200, 100);
+        assertThat(thumbnail.getMemoryCacheKey(url), is(url + "#200x100:null"));
+
+        ImageServerRequest rgb565 = newRequest();
+        rgb565.setTargetSize(200, 100);
+        rgb565.setPreferredConfig(Bitmap.Config.RGB_565);
+        assertThat(rgb565.getMemoryCacheKey(url), is(url + "#200x100:RGB_565"));
+
+        // decode parameters are part of the coalescing key as well
+        assertThat(thumbnail.getCoalescingKey(url).equals(rgb565.getCoalescingKey(url)), is(false));
+        assertThat(thumbnail.getCoalescingKey(url).equals(newRequest().getCoalescingKey(url)), is(false));
+    }
+
+    @Test
+    public void testImageServerRequest_readErrorPropagated() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        ImageServerRequest request = newRequest();
+        request.setTargetSize(100, 100);
+        try {
+            request.processInputStream("image/png", failing);
+            fail("Read error should be propagated");
+        } catch (IOException e) {
+            // expected, request can be retried
+        }
+    }
+
+    @Test
+    public void testImageServerRequest_readTimeout() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/image.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "image/png");
+                exchange.sendResponseHeaders(200, 1000);
+                OutputStream os = exchange.getResponseBody();
+                os.write(new byte[10]);
+                os.flush();
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ignored) {
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            ImageServerRequest request = newRequest();
+            RetryPolicy policy = new RetryPolicy();
+            policy.setMaxRetries(0);
+            request.setRetryPolicy(policy);
+            request.setReadTimeout(300);
+            CommunicatorResponse<Bitmap> response = request.doInBackground(
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/image.png");
+
+            // reported as timeout, not as empty bitmap
+            assertThat(response.hasError(), is(true));
+            assertThat(response.getError().getErrorType(), is(ErrorType.SocketTimeout));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
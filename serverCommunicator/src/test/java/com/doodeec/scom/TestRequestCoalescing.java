@@ -0,0 +1,194 @@
+package com.doodeec.utils.network;
+
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * AsyncTask is not executed in JVM tests, network fetch of the shared request is driven directly
+ */
+public class TestRequestCoalescing {
+
+    static class User {
+        String name;
+    }
+
+    private static class RecordingListener implements BaseRequestListener<User> {
+        int mSuccess;
+        int mError;
+        int mCancelled;
+        User mUser;
+
+        @Override
+        public void onError(RequestError error) {
+            mError++;
+        }
+
+        @Override
+        public void onSuccess(User response) {
+            mSuccess++;
+            mUser = response;
+        }
+
+        @Override
+        public void onCancelled() {
+            mCancelled++;
+        }
+
+        @Override
+        public void onProgress(Integer progress) {
+        }
+    }
+
+    private HttpServer mServer;
+    private String mUrl;
+    private final AtomicInteger mHits = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/user", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mHits.incrementAndGet();
+                byte[] body = "{\"name\":\"John\"}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/user";
+        BaseServerRequest.setRequestCoalescing(true);
+    }
+
+    @After
+    public void tearDown() {
+        BaseServerRequest.setRequestCoalescing(false);
+        mServer.stop(0);
+    }
+
+    private ServerRequest<User> newRequest(RecordingListener listener, Object owner) {
+        ServerRequest<User> request = new ServerRequest<>(RequestType.GET, listener, User.class);
+        request.setOwner(owner);
+        request.executeInParallel(mUrl);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BaseServerRequest<User, String> networkRequest(ServerRequest<User> request) {
+        SharedRequest<?> shared = SharedRequest.getInFlight(request.getCoalescingKey(mUrl));
+        return (BaseServerRequest<User, String>) shared.getNetworkRequest();
+    }
+
+    /**
+     * Executes shared fetch the same way as AsyncTask does
+     */
+    private void runNetworkRequest(BaseServerRequest<User, String> network) {
+        CommunicatorResponse<User> response = network.doInBackground(mUrl);
+        if (network.isRequestCancelled()) {
+            network.onCancelled(response);
+        } else {
+            network.onPostExecute(response);
+        }
+    }
+
+    @Test
+    public void testCoalescing_attachAndDelivery() {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        ServerRequest<User> request = newRequest(first, null);
+        newRequest(second, null);
+        BaseServerRequest<User, String> network = networkRequest(request);
+
+        runNetworkRequest(network);
+
+        assertThat(mHits.get(), is(1));
+        assertThat(first.mSuccess, is(1));
+        assertThat(second.mSuccess, is(1));
+        assertThat(second.mUser.name, is("John"));
+        // finished request is not in flight anymore, next request starts new fetch
+        assertThat(SharedRequest.getInFlight(request.getCoalescingKey(mUrl)) == null, is(true));
+    }
+
+    @Test
+    public void testCoalescing_cancelledCaller() {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        ServerRequest<User> request = newRequest(first, null);
+        ServerRequest<User> cancelled = newRequest(second, null);
+        BaseServerRequest<User, String> network = networkRequest(request);
+
+        cancelled.mCall.cancel();
+        // AsyncTask delivers onCancelled of the cancelled task
+        cancelled.onCancelled(null);
+
+        runNetworkRequest(network);
+
+        assertThat(mHits.get(), is(1));
+        assertThat(first.mSuccess, is(1));
+        assertThat(second.mSuccess, is(0));
+        // delivered only once
+        assertThat(second.mCancelled, is(1));
+    }
+
+    @Test
+    public void testCoalescing_twoOwners() {
+        RecordingListener listenerA = new RecordingListener();
+        RecordingListener listenerB = new RecordingListener();
+        ServerRequest<User> requestA = newRequest(listenerA, "A");
+        ServerRequest<User> requestB = newRequest(listenerB, "B");
+        BaseServerRequest<User, String> network = networkRequest(requestA);
+
+        // shared fetch has no owner, each caller is registered with its own owner
+        assertThat(network.getOwner() == null, is(true));
+        assertThat(ServerCall.cancelAll("B"), is(1));
+        // AsyncTask delivers onCancelled of the cancelled task
+        requestB.onCancelled(null);
+
+        runNetworkRequest(network);
+
+        assertThat(mHits.get(), is(1));
+        assertThat(listenerA.mSuccess, is(1));
+        assertThat(listenerA.mCancelled, is(0));
+        assertThat(listenerB.mSuccess, is(0));
+        // delivered only once
+        assertThat(listenerB.mCancelled, is(1));
+        assertThat(ServerCall.getInFlightCount(), is(0));
+    }
+
+    @Test
+    public void testCoalescing_allCallersCancelled() {
+        RecordingListener listenerA = new RecordingListener();
+        RecordingListener listenerB = new RecordingListener();
+        ServerRequest<User> requestA = newRequest(listenerA, null);
+        ServerRequest<User> requestB = newRequest(listenerB, null);
+        BaseServerRequest<User, String> network = networkRequest(requestA);
+
+        requestA.mCall.cancel();
+        assertThat(network.isRequestCancelled(), is(false));
+        requestB.mCall.cancel();
+        assertThat(network.isRequestCancelled(), is(true));
+
+        runNetworkRequest(network);
+
+        // abandoned fetch is not executed, cancelled callers get no callback from it
+        assertThat(mHits.get(), is(0));
+        assertThat(listenerA.mSuccess + listenerA.mCancelled, is(0));
+        assertThat(listenerB.mSuccess + listenerB.mCancelled, is(0));
+    }
+}
@@ -1,9 +1,20 @@
 package com.doodeec.utils.network;
 
+import com.doodeec.utils.network.listener.BaseRequestListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -36,4 +47,72 @@ public class TestServerRequest {
             }
         }
     }
+
+    static class User {
+        String name;
+    }
+
+    @Test
+    public void testServerRequest_readTimeoutRetried() throws IOException {
+        final AtomicInteger hits = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/user", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "{\"name\":\"John\"}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                int written = 0;
+                if (hits.incrementAndGet() == 1) {
+                    // first response stalls in the middle of the body
+                    os.write(body, 0, 5);
+                    os.flush();
+                    written = 5;
+                    try {
+                        Thread.sleep(1500);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                os.write(body, written, body.length - written);
+                os.close();
+            }
+        });
+        // stalled exchange must not block the retry
+        server.setExecutor(executor);
+        server.start();
+        try {
+            ServerRequest<User> request = new ServerRequest<>(RequestType.GET, new BaseRequestListener<User>() {
+                @Override
+                public void onError(RequestError error) {
+                }
+
+                @Override
+                public void onSuccess(User response) {
+                }
+
+                @Override
+                public void onCancelled() {
+                }
+
+                @Override
+                public void onProgress(Integer progress) {
+                }
+            }, User.class);
+            RetryPolicy policy = new RetryPolicy();
+            policy.setBackoff(0, 0, 1);
+            request.setRetryPolicy(policy);
+            request.setReadTimeout(500);
+            CommunicatorResponse<User> response = request.doInBackground(
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/user");
+
+            // read timeout is reported as an error and retried, not delivered as empty success
+            assertThat(response.hasError(), is(false));
+            assertThat(response.getData().name, is("John"));
+            assertThat(hits.get(), is(2));
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
 }